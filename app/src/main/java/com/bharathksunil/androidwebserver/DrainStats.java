@@ -0,0 +1,58 @@
+package com.bharathksunil.androidwebserver;
+
+/**
+ * This models the outcome of stopping a server gracefully, see {@link IWebServer#stopServer(long)}
+ */
+public final class DrainStats {
+    private final int completedCount;
+    private final int abortedCount;
+    private final int idleClosedCount;
+    private final long drainMillis;
+
+    DrainStats(int completedCount, int abortedCount, int idleClosedCount, long drainMillis) {
+        this.completedCount = completedCount;
+        this.abortedCount = abortedCount;
+        this.idleClosedCount = idleClosedCount;
+        this.drainMillis = drainMillis;
+    }
+
+    /**
+     * @return the number of requests which got their whole response after the server stopped
+     * accepting connections
+     */
+    public int getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * @return the number of requests still being served at the deadline, whose connection was cut
+     */
+    public int getAbortedCount() {
+        return abortedCount;
+    }
+
+    /**
+     * @return the number of connections closed while waiting for a request, the streams handed
+     * over by a response included
+     */
+    public int getIdleClosedCount() {
+        return idleClosedCount;
+    }
+
+    /**
+     * @return the time the server took to stop
+     */
+    public long getDrainMillis() {
+        return drainMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "DrainStats{" +
+                "completedCount=" + completedCount +
+                ", abortedCount=" + abortedCount +
+                ", idleClosedCount=" + idleClosedCount +
+                ", drainMillis=" + drainMillis +
+                '}';
+    }
+}
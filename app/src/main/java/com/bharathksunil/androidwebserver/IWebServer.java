@@ -1,7 +1,16 @@
 package com.bharathksunil.androidwebserver;
 
 import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.metrics.MetricsSnapshot;
 import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.router.RouteHandler;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
 
 /**
  * This interface represents the functionalities offered by the web server
@@ -15,10 +24,70 @@ public interface IWebServer {
     void startServer() throws WebServerException;
 
     /**
-     * Call this method to stop the server
+     * Call this method to stop the server, it drains the connections for up to the drain timeout
+     * of the {@link WebServerConfig}, see {@link #stopServer(long)}
      */
     void stopServer();
 
+    /**
+     * Call this method to stop the server gracefully. It stops accepting connections at once and
+     * closes the idle keep-alive connections, then lets the requests in flight finish, closing
+     * each connection after its response, and cuts those still running at the deadline. It
+     * blocks until every connection is closed.
+     *
+     * @param drainTimeoutMillis the time the requests in flight are given to finish, 0 to cut them
+     *                           at once
+     * @return how many requests completed or were aborted
+     */
+    @NonNull
+    DrainStats stopServer(long drainTimeoutMillis);
+
+    /**
+     * Call this method to apply a new config without stopping the server. A new address is bound
+     * before the old one stops accepting, and the connections already accepted are served until
+     * they close. The routes, the worker pool, the response cache and the metrics are kept.
+     *
+     * @param webServerConfig the new config, see {@link WebServerConfig#canReconfigureTo(WebServerConfig)}
+     * @throws WebServerException       if the new port could not be bound, the server then keeps
+     *                                  its current config
+     * @throws NumberFormatException    if the new port is not a number
+     * @throws IllegalArgumentException if the config changes a setting fixed when the server was built
+     */
+    void reconfigure(@NonNull WebServerConfig webServerConfig) throws WebServerException;
+
+    /**
+     * Call this method to accept clients on another port or interface as well, like an admin port
+     * or a listener only the device can reach. Every listener shares the routes, the worker pool,
+     * the response cache and the metrics of the server, so only the port and the bind address of
+     * its config are used. A listener added to a stopped server is bound when the server starts.
+     *
+     * @param listenerConfig the port and the bind address to listen on, see
+     *                       {@link WebServerConfig.Builder#setBindAddress(String)}
+     * @throws WebServerException       if the server is running and the address could not be bound
+     * @throws NumberFormatException    if the port is not a number
+     * @throws IllegalArgumentException if the listener was already added
+     */
+    void addListener(@NonNull WebServerConfig listenerConfig) throws WebServerException;
+
+    /**
+     * Call this method to stop accepting clients on a listener, the connections it accepted are
+     * served until they close
+     *
+     * @param listenerConfig the config the listener was added with
+     * @return true if the listener had been added
+     */
+    boolean removeListener(@NonNull WebServerConfig listenerConfig);
+
+    /**
+     * Call this method to get the addresses the server accepts clients on, useful for the
+     * listeners started on port 0
+     *
+     * @return the bound addresses, the one of the server config first, empty while the server is
+     * stopped
+     */
+    @NonNull
+    List<InetSocketAddress> getListeningAddresses();
+
     /**
      * Call this method to check the status of the server
      *
@@ -32,4 +101,23 @@ public interface IWebServer {
      * @return the currently running web server config
      */
     WebServerConfig getWebServerConfig();
+
+    /**
+     * Call this method to register an endpoint. Routes are matched before the static files, see
+     * {@link com.bharathksunil.androidwebserver.router.Router} for the pattern syntax.
+     *
+     * @param method  the request method handled
+     * @param pattern the path pattern, like /users/{id} or /assets/*
+     * @param handler the handler called for matching requests
+     * @throws IllegalArgumentException if the pattern is invalid or conflicts with another route
+     */
+    void addRoute(@NonNull NanoHTTPD.Method method, @NonNull String pattern, @NonNull RouteHandler handler);
+
+    /**
+     * Call this method to read the request counts, bytes and latencies per route
+     *
+     * @return a snapshot of the metrics, null if they are disabled
+     */
+    @Nullable
+    MetricsSnapshot getMetrics();
 }
@@ -1,45 +1,387 @@
 package com.bharathksunil.androidwebserver;
 
+import com.bharathksunil.androidwebserver.accesslog.AccessLogStats;
+import com.bharathksunil.androidwebserver.body.MemoryFirstNanoHTTPD;
+import com.bharathksunil.androidwebserver.body.MemoryFirstTempFileManagerFactory;
+import com.bharathksunil.androidwebserver.body.TempFileStats;
+import com.bharathksunil.androidwebserver.cache.CacheStats;
+import com.bharathksunil.androidwebserver.connection.ClientConnection;
+import com.bharathksunil.androidwebserver.connection.ConnectionReaper;
+import com.bharathksunil.androidwebserver.connection.ConnectionStats;
+import com.bharathksunil.androidwebserver.connection.HandoverSelector;
+import com.bharathksunil.androidwebserver.connection.SelectorHandover;
+import com.bharathksunil.androidwebserver.connection.ServerSocketGroup;
 import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.metrics.MetricsSnapshot;
 import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.ratelimit.RateLimiterStats;
+import com.bharathksunil.androidwebserver.response.BufferPool;
+import com.bharathksunil.androidwebserver.response.BufferPoolStats;
+import com.bharathksunil.androidwebserver.router.RouteHandler;
+import com.bharathksunil.androidwebserver.runner.BoundedAsyncRunner;
+import com.bharathksunil.androidwebserver.runner.WorkerPoolStats;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import fi.iki.elonen.NanoHTTPD;
 import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
 
-public class MyWebServer extends NanoHTTPD implements IWebServer {
+public class MyWebServer extends MemoryFirstNanoHTTPD implements IWebServer {
+    private static final Logger LOG = Logger.getLogger(MyWebServer.class.getName());
+    /**
+     * The interval at which a draining server looks for the connections done with their request
+     */
+    private static final long DRAIN_POLL_MILLIS = 20;
 
     /**
      * Stores the {@link WebServerConfig} for the currently running server
      */
     @NonNull
-    private WebServerConfig mWebServerConfig;
+    private volatile WebServerConfig mWebServerConfig;
+    /**
+     * The worker pool which runs the client connections
+     */
+    @NonNull
+    private final BoundedAsyncRunner mAsyncRunner;
+    /**
+     * Routes the requests and records the metrics
+     */
+    @NonNull
+    private final RequestDispatcher mDispatcher;
+    /**
+     * Keeps the small request bodies in memory and spills the others to temp files
+     */
+    @NonNull
+    private final MemoryFirstTempFileManagerFactory mTempFileManagerFactory;
+    /**
+     * Closes the keep-alive connections idle for too long, null if only the read timeout applies
+     */
+    @Nullable
+    private volatile ConnectionReaper mConnectionReaper;
+    /**
+     * Watches the connections handed over by their response, so they hold no worker
+     */
+    @NonNull
+    private final HandoverSelector mHandoverSelector = new HandoverSelector();
+    /**
+     * The listening sockets, closed first when the server drains, null until the server starts.
+     * The address of the server config is always the first one.
+     */
+    @Nullable
+    private volatile ServerSocketGroup mListeners;
+    /**
+     * The listeners added on top of the server config, bound whenever the server starts
+     */
+    @NonNull
+    private final List<WebServerConfig> mListenerConfigs = new CopyOnWriteArrayList<>();
+    /**
+     * The address each added listener is bound to while the server runs
+     */
+    @NonNull
+    private final Map<WebServerConfig, InetSocketAddress> mListenerAddresses = new ConcurrentHashMap<>();
 
     @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
     public MyWebServer(@NonNull WebServerConfig webServerConfig) throws NumberFormatException {
         super(Integer.parseInt(webServerConfig.getPortNumber()));
         this.mWebServerConfig = webServerConfig;
+        this.mAsyncRunner = new BoundedAsyncRunner(
+                webServerConfig.getWorkerPoolCoreSize(),
+                webServerConfig.getWorkerPoolMaxSize(),
+                webServerConfig.getWorkerQueueCapacity(),
+                webServerConfig.getRetryAfterSeconds()
+        );
+        setAsyncRunner(mAsyncRunner);
+        this.mDispatcher = new RequestDispatcher(webServerConfig);
+        String tempDirectory = webServerConfig.getTempDirectory();
+        this.mTempFileManagerFactory = new MemoryFirstTempFileManagerFactory(
+                tempDirectory != null ? new File(tempDirectory) : null,
+                webServerConfig.getBodyMemoryThresholdBytes(),
+                webServerConfig.getMaxBodyMemoryBytes());
+        setTempFileManagerFactory(mTempFileManagerFactory);
+        this.mConnectionReaper = webServerConfig.getKeepAliveTimeoutMillis() > 0
+                ? new ConnectionReaper(webServerConfig.getKeepAliveTimeoutMillis()) : null;
+        //sockets accepted through a channel expose it, which lets file bodies skip the heap, and
+        //the group lets a reconfigured server move to another port without refusing a client
+        setServerSocketFactory(() -> {
+            ServerSocketGroup listeners = new ServerSocketGroup(
+                    Collections.singletonList(mWebServerConfig.getListenAddress()));
+            mListeners = listeners;
+            return listeners;
+        });
     }
 
     @Override
     public Response serve(IHTTPSession session) {
-        return newFixedLengthResponse("Hello World");
+        return mDispatcher.serve(session);
+    }
+
+    @Override
+    protected boolean useGzipWhenAccepted(Response response) {
+        return mDispatcher.useGzipWhenAccepted(response);
+    }
+
+    @Override
+    protected ClientHandler createClientHandler(Socket finalAccept, InputStream inputStream) {
+        try {
+            //a read timeout also frees the workers held by half-open sockets
+            int readTimeoutMillis = mWebServerConfig.getReadTimeoutMillis();
+            if (readTimeoutMillis > 0)
+                finalAccept.setSoTimeout(readTimeoutMillis);
+            //the head and the body are separate writes, Nagle would hold the body back until the
+            //client acknowledges the head, which a delayed ack postpones by up to 40ms
+            finalAccept.setTcpNoDelay(true);
+        } catch (SocketException e) {
+            LOG.log(Level.FINE, "Could not configure the client socket", e);
+        }
+        SelectorHandover handover = finalAccept.getChannel() != null
+                ? new SelectorHandover(finalAccept.getChannel(), mHandoverSelector) : null;
+        ClientConnection connection = new ClientConnection(finalAccept, null, handover);
+        return new ConnectionHandler(connection.countInput(inputStream), connection, handover);
+    }
+
+    /**
+     * Call this method to get the current state of the worker pool, use it to size the pool
+     * through the {@link WebServerConfig}
+     *
+     * @return a snapshot of the worker pool statistics
+     */
+    @NonNull
+    public WorkerPoolStats getWorkerPoolStats() {
+        return mAsyncRunner.getStats();
+    }
+
+    /**
+     * Call this method to get the counters of the response cache, use them to tune the byte
+     * budget through the {@link WebServerConfig}
+     *
+     * @return a snapshot of the cache statistics, null if the cache is disabled
+     */
+    @Nullable
+    public CacheStats getResponseCacheStats() {
+        return mDispatcher.getResponseCacheStats();
+    }
+
+    /**
+     * Call this method to get the counters of the rate limit every client is held to
+     *
+     * @return a snapshot of the limiter statistics, null if the requests are not limited
+     */
+    @Nullable
+    public RateLimiterStats getRateLimiterStats() {
+        return mDispatcher.getRateLimiterStats();
+    }
+
+    /**
+     * Call this method to get the counters of the access log, use them to size its buffer through
+     * the {@link WebServerConfig}
+     *
+     * @return a snapshot of the access log statistics, null if the requests are not logged
+     */
+    @Nullable
+    public AccessLogStats getAccessLogStats() {
+        return mDispatcher.getAccessLogStats();
+    }
+
+    /**
+     * Call this method to get the counters of the request bodies kept in memory and spilled to
+     * temp files, use them to tune the body memory through the {@link WebServerConfig}
+     *
+     * @return a snapshot of the temp file statistics
+     */
+    @NonNull
+    public TempFileStats getTempFileStats() {
+        return mTempFileManagerFactory.getStats();
+    }
+
+    /**
+     * Call this method to get the counters of the buffers the responses are written through,
+     * shared by every server of the process
+     *
+     * @return a snapshot of the buffer pool statistics
+     */
+    @NonNull
+    public BufferPoolStats getBufferPoolStats() {
+        return BufferPool.shared().getStats();
+    }
+
+    /**
+     * Call this method to get the state of the client connections
+     *
+     * @return a snapshot of the connection statistics, null if the keep-alive timeout is disabled
+     */
+    @Nullable
+    public ConnectionStats getConnectionStats() {
+        ConnectionReaper connectionReaper = mConnectionReaper;
+        return connectionReaper != null ? connectionReaper.getStats() : null;
     }
 
     //region Overridden Methods: IWebServer
     @Override
-    public void startServer() throws WebServerException {
+    public synchronized void startServer() throws WebServerException {
         try {
-            this.start(-1, true);
+            //the read timeout is set on every client socket, so a reconfigured one applies at once
+            this.start(0, true);
         } catch (IOException e) {
             throw new WebServerException(WebServerException.Type.PORT_IN_USE);
         }
+        try {
+            mHandoverSelector.start();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Could not watch the handed over connections, they will be closed", e);
+        }
+        ServerSocketGroup listeners = mListeners;
+        if (listeners != null) {
+            //the address of the server config stays the first one, reported by getListeningPort()
+            try {
+                for (WebServerConfig listenerConfig : mListenerConfigs)
+                    mListenerAddresses.put(listenerConfig, listeners.add(listenerConfig.getListenAddress()));
+            } catch (IOException e) {
+                stopServer(0);
+                throw new WebServerException(WebServerException.Type.PORT_IN_USE);
+            }
+        }
+        ConnectionReaper connectionReaper = mConnectionReaper;
+        if (connectionReaper != null)
+            connectionReaper.start();
+        mDispatcher.onServerStarted();
     }
 
     @Override
     public void stopServer() {
+        DrainStats drainStats = stopServer(mWebServerConfig.getDrainTimeoutMillis());
+        LOG.log(Level.INFO, "Stopped the server: {0}", drainStats);
+    }
+
+    @Override
+    @NonNull
+    public synchronized DrainStats stopServer(long drainTimeoutMillis) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+        mDispatcher.beginDrain();
+        ConnectionReaper connectionReaper = mConnectionReaper;
+        if (connectionReaper != null)
+            connectionReaper.stop();
+        ServerSocketGroup listeners = mListeners;
+        //the listener thread fails to accept and ends
+        if (listeners != null)
+            listeners.close();
+        Set<ClientConnection> idleClosed = new HashSet<>();
+        while (true) {
+            int inFlight = 0;
+            for (ClientHandler clientHandler : mAsyncRunner.getRunning()) {
+                if (!(clientHandler instanceof ConnectionHandler))
+                    continue;
+                ClientConnection connection = ((ConnectionHandler) clientHandler).mConnection;
+                //a connection which never served a request may be reading its first one
+                if (connection.isHandedOver() || !connection.isBusy() && connection.getRequestCount() > 0) {
+                    if (idleClosed.add(connection))
+                        connection.close();
+                } else {
+                    inFlight++;
+                }
+            }
+            if (inFlight == 0 || System.nanoTime() - deadline >= 0)
+                break;
+            try {
+                Thread.sleep(DRAIN_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int aborted = 0;
+        for (ClientHandler clientHandler : mAsyncRunner.getRunning()) {
+            if (clientHandler instanceof ConnectionHandler
+                    && ((ConnectionHandler) clientHandler).mConnection.isBusy())
+                aborted++;
+        }
+        //closes the connections left and waits for the listener thread
         this.stop();
+        mHandoverSelector.stop();
+        mListeners = null;
+        mListenerAddresses.clear();
+        DrainStats drainStats = mDispatcher.endDrain(aborted, idleClosed.size(), start);
+        mDispatcher.onServerStopped();
+        return drainStats;
+    }
+
+    @Override
+    public synchronized void reconfigure(@NonNull WebServerConfig webServerConfig) throws WebServerException {
+        WebServerConfig current = mWebServerConfig;
+        if (!current.canReconfigureTo(webServerConfig))
+            throw new IllegalArgumentException("the server must be rebuilt for the config: " + webServerConfig);
+        InetSocketAddress address = webServerConfig.getListenAddress();
+        ServerSocketGroup listeners = mListeners;
+        //only the bind address is bound, the Ip address of the config is the one shown to the user
+        if (listeners != null && isAlive() && !address.equals(current.getListenAddress())) {
+            try {
+                //the new address queues clients before the old one stops accepting, the
+                //connections the old one accepted are served until they close
+                listeners.replace(listeners.getAddresses().get(0), address);
+            } catch (IOException e) {
+                throw new WebServerException(WebServerException.Type.PORT_IN_USE);
+            }
+        }
+        mWebServerConfig = webServerConfig;
+        mAsyncRunner.resize(webServerConfig.getWorkerPoolCoreSize(), webServerConfig.getWorkerPoolMaxSize());
+        mAsyncRunner.setRetryAfterSeconds(webServerConfig.getRetryAfterSeconds());
+        mDispatcher.reconfigure(webServerConfig);
+        reconfigureConnectionReaper(webServerConfig.getKeepAliveTimeoutMillis());
+        LOG.log(Level.INFO, "Reconfigured the server: {0}", getListeningAddresses());
+    }
+
+    @Override
+    public synchronized void addListener(@NonNull WebServerConfig listenerConfig) throws WebServerException {
+        InetSocketAddress address = listenerConfig.getListenAddress();
+        if (mListenerConfigs.contains(listenerConfig))
+            throw new IllegalArgumentException("listener already added: " + address);
+        ServerSocketGroup listeners = mListeners;
+        if (listeners != null && isAlive()) {
+            try {
+                mListenerAddresses.put(listenerConfig, listeners.add(address));
+            } catch (IOException e) {
+                throw new WebServerException(WebServerException.Type.PORT_IN_USE);
+            }
+        }
+        mListenerConfigs.add(listenerConfig);
+    }
+
+    @Override
+    public synchronized boolean removeListener(@NonNull WebServerConfig listenerConfig) {
+        if (!mListenerConfigs.remove(listenerConfig))
+            return false;
+        InetSocketAddress address = mListenerAddresses.remove(listenerConfig);
+        ServerSocketGroup listeners = mListeners;
+        if (listeners != null && address != null)
+            listeners.remove(address);
+        return true;
+    }
+
+    @Override
+    @NonNull
+    public List<InetSocketAddress> getListeningAddresses() {
+        ServerSocketGroup listeners = mListeners;
+        return listeners != null && isAlive()
+                ? listeners.getAddresses() : Collections.<InetSocketAddress>emptyList();
     }
 
     @Override
@@ -51,5 +393,143 @@ public class MyWebServer extends NanoHTTPD implements IWebServer {
     public WebServerConfig getWebServerConfig() {
         return this.mWebServerConfig;
     }
+
+    @Override
+    public void addRoute(@NonNull Method method, @NonNull String pattern, @NonNull RouteHandler handler) {
+        mDispatcher.addRoute(method, pattern, handler);
+    }
+
+    @Override
+    @Nullable
+    public MetricsSnapshot getMetrics() {
+        return mDispatcher.getMetrics();
+    }
     //endregion
+
+    /**
+     * The connections registered with a replaced reaper stay with it until they close
+     *
+     * @param keepAliveTimeoutMillis the new idle timeout, 0 to disable the reaper
+     */
+    private void reconfigureConnectionReaper(int keepAliveTimeoutMillis) {
+        ConnectionReaper connectionReaper = mConnectionReaper;
+        if (keepAliveTimeoutMillis > 0 && connectionReaper != null) {
+            connectionReaper.setIdleTimeout(keepAliveTimeoutMillis);
+        } else if (keepAliveTimeoutMillis > 0) {
+            connectionReaper = new ConnectionReaper(keepAliveTimeoutMillis);
+            if (isAlive())
+                connectionReaper.start();
+            mConnectionReaper = connectionReaper;
+        } else if (connectionReaper != null) {
+            connectionReaper.stop();
+            mConnectionReaper = null;
+        }
+    }
+
+    /**
+     * A {@link ClientHandler} which attaches its {@link ClientConnection} to the worker thread and
+     * answers 503 Service Unavailable when the worker pool is saturated instead of leaving the
+     * client waiting on a connection that is never served.
+     * <p>
+     * It runs the request loop of NanoHTTPD itself, over streams counting the bytes of every
+     * request, and records each request once its response has been sent. A connection handed over
+     * by a response is given to the {@link HandoverSelector} and the worker returns to the pool,
+     * the connection is released once it closes.
+     * </p>
+     */
+    private class ConnectionHandler extends ClientHandler implements BoundedAsyncRunner.Rejectable {
+        @NonNull
+        private final InputStream mInputStream;
+        @NonNull
+        private final Socket mSocket;
+        @NonNull
+        private final ClientConnection mConnection;
+        /**
+         * Watches the connection once a response has handed it over, null if the socket has no
+         * channel
+         */
+        @Nullable
+        private final SelectorHandover mHandover;
+
+        ConnectionHandler(@NonNull InputStream inputStream,
+                          @NonNull ClientConnection connection,
+                          @Nullable SelectorHandover handover) {
+            super(inputStream, connection.getSocket());
+            this.mInputStream = inputStream;
+            this.mSocket = connection.getSocket();
+            this.mConnection = connection;
+            this.mHandover = handover;
+        }
+
+        @Override
+        public void run() {
+            mConnection.attach();
+            ConnectionReaper connectionReaper = mConnectionReaper;
+            if (connectionReaper != null)
+                connectionReaper.register(mConnection);
+            mDispatcher.onConnectionOpened();
+            OutputStream outputStream = null;
+            try {
+                outputStream = mConnection.countOutput(mSocket.getOutputStream());
+                HTTPSession session = new MemoryFirstSession(mTempFileManagerFactory.create(),
+                        mInputStream, outputStream, mSocket.getInetAddress());
+                while (!mSocket.isClosed() && !mConnection.isHandedOver()) {
+                    session.execute();
+                    mDispatcher.onResponseSent(mConnection);
+                }
+            } catch (SocketException | SocketTimeoutException ignored) {
+                //the client, the reaper or the server closed the connection
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Communication with the client broken", e);
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "A handler failed to serve the client", e);
+            } finally {
+                //a response is also sent before a connection is closed on purpose
+                if (mConnection.isBusy())
+                    mDispatcher.onResponseSent(mConnection);
+                final OutputStream openedStream = outputStream;
+                if (mHandover != null && mConnection.isHandedOver())
+                    mHandover.watch(() -> release(openedStream, connectionReaper));
+                else
+                    release(openedStream, connectionReaper);
+                mConnection.detach();
+            }
+        }
+
+        /**
+         * Closes the connection and forgets it, on the worker or once a handed over connection
+         * closes
+         */
+        private void release(@Nullable OutputStream outputStream, @Nullable ConnectionReaper connectionReaper) {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException ignored) {
+                    //the socket is closed below either way
+                }
+            }
+            close();
+            mAsyncRunner.closed(this);
+            mDispatcher.onConnectionClosed();
+            if (connectionReaper != null)
+                connectionReaper.unregister(mConnection);
+        }
+
+        @Override
+        public void reject(int retryAfterSeconds) {
+            String response = "HTTP/1.1 503 Service Unavailable\r\n"
+                    + "Retry-After: " + retryAfterSeconds + "\r\n"
+                    + "Content-Length: 0\r\n"
+                    + "Connection: close\r\n\r\n";
+            try {
+                OutputStream outputStream = mSocket.getOutputStream();
+                outputStream.write(response.getBytes(Charset.forName("US-ASCII")));
+                outputStream.flush();
+            } catch (IOException ignored) {
+                //the client has already gone away, nothing more to tell it
+            } finally {
+                close();
+            }
+        }
+    }
 }
@@ -0,0 +1,413 @@
+package com.bharathksunil.androidwebserver;
+
+import com.bharathksunil.androidwebserver.accesslog.AccessLog;
+import com.bharathksunil.androidwebserver.accesslog.AccessLogStats;
+import com.bharathksunil.androidwebserver.cache.CacheStats;
+import com.bharathksunil.androidwebserver.cache.ResponseCache;
+import com.bharathksunil.androidwebserver.compression.CompressedFileStore;
+import com.bharathksunil.androidwebserver.compression.CompressionPolicy;
+import com.bharathksunil.androidwebserver.compression.ContentEncoding;
+import com.bharathksunil.androidwebserver.connection.ClientConnection;
+import com.bharathksunil.androidwebserver.handler.StaticFileHandler;
+import com.bharathksunil.androidwebserver.metrics.MetricsSnapshot;
+import com.bharathksunil.androidwebserver.metrics.PrometheusFormatter;
+import com.bharathksunil.androidwebserver.metrics.ServerMetrics;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.ratelimit.RateLimiter;
+import com.bharathksunil.androidwebserver.ratelimit.RateLimiterStats;
+import com.bharathksunil.androidwebserver.response.DirectResponse;
+import com.bharathksunil.androidwebserver.router.RouteHandler;
+import com.bharathksunil.androidwebserver.router.Router;
+import com.bharathksunil.androidwebserver.upload.UploadHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This turns the requests into responses independently of the engine which accepts the
+ * connections: it routes them to the handlers and the static files, applies the compression
+ * policy, the rate limits and the keep-alive limit, and records the metrics and the access log.
+ * Every {@link IWebServer} engine serves its requests through one instance.
+ */
+public final class RequestDispatcher {
+    @NonNull
+    private volatile WebServerConfig mWebServerConfig;
+    /**
+     * Dispatches the requests to the registered endpoints
+     */
+    @NonNull
+    private final Router mRouter = new Router();
+    /**
+     * Holds the bodies of the hot static files, null if the cache is disabled
+     */
+    @Nullable
+    private final ResponseCache mResponseCache;
+    /**
+     * Decides which responses are compressed, null if compression is disabled
+     */
+    @Nullable
+    private final CompressionPolicy mCompressionPolicy;
+    /**
+     * Serves the files of the configured document root, null if none is configured
+     */
+    @Nullable
+    private final StaticFileHandler mStaticFileHandler;
+    /**
+     * Records the requests per route, null if the metrics are disabled
+     */
+    @Nullable
+    private final ServerMetrics mMetrics;
+    /**
+     * Logs the served requests, null if they are not logged
+     */
+    @Nullable
+    private final AccessLog mAccessLog;
+    /**
+     * Limits the requests of every client, null if they are not limited
+     */
+    @Nullable
+    private volatile RateLimiter mRateLimiter;
+    /**
+     * Limits the requests of every client to a route, by route pattern. Replaced as a whole when
+     * the limits change.
+     */
+    @NonNull
+    private volatile Map<String, RateLimiter> mRouteRateLimiters;
+    /**
+     * True while the server drains, the connections are then closed after their response
+     */
+    private volatile boolean mDraining;
+    /**
+     * The responses sent since the drain started
+     */
+    @NonNull
+    private final AtomicInteger mDrainCompletedCount = new AtomicInteger();
+
+    /**
+     * @param webServerConfig the config of the server, which sizes the cache and sets the policies
+     */
+    public RequestDispatcher(@NonNull WebServerConfig webServerConfig) {
+        this.mWebServerConfig = webServerConfig;
+        this.mResponseCache = webServerConfig.getResponseCacheBytes() > 0
+                ? new ResponseCache(webServerConfig.getResponseCacheBytes(),
+                webServerConfig.getResponseCacheMaxEntryBytes())
+                : null;
+        this.mCompressionPolicy = webServerConfig.isCompressionEnabled()
+                ? new CompressionPolicy(webServerConfig.getCompressibleMimeTypes(),
+                webServerConfig.getCompressionMinBytes())
+                : null;
+        String compressionCacheDir = webServerConfig.getCompressionCacheDir();
+        String documentRoot = webServerConfig.getDocumentRoot();
+        this.mStaticFileHandler = documentRoot != null
+                ? new StaticFileHandler(
+                new File(documentRoot),
+                mResponseCache,
+                mCompressionPolicy,
+                mCompressionPolicy != null && compressionCacheDir != null
+                        ? new CompressedFileStore(new File(compressionCacheDir)) : null)
+                : null;
+        this.mMetrics = webServerConfig.isMetricsEnabled() ? new ServerMetrics() : null;
+        String accessLogFile = webServerConfig.getAccessLogFile();
+        this.mAccessLog = accessLogFile != null
+                ? new AccessLog(new File(accessLogFile), webServerConfig.getAccessLogBufferRecords(),
+                webServerConfig.getAccessLogMaxFileBytes(), webServerConfig.getAccessLogMaxFileAgeMillis())
+                : null;
+        this.mRateLimiter = createRateLimiter(webServerConfig.getRateLimit());
+        this.mRouteRateLimiters = createRouteRateLimiters(webServerConfig.getRouteRateLimits());
+        String metricsPath = webServerConfig.getMetricsPath();
+        if (mMetrics != null && metricsPath != null)
+            addRoute(NanoHTTPD.Method.GET, metricsPath, (session, match) -> NanoHTTPD.newFixedLengthResponse(
+                    NanoHTTPD.Response.Status.OK, PrometheusFormatter.CONTENT_TYPE,
+                    PrometheusFormatter.format(mMetrics.snapshot())));
+        String uploadPath = webServerConfig.getUploadPath();
+        String uploadDirectory = webServerConfig.getUploadDirectory();
+        if (uploadPath != null && uploadDirectory != null)
+            addRoute(NanoHTTPD.Method.POST, uploadPath, new UploadHandler(new File(uploadDirectory),
+                    webServerConfig.getMaxUploadFileBytes(), webServerConfig.getMaxUploadBytes()));
+    }
+
+    /**
+     * Call this method to apply the new limits of a reconfigured server, the routes, the cache and
+     * the metrics are kept. The rate limits which changed start over with full buckets.
+     *
+     * @param webServerConfig the new config, see {@link WebServerConfig#canReconfigureTo(WebServerConfig)}
+     */
+    public void reconfigure(@NonNull WebServerConfig webServerConfig) {
+        WebServerConfig previous = mWebServerConfig;
+        WebServerConfig.RateLimit rateLimit = webServerConfig.getRateLimit();
+        if (rateLimit == null ? previous.getRateLimit() != null : !rateLimit.equals(previous.getRateLimit()))
+            mRateLimiter = createRateLimiter(rateLimit);
+        if (!webServerConfig.getRouteRateLimits().equals(previous.getRouteRateLimits()))
+            mRouteRateLimiters = createRouteRateLimiters(webServerConfig.getRouteRateLimits());
+        mWebServerConfig = webServerConfig;
+    }
+
+    @Nullable
+    private static RateLimiter createRateLimiter(@Nullable WebServerConfig.RateLimit rateLimit) {
+        return rateLimit != null ? new RateLimiter(rateLimit.getRequestsPerSecond(), rateLimit.getBurst()) : null;
+    }
+
+    @NonNull
+    private static Map<String, RateLimiter> createRouteRateLimiters(@NonNull Map<String, WebServerConfig.RateLimit> rateLimits) {
+        Map<String, RateLimiter> rateLimiters = new HashMap<>();
+        for (Map.Entry<String, WebServerConfig.RateLimit> entry : rateLimits.entrySet())
+            rateLimiters.put(entry.getKey(), createRateLimiter(entry.getValue()));
+        return rateLimiters;
+    }
+
+    /**
+     * Call this method on the worker thread serving the connection to answer a request
+     *
+     * @param session the request
+     * @return the response to send
+     */
+    @NonNull
+    public NanoHTTPD.Response serve(@NonNull NanoHTTPD.IHTTPSession session) {
+        ClientConnection connection = ClientConnection.current();
+        int requestCount = connection != null ? connection.onRequestStarted() : 0;
+        if (connection != null && mAccessLog != null && session.getMethod() != null)
+            connection.setRequestLine(session.getMethod().name(), session.getUri());
+        NanoHTTPD.Response response = throttle(mRateLimiter, session);
+        if (response == null)
+            response = dispatch(session, connection);
+        if (connection != null)
+            connection.setStatus(response.getStatus().getRequestStatus());
+        int maxRequests = mWebServerConfig.getMaxRequestsPerConnection();
+        if (mDraining || maxRequests > 0 && requestCount >= maxRequests)
+            response.closeConnection(true);
+        return response;
+    }
+
+    @NonNull
+    private NanoHTTPD.Response dispatch(@NonNull NanoHTTPD.IHTTPSession session,
+                                        @Nullable ClientConnection connection) {
+        NanoHTTPD.Response response = mRouter.route(session);
+        if (response != null)
+            return compressStream(session, response);
+        if (mStaticFileHandler != null) {
+            if (connection != null)
+                connection.setRoute(ServerMetrics.STATIC_ROUTE);
+            return mStaticFileHandler.serve(session);
+        }
+        return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.NOT_FOUND,
+                NanoHTTPD.MIME_PLAINTEXT, NanoHTTPD.Response.Status.NOT_FOUND.getDescription());
+    }
+
+    /**
+     * Takes a token from the bucket of the client, before anything is done for the request
+     *
+     * @param rateLimiter the limiter to ask, null if the requests are not limited
+     * @param session     the request
+     * @return a 429 response if the client is over the limit, null if the request may proceed
+     */
+    @Nullable
+    private static NanoHTTPD.Response throttle(@Nullable RateLimiter rateLimiter,
+                                               @NonNull NanoHTTPD.IHTTPSession session) {
+        if (rateLimiter == null)
+            return null;
+        String remoteIp = session.getRemoteIpAddress();
+        long waitNanos = rateLimiter.acquire(remoteIp != null ? remoteIp : "");
+        if (waitNanos == 0)
+            return null;
+        NanoHTTPD.Response response = NanoHTTPD.newFixedLengthResponse(
+                NanoHTTPD.Response.Status.TOO_MANY_REQUESTS, NanoHTTPD.MIME_PLAINTEXT,
+                NanoHTTPD.Response.Status.TOO_MANY_REQUESTS.getDescription());
+        response.addHeader("Retry-After", String.valueOf(RateLimiter.toRetryAfterSeconds(waitNanos)));
+        return response;
+    }
+
+    /**
+     * NanoHTTPD gzips the plain responses of the handlers while streaming them. This applies the
+     * MIME allowlist and the size threshold to that decision.
+     *
+     * @param response the response about to be sent to a client accepting gzip
+     * @return true if NanoHTTPD should gzip the body
+     */
+    public boolean useGzipWhenAccepted(@NonNull NanoHTTPD.Response response) {
+        if (mCompressionPolicy == null || response instanceof DirectResponse)
+            return false;
+        //the size of a fixed length body is known only when it is held in memory
+        InputStream data = response.getData();
+        long length = data instanceof ByteArrayInputStream ? ((ByteArrayInputStream) data).available() : -1;
+        return mCompressionPolicy.isCompressible(response.getMimeType(), length);
+    }
+
+    /**
+     * Negotiates the coding of a handler response which streams a body of unknown length, which
+     * is then compressed while it is written instead of being collected first
+     *
+     * @param session  the request
+     * @param response the response of the handler
+     * @return the same response
+     */
+    @NonNull
+    private NanoHTTPD.Response compressStream(@NonNull NanoHTTPD.IHTTPSession session,
+                                              @NonNull NanoHTTPD.Response response) {
+        if (mCompressionPolicy == null || !(response instanceof DirectResponse))
+            return response;
+        DirectResponse directResponse = (DirectResponse) response;
+        if (directResponse.getContentLength() >= 0
+                || directResponse.getContentLength() == DirectResponse.UNTIL_CLOSE
+                || directResponse.getContentEncoding() != null
+                || response.getHeader("content-encoding") != null
+                || !mCompressionPolicy.isCompressibleType(response.getMimeType()))
+            return response;
+        directResponse.addHeader("Vary", "Accept-Encoding");
+        directResponse.setContentEncoding(ContentEncoding.negotiate(session.getHeaders().get("accept-encoding")));
+        return response;
+    }
+
+    /**
+     * Registers the handler, tagging the requests it serves with its pattern for the metrics and
+     * applying the rate limit configured for the pattern
+     *
+     * @see IWebServer#addRoute(NanoHTTPD.Method, String, RouteHandler)
+     */
+    public void addRoute(@NonNull NanoHTTPD.Method method, @NonNull String pattern, @NonNull RouteHandler handler) {
+        mRouter.addRoute(method, pattern, (session, match) -> {
+            ClientConnection connection = ClientConnection.current();
+            if (connection != null && mMetrics != null)
+                connection.setRoute(pattern);
+            NanoHTTPD.Response throttled = throttle(mRouteRateLimiters.get(pattern), session);
+            return throttled != null ? throttled : handler.handle(session, match);
+        });
+    }
+
+    /**
+     * Call this method on the worker thread once the response to a request has been sent, or the
+     * connection was closed while serving it
+     *
+     * @param connection the connection which served the request
+     */
+    public void onResponseSent(@NonNull ClientConnection connection) {
+        if (mDraining && connection.isBusy())
+            mDrainCompletedCount.incrementAndGet();
+        if (mMetrics != null && connection.isBusy()) {
+            String route = connection.getRoute();
+            mMetrics.record(route != null ? route : ServerMetrics.UNMATCHED_ROUTE,
+                    connection.getStatus(),
+                    connection.getRequestBytesIn(),
+                    connection.getRequestBytesOut(),
+                    connection.getRequestNanos(System.nanoTime()));
+        }
+        if (mAccessLog != null && connection.isBusy())
+            mAccessLog.append(System.currentTimeMillis(),
+                    connection.getSocket().getInetAddress(),
+                    connection.getMethod(),
+                    connection.getUri(),
+                    connection.getStatus(),
+                    connection.getRequestBytesIn(),
+                    connection.getRequestBytesOut(),
+                    connection.getRequestNanos(System.nanoTime()));
+        connection.onResponseSent();
+    }
+
+    /**
+     * Call this method once the server stops accepting connections, the requests served from now
+     * on close their connection and are counted as completed
+     */
+    public void beginDrain() {
+        mDrainCompletedCount.set(0);
+        mDraining = true;
+    }
+
+    /**
+     * Call this method once every connection of the draining server is closed
+     *
+     * @param abortedCount    the requests cut at the deadline
+     * @param idleClosedCount the connections closed while waiting for a request
+     * @param startNanos      the {@link System#nanoTime()} at which the drain started
+     * @return the outcome of the drain
+     */
+    @NonNull
+    public DrainStats endDrain(int abortedCount, int idleClosedCount, long startNanos) {
+        mDraining = false;
+        return new DrainStats(mDrainCompletedCount.getAndSet(0), abortedCount, idleClosedCount,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Call this method when the server starts, before it accepts connections
+     */
+    public void onServerStarted() {
+        if (mAccessLog != null)
+            mAccessLog.start();
+    }
+
+    /**
+     * Call this method once the server has stopped, it writes the requests left to the access
+     * log and closes it
+     */
+    public void onServerStopped() {
+        if (mAccessLog != null)
+            mAccessLog.stop();
+    }
+
+    /**
+     * Call this method when a client connection has been accepted
+     */
+    public void onConnectionOpened() {
+        if (mMetrics != null)
+            mMetrics.onConnectionOpened();
+    }
+
+    /**
+     * Call this method when a client connection has been closed
+     */
+    public void onConnectionClosed() {
+        if (mMetrics != null)
+            mMetrics.onConnectionClosed();
+    }
+
+    /**
+     * @return a snapshot of the cache statistics, null if the cache is disabled
+     */
+    @Nullable
+    public CacheStats getResponseCacheStats() {
+        return mResponseCache != null ? mResponseCache.getStats() : null;
+    }
+
+    /**
+     * @return a snapshot of the counters of the rate limit of every client, null if the requests
+     * are not limited
+     */
+    @Nullable
+    public RateLimiterStats getRateLimiterStats() {
+        return mRateLimiter != null ? mRateLimiter.getStats() : null;
+    }
+
+    /**
+     * @param pattern the pattern of the route
+     * @return a snapshot of the counters of the rate limit of the route, null if it is not limited
+     */
+    @Nullable
+    public RateLimiterStats getRouteRateLimiterStats(@NonNull String pattern) {
+        RateLimiter rateLimiter = mRouteRateLimiters.get(pattern);
+        return rateLimiter != null ? rateLimiter.getStats() : null;
+    }
+
+    /**
+     * @return a snapshot of the counters of the access log, null if the requests are not logged
+     */
+    @Nullable
+    public AccessLogStats getAccessLogStats() {
+        return mAccessLog != null ? mAccessLog.getStats() : null;
+    }
+
+    /**
+     * @return a snapshot of the request metrics, null if the metrics are disabled
+     */
+    @Nullable
+    public MetricsSnapshot getMetrics() {
+        return mMetrics != null ? mMetrics.snapshot() : null;
+    }
+}
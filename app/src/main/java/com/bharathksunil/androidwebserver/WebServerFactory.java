@@ -0,0 +1,31 @@
+package com.bharathksunil.androidwebserver;
+
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.nio.NioWebServer;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * Use this to create the {@link IWebServer} running on the engine chosen through
+ * {@link WebServerConfig.Builder#setEngine(WebServerConfig.Engine)}
+ */
+public final class WebServerFactory {
+    private WebServerFactory() {
+    }
+
+    /**
+     * @param webServerConfig the config of the server
+     * @return a stopped server on the configured engine
+     * @throws NumberFormatException if the port is not a number
+     */
+    @NonNull
+    public static IWebServer create(@NonNull WebServerConfig webServerConfig) throws NumberFormatException {
+        switch (webServerConfig.getEngine()) {
+            case NIO:
+                return new NioWebServer(webServerConfig);
+            case BLOCKING:
+            default:
+                return new MyWebServer(webServerConfig);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.bharathksunil.androidwebserver.accesslog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This logs the served requests to a file, one line each:
+ * <pre>2026-10-17T10:15:30.042+0200 192.168.1.20 GET /users/42 200 312 1045 830</pre>
+ * which are the time the response was sent, the client address, the method, the path, the
+ * status, the bytes received and sent, and the microseconds the request took.
+ * <p>
+ * The worker threads only store the fields of a request in the next slot of a ring preallocated
+ * with the log, without formatting or locking anything. A single writer thread formats the
+ * stored requests and appends them to the file in batches, one write per batch, and rotates the
+ * file once it reaches its size or its age. The worker threads never wait for the disk: a request
+ * served while the ring is full is counted as dropped instead of logged.
+ * </p>
+ * <p>
+ * <h3>How to Use:</h3><br/>
+ * {@link #start()} the writer, {@link #append} the requests from any thread, then {@link #stop()}
+ * the writer, which logs the requests left in the ring and closes the file.
+ * </p>
+ */
+public final class AccessLog {
+    private static final Logger LOG = Logger.getLogger(AccessLog.class.getName());
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    /**
+     * The number of rotated files kept next to the log, the older ones are deleted
+     */
+    public static final int KEPT_FILES = 5;
+    /**
+     * The time the writer waits for requests before it looks at the ring again, unless the ring
+     * fills up first
+     */
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    /**
+     * The largest number of requests written at once
+     */
+    private static final int MAX_BATCH_RECORDS = 1024;
+
+    @NonNull
+    private final File mFile;
+    private final long mMaxFileBytes;
+    private final long mMaxFileAgeMillis;
+    //region The ring, a slot per request: each field of a request is stored in its own array
+    private final int mMask;
+    private final long[] mTimes;
+    private final InetAddress[] mRemoteAddresses;
+    private final String[] mMethods;
+    private final String[] mUris;
+    private final int[] mStatuses;
+    private final long[] mBytesIn;
+    private final long[] mBytesOut;
+    private final long[] mMicros;
+    /**
+     * The sequence stored in each slot plus one, set once its fields are written, so the writer
+     * never reads a slot being filled
+     */
+    @NonNull
+    private final AtomicLongArray mPublished;
+    /**
+     * The sequence of the next slot to claim, shared by the worker threads
+     */
+    @NonNull
+    private final AtomicLong mHead = new AtomicLong();
+    /**
+     * The sequence of the next slot to write, only moved by the writer. The slots before it are
+     * free again.
+     */
+    private volatile long mTail;
+    //endregion
+    /**
+     * Formats and writes the requests, null while the log is stopped
+     */
+    @Nullable
+    private volatile Thread mWriter;
+    private volatile boolean mRunning;
+    //region Only touched by the writer
+    @Nullable
+    private FileOutputStream mOutput;
+    private long mFileBytes;
+    private long mFileOpenedMillis;
+    @NonNull
+    private byte[] mBatch = new byte[16 * 1024];
+    private int mBatchSize;
+    @NonNull
+    private final StringBuilder mLine = new StringBuilder(256);
+    @NonNull
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US);
+    //endregion
+    @NonNull
+    private final AtomicLong mWrittenCount = new AtomicLong();
+    @NonNull
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    @NonNull
+    private final AtomicLong mBatchCount = new AtomicLong();
+    @NonNull
+    private final AtomicLong mRotationCount = new AtomicLong();
+
+    /**
+     * @param file             the file the requests are logged to, its directory is created if
+     *                         needed
+     * @param bufferRecords    the requests held while they wait for the disk, rounded up to a
+     *                         power of two
+     * @param maxFileBytes     the size the file is rotated at
+     * @param maxFileAgeMillis the age the file is rotated at, 0 to only rotate it by size
+     */
+    public AccessLog(@NonNull File file, int bufferRecords, long maxFileBytes, long maxFileAgeMillis) {
+        if (bufferRecords < 1 || bufferRecords > 1 << 30 || maxFileBytes <= 0 || maxFileAgeMillis < 0)
+            throw new IllegalArgumentException("invalid access log limits");
+        int capacity = Integer.highestOneBit(bufferRecords);
+        if (capacity < bufferRecords)
+            capacity <<= 1;
+        this.mFile = file;
+        this.mMaxFileBytes = maxFileBytes;
+        this.mMaxFileAgeMillis = maxFileAgeMillis;
+        this.mMask = capacity - 1;
+        this.mTimes = new long[capacity];
+        this.mRemoteAddresses = new InetAddress[capacity];
+        this.mMethods = new String[capacity];
+        this.mUris = new String[capacity];
+        this.mStatuses = new int[capacity];
+        this.mBytesIn = new long[capacity];
+        this.mBytesOut = new long[capacity];
+        this.mMicros = new long[capacity];
+        this.mPublished = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Call this method to start the writer, the requests appended before wait in the ring
+     */
+    public synchronized void start() {
+        if (mWriter != null)
+            return;
+        mRunning = true;
+        Thread writer = new Thread(this::writeLoop, "Access Log Writer");
+        writer.setDaemon(true);
+        mWriter = writer;
+        writer.start();
+    }
+
+    /**
+     * Call this method to stop the writer once the requests have been served, it writes the
+     * requests left in the ring and closes the file before returning
+     */
+    public synchronized void stop() {
+        Thread writer = mWriter;
+        if (writer == null)
+            return;
+        mRunning = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mWriter = null;
+    }
+
+    /**
+     * Call this method from any thread once a response has been sent, it never blocks
+     *
+     * @param timeMillis    the time the response was sent
+     * @param remoteAddress the address of the client, null if unknown
+     * @param method        the method of the request, null if unknown
+     * @param uri           the decoded path of the request, null if unknown
+     * @param status        the status of the response
+     * @param bytesIn       the bytes read for the request
+     * @param bytesOut      the bytes sent for the response
+     * @param nanos         the time the request took
+     * @return false if the ring was full and the request was dropped
+     */
+    public boolean append(long timeMillis,
+                          @Nullable InetAddress remoteAddress,
+                          @Nullable String method,
+                          @Nullable String uri,
+                          int status,
+                          long bytesIn,
+                          long bytesOut,
+                          long nanos) {
+        long sequence;
+        do {
+            sequence = mHead.get();
+            if (sequence - mTail > mMask) {
+                mDroppedCount.incrementAndGet();
+                return false;
+            }
+        } while (!mHead.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mMask;
+        mTimes[slot] = timeMillis;
+        mRemoteAddresses[slot] = remoteAddress;
+        mMethods[slot] = method;
+        mUris[slot] = uri;
+        mStatuses[slot] = status;
+        mBytesIn[slot] = bytesIn;
+        mBytesOut[slot] = bytesOut;
+        mMicros[slot] = TimeUnit.NANOSECONDS.toMicros(nanos);
+        mPublished.lazySet(slot, sequence + 1);
+        //the writer sleeps between batches unless the ring fills up
+        if (sequence - mTail == (mMask + 1) / 2) {
+            Thread writer = mWriter;
+            if (writer != null)
+                LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * @return a snapshot of the counters of the log
+     */
+    @NonNull
+    public AccessLogStats getStats() {
+        return new AccessLogStats(mWrittenCount.get(), mDroppedCount.get(),
+                Math.max(0, mHead.get() - mTail), mBatchCount.get(), mRotationCount.get());
+    }
+
+    private void writeLoop() {
+        while (true) {
+            boolean running = mRunning;
+            int count;
+            try {
+                if (mMaxFileAgeMillis > 0 && mFileBytes > 0
+                        && System.currentTimeMillis() - mFileOpenedMillis >= mMaxFileAgeMillis)
+                    rotate();
+                count = writeBatch();
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "The access log writer failed", e);
+                count = 0;
+            }
+            //once stopped, the writer only ends when the ring is empty
+            if (count == 0) {
+                if (!running)
+                    break;
+                LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOS);
+            }
+        }
+        closeOutput();
+    }
+
+    /**
+     * Formats the published requests and writes them to the file
+     *
+     * @return the number of requests taken from the ring
+     */
+    private int writeBatch() {
+        long tail = mTail;
+        int count = 0;
+        int lost = 0;
+        while (count < MAX_BATCH_RECORDS) {
+            int slot = (int) tail & mMask;
+            if (mPublished.get(slot) != tail + 1)
+                break;
+            formatLine(slot);
+            mRemoteAddresses[slot] = null;
+            mMethods[slot] = null;
+            mUris[slot] = null;
+            //the slot may be claimed again from now on
+            mTail = ++tail;
+            count++;
+            byte[] line = mLine.toString().getBytes(UTF_8);
+            if (mFileBytes + mBatchSize + line.length > mMaxFileBytes && mFileBytes + mBatchSize > 0) {
+                lost += flush();
+                rotate();
+            }
+            if (mBatchSize + line.length > mBatch.length)
+                mBatch = Arrays.copyOf(mBatch, Math.max(mBatch.length * 2, mBatchSize + line.length));
+            System.arraycopy(line, 0, mBatch, mBatchSize, line.length);
+            mBatchSize += line.length;
+        }
+        if (count > 0) {
+            lost += flush();
+            mBatchCount.incrementAndGet();
+            mWrittenCount.addAndGet(count - lost);
+        }
+        return count;
+    }
+
+    private void formatLine(int slot) {
+        StringBuilder line = mLine;
+        line.setLength(0);
+        line.append(mDateFormat.format(new Date(mTimes[slot]))).append(' ');
+        InetAddress remoteAddress = mRemoteAddresses[slot];
+        line.append(remoteAddress != null ? remoteAddress.getHostAddress() : "-").append(' ');
+        String method = mMethods[slot];
+        line.append(method != null ? method : "-").append(' ');
+        appendUri(line, mUris[slot]);
+        line.append(' ').append(mStatuses[slot])
+                .append(' ').append(mBytesIn[slot])
+                .append(' ').append(mBytesOut[slot])
+                .append(' ').append(mMicros[slot])
+                .append('\n');
+    }
+
+    /**
+     * Appends the decoded path with its spaces and control characters escaped again, so a request
+     * can never break the layout of the line
+     */
+    private static void appendUri(@NonNull StringBuilder line, @Nullable String uri) {
+        if (uri == null || uri.isEmpty()) {
+            line.append('-');
+            return;
+        }
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c <= ' ' || c == 0x7f)
+                line.append('%').append(HEX[c >> 4 & 0xf]).append(HEX[c & 0xf]);
+            else
+                line.append(c);
+        }
+    }
+
+    /**
+     * Writes the batch to the file, opening it if needed
+     *
+     * @return the number of requests lost because the file could not be written
+     */
+    private int flush() {
+        if (mBatchSize == 0)
+            return 0;
+        try {
+            if (mOutput == null)
+                openOutput();
+            mOutput.write(mBatch, 0, mBatchSize);
+            mFileBytes += mBatchSize;
+            return 0;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not write the access log: " + mFile, e);
+            closeOutput();
+            int lost = countLines(mBatch, mBatchSize);
+            mDroppedCount.addAndGet(lost);
+            return lost;
+        } finally {
+            mBatchSize = 0;
+        }
+    }
+
+    private void openOutput() throws IOException {
+        File directory = mFile.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("could not create " + directory);
+        mOutput = new FileOutputStream(mFile, true);
+        mFileBytes = mFile.length();
+        mFileOpenedMillis = System.currentTimeMillis();
+    }
+
+    private void closeOutput() {
+        FileOutputStream output = mOutput;
+        mOutput = null;
+        if (output == null)
+            return;
+        try {
+            output.close();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not close the access log: " + mFile, e);
+        }
+    }
+
+    /**
+     * Moves the file to the first rotated name, shifting the rotated files up and deleting the
+     * oldest one. The next batch opens a new file.
+     */
+    private void rotate() {
+        closeOutput();
+        String path = mFile.getPath();
+        File oldest = new File(path + "." + KEPT_FILES);
+        if (oldest.exists() && !oldest.delete())
+            LOG.log(Level.WARNING, "Could not delete the access log: {0}", oldest);
+        for (int i = KEPT_FILES - 1; i >= 1; i--) {
+            File rotated = new File(path + "." + i);
+            if (rotated.exists() && !rotated.renameTo(new File(path + "." + (i + 1))))
+                LOG.log(Level.WARNING, "Could not rotate the access log: {0}", rotated);
+        }
+        if (mFile.exists() && !mFile.renameTo(new File(path + ".1")))
+            LOG.log(Level.WARNING, "Could not rotate the access log: {0}", mFile);
+        mFileBytes = 0;
+        mRotationCount.incrementAndGet();
+    }
+
+    private static int countLines(@NonNull byte[] bytes, int size) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (bytes[i] == '\n')
+                count++;
+        }
+        return count;
+    }
+}
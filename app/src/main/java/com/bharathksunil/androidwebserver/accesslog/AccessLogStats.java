@@ -0,0 +1,66 @@
+package com.bharathksunil.androidwebserver.accesslog;
+
+/**
+ * This models a snapshot of the {@link AccessLog} counters, use them to size its buffer: requests
+ * dropped while the disk is slow call for a larger one
+ */
+public final class AccessLogStats {
+    private final long writtenCount;
+    private final long droppedCount;
+    private final long pendingCount;
+    private final long batchCount;
+    private final long rotationCount;
+
+    AccessLogStats(long writtenCount, long droppedCount, long pendingCount, long batchCount, long rotationCount) {
+        this.writtenCount = writtenCount;
+        this.droppedCount = droppedCount;
+        this.pendingCount = pendingCount;
+        this.batchCount = batchCount;
+        this.rotationCount = rotationCount;
+    }
+
+    /**
+     * @return the number of requests written to the file
+     */
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
+    /**
+     * @return the number of requests not logged, because the buffer was full or the file could
+     * not be written
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return the number of requests waiting in the buffer
+     */
+    public long getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * @return the number of batches the requests were written in
+     */
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return the number of times the file was rotated
+     */
+    public long getRotationCount() {
+        return rotationCount;
+    }
+
+    @Override
+    public String toString() {
+        return "AccessLogStats{writtenCount=" + writtenCount
+                + ", droppedCount=" + droppedCount
+                + ", pendingCount=" + pendingCount
+                + ", batchCount=" + batchCount
+                + ", rotationCount=" + rotationCount + "}";
+    }
+}
@@ -0,0 +1,47 @@
+package com.bharathksunil.androidwebserver.body;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+
+/**
+ * This is the base of the engines which run the sessions of NanoHTTPD. NanoHTTPD only lets its
+ * subclasses extend its session, so the session parsing the small bodies in memory lives here and
+ * is shared by every engine instead of being declared by each.
+ */
+public abstract class MemoryFirstNanoHTTPD extends NanoHTTPD {
+
+    /**
+     * @param port the port to listen on, 0 for an ephemeral port
+     */
+    protected MemoryFirstNanoHTTPD(int port) {
+        super(port);
+    }
+
+    /**
+     * A session which parses the small bodies in memory, see {@link MemoryFirstTempFileManager}
+     */
+    protected final class MemoryFirstSession extends HTTPSession {
+        @NonNull
+        private final MemoryFirstTempFileManager mTempFileManager;
+
+        public MemoryFirstSession(@NonNull MemoryFirstTempFileManager tempFileManager,
+                                  @NonNull InputStream inputStream,
+                                  @NonNull OutputStream outputStream,
+                                  @NonNull InetAddress remoteAddress) {
+            super(tempFileManager, inputStream, outputStream, remoteAddress);
+            this.mTempFileManager = tempFileManager;
+        }
+
+        @Override
+        public void parseBody(Map<String, String> files) throws IOException, ResponseException {
+            if (!mTempFileManager.parseBody(this, files))
+                super.parseBody(files);
+        }
+    }
+}
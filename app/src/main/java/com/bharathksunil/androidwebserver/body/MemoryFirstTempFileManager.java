@@ -0,0 +1,175 @@
+package com.bharathksunil.androidwebserver.body;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This holds the request bodies of one connection. NanoHTTPD opens its temp files by name, so it
+ * only gets real files from here, in the configured directory. The engines call
+ * {@link #parseBody(NanoHTTPD.IHTTPSession, Map)} first, which parses the small bodies from a
+ * pooled buffer instead, and fall back to NanoHTTPD, which spills the body to a temp file, when
+ * it returns false. A body the engine has buffered already is decoded in place.
+ * <p>
+ * Used by the worker thread serving the connection only.
+ * </p>
+ */
+public final class MemoryFirstTempFileManager implements NanoHTTPD.TempFileManager {
+    private static final Logger LOG = Logger.getLogger(MemoryFirstTempFileManager.class.getName());
+    private static final String FORM_URLENCODED = "application/x-www-form-urlencoded";
+
+    @NonNull
+    private final MemoryFirstTempFileManagerFactory mFactory;
+    @NonNull
+    private final List<NanoHTTPD.TempFile> mTempFiles = new ArrayList<>();
+
+    MemoryFirstTempFileManager(@NonNull MemoryFirstTempFileManagerFactory factory) {
+        this.mFactory = factory;
+    }
+
+    /**
+     * Call this method from {@link NanoHTTPD.IHTTPSession#parseBody(Map)} to parse a small form or
+     * text body in memory, the same way NanoHTTPD does
+     *
+     * @param session the request whose body has not been read yet
+     * @param files   receives the text body as "postData"
+     * @return false if the body was not read, it must then be parsed by NanoHTTPD: the multipart
+     * and PUT bodies, which NanoHTTPD hands out as files, the bodies without a Content-Length or
+     * over the threshold, and those arriving while the memory budget is spent
+     * @throws IOException if the body could not be read
+     */
+    public boolean parseBody(@NonNull NanoHTTPD.IHTTPSession session, @NonNull Map<String, String> files) throws IOException {
+        if (session.getMethod() != NanoHTTPD.Method.POST)
+            return false;
+        String contentLength = session.getHeaders().get("content-length");
+        String contentType = session.getHeaders().get("content-type");
+        String mimeType = contentType != null ? getMimeType(contentType) : "";
+        if (contentLength == null || mimeType.startsWith("multipart/"))
+            return false;
+        long length;
+        try {
+            length = Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (length < 0 || !mFactory.fitsInMemory(length))
+            return false;
+        byte[] buffer = mFactory.acquire();
+        if (buffer == null)
+            return false;
+        try {
+            int size = read(session.getInputStream(), buffer, (int) length);
+            parseBody(session, files, buffer, 0, size);
+        } finally {
+            mFactory.release(buffer);
+        }
+        return true;
+    }
+
+    /**
+     * Call this method to parse a form or text POST body whose bytes are already in memory, the
+     * same way NanoHTTPD does
+     *
+     * @param session the request, whose Content-Type tells how to decode the body
+     * @param files   receives the text body as "postData"
+     * @param body    holds the bytes of the body
+     * @param offset  the position of the body in the bytes
+     * @param length  the length of the body
+     * @throws IOException if the charset of the body is not supported
+     */
+    public void parseBody(@NonNull NanoHTTPD.IHTTPSession session, @NonNull Map<String, String> files,
+                          @NonNull byte[] body, int offset, int length) throws IOException {
+        String contentType = session.getHeaders().get("content-type");
+        String text = new String(body, offset, length, getCharset(contentType)).trim();
+        if (contentType != null && FORM_URLENCODED.equals(getMimeType(contentType)))
+            decodeParameters(text, session.getParameters());
+        else if (!text.isEmpty())
+            files.put("postData", text);
+        mFactory.onParsedInMemory();
+    }
+
+    @Override
+    public void clear() {
+        for (NanoHTTPD.TempFile tempFile : mTempFiles) {
+            try {
+                tempFile.delete();
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Could not delete a temp file", e);
+            }
+        }
+        mTempFiles.clear();
+    }
+
+    @Override
+    public NanoHTTPD.TempFile createTempFile(String filenameHint) throws Exception {
+        NanoHTTPD.TempFile tempFile = new NanoHTTPD.DefaultTempFile(mFactory.getDirectory());
+        mTempFiles.add(tempFile);
+        mFactory.onSpilled();
+        return tempFile;
+    }
+
+    /**
+     * @return the number of bytes read, less than the length if the client closed the connection
+     */
+    private static int read(@NonNull InputStream inputStream, @NonNull byte[] buffer, int length) throws IOException {
+        int size = 0;
+        while (size < length) {
+            int read = inputStream.read(buffer, size, length - size);
+            if (read < 0)
+                break;
+            size += read;
+        }
+        return size;
+    }
+
+    @NonNull
+    private static String getMimeType(@NonNull String contentType) {
+        int end = contentType.indexOf(';');
+        return (end >= 0 ? contentType.substring(0, end) : contentType).trim().toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return the charset parameter of the Content-Type, US-ASCII without one and UTF-8 without a
+     * Content-Type, like NanoHTTPD
+     */
+    @NonNull
+    private static String getCharset(@Nullable String contentType) {
+        if (contentType == null)
+            return "UTF-8";
+        for (String parameter : contentType.split(";")) {
+            int separator = parameter.indexOf('=');
+            if (separator >= 0 && parameter.substring(0, separator).trim().equalsIgnoreCase("charset"))
+                return parameter.substring(separator + 1).trim().replace("\"", "").replace("'", "");
+        }
+        return "US-ASCII";
+    }
+
+    private static void decodeParameters(@NonNull String body, @NonNull Map<String, List<String>> parameters)
+            throws UnsupportedEncodingException {
+        StringTokenizer tokenizer = new StringTokenizer(body, "&");
+        while (tokenizer.hasMoreTokens()) {
+            String token = tokenizer.nextToken();
+            int separator = token.indexOf('=');
+            String key = URLDecoder.decode(separator >= 0 ? token.substring(0, separator) : token, "UTF-8").trim();
+            String value = separator >= 0 ? URLDecoder.decode(token.substring(separator + 1), "UTF-8") : "";
+            List<String> values = parameters.get(key);
+            if (values == null) {
+                values = new ArrayList<>();
+                parameters.put(key, values);
+            }
+            values.add(value);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.bharathksunil.androidwebserver.body;
+
+import java.io.File;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This creates the {@link MemoryFirstTempFileManager} of every connection and holds the buffers
+ * they share. The request bodies smaller than the memory threshold are read into a buffer of
+ * that size, taken from a pool and given back once the body is parsed, while the larger ones are
+ * spilled to temp files as NanoHTTPD does for every body over 1KB.
+ * <p>
+ * The buffers in use, and the ones kept in the pool, never hold more than the memory budget
+ * together: a body arriving while the budget is spent by the other connections is spilled to a
+ * temp file instead, so many concurrent uploads cannot exhaust the heap.
+ * </p>
+ */
+public final class MemoryFirstTempFileManagerFactory implements NanoHTTPD.TempFileManagerFactory {
+    /**
+     * The directory of the temp files, null for java.io.tmpdir
+     */
+    @Nullable
+    private final File mDirectory;
+    private final int mMemoryThresholdBytes;
+    private final long mMaxMemoryBytes;
+    /**
+     * The buffers given back, all of the threshold size
+     */
+    @NonNull
+    private final Queue<byte[]> mFreeBuffers = new ConcurrentLinkedQueue<>();
+    /**
+     * The bytes of the buffers allocated, in use or pooled
+     */
+    @NonNull
+    private final AtomicLong mBytesAllocated = new AtomicLong();
+    @NonNull
+    private final AtomicLong mBytesInUse = new AtomicLong();
+    @NonNull
+    private final AtomicLong mMemoryBodyCount = new AtomicLong();
+    @NonNull
+    private final AtomicLong mSpilledFileCount = new AtomicLong();
+    @NonNull
+    private final AtomicLong mOverBudgetCount = new AtomicLong();
+
+    /**
+     * @param directory            the directory of the temp files, null for java.io.tmpdir
+     * @param memoryThresholdBytes the bodies smaller than this are kept in memory, 0 to spill them
+     *                             all
+     * @param maxMemoryBytes       the bytes the buffers of all the connections may hold together
+     */
+    public MemoryFirstTempFileManagerFactory(@Nullable File directory, int memoryThresholdBytes, long maxMemoryBytes) {
+        if (memoryThresholdBytes < 0 || maxMemoryBytes < 0)
+            throw new IllegalArgumentException("invalid body memory limits");
+        this.mDirectory = directory;
+        this.mMemoryThresholdBytes = memoryThresholdBytes;
+        this.mMaxMemoryBytes = maxMemoryBytes;
+    }
+
+    @Override
+    public MemoryFirstTempFileManager create() {
+        return new MemoryFirstTempFileManager(this);
+    }
+
+    /**
+     * @return a snapshot of the counters of the buffers and the temp files
+     */
+    @NonNull
+    public TempFileStats getStats() {
+        return new TempFileStats(mMemoryBodyCount.get(), mSpilledFileCount.get(), mOverBudgetCount.get(),
+                mBytesInUse.get(), mBytesAllocated.get());
+    }
+
+    /**
+     * @return the directory of the temp files, null for java.io.tmpdir
+     */
+    @Nullable
+    File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * @param length the length of the body
+     * @return true if a body of this length belongs in memory
+     */
+    boolean fitsInMemory(long length) {
+        return length < mMemoryThresholdBytes;
+    }
+
+    /**
+     * @return a buffer of the threshold size, null if the memory budget is spent
+     */
+    @Nullable
+    byte[] acquire() {
+        byte[] buffer = mFreeBuffers.poll();
+        if (buffer == null) {
+            long allocated;
+            do {
+                allocated = mBytesAllocated.get();
+                if (allocated + mMemoryThresholdBytes > mMaxMemoryBytes) {
+                    mOverBudgetCount.incrementAndGet();
+                    return null;
+                }
+            } while (!mBytesAllocated.compareAndSet(allocated, allocated + mMemoryThresholdBytes));
+            buffer = new byte[mMemoryThresholdBytes];
+        }
+        mBytesInUse.addAndGet(buffer.length);
+        return buffer;
+    }
+
+    /**
+     * @param buffer a buffer returned by {@link #acquire()}, which the caller no longer uses
+     */
+    void release(@NonNull byte[] buffer) {
+        mBytesInUse.addAndGet(-buffer.length);
+        mFreeBuffers.offer(buffer);
+    }
+
+    void onParsedInMemory() {
+        mMemoryBodyCount.incrementAndGet();
+    }
+
+    void onSpilled() {
+        mSpilledFileCount.incrementAndGet();
+    }
+}
@@ -0,0 +1,66 @@
+package com.bharathksunil.androidwebserver.body;
+
+/**
+ * This models a snapshot of the {@link MemoryFirstTempFileManagerFactory} counters, use them to
+ * tune the memory threshold and budget: bodies over budget are spilled to the storage although
+ * they are small
+ */
+public final class TempFileStats {
+    private final long memoryBodyCount;
+    private final long spilledFileCount;
+    private final long overBudgetCount;
+    private final long bytesInUse;
+    private final long bytesAllocated;
+
+    TempFileStats(long memoryBodyCount, long spilledFileCount, long overBudgetCount, long bytesInUse, long bytesAllocated) {
+        this.memoryBodyCount = memoryBodyCount;
+        this.spilledFileCount = spilledFileCount;
+        this.overBudgetCount = overBudgetCount;
+        this.bytesInUse = bytesInUse;
+        this.bytesAllocated = bytesAllocated;
+    }
+
+    /**
+     * @return the number of bodies read into memory
+     */
+    public long getMemoryBodyCount() {
+        return memoryBodyCount;
+    }
+
+    /**
+     * @return the number of temp files created for the bodies spilled to the storage
+     */
+    public long getSpilledFileCount() {
+        return spilledFileCount;
+    }
+
+    /**
+     * @return the number of small bodies spilled because the memory budget was spent
+     */
+    public long getOverBudgetCount() {
+        return overBudgetCount;
+    }
+
+    /**
+     * @return the bytes of the buffers holding a body right now
+     */
+    public long getBytesInUse() {
+        return bytesInUse;
+    }
+
+    /**
+     * @return the bytes of the buffers allocated, in use or pooled, never over the budget
+     */
+    public long getBytesAllocated() {
+        return bytesAllocated;
+    }
+
+    @Override
+    public String toString() {
+        return "TempFileStats{memoryBodyCount=" + memoryBodyCount
+                + ", spilledFileCount=" + spilledFileCount
+                + ", overBudgetCount=" + overBudgetCount
+                + ", bytesInUse=" + bytesInUse
+                + ", bytesAllocated=" + bytesAllocated + "}";
+    }
+}
@@ -0,0 +1,98 @@
+package com.bharathksunil.androidwebserver.cache;
+
+/**
+ * This models a snapshot of the {@link ResponseCache} counters, use it to tune the byte budget.
+ */
+public final class CacheStats {
+    private final long budgetBytes;
+    private final long usedBytes;
+    private final int entryCount;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long invalidationCount;
+
+    CacheStats(long budgetBytes,
+               long usedBytes,
+               int entryCount,
+               long hitCount,
+               long missCount,
+               long evictionCount,
+               long invalidationCount) {
+        this.budgetBytes = budgetBytes;
+        this.usedBytes = usedBytes;
+        this.entryCount = entryCount;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.invalidationCount = invalidationCount;
+    }
+
+    /**
+     * @return the maximum number of body bytes the cache may hold
+     */
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * @return the number of body bytes currently held
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the number of cached files
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the number of requests served from memory
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of requests which had to read the file
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of entries dropped to stay within the budget
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of entries dropped because the file changed on disk
+     */
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     * @return the fraction of lookups served from memory, 0 if there were none
+     */
+    public double getHitRatio() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{budgetBytes=" + budgetBytes
+                + ", usedBytes=" + usedBytes
+                + ", entryCount=" + entryCount
+                + ", hitCount=" + hitCount
+                + ", missCount=" + missCount
+                + ", evictionCount=" + evictionCount
+                + ", invalidationCount=" + invalidationCount + "}";
+    }
+}
@@ -0,0 +1,91 @@
+package com.bharathksunil.androidwebserver.cache;
+
+import com.bharathksunil.androidwebserver.compression.ContentEncoding;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This models a file body held in the {@link ResponseCache} together with the file state it was
+ * read from, which is used to detect that the file has changed on disk, and its compressed
+ * variants once they have been asked for.
+ */
+public final class CachedFile {
+    /**
+     * Marks a variant which turned out not to be smaller than the body
+     */
+    static final byte[] INCOMPRESSIBLE = new byte[0];
+
+    /**
+     * The key of the entry in the cache
+     */
+    @NonNull
+    private final String key;
+    @NonNull
+    private final byte[] body;
+    private final long lastModified;
+    /**
+     * The compressed bodies indexed by the ordinal of the coding, guarded by the cache
+     */
+    @NonNull
+    private final byte[][] variants = new byte[ContentEncoding.values().length][];
+
+    CachedFile(@NonNull String key, @NonNull byte[] body, long lastModified) {
+        this.key = key;
+        this.body = body;
+        this.lastModified = lastModified;
+    }
+
+    @NonNull
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the file contents, callers must not modify the array
+     */
+    @NonNull
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return the modification time of the file when it was read
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @param encoding the content coding
+     * @return the compressed body, {@link #INCOMPRESSIBLE} if it is not smaller, null if it has
+     * not been computed yet
+     */
+    @Nullable
+    byte[] getVariant(@NonNull ContentEncoding encoding) {
+        return variants[encoding.ordinal()];
+    }
+
+    void setVariant(@NonNull ContentEncoding encoding, @NonNull byte[] variant) {
+        variants[encoding.ordinal()] = variant;
+    }
+
+    /**
+     * @return the bytes held by this entry, the body and all its variants
+     */
+    long size() {
+        long size = body.length;
+        for (byte[] variant : variants)
+            size += variant != null ? variant.length : 0;
+        return size;
+    }
+
+    /**
+     * @param length       the current size of the file
+     * @param lastModified the current modification time of the file
+     * @return true if the cached body still matches the file
+     */
+    boolean isFresh(long length, long lastModified) {
+        return this.body.length == length && this.lastModified == lastModified;
+    }
+}
@@ -0,0 +1,223 @@
+package com.bharathksunil.androidwebserver.cache;
+
+import com.bharathksunil.androidwebserver.compression.ContentEncoding;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This is a least recently used cache of file bodies bounded by a total byte budget. It keeps
+ * the small files which are requested over and over, like scripts, style sheets and JSON, in
+ * memory so a hit costs a stat of the file instead of a read.
+ * <p>
+ * An entry is served only while the size and the modification time of the file still match the
+ * ones it was read with, otherwise it is dropped and the file is read again. The compressed
+ * variants of an entry are computed once and count against the same budget.
+ * </p>
+ */
+public class ResponseCache {
+    /**
+     * The maximum number of body bytes held
+     */
+    private final long mBudgetBytes;
+    /**
+     * Files larger than this are never cached, so one large file cannot flush all the hot ones
+     */
+    private final long mMaxEntryBytes;
+    /**
+     * The entries in access order, the eldest is evicted first. Guarded by itself.
+     */
+    @NonNull
+    private final LinkedHashMap<String, CachedFile> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    //region Counters, guarded by mEntries
+    private long mUsedBytes;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+    private long mInvalidationCount;
+    //endregion
+
+    /**
+     * @param budgetBytes   the maximum number of body bytes held
+     * @param maxEntryBytes files larger than this are never cached
+     */
+    public ResponseCache(long budgetBytes, long maxEntryBytes) {
+        this.mBudgetBytes = budgetBytes;
+        this.mMaxEntryBytes = Math.min(maxEntryBytes, budgetBytes);
+    }
+
+    /**
+     * Call this method to check if a file of this size may be cached
+     *
+     * @param length the size of the file
+     * @return true if the file may be held in memory
+     */
+    public boolean isCacheable(long length) {
+        return length <= mMaxEntryBytes;
+    }
+
+    /**
+     * Call this method to get the body of a file, reading and caching it on a miss. The caller
+     * passes the state of the file it has already looked up, so a hit costs no further IO.
+     *
+     * @param file         the file to get
+     * @param length       the current size of the file
+     * @param lastModified the current modification time of the file
+     * @return the cached body, null if the file is too large or could not be read
+     */
+    @Nullable
+    public CachedFile get(@NonNull File file, long length, long lastModified) {
+        if (!isCacheable(length))
+            return null;
+        String key = file.getPath();
+        synchronized (mEntries) {
+            CachedFile cachedFile = mEntries.get(key);
+            if (cachedFile != null) {
+                if (cachedFile.isFresh(length, lastModified)) {
+                    mHitCount++;
+                    return cachedFile;
+                }
+                remove(key);
+                mInvalidationCount++;
+            }
+            mMissCount++;
+        }
+        CachedFile cachedFile = read(key, file, length, lastModified);
+        if (cachedFile != null)
+            put(key, cachedFile);
+        return cachedFile;
+    }
+
+    /**
+     * Call this method to get a compressed variant of a cached body, compressing it on the first
+     * call
+     *
+     * @param cachedFile the entry returned by {@link #get(File, long, long)}
+     * @param encoding   the content coding wanted
+     * @return the compressed body, null if it is not smaller than the body
+     */
+    @Nullable
+    public byte[] getVariant(@NonNull CachedFile cachedFile, @NonNull ContentEncoding encoding) {
+        byte[] variant;
+        synchronized (mEntries) {
+            variant = cachedFile.getVariant(encoding);
+        }
+        if (variant == null) {
+            byte[] compressed = encoding.compress(cachedFile.getBody(), Deflater.BEST_COMPRESSION);
+            variant = compressed.length < cachedFile.getBody().length ? compressed : CachedFile.INCOMPRESSIBLE;
+            synchronized (mEntries) {
+                if (cachedFile.getVariant(encoding) == null) {
+                    cachedFile.setVariant(encoding, variant);
+                    //an entry evicted meanwhile is no longer accounted for
+                    if (mEntries.get(cachedFile.getKey()) == cachedFile) {
+                        mUsedBytes += variant.length;
+                        evict(cachedFile);
+                    }
+                } else {
+                    variant = cachedFile.getVariant(encoding);
+                }
+            }
+        }
+        return variant == CachedFile.INCOMPRESSIBLE ? null : variant;
+    }
+
+    /**
+     * Call this method to drop the body of a file, for example after the file was deleted
+     *
+     * @param file the file to drop
+     */
+    public void invalidate(@NonNull File file) {
+        synchronized (mEntries) {
+            if (remove(file.getPath()) != null)
+                mInvalidationCount++;
+        }
+    }
+
+    /**
+     * Call this method to drop all cached bodies, for example when the device is low on memory
+     */
+    public void clear() {
+        synchronized (mEntries) {
+            mEntries.clear();
+            mUsedBytes = 0;
+        }
+    }
+
+    /**
+     * @return a snapshot of the cache counters
+     */
+    @NonNull
+    public CacheStats getStats() {
+        synchronized (mEntries) {
+            return new CacheStats(mBudgetBytes, mUsedBytes, mEntries.size(),
+                    mHitCount, mMissCount, mEvictionCount, mInvalidationCount);
+        }
+    }
+
+    private void put(@NonNull String key, @NonNull CachedFile cachedFile) {
+        synchronized (mEntries) {
+            CachedFile previous = mEntries.put(key, cachedFile);
+            if (previous != null)
+                mUsedBytes -= previous.size();
+            mUsedBytes += cachedFile.size();
+            evict(cachedFile);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits its budget, must be called
+     * holding the lock
+     *
+     * @param keep the entry which was just added or grown, never evicted
+     */
+    private void evict(@NonNull CachedFile keep) {
+        Iterator<Map.Entry<String, CachedFile>> iterator = mEntries.entrySet().iterator();
+        while (mUsedBytes > mBudgetBytes && iterator.hasNext()) {
+            CachedFile eldest = iterator.next().getValue();
+            if (eldest == keep)
+                continue;
+            mUsedBytes -= eldest.size();
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    @Nullable
+    private CachedFile remove(@NonNull String key) {
+        CachedFile removed = mEntries.remove(key);
+        if (removed != null)
+            mUsedBytes -= removed.size();
+        return removed;
+    }
+
+    /**
+     * @return the file read into memory, null if it could not be read or changed while reading
+     */
+    @Nullable
+    private static CachedFile read(@NonNull String key, @NonNull File file, long length, long lastModified) {
+        byte[] body = new byte[(int) length];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < body.length) {
+                int read = inputStream.read(body, offset, body.length - offset);
+                if (read < 0)
+                    return null;
+                offset += read;
+            }
+            if (inputStream.read() >= 0)
+                return null;
+        } catch (IOException e) {
+            return null;
+        }
+        return new CachedFile(key, body, lastModified);
+    }
+}
@@ -0,0 +1,116 @@
+package com.bharathksunil.androidwebserver.compression;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This keeps compressed copies of static files in a directory, so each version of a file is
+ * compressed once and afterwards served with the same zero copy path as the original.
+ * <p>
+ * A copy is named after the path, size and modification time of its source, so a changed file
+ * never matches a stale copy. Stale copies of a path are deleted when the new one is written, and
+ * so is the record of an older version which did not compress.
+ * </p>
+ */
+public class CompressedFileStore {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    @NonNull
+    private final File mDirectory;
+    /**
+     * The names of the copies that turned out not to be smaller than their source, at most one per
+     * path as each version of a file replaces the names of the previous ones
+     */
+    @NonNull
+    private final Set<String> mIncompressible =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * @param directory the private directory holding the compressed copies, created on demand
+     */
+    public CompressedFileStore(@NonNull File directory) {
+        this.mDirectory = directory;
+    }
+
+    /**
+     * Call this method to get the compressed copy of a file, compressing it on the first call
+     *
+     * @param source       the file to compress
+     * @param length       the current size of the file
+     * @param lastModified the current modification time of the file
+     * @param encoding     the content coding wanted
+     * @return the compressed copy, null if it could not be written or would not be smaller
+     */
+    @Nullable
+    public File get(@NonNull File source, long length, long lastModified, @NonNull ContentEncoding encoding) {
+        String prefix = encoding.getToken() + "-" + Integer.toHexString(source.getAbsolutePath().hashCode()) + "-";
+        String name = prefix + Long.toHexString(length) + "-" + Long.toHexString(lastModified);
+        if (mIncompressible.contains(name))
+            return null;
+        File variant = new File(mDirectory, name);
+        if (variant.isFile())
+            return variant;
+        try {
+            return write(source, variant, prefix, length, encoding);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private File write(@NonNull File source, @NonNull File variant, @NonNull String prefix,
+                       long length, @NonNull ContentEncoding encoding) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+            throw new IOException("could not create " + mDirectory);
+        //concurrent writers each use their own temp file, the rename publishes a complete copy
+        File temp = File.createTempFile(variant.getName(), ".tmp", mDirectory);
+        try {
+            try (InputStream inputStream = new FileInputStream(source);
+                 OutputStream fileStream = new FileOutputStream(temp);
+                 OutputStream outputStream = encoding.wrap(fileStream, Deflater.BEST_COMPRESSION)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = inputStream.read(buffer)) > 0)
+                    outputStream.write(buffer, 0, read);
+            }
+            deleteStaleCopies(prefix, variant.getName());
+            if (temp.length() >= length) {
+                mIncompressible.add(variant.getName());
+                return null;
+            }
+            if (!temp.renameTo(variant))
+                throw new IOException("could not publish " + variant);
+            return variant;
+        } finally {
+            //noinspection ResultOfMethodCallIgnored already renamed on success
+            temp.delete();
+        }
+    }
+
+    private void deleteStaleCopies(@NonNull String prefix, @NonNull String current) {
+        for (String name : mIncompressible) {
+            if (name.startsWith(prefix) && !name.equals(current))
+                mIncompressible.remove(name);
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && !name.startsWith(current))
+                //noinspection ResultOfMethodCallIgnored a copy still in use is retried next time
+                file.delete();
+        }
+    }
+}
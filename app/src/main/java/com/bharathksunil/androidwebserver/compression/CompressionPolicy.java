@@ -0,0 +1,61 @@
+package com.bharathksunil.androidwebserver.compression;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This decides which responses are worth compressing: bodies of an allowed MIME type which are
+ * at least as large as the minimum size. Entries of the allowlist ending in "/*" allow a whole
+ * top level type, like text/*.
+ */
+public final class CompressionPolicy {
+    @NonNull
+    private final Set<String> mMimeTypes = new HashSet<>();
+    @NonNull
+    private final Set<String> mTopLevelTypes = new HashSet<>();
+    private final long mMinBytes;
+
+    /**
+     * @param mimeTypes the MIME types which may be compressed
+     * @param minBytes  bodies smaller than this are sent as is, as the saving does not pay for
+     *                  the CPU and the extra headers
+     */
+    public CompressionPolicy(@NonNull Collection<String> mimeTypes, long minBytes) {
+        for (String mimeType : mimeTypes) {
+            String normalised = mimeType.trim().toLowerCase();
+            if (normalised.endsWith("/*"))
+                mTopLevelTypes.add(normalised.substring(0, normalised.length() - 2));
+            else
+                mMimeTypes.add(normalised);
+        }
+        this.mMinBytes = minBytes;
+    }
+
+    /**
+     * @param mimeType the content type of the body, parameters like charset are ignored
+     * @return true if bodies of this type may be compressed
+     */
+    public boolean isCompressibleType(@Nullable String mimeType) {
+        if (mimeType == null)
+            return false;
+        int end = mimeType.indexOf(';');
+        String type = (end >= 0 ? mimeType.substring(0, end) : mimeType).trim().toLowerCase();
+        if (mMimeTypes.contains(type))
+            return true;
+        int slash = type.indexOf('/');
+        return slash > 0 && mTopLevelTypes.contains(type.substring(0, slash));
+    }
+
+    /**
+     * @param mimeType the content type of the body
+     * @param length   the size of the body, -1 if it is not known up front
+     * @return true if the body should be compressed for clients accepting it
+     */
+    public boolean isCompressible(@Nullable String mimeType, long length) {
+        return (length < 0 || length >= mMinBytes) && isCompressibleType(mimeType);
+    }
+}
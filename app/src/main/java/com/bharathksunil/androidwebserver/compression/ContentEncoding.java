@@ -0,0 +1,185 @@
+package com.bharathksunil.androidwebserver.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This enum lists the content codings the server can compress a body with
+ */
+public enum ContentEncoding {
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    /**
+     * The size of the buffer of the compressing streams
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The token used in the Accept-Encoding and Content-Encoding headers
+     */
+    @NonNull
+    private final String mToken;
+
+    ContentEncoding(@NonNull String token) {
+        this.mToken = token;
+    }
+
+    /**
+     * @return the token used in the Accept-Encoding and Content-Encoding headers
+     */
+    @NonNull
+    public String getToken() {
+        return mToken;
+    }
+
+    /**
+     * Call this method to wrap a stream so that everything written to it is compressed. Closing
+     * the returned stream finishes the compressed data and releases the native compressor, but
+     * leaves the wrapped stream open.
+     *
+     * @param outputStream the stream receiving the compressed bytes
+     * @param level        the {@link Deflater} compression level
+     * @return the compressing stream, whose flush pushes out everything written so far
+     * @throws IOException if the header could not be written
+     */
+    @NonNull
+    public DeflaterOutputStream wrap(@NonNull OutputStream outputStream, int level) throws IOException {
+        OutputStream shield = new FilterOutputStream(outputStream) {
+            @Override
+            public void write(@NonNull byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        if (this == GZIP) {
+            return new GZIPOutputStream(shield, BUFFER_SIZE, true) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+        //the native memory of a deflater passed in is not released on close, so release it here
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(shield, deflater, BUFFER_SIZE, true) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Call this method to compress a body held in memory
+     *
+     * @param body  the bytes to compress
+     * @param level the {@link Deflater} compression level
+     * @return the compressed bytes
+     */
+    @NonNull
+    public byte[] compress(@NonNull byte[] body, int level) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2 + 64);
+        try (DeflaterOutputStream outputStream = wrap(compressed, level)) {
+            outputStream.write(body);
+        } catch (IOException e) {
+            //a byte array stream never fails
+            throw new IllegalStateException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Call this method to pick the content coding of a response from the Accept-Encoding header of
+     * the request. Quality values are honoured, gzip wins a tie.
+     *
+     * @param acceptEncoding the value of the Accept-Encoding header, null if absent
+     * @return the preferred supported coding, null if the body must be sent as is
+     */
+    @Nullable
+    public static ContentEncoding negotiate(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty())
+            return null;
+        ContentEncoding best = null;
+        float bestQuality = 0;
+        float wildcardQuality = -1;
+        float[] qualities = new float[values().length];
+        boolean[] listed = new boolean[values().length];
+        int length = acceptEncoding.length();
+        int start = 0;
+        while (start < length) {
+            int end = acceptEncoding.indexOf(',', start);
+            if (end < 0)
+                end = length;
+            int parameters = acceptEncoding.indexOf(';', start);
+            int tokenEnd = parameters >= 0 && parameters < end ? parameters : end;
+            float quality = tokenEnd < end ? parseQuality(acceptEncoding, tokenEnd + 1, end) : 1;
+            int tokenStart = skipSpaces(acceptEncoding, start, tokenEnd);
+            tokenEnd = trimSpaces(acceptEncoding, tokenStart, tokenEnd);
+            if (regionEquals(acceptEncoding, tokenStart, tokenEnd, "*")) {
+                wildcardQuality = quality;
+            } else {
+                for (ContentEncoding encoding : values()) {
+                    if (regionEquals(acceptEncoding, tokenStart, tokenEnd, encoding.mToken)) {
+                        qualities[encoding.ordinal()] = quality;
+                        listed[encoding.ordinal()] = true;
+                    }
+                }
+            }
+            start = end + 1;
+        }
+        for (ContentEncoding encoding : values()) {
+            float quality = listed[encoding.ordinal()] ? qualities[encoding.ordinal()] : wildcardQuality;
+            if (quality > bestQuality) {
+                best = encoding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the q parameter found between the offsets, 1 if there is none, 0 if it is invalid
+     */
+    private static float parseQuality(@NonNull String value, int start, int end) {
+        int q = value.indexOf("q=", start);
+        if (q < 0 || q >= end)
+            return 1;
+        try {
+            return Float.parseFloat(value.substring(q + 2, end).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int skipSpaces(@NonNull String value, int start, int end) {
+        while (start < end && value.charAt(start) == ' ')
+            start++;
+        return start;
+    }
+
+    private static int trimSpaces(@NonNull String value, int start, int end) {
+        while (end > start && value.charAt(end - 1) == ' ')
+            end--;
+        return end;
+    }
+
+    private static boolean regionEquals(@NonNull String value, int start, int end, @NonNull String token) {
+        return end - start == token.length() && value.regionMatches(true, start, token, 0, token.length());
+    }
+}
@@ -0,0 +1,501 @@
+package com.bharathksunil.androidwebserver.connection;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This models a client connection accepted by the server. The connection is attached to the
+ * worker thread serving it, so responses can reach the underlying socket through
+ * {@link #current()} without NanoHTTPD having to pass it along.
+ * <p>
+ * It also tracks whether a request is being served, so the {@link ConnectionReaper} can close the
+ * keep-alive connections which have been waiting too long for their next request, and counts
+ * the bytes and the time of every request for the metrics.
+ * </p>
+ */
+public final class ClientConnection {
+    /**
+     * The connection served by the current worker thread
+     */
+    private static final ThreadLocal<ClientConnection> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The accepted client socket
+     */
+    @NonNull
+    private final Socket mSocket;
+    /**
+     * Waits for a non-blocking socket to accept more bytes, null if the socket blocks
+     */
+    @Nullable
+    private final WriteReadiness mWriteReadiness;
+    /**
+     * Gives the socket up to a component writing without a worker, null if the engine cannot
+     */
+    @Nullable
+    private final Handover mHandover;
+    /**
+     * True from the moment a request reaches the server until its response has been sent
+     */
+    private volatile boolean mBusy;
+    /**
+     * True once a response has handed the connection over, which then waits for no request
+     */
+    private volatile boolean mHandedOver;
+    /**
+     * The {@link System#nanoTime()} at which the connection last became idle, or was taken up by
+     * a worker
+     */
+    private volatile long mIdleSince;
+    /**
+     * The number of requests received on this connection, only written by the worker thread
+     */
+    private volatile int mRequestCount;
+    /**
+     * The bytes read from and sent to the client, only touched by the worker thread
+     */
+    private long mBytesIn;
+    private long mBytesOut;
+    /**
+     * The byte counts at the end of the previous request
+     */
+    private long mRequestBytesInMark;
+    private long mRequestBytesOutMark;
+    /**
+     * The {@link System#nanoTime()} at which the current request was read
+     */
+    private long mRequestStartNanos;
+    /**
+     * The route which served the current request, null until it is known
+     */
+    @Nullable
+    private String mRoute;
+    /**
+     * The status of the response to the current request
+     */
+    private int mStatus;
+    /**
+     * The method and the decoded path of the current request, null until they are known
+     */
+    @Nullable
+    private String mMethod;
+    @Nullable
+    private String mUri;
+
+    /**
+     * @param socket the accepted client socket
+     */
+    public ClientConnection(@NonNull Socket socket) {
+        this(socket, null);
+    }
+
+    /**
+     * @param socket         the accepted client socket
+     * @param writeReadiness waits for the socket to accept more bytes, null if the socket blocks
+     */
+    public ClientConnection(@NonNull Socket socket, @Nullable WriteReadiness writeReadiness) {
+        this(socket, writeReadiness, null);
+    }
+
+    /**
+     * @param socket         the accepted client socket
+     * @param writeReadiness waits for the socket to accept more bytes, null if the socket blocks
+     * @param handover       gives the socket up once a response is sent, null if the engine cannot
+     */
+    public ClientConnection(@NonNull Socket socket,
+                            @Nullable WriteReadiness writeReadiness,
+                            @Nullable Handover handover) {
+        this.mSocket = socket;
+        this.mWriteReadiness = writeReadiness;
+        this.mHandover = handover;
+        this.mIdleSince = System.nanoTime();
+    }
+
+    /**
+     * Call this method to get the connection served by the calling thread
+     *
+     * @return the current connection, null if the thread is not serving a client
+     */
+    @Nullable
+    public static ClientConnection current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Call this method on the worker thread before serving the connection
+     */
+    public void attach() {
+        CURRENT.set(this);
+    }
+
+    /**
+     * Call this method on the worker thread once the connection is done
+     */
+    public void detach() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return the accepted client socket
+     */
+    @NonNull
+    public Socket getSocket() {
+        return mSocket;
+    }
+
+    /**
+     * Call this method to get the channel of the socket, used to write file bodies without
+     * copying them through the heap
+     *
+     * @return the socket channel, null if the socket was not opened through a channel. Writes to
+     * it may send nothing if the channel is non-blocking, see {@link #awaitWritable()}.
+     */
+    @Nullable
+    public SocketChannel getChannel() {
+        return mSocket.getChannel();
+    }
+
+    /**
+     * Call this method when a write to the channel sent nothing, to wait until the client has read
+     * enough for the socket to accept more bytes. It returns at once if the socket blocks.
+     *
+     * @throws IOException if the connection was closed or the client stopped reading
+     */
+    public void awaitWritable() throws IOException {
+        if (mWriteReadiness != null)
+            mWriteReadiness.awaitWritable();
+    }
+
+    /**
+     * @return true if the engine can hand this connection over, see
+     * {@link #handOver(HandoverListener)}
+     */
+    public boolean canHandOver() {
+        return mHandover != null;
+    }
+
+    /**
+     * Call this method on the worker thread sending a response which keeps streaming to the client
+     * after it returns, once the response has written everything it writes through the socket
+     * stream. The connection is left open for the caller once the response is sent, which then
+     * writes to the non-blocking {@link #getChannel()} from any thread and closes the connection
+     * when done, while the engine only watches the socket for it.
+     *
+     * @param listener told what the client sends, when the socket can take more bytes and when
+     *                 the connection closes
+     * @return true if the connection was handed over, false if the worker must keep serving it
+     */
+    public boolean handOver(@NonNull HandoverListener listener) {
+        if (mHandover == null)
+            return false;
+        mHandedOver = true;
+        mHandover.handOver(listener);
+        return true;
+    }
+
+    /**
+     * @return true if a response has handed the connection over
+     */
+    public boolean isHandedOver() {
+        return mHandedOver;
+    }
+
+    /**
+     * Call this method on any thread after a write to a handed over channel sent nothing, the
+     * listener is then told once the socket can take more bytes
+     */
+    public void requestWritable() {
+        if (mHandover != null)
+            mHandover.requestWritable();
+    }
+
+    /**
+     * Call this method on the worker thread when a request has been read
+     *
+     * @return the number of requests received on this connection, including this one
+     */
+    public int onRequestStarted() {
+        mRequestStartNanos = System.nanoTime();
+        mRoute = null;
+        mStatus = 0;
+        mMethod = null;
+        mUri = null;
+        mBusy = true;
+        return ++mRequestCount;
+    }
+
+    /**
+     * Call this method when a worker starts serving the connection, the time it waited for a
+     * worker is not time the client kept it idle
+     */
+    public void startIdleClock() {
+        mIdleSince = System.nanoTime();
+    }
+
+    /**
+     * Call this method on the worker thread once the response has been sent
+     */
+    public void onResponseSent() {
+        mRequestBytesInMark = mBytesIn;
+        mRequestBytesOutMark = mBytesOut;
+        mIdleSince = System.nanoTime();
+        mBusy = false;
+    }
+
+    /**
+     * @return true from the moment a request reaches the server until its response has been sent
+     */
+    public boolean isBusy() {
+        return mBusy;
+    }
+
+    /**
+     * @param route the route serving the current request
+     */
+    public void setRoute(@NonNull String route) {
+        this.mRoute = route;
+    }
+
+    /**
+     * @param status the status of the response to the current request
+     */
+    public void setStatus(int status) {
+        this.mStatus = status;
+    }
+
+    /**
+     * @param method the method of the current request
+     * @param uri    the decoded path of the current request
+     */
+    public void setRequestLine(@NonNull String method, @NonNull String uri) {
+        this.mMethod = method;
+        this.mUri = uri;
+    }
+
+    /**
+     * @return the method of the current request, null until it is known
+     */
+    @Nullable
+    public String getMethod() {
+        return mMethod;
+    }
+
+    /**
+     * @return the decoded path of the current request, null until it is known
+     */
+    @Nullable
+    public String getUri() {
+        return mUri;
+    }
+
+    /**
+     * @return the route which served the current request, null until it is known
+     */
+    @Nullable
+    public String getRoute() {
+        return mRoute;
+    }
+
+    /**
+     * @return the status of the response to the current request
+     */
+    public int getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @return the time since the current request was read
+     */
+    public long getRequestNanos(long nowNanos) {
+        return nowNanos - mRequestStartNanos;
+    }
+
+    /**
+     * @return the bytes read since the previous response was sent
+     */
+    public long getRequestBytesIn() {
+        return mBytesIn - mRequestBytesInMark;
+    }
+
+    /**
+     * @return the bytes sent since the previous response was sent
+     */
+    public long getRequestBytesOut() {
+        return mBytesOut - mRequestBytesOutMark;
+    }
+
+    /**
+     * Call this method to count the bytes written straight to the socket channel, which bypass
+     * the stream returned by {@link #countOutput(OutputStream)}
+     *
+     * @param bytes the number of bytes sent
+     */
+    public void addBytesOut(long bytes) {
+        mBytesOut += bytes;
+    }
+
+    /**
+     * Call this method to count the bytes read straight from the socket channel, which bypass
+     * the stream returned by {@link #countInput(InputStream)}
+     *
+     * @param bytes the number of bytes read
+     */
+    public void addBytesIn(long bytes) {
+        mBytesIn += bytes;
+    }
+
+    /**
+     * @param inputStream the socket input stream
+     * @return a stream counting the bytes read from the client
+     */
+    @NonNull
+    public InputStream countInput(@NonNull InputStream inputStream) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                if (read >= 0)
+                    mBytesIn++;
+                return read;
+            }
+
+            @Override
+            public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0)
+                    mBytesIn += read;
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                mBytesIn += skipped;
+                return skipped;
+            }
+        };
+    }
+
+    /**
+     * @param outputStream the socket output stream
+     * @return a stream counting the bytes sent to the client
+     */
+    @NonNull
+    public OutputStream countOutput(@NonNull OutputStream outputStream) {
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                mBytesOut++;
+            }
+
+            @Override
+            public void write(@NonNull byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                mBytesOut += len;
+            }
+        };
+    }
+
+    /**
+     * @return the number of requests received on this connection
+     */
+    public int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /**
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @return the time the connection has been waiting for a request, 0 while one is served or
+     * once it has been handed over
+     */
+    public long getIdleNanos(long nowNanos) {
+        return mBusy || mHandedOver ? 0 : nowNanos - mIdleSince;
+    }
+
+    /**
+     * Call this method from any thread to drop the connection, a worker blocked reading from it
+     * fails and releases the connection
+     */
+    public void close() {
+        if (mHandover != null) {
+            //the engine keeps track of its connections
+            mHandover.close();
+            return;
+        }
+        try {
+            mSocket.close();
+        } catch (IOException ignored) {
+            //the socket is unusable either way
+        }
+    }
+
+    /**
+     * Lets the engine which owns a non-blocking socket park the worker writing a response until
+     * the socket can take more bytes
+     */
+    public interface WriteReadiness {
+        /**
+         * Called on the worker thread after a write sent nothing
+         *
+         * @throws IOException if the connection was closed or the client stopped reading
+         */
+        void awaitWritable() throws IOException;
+    }
+
+    /**
+     * Lets the engine give a connection up to a component which writes to it without a worker
+     * while the connection stays open, see {@link #handOver(HandoverListener)}
+     */
+    public interface Handover {
+        /**
+         * Called on the worker thread while the response is sent, the socket must be non-blocking
+         * once this returns. The engine gives the connection up once the response is sent.
+         */
+        void handOver(@NonNull HandoverListener listener);
+
+        /**
+         * Called on any thread once the connection is handed over
+         */
+        void requestWritable();
+
+        /**
+         * Called on any thread to close the connection
+         */
+        void close();
+    }
+
+    /**
+     * Told by the engine about a connection which has been handed over
+     */
+    public interface HandoverListener {
+        /**
+         * Called on the thread watching the connection with bytes the client sent
+         *
+         * @param bytes the bytes read, the buffer is reused once this returns
+         */
+        void onReceived(@NonNull ByteBuffer bytes);
+
+        /**
+         * Called on the thread watching the connection once the socket can take more bytes, after
+         * {@link #requestWritable()}
+         */
+        void onWritable();
+
+        /**
+         * Called when the connection is closed, by the client or the server. It may be called more
+         * than once.
+         */
+        void onClosed();
+    }
+}
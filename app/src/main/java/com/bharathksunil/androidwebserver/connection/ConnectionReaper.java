@@ -0,0 +1,172 @@
+package com.bharathksunil.androidwebserver.connection;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This closes the keep-alive connections which have waited longer than the idle timeout for
+ * their next request. An idle connection holds a worker thread blocked on its socket, so without
+ * the reaper a server running for days slowly fills its pool with clients which have long gone,
+ * or whose network dropped without ever closing the socket.
+ * <p>
+ * Connections register while a worker serves them, the reaper then checks them periodically from
+ * a single daemon thread. A connection in the middle of a request is never closed.
+ * </p>
+ */
+public class ConnectionReaper {
+    private static final Logger LOG = Logger.getLogger(ConnectionReaper.class.getName());
+    /**
+     * The bounds of the interval between two sweeps
+     */
+    private static final long MIN_SWEEP_MILLIS = 250;
+    private static final long MAX_SWEEP_MILLIS = 5000;
+
+    /**
+     * The connections currently served by a worker
+     */
+    @NonNull
+    private final Set<ClientConnection> mConnections =
+            Collections.newSetFromMap(new ConcurrentHashMap<ClientConnection, Boolean>());
+    /**
+     * The time a connection may wait for its next request
+     */
+    private volatile long mIdleTimeoutNanos;
+    private final AtomicLong mReapedCount = new AtomicLong();
+    /**
+     * Runs the sweeps, null while the reaper is stopped
+     */
+    @Nullable
+    private ScheduledExecutorService mScheduler;
+
+    /**
+     * @param idleTimeoutMillis the time a connection may wait for its next request
+     */
+    public ConnectionReaper(long idleTimeoutMillis) {
+        if (idleTimeoutMillis <= 0)
+            throw new IllegalArgumentException("invalid idle timeout: " + idleTimeoutMillis);
+        this.mIdleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    /**
+     * Call this method to change the idle timeout, the sweeps are rescheduled to match it
+     *
+     * @param idleTimeoutMillis the time a connection may wait for its next request
+     */
+    public synchronized void setIdleTimeout(long idleTimeoutMillis) {
+        if (idleTimeoutMillis <= 0)
+            throw new IllegalArgumentException("invalid idle timeout: " + idleTimeoutMillis);
+        this.mIdleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        if (mScheduler != null) {
+            stop();
+            start();
+        }
+    }
+
+    /**
+     * Call this method when a worker starts serving the connection, its idle time counts from now
+     */
+    public void register(@NonNull ClientConnection connection) {
+        connection.startIdleClock();
+        mConnections.add(connection);
+    }
+
+    /**
+     * Call this method when the worker is done with the connection
+     */
+    public void unregister(@NonNull ClientConnection connection) {
+        mConnections.remove(connection);
+    }
+
+    /**
+     * Call this method to start the periodic sweeps, a sweep runs at least every quarter of the
+     * idle timeout so a connection is closed soon after it expires
+     */
+    public synchronized void start() {
+        if (mScheduler != null)
+            return;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ReaperThreadFactory());
+        long period = Math.min(MAX_SWEEP_MILLIS,
+                Math.max(MIN_SWEEP_MILLIS, TimeUnit.NANOSECONDS.toMillis(mIdleTimeoutNanos) / 4));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reap(System.nanoTime());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Call this method to stop the sweeps, the registered connections are left open
+     */
+    public synchronized void stop() {
+        if (mScheduler == null)
+            return;
+        mScheduler.shutdownNow();
+        mScheduler = null;
+    }
+
+    /**
+     * Call this method to close the connections whose idle time has expired
+     *
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @return the number of connections closed
+     */
+    public int reap(long nowNanos) {
+        int reaped = 0;
+        for (ClientConnection connection : mConnections) {
+            if (connection.getIdleNanos(nowNanos) > mIdleTimeoutNanos) {
+                mConnections.remove(connection);
+                connection.close();
+                reaped++;
+            }
+        }
+        if (reaped > 0) {
+            long total = mReapedCount.addAndGet(reaped);
+            LOG.log(Level.INFO, "Closed {0} idle connections, {1} since start",
+                    new Object[]{reaped, total});
+        }
+        return reaped;
+    }
+
+    /**
+     * Call this method to get the state of the tracked connections
+     *
+     * @return a snapshot of the connection statistics
+     */
+    @NonNull
+    public ConnectionStats getStats() {
+        long now = System.nanoTime();
+        int open = 0;
+        int idle = 0;
+        for (ClientConnection connection : mConnections) {
+            open++;
+            if (connection.getIdleNanos(now) > 0)
+                idle++;
+        }
+        return new ConnectionStats(open, idle, mReapedCount.get());
+    }
+
+    /**
+     * Creates the named daemon thread of the reaper so it never keeps the process alive
+     */
+    private static final class ReaperThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "WebServer Connection Reaper");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
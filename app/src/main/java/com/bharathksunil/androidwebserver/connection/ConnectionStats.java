@@ -0,0 +1,46 @@
+package com.bharathksunil.androidwebserver.connection;
+
+/**
+ * A snapshot of the client connections tracked by the {@link ConnectionReaper}
+ */
+public final class ConnectionStats {
+    private final int openConnections;
+    private final int idleConnections;
+    private final long reapedCount;
+
+    ConnectionStats(int openConnections, int idleConnections, long reapedCount) {
+        this.openConnections = openConnections;
+        this.idleConnections = idleConnections;
+        this.reapedCount = reapedCount;
+    }
+
+    /**
+     * @return the number of connections being served by a worker
+     */
+    public int getOpenConnections() {
+        return openConnections;
+    }
+
+    /**
+     * @return the number of those connections waiting for their next request
+     */
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    /**
+     * @return the number of connections closed for being idle too long since the server started
+     */
+    public long getReapedCount() {
+        return reapedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionStats{" +
+                "openConnections=" + openConnections +
+                ", idleConnections=" + idleConnections +
+                ", reapedCount=" + reapedCount +
+                '}';
+    }
+}
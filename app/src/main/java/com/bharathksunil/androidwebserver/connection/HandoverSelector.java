@@ -0,0 +1,188 @@
+package com.bharathksunil.androidwebserver.connection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * The single thread which watches every connection of an engine handed over through a
+ * {@link SelectorHandover}, so the worker which sent the response goes back to the pool instead
+ * of waiting on the connection until it closes. A stream or a WebSocket session then costs a
+ * registration with one selector, not a worker.
+ * <p>
+ * <h3>How to Use:</h3><br/>
+ * {@link #start()} it with the server and {@link #stop()} it once the workers are done, which
+ * closes the connections still watched. The {@link SelectorHandover}s register themselves.
+ * </p>
+ */
+public final class HandoverSelector {
+    private static final Logger LOG = Logger.getLogger(HandoverSelector.class.getName());
+    /**
+     * The interval at which the channels closed by their socket are looked for, closing a
+     * registered channel cancels its key without waking the selector up
+     */
+    private static final long SWEEP_MILLIS = 1000;
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    @NonNull
+    private final Queue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+    @NonNull
+    private final Set<SelectorHandover> mHandovers =
+            Collections.newSetFromMap(new ConcurrentHashMap<SelectorHandover, Boolean>());
+    /**
+     * The selector of the running thread, null while stopped
+     */
+    @Nullable
+    private volatile Selector mSelector;
+    @Nullable
+    private Thread mThread;
+
+    /**
+     * Call this method to start the thread, nothing happens if it is already running
+     *
+     * @throws IOException if the selector cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        if (mSelector != null)
+            return;
+        final Selector selector = Selector.open();
+        mSelector = selector;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop(selector);
+            }
+        }, "WebServer Handover Selector");
+        thread.setDaemon(true);
+        mThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Call this method to close the watched connections and end the thread, it waits for the
+     * thread to end
+     */
+    public synchronized void stop() {
+        Selector selector = mSelector;
+        Thread thread = mThread;
+        if (selector == null || thread == null)
+            return;
+        mSelector = null;
+        mThread = null;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Called on the worker once the response is sent, the handover is closed if the thread is
+     * not running
+     */
+    void register(@NonNull final SelectorHandover handover) {
+        mHandovers.add(handover);
+        post(new Runnable() {
+            @Override
+            public void run() {
+                Selector selector = mSelector;
+                if (selector != null)
+                    handover.register(selector);
+            }
+        });
+        //the thread may have drained the connections before this one was added
+        if (mSelector == null)
+            handover.close();
+    }
+
+    /**
+     * Called once the handover is closed
+     */
+    void unregister(@NonNull SelectorHandover handover) {
+        mHandovers.remove(handover);
+    }
+
+    /**
+     * Called on any thread when the owner of the handover waits for the socket to be writable
+     */
+    void requestWritable(@NonNull final SelectorHandover handover) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                handover.updateInterest();
+            }
+        });
+    }
+
+    private void post(@NonNull Runnable task) {
+        mTasks.add(task);
+        Selector selector = mSelector;
+        if (selector != null)
+            selector.wakeup();
+    }
+
+    private void runLoop(@NonNull Selector selector) {
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS);
+        try {
+            while (mSelector == selector) {
+                runTasks();
+                selector.select(SWEEP_MILLIS);
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ((SelectorHandover) key.attachment()).onSelected(key, readBuffer);
+                }
+                long now = System.nanoTime();
+                if (now - nextSweep >= 0) {
+                    for (SelectorHandover handover : mHandovers) {
+                        if (!handover.isChannelClosed())
+                            continue;
+                        handover.close();
+                        //a handover closed while it registered is not released again
+                        mHandovers.remove(handover);
+                    }
+                    nextSweep = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            LOG.log(Level.SEVERE, "The handover selector failed", e);
+        } finally {
+            if (mSelector == selector)
+                mSelector = null;
+            mTasks.clear();
+            for (SelectorHandover handover : new ArrayList<>(mHandovers))
+                handover.close();
+            mHandovers.clear();
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                //nothing left to release
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = mTasks.poll()) != null)
+            task.run();
+    }
+}
@@ -0,0 +1,199 @@
+package com.bharathksunil.androidwebserver.connection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * The {@link ClientConnection.Handover} of an engine serving each connection on its own worker.
+ * Once the response is sent the worker stops reading requests and gives the channel, now
+ * non-blocking, to the {@link HandoverSelector} shared by all the connections, then goes back to
+ * the pool. The selector reports what the client sends and when the socket is writable to the new
+ * owner, which writes from any thread without the risk of blocking on a slow client.
+ * <p>
+ * <h3>How to Use:</h3><br/>
+ * Pass one to the {@link ClientConnection} of a socket which has a channel, then call
+ * {@link #watch(Runnable)} on the worker once the response is sent if the connection was handed
+ * over.
+ * </p>
+ */
+public final class SelectorHandover implements ClientConnection.Handover {
+    private static final Logger LOG = Logger.getLogger(SelectorHandover.class.getName());
+
+    @NonNull
+    private final SocketChannel mChannel;
+    @NonNull
+    private final HandoverSelector mSelector;
+    @NonNull
+    private final AtomicBoolean mClosed = new AtomicBoolean();
+    /**
+     * Set by the owner when a write sent nothing, cleared by the selector which then waits for it
+     */
+    @NonNull
+    private final AtomicBoolean mWriteRequested = new AtomicBoolean();
+    /**
+     * Releases what the engine holds for the connection, taken by the first close after a watch
+     */
+    @NonNull
+    private final AtomicReference<Runnable> mRelease = new AtomicReference<>();
+    @Nullable
+    private volatile ClientConnection.HandoverListener mListener;
+    /**
+     * The key of the channel with the shared selector, only touched by its thread
+     */
+    @Nullable
+    private SelectionKey mKey;
+
+    /**
+     * @param channel  the channel of the accepted socket, still blocking
+     * @param selector watches the channel once the connection is handed over
+     */
+    public SelectorHandover(@NonNull SocketChannel channel, @NonNull HandoverSelector selector) {
+        this.mChannel = channel;
+        this.mSelector = selector;
+    }
+
+    @Override
+    public void handOver(@NonNull ClientConnection.HandoverListener listener) {
+        mListener = listener;
+        try {
+            mChannel.configureBlocking(false);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (mClosed.get())
+            listener.onClosed();
+    }
+
+    /**
+     * Call this method on the worker once the response which handed the connection over is sent.
+     * It returns at once, the channel is then watched by the shared selector until it closes.
+     *
+     * @param release run once the connection is closed, by the client, the owner or the server
+     */
+    public void watch(@NonNull Runnable release) {
+        if (mListener == null)
+            throw new IllegalStateException("the connection was not handed over");
+        mRelease.set(release);
+        if (mClosed.get())
+            release();
+        else
+            mSelector.register(this);
+    }
+
+    /**
+     * Called on the thread of the selector to start watching the channel
+     */
+    void register(@NonNull Selector selector) {
+        if (mClosed.get())
+            return;
+        try {
+            mKey = mChannel.register(selector, SelectionKey.OP_READ, this);
+            updateInterest();
+        } catch (IOException | CancelledKeyException e) {
+            LOG.log(Level.FINE, "Could not watch a handed over connection", e);
+            close();
+        }
+    }
+
+    /**
+     * Called on the thread of the selector once the owner asked for the socket to be writable
+     */
+    void updateInterest() {
+        SelectionKey key = mKey;
+        if (key == null || !key.isValid() || !mWriteRequested.getAndSet(false))
+            return;
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Called on the thread of the selector when the channel is ready
+     *
+     * @param buffer the buffer of the selector, reused for every connection
+     */
+    void onSelected(@NonNull SelectionKey key, @NonNull ByteBuffer buffer) {
+        ClientConnection.HandoverListener listener = mListener;
+        try {
+            //the ready operations of a key are only updated when it is selected
+            if (listener == null || !key.isValid() || key.isReadable() && !read(buffer, listener)) {
+                close();
+                return;
+            }
+            if (key.isValid() && key.isWritable()) {
+                key.interestOps(SelectionKey.OP_READ);
+                listener.onWritable();
+            }
+        } catch (IOException | CancelledKeyException e) {
+            LOG.log(Level.FINE, "Stopped watching a handed over connection", e);
+            close();
+        } catch (RuntimeException e) {
+            //the selector is shared, the other connections must not fail with this one
+            LOG.log(Level.SEVERE, "The owner of a handed over connection failed", e);
+            close();
+        }
+    }
+
+    /**
+     * @return true once the socket of the connection has been closed
+     */
+    boolean isChannelClosed() {
+        return !mChannel.isOpen();
+    }
+
+    /**
+     * @return false once the client has closed the connection
+     */
+    private boolean read(@NonNull ByteBuffer buffer,
+                         @NonNull ClientConnection.HandoverListener listener) throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = mChannel.read(buffer);
+            if (read < 0)
+                return false;
+            if (read == 0)
+                return true;
+            buffer.flip();
+            listener.onReceived(buffer);
+        }
+    }
+
+    @Override
+    public void requestWritable() {
+        mWriteRequested.set(true);
+        mSelector.requestWritable(this);
+    }
+
+    @Override
+    public void close() {
+        if (!mClosed.compareAndSet(false, true))
+            return;
+        try {
+            mChannel.close();
+        } catch (IOException ignored) {
+            //the socket is unusable either way
+        }
+        ClientConnection.HandoverListener listener = mListener;
+        if (listener != null)
+            listener.onClosed();
+        release();
+    }
+
+    private void release() {
+        Runnable release = mRelease.getAndSet(null);
+        if (release == null)
+            return;
+        mSelector.unregister(this);
+        release.run();
+    }
+}
@@ -0,0 +1,285 @@
+package com.bharathksunil.androidwebserver.connection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * A {@link ServerSocket} which accepts the clients of several listening channels, so the single
+ * listener thread of NanoHTTPD can serve several addresses and move to a new one without ever
+ * refusing a client.
+ * <p>
+ * A new address is bound, and starts queueing clients, before it is returned; the listener thread
+ * then picks it up with its next select. An address which is removed stops accepting at once, the
+ * clients it accepted are left to the server. The accepted sockets have a blocking channel, like
+ * the ones of {@link ServerSocketChannel#socket()}.
+ * </p>
+ */
+public final class ServerSocketGroup extends ServerSocket {
+    /**
+     * The addresses bound by {@link #bind(SocketAddress, int)}
+     */
+    @NonNull
+    private final List<InetSocketAddress> mInitialAddresses;
+    /**
+     * The channels accepting clients, the first one is reported by {@link #getLocalPort()}
+     */
+    @NonNull
+    private final List<ServerSocketChannel> mChannels = new CopyOnWriteArrayList<>();
+    /**
+     * The channels bound but not yet registered with the selector, which only the listener thread
+     * registers
+     */
+    @NonNull
+    private final Queue<ServerSocketChannel> mPending = new ConcurrentLinkedQueue<>();
+    @NonNull
+    private final Selector mSelector;
+    private volatile boolean mBound;
+    private volatile boolean mClosed;
+
+    /**
+     * @param addresses the addresses bound once NanoHTTPD binds the socket, which ignores the
+     *                  address NanoHTTPD passes
+     * @throws IOException if the selector could not be opened
+     */
+    public ServerSocketGroup(@NonNull List<InetSocketAddress> addresses) throws IOException {
+        this.mInitialAddresses = new ArrayList<>(addresses);
+        this.mSelector = Selector.open();
+    }
+
+    /**
+     * Call this method from any thread to accept the clients of another address as well
+     *
+     * @param address the address to bind
+     * @return the bound address, which tells the port if the address asked for any
+     * @throws IOException if the address could not be bound
+     */
+    @NonNull
+    public synchronized InetSocketAddress add(@NonNull InetSocketAddress address) throws IOException {
+        ServerSocketChannel channel = open(address);
+        mChannels.add(channel);
+        mPending.add(channel);
+        mSelector.wakeup();
+        return (InetSocketAddress) channel.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * Call this method from any thread to move the clients of an address to another one, which
+     * takes its place. The new address is bound before the previous one stops accepting.
+     *
+     * @param previous the address to stop accepting on, as returned by {@link #getAddresses()}
+     * @param address  the address to bind
+     * @return the bound address
+     * @throws IOException if the address could not be bound, the previous one then keeps
+     *                     accepting
+     */
+    @NonNull
+    public synchronized InetSocketAddress replace(@NonNull InetSocketAddress previous,
+                                                 @NonNull InetSocketAddress address) throws IOException {
+        ServerSocketChannel channel = open(address);
+        int index = indexOf(previous);
+        if (index >= 0)
+            closeQuietly(mChannels.set(index, channel));
+        else
+            mChannels.add(channel);
+        mPending.add(channel);
+        mSelector.wakeup();
+        return (InetSocketAddress) channel.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * Call this method from any thread to stop accepting the clients of an address
+     *
+     * @param address the address as returned by {@link #add(InetSocketAddress)} or
+     *                {@link #getAddresses()}
+     * @return true if the address was accepting clients
+     */
+    public synchronized boolean remove(@NonNull InetSocketAddress address) {
+        int index = indexOf(address);
+        if (index < 0)
+            return false;
+        closeQuietly(mChannels.remove(index));
+        mSelector.wakeup();
+        return true;
+    }
+
+    /**
+     * @return the addresses accepting clients
+     */
+    @NonNull
+    public List<InetSocketAddress> getAddresses() {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (ServerSocketChannel channel : mChannels)
+            addresses.add((InetSocketAddress) channel.socket().getLocalSocketAddress());
+        return addresses;
+    }
+
+    //region Overridden Methods: ServerSocket
+    @Override
+    public void bind(SocketAddress endpoint) throws IOException {
+        bind(endpoint, 0);
+    }
+
+    @Override
+    public void bind(SocketAddress endpoint, int backlog) throws IOException {
+        if (mBound)
+            throw new SocketException("Already bound");
+        try {
+            for (InetSocketAddress address : mInitialAddresses)
+                add(address);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        mBound = true;
+    }
+
+    /**
+     * Called on the listener thread only
+     */
+    @Override
+    public Socket accept() throws IOException {
+        try {
+            while (!mClosed) {
+                ServerSocketChannel pending;
+                while ((pending = mPending.poll()) != null) {
+                    try {
+                        pending.register(mSelector, SelectionKey.OP_ACCEPT);
+                    } catch (ClosedChannelException ignored) {
+                        //removed before it was registered
+                    }
+                }
+                Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    SocketChannel client;
+                    try {
+                        client = ((ServerSocketChannel) key.channel()).accept();
+                    } catch (IOException e) {
+                        //an address removed meanwhile
+                        continue;
+                    }
+                    if (client != null)
+                        //accepted channels block regardless of the server channel
+                        return client.socket();
+                }
+                mSelector.select();
+            }
+        } catch (ClosedSelectorException ignored) {
+            //closed meanwhile
+        }
+        throw new SocketException("Socket is closed");
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mClosed)
+            return;
+        mClosed = true;
+        for (ServerSocketChannel channel : mChannels)
+            closeQuietly(channel);
+        mChannels.clear();
+        mPending.clear();
+        mSelector.wakeup();
+        closeQuietly(mSelector);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    @Override
+    public boolean isBound() {
+        return mBound;
+    }
+
+    @Override
+    public int getLocalPort() {
+        for (ServerSocketChannel channel : mChannels)
+            return channel.socket().getLocalPort();
+        return -1;
+    }
+
+    @Override
+    @Nullable
+    public InetAddress getInetAddress() {
+        for (ServerSocketChannel channel : mChannels)
+            return channel.socket().getInetAddress();
+        return null;
+    }
+
+    @Override
+    @Nullable
+    public SocketAddress getLocalSocketAddress() {
+        for (ServerSocketChannel channel : mChannels)
+            return channel.socket().getLocalSocketAddress();
+        return null;
+    }
+
+    @Override
+    public void setReuseAddress(boolean on) {
+        //every channel reuses its address
+    }
+
+    @Override
+    public String toString() {
+        return "ServerSocketGroup" + getAddresses();
+    }
+    //endregion
+
+    @NonNull
+    private ServerSocketChannel open(@NonNull InetSocketAddress address) throws IOException {
+        if (mClosed)
+            throw new SocketException("Socket is closed");
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    private int indexOf(@NonNull InetSocketAddress address) {
+        for (int i = 0; i < mChannels.size(); i++) {
+            if (address.equals(mChannels.get(i).socket().getLocalSocketAddress()))
+                return i;
+        }
+        return -1;
+    }
+
+    private static void closeQuietly(@NonNull Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            //nothing left to release
+        }
+    }
+}
@@ -9,7 +9,6 @@ import android.net.wifi.SupplicantState;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
@@ -22,8 +21,9 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bharathksunil.androidwebserver.BuildConfig;
-import com.bharathksunil.androidwebserver.MyWebServer;
+import com.bharathksunil.androidwebserver.IWebServer;
 import com.bharathksunil.androidwebserver.R;
+import com.bharathksunil.androidwebserver.WebServerFactory;
 import com.bharathksunil.androidwebserver.exception.WebServerException;
 import com.bharathksunil.androidwebserver.model.WebServerConfig;
 import com.bharathksunil.androidwebserver.presenter.IWebServerPresenter;
@@ -38,6 +38,9 @@ import java.util.List;
 import butterknife.BindView;
 import butterknife.BindViews;
 import butterknife.ButterKnife;
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.schedulers.Schedulers;
 
 /**
  * A simple {@link Fragment} subclass.
@@ -163,9 +166,14 @@ public class WebServerFragment extends Fragment implements IWebServerPresenter.V
             return myView;
         });
         mServerStatusImageSwitcher.setImageResource(IMG_RES_SERVER_SWITCHING);
-        mWebServerPresenter = new MyWebServerPresenter(new MyWebServer(
+        IWebServer webServer = WebServerFactory.create(
                 new WebServerConfig(getWiFiIp(), mPortNumber, mRunInBackground)
-        ));
+        );
+        webServer.addRoute(NanoHTTPD.Method.GET, "/",
+                (session, match) -> NanoHTTPD.newFixedLengthResponse("Hello World"));
+        //the server binds and drains off the main thread, one lifecycle task at a time
+        mWebServerPresenter = new MyWebServerPresenter(webServer, Schedulers.single(),
+                AndroidSchedulers.mainThread());
         mWebServerPresenter.setView(this);
         mTextViewList.get(INDEX_TV_APP_VERSION).setText(
                 String.format(getString(R.string.format_app_version), BuildConfig.VERSION_NAME)
@@ -191,7 +199,8 @@ public class WebServerFragment extends Fragment implements IWebServerPresenter.V
         }
         Log.i(TAG, "onServerStarted: " +
                 "ipAddress: " + webServerConfig.getIpAddress() +
-                "port: " + webServerConfig.getPortNumber());
+                "port: " + webServerConfig.getPortNumber() +
+                "timeToListeningMillis: " + mWebServerPresenter.getTimeToListeningMillis());
         if (mListener != null)
             mListener.showPowerButton(false);
         mServerStatusImageSwitcher.setImageResource(IMG_RES_SERVER_ON);
@@ -264,8 +273,7 @@ public class WebServerFragment extends Fragment implements IWebServerPresenter.V
     public void powerOnWebServer() {
         Log.d(TAG, "powerOnWebServer: called");
         mServerStatusImageSwitcher.setImageResource(IMG_RES_SERVER_SWITCHING);
-        new Handler().postDelayed(() -> mWebServerPresenter.startServer(), 1000);
-
+        mWebServerPresenter.startServer();
     }
 
     /**
@@ -274,8 +282,7 @@ public class WebServerFragment extends Fragment implements IWebServerPresenter.V
     public void powerOffWebServer() {
         Log.d(TAG, "powerOffWebServer: called");
         mServerStatusImageSwitcher.setImageResource(IMG_RES_SERVER_SWITCHING);
-        new Handler().postDelayed(() -> mWebServerPresenter.stopServer(), 1000);
-
+        mWebServerPresenter.stopServer();
     }
 
     /**
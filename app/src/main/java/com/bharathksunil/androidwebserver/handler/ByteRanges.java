@@ -0,0 +1,131 @@
+package com.bharathksunil.androidwebserver.handler;
+
+import java.util.Arrays;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This parses the value of a Range header against the size of a file. The ranges are sorted and
+ * overlapping or adjacent ones are merged, so a client cannot make the server send the same bytes
+ * many times over.
+ */
+final class ByteRanges {
+    /**
+     * Requests asking for more distinct regions than this are answered with the whole file
+     */
+    static final int MAX_RANGES = 16;
+    private static final String BYTES_UNIT = "bytes=";
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private ByteRanges() {
+    }
+
+    /**
+     * @param range  the value of the Range header
+     * @param length the size of the file
+     * @return the first and last byte of every region in pairs, an empty array if none of the
+     * ranges lies within the file, or null if the header must be ignored and the whole file sent
+     */
+    @Nullable
+    static long[] parse(@NonNull String range, long length) {
+        String value = range.trim();
+        if (!value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length()))
+            return null;
+        long[] ranges = new long[8];
+        int count = 0;
+        int start = BYTES_UNIT.length();
+        while (start <= value.length()) {
+            int end = value.indexOf(',', start);
+            if (end < 0)
+                end = value.length();
+            int dash = value.indexOf('-', start);
+            if (dash < 0 || dash >= end) {
+                //an empty element between commas is allowed, anything else is malformed
+                if (!value.substring(start, end).trim().isEmpty())
+                    return null;
+                start = end + 1;
+                continue;
+            }
+            long first = parseNumber(value, start, dash);
+            long last = parseNumber(value, dash + 1, end);
+            if (first == -1) {
+                //a suffix range names the number of bytes at the end of the file
+                if (last < 0)
+                    return null;
+                first = Math.max(0, length - last);
+                last = length - 1;
+            } else if (first < -1 || last < -1 || (last >= 0 && last < first)) {
+                return null;
+            } else if (last == -1 || last >= length) {
+                last = length - 1;
+            }
+            if (first <= last) {
+                if (count == ranges.length)
+                    ranges = Arrays.copyOf(ranges, count * 2);
+                ranges[count++] = first;
+                ranges[count++] = last;
+            }
+            start = end + 1;
+        }
+        if (count == 0)
+            return UNSATISFIABLE;
+        return merge(ranges, count);
+    }
+
+    /**
+     * @return the merged ranges, null if there are still too many of them
+     */
+    @Nullable
+    private static long[] merge(@NonNull long[] ranges, int count) {
+        int pairs = count / 2;
+        //insertion sort by the first byte, the number of ranges is small
+        for (int i = 1; i < pairs; i++) {
+            long first = ranges[2 * i];
+            long last = ranges[2 * i + 1];
+            int j = i - 1;
+            while (j >= 0 && ranges[2 * j] > first) {
+                ranges[2 * j + 2] = ranges[2 * j];
+                ranges[2 * j + 3] = ranges[2 * j + 1];
+                j--;
+            }
+            ranges[2 * j + 2] = first;
+            ranges[2 * j + 3] = last;
+        }
+        int merged = 0;
+        for (int i = 1; i < pairs; i++) {
+            if (ranges[2 * i] <= ranges[2 * merged + 1] + 1) {
+                ranges[2 * merged + 1] = Math.max(ranges[2 * merged + 1], ranges[2 * i + 1]);
+            } else {
+                merged++;
+                ranges[2 * merged] = ranges[2 * i];
+                ranges[2 * merged + 1] = ranges[2 * i + 1];
+            }
+        }
+        merged++;
+        if (merged > MAX_RANGES)
+            return null;
+        return Arrays.copyOf(ranges, merged * 2);
+    }
+
+    /**
+     * @return the number, -1 if the region is blank or -2 if it is not a number
+     */
+    private static long parseNumber(@NonNull String value, int start, int end) {
+        while (start < end && value.charAt(start) == ' ')
+            start++;
+        while (end > start && value.charAt(end - 1) == ' ')
+            end--;
+        if (start == end)
+            return -1;
+        long number = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+                return -2;
+            //positions beyond any file size are clamped rather than overflowing
+            number = number > Long.MAX_VALUE / 10 - 1 ? Long.MAX_VALUE / 2 : number * 10 + (c - '0');
+        }
+        return number;
+    }
+}
@@ -0,0 +1,350 @@
+package com.bharathksunil.androidwebserver.handler;
+
+import com.bharathksunil.androidwebserver.cache.CachedFile;
+import com.bharathksunil.androidwebserver.cache.ResponseCache;
+import com.bharathksunil.androidwebserver.compression.CompressedFileStore;
+import com.bharathksunil.androidwebserver.compression.CompressionPolicy;
+import com.bharathksunil.androidwebserver.compression.ContentEncoding;
+import com.bharathksunil.androidwebserver.response.ByteArrayResponse;
+import com.bharathksunil.androidwebserver.response.FileResponse;
+import com.bharathksunil.androidwebserver.response.HttpDate;
+import com.bharathksunil.androidwebserver.response.MultiRangeFileResponse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This serves the files below a document root. File bodies are sent with {@link FileResponse},
+ * so large APKs and media files go straight from the page cache to the socket, while small hot
+ * files are served from the {@link ResponseCache} when one is given.
+ * <p>
+ * Files allowed by the {@link CompressionPolicy} are compressed once per version, in memory along
+ * with their cached body or on disk in the {@link CompressedFileStore}, and the stored copy is
+ * served to every client accepting that coding.
+ * </p>
+ * <p>
+ * GET requests with a Range header are answered with 206 Partial Content, so downloads can resume
+ * and media players can seek. The ranges are always cut from the uncompressed file and streamed
+ * from its channel, several of them as multipart/byteranges.
+ * </p>
+ * <p>
+ * Only GET and HEAD are allowed. A directory is served through its index.html, directory listings
+ * are never generated and paths climbing out of the document root are refused.
+ * </p>
+ */
+public class StaticFileHandler {
+    /**
+     * The file served when a directory is requested
+     */
+    public static final String INDEX_FILE = "index.html";
+
+    /**
+     * The directory the request paths are resolved against
+     */
+    @NonNull
+    private final File mDocumentRoot;
+    /**
+     * The canonical path of the document root, which the canonical path of every file served
+     * must start with
+     */
+    @NonNull
+    private final String mCanonicalRoot;
+    /**
+     * Holds the bodies of the small hot files, null if they are always read from disk
+     */
+    @Nullable
+    private final ResponseCache mResponseCache;
+    /**
+     * Decides which files are compressed, null to never compress
+     */
+    @Nullable
+    private final CompressionPolicy mCompressionPolicy;
+    /**
+     * Holds the compressed copies of the files which are not in the response cache, null to send
+     * those files as is
+     */
+    @Nullable
+    private final CompressedFileStore mCompressedFileStore;
+
+    /**
+     * @param documentRoot the directory the request paths are resolved against
+     */
+    public StaticFileHandler(@NonNull File documentRoot) {
+        this(documentRoot, null, null, null);
+    }
+
+    /**
+     * @param documentRoot        the directory the request paths are resolved against
+     * @param responseCache       holds the bodies of the small hot files, null to always read
+     *                            from disk
+     * @param compressionPolicy   decides which files are compressed, null to never compress
+     * @param compressedFileStore holds the compressed copies of the files which are not in the
+     *                            response cache, null to send those files as is
+     */
+    public StaticFileHandler(@NonNull File documentRoot,
+                             @Nullable ResponseCache responseCache,
+                             @Nullable CompressionPolicy compressionPolicy,
+                             @Nullable CompressedFileStore compressedFileStore) {
+        this.mDocumentRoot = documentRoot;
+        this.mCanonicalRoot = canonicalPath(documentRoot);
+        this.mResponseCache = responseCache;
+        this.mCompressionPolicy = compressionPolicy;
+        this.mCompressedFileStore = compressedFileStore;
+    }
+
+    /**
+     * @return the directory the request paths are resolved against
+     */
+    @NonNull
+    public File getDocumentRoot() {
+        return mDocumentRoot;
+    }
+
+    /**
+     * Call this method to serve a request from the document root
+     *
+     * @param session the request
+     * @return the file, or the error response explaining why it cannot be served
+     */
+    @NonNull
+    public NanoHTTPD.Response serve(@NonNull NanoHTTPD.IHTTPSession session) {
+        NanoHTTPD.Method method = session.getMethod();
+        if (method != NanoHTTPD.Method.GET && method != NanoHTTPD.Method.HEAD) {
+            NanoHTTPD.Response response = error(NanoHTTPD.Response.Status.METHOD_NOT_ALLOWED);
+            response.addHeader("Allow", "GET, HEAD");
+            return response;
+        }
+        File file = resolve(session.getUri());
+        if (file == null)
+            return error(NanoHTTPD.Response.Status.FORBIDDEN);
+        if (file.isDirectory()) {
+            file = new File(file, INDEX_FILE);
+            //the index may be a link of its own
+            if (!isBelowRoot(file))
+                return error(NanoHTTPD.Response.Status.FORBIDDEN);
+        }
+        if (!file.isFile())
+            return error(NanoHTTPD.Response.Status.NOT_FOUND);
+        if (!file.canRead())
+            return error(NanoHTTPD.Response.Status.FORBIDDEN);
+        return serveFile(session, file);
+    }
+
+    /**
+     * Call this method to map a request path to a file below the document root
+     *
+     * @param uri the decoded request path
+     * @return the file, null if the path or a symbolic link on it leads out of the document root
+     */
+    File resolve(@NonNull String uri) {
+        if (uri.indexOf('\0') >= 0 || uri.indexOf('\\') >= 0)
+            return null;
+        //NanoHTTPD has already percent decoded the path, the dot segments are refused cheaply
+        if (uri.equals("..") || uri.startsWith("../") || uri.contains("/../") || uri.endsWith("/.."))
+            return null;
+        File file = new File(mDocumentRoot, uri);
+        return isBelowRoot(file) ? file : null;
+    }
+
+    /**
+     * @return true if the file, once its symbolic links are followed, is the document root or
+     * below it, false if it cannot be told
+     */
+    private boolean isBelowRoot(@NonNull File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            return false;
+        }
+        return path.equals(mCanonicalRoot) || path.startsWith(mCanonicalRoot.endsWith(File.separator)
+                ? mCanonicalRoot : mCanonicalRoot + File.separator);
+    }
+
+    @NonNull
+    private static String canonicalPath(@NonNull File directory) {
+        try {
+            return directory.getCanonicalPath();
+        } catch (IOException e) {
+            //a root which cannot be resolved yet is compared as it is
+            return directory.getAbsolutePath();
+        }
+    }
+
+    /**
+     * @param session the request
+     * @param file    the readable file to send
+     * @return the response sending the file, or 304 if the client copy is still valid
+     */
+    @NonNull
+    private NanoHTTPD.Response serveFile(@NonNull NanoHTTPD.IHTTPSession session, @NonNull File file) {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String version = Long.toHexString(length) + "-" + Long.toHexString(lastModified);
+        String mimeType = NanoHTTPD.getMimeTypeForFile(file.getName());
+        boolean compressible = mCompressionPolicy != null && mCompressionPolicy.isCompressible(mimeType, length);
+        ContentEncoding encoding = compressible
+                ? ContentEncoding.negotiate(session.getHeaders().get("accept-encoding")) : null;
+        String ifNoneMatch = session.getHeaders().get("if-none-match");
+        if (ifNoneMatch != null && isCurrent(ifNoneMatch, version)) {
+            NanoHTTPD.Response response = NanoHTTPD.newFixedLengthResponse(
+                    NanoHTTPD.Response.Status.NOT_MODIFIED, null, null, 0);
+            response.addHeader("ETag", eTag(version, encoding));
+            if (compressible)
+                response.addHeader("Vary", "Accept-Encoding");
+            return response;
+        }
+        String range = session.getMethod() == NanoHTTPD.Method.GET
+                ? session.getHeaders().get("range") : null;
+        if (range != null && isRangeCurrent(session.getHeaders().get("if-range"), version, lastModified)) {
+            long[] ranges = ByteRanges.parse(range, length);
+            if (ranges != null) {
+                NanoHTTPD.Response response = serveRanges(file, mimeType, length, ranges);
+                if (compressible)
+                    response.addHeader("Vary", "Accept-Encoding");
+                response.addHeader("ETag", eTag(version, null));
+                response.addHeader("Last-Modified", HttpDate.format(lastModified));
+                return response;
+            }
+        }
+        NanoHTTPD.Response response;
+        CachedFile cachedFile = mResponseCache != null
+                ? mResponseCache.get(file, length, lastModified) : null;
+        if (cachedFile != null) {
+            byte[] body = encoding != null ? mResponseCache.getVariant(cachedFile, encoding) : null;
+            if (body == null) {
+                body = cachedFile.getBody();
+                encoding = null;
+            }
+            response = new ByteArrayResponse(NanoHTTPD.Response.Status.OK, mimeType, body);
+        } else {
+            File variant = encoding != null && mCompressedFileStore != null
+                    ? mCompressedFileStore.get(file, length, lastModified, encoding) : null;
+            if (variant == null)
+                encoding = null;
+            File source = variant != null ? variant : file;
+            FileChannel fileChannel;
+            try {
+                fileChannel = new FileInputStream(source).getChannel();
+            } catch (IOException e) {
+                return error(NanoHTTPD.Response.Status.NOT_FOUND);
+            }
+            response = new FileResponse(NanoHTTPD.Response.Status.OK, mimeType, fileChannel, 0,
+                    variant != null ? variant.length() : length);
+        }
+        if (encoding != null)
+            response.addHeader("Content-Encoding", encoding.getToken());
+        if (compressible)
+            response.addHeader("Vary", "Accept-Encoding");
+        response.addHeader("Accept-Ranges", "bytes");
+        response.addHeader("ETag", eTag(version, encoding));
+        response.addHeader("Last-Modified", HttpDate.format(lastModified));
+        return response;
+    }
+
+    /**
+     * @param file     the readable file to send
+     * @param mimeType the content type of the file
+     * @param length   the size of the file
+     * @param ranges   the first and last byte of every requested region in pairs, empty if none
+     *                 lies within the file
+     * @return the response sending the regions, or 416 if there are none
+     */
+    @NonNull
+    private NanoHTTPD.Response serveRanges(@NonNull File file, @NonNull String mimeType,
+                                           long length, @NonNull long[] ranges) {
+        if (ranges.length == 0) {
+            NanoHTTPD.Response response = error(NanoHTTPD.Response.Status.RANGE_NOT_SATISFIABLE);
+            response.addHeader("Content-Range", "bytes */" + length);
+            return response;
+        }
+        FileChannel fileChannel;
+        try {
+            fileChannel = new FileInputStream(file).getChannel();
+        } catch (IOException e) {
+            return error(NanoHTTPD.Response.Status.NOT_FOUND);
+        }
+        NanoHTTPD.Response response;
+        if (ranges.length == 2) {
+            response = new FileResponse(NanoHTTPD.Response.Status.PARTIAL_CONTENT, mimeType,
+                    fileChannel, ranges[0], ranges[1] - ranges[0] + 1);
+            response.addHeader("Content-Range", "bytes " + ranges[0] + "-" + ranges[1] + "/" + length);
+        } else {
+            response = new MultiRangeFileResponse(mimeType, fileChannel, length, ranges);
+        }
+        response.addHeader("Accept-Ranges", "bytes");
+        return response;
+    }
+
+    /**
+     * @param length       the size of the file
+     * @param lastModified the modification time of the file
+     * @return the validator of the uncompressed file, which changes whenever the file is replaced
+     */
+    @NonNull
+    static String eTag(long length, long lastModified) {
+        return eTag(Long.toHexString(length) + "-" + Long.toHexString(lastModified), null);
+    }
+
+    /**
+     * @param version  the size and modification time of the file
+     * @param encoding the coding of the body, null if it is not compressed
+     * @return the validator of the body, every coding has its own
+     */
+    @NonNull
+    private static String eTag(@NonNull String version, @Nullable ContentEncoding encoding) {
+        return encoding == null ? "\"" + version + "\"" : "\"" + version + "-" + encoding.getToken() + "\"";
+    }
+
+    /**
+     * The variants of a file are equivalent, so any of their validators proves the client holds
+     * the current version
+     *
+     * @param ifNoneMatch the value of the If-None-Match header
+     * @param version     the size and modification time of the file
+     * @return true if the header names the current version of the file
+     */
+    private static boolean isCurrent(@NonNull String ifNoneMatch, @NonNull String version) {
+        if (ifNoneMatch.trim().equals("*"))
+            return true;
+        int index = ifNoneMatch.indexOf("\"" + version);
+        while (index >= 0) {
+            int next = index + version.length() + 1;
+            if (next < ifNoneMatch.length() && (ifNoneMatch.charAt(next) == '"' || ifNoneMatch.charAt(next) == '-'))
+                return true;
+            index = ifNoneMatch.indexOf("\"" + version, next);
+        }
+        return false;
+    }
+
+    /**
+     * A range is only applied to the version of the file the client already holds a part of,
+     * otherwise the whole file is sent
+     *
+     * @param ifRange      the value of the If-Range header, null if it was not sent
+     * @param version      the size and modification time of the file
+     * @param lastModified the modification time of the file
+     * @return true if the requested ranges can be sent
+     */
+    private static boolean isRangeCurrent(@Nullable String ifRange, @NonNull String version, long lastModified) {
+        if (ifRange == null)
+            return true;
+        String value = ifRange.trim();
+        //a weak validator never matches, the bytes of a weakly equal file may differ
+        if (value.startsWith("\"") || value.startsWith("W/"))
+            return value.equals(eTag(version, null));
+        long date = HttpDate.parse(value);
+        return date >= 0 && date / 1000 == lastModified / 1000;
+    }
+
+    @NonNull
+    private static NanoHTTPD.Response error(@NonNull NanoHTTPD.Response.Status status) {
+        return NanoHTTPD.newFixedLengthResponse(status, NanoHTTPD.MIME_PLAINTEXT, status.getDescription());
+    }
+}
@@ -0,0 +1,74 @@
+package com.bharathksunil.androidwebserver.metrics;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * A snapshot of a {@link LatencyHistogram}, all values are in microseconds
+ */
+public final class HistogramSnapshot {
+    @NonNull
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(@NonNull long[] counts, long sum, long max) {
+        this.counts = counts;
+        long total = 0;
+        for (long bucket : counts)
+            total += bucket;
+        this.count = total;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * @return the number of recorded latencies
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sum of the recorded latencies
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the largest recorded latency
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param quantile the quantile, between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return the latency below or at which this quantile of the recorded latencies lie, 0 if
+     * none were recorded
+     */
+    public long getValueAtQuantile(double quantile) {
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(1, Math.max(0, quantile)) * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(LatencyHistogram.highestValue(i), max);
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot{" +
+                "count=" + count +
+                ", p50=" + getValueAtQuantile(0.5) +
+                ", p90=" + getValueAtQuantile(0.9) +
+                ", p99=" + getValueAtQuantile(0.99) +
+                ", max=" + max +
+                '}';
+    }
+}
@@ -0,0 +1,86 @@
+package com.bharathksunil.androidwebserver.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * A histogram of latencies in microseconds with a fixed memory footprint, laid out like an HDR
+ * histogram: every power of two range is split into {@value #SUB_BUCKET_COUNT} linear buckets, so
+ * any recorded value is known within about 3% whatever its magnitude. Recording is a few bit
+ * operations and one atomic increment, it never allocates and never locks.
+ */
+public final class LatencyHistogram {
+    /**
+     * The number of linear buckets in every power of two range
+     */
+    static final int SUB_BUCKET_COUNT = 32;
+    private static final int SUB_BUCKET_BITS = 5;
+    /**
+     * Values from 2^37 microseconds, about 38 hours, are counted in the last bucket
+     */
+    private static final int MAX_EXPONENT = 37;
+    /**
+     * The number of buckets, which fixes the memory of a histogram at about 8 KiB
+     */
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    @NonNull
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Call this method to record a latency
+     *
+     * @param micros the latency in microseconds, negative values are counted as 0
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        mCounts.incrementAndGet(bucketIndex(value));
+        mSum.addAndGet(value);
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value))
+            max = mMax.get();
+    }
+
+    /**
+     * Call this method to read the histogram, while other threads keep recording into it
+     *
+     * @return a copy of the histogram
+     */
+    @NonNull
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            counts[i] = mCounts.get(i);
+        return new HistogramSnapshot(counts, mSum.get(), mMax.get());
+    }
+
+    /**
+     * @param value a latency in microseconds, at least 0
+     * @return the index of the bucket counting the value
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT)
+            return BUCKET_COUNT - 1;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * @param index the index of a bucket
+     * @return the largest value counted in the bucket
+     */
+    static long highestValue(int index) {
+        int range = index >>> SUB_BUCKET_BITS;
+        int subBucket = index & (SUB_BUCKET_COUNT - 1);
+        if (range == 0)
+            return subBucket;
+        return ((SUB_BUCKET_COUNT + subBucket + 1L) << (range - 1)) - 1;
+    }
+}
@@ -0,0 +1,53 @@
+package com.bharathksunil.androidwebserver.metrics;
+
+import java.util.List;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * A snapshot of the {@link ServerMetrics}
+ */
+public final class MetricsSnapshot {
+    @NonNull
+    private final List<RouteStats> routes;
+    private final int activeConnections;
+    private final long acceptedConnections;
+
+    MetricsSnapshot(@NonNull List<RouteStats> routes, int activeConnections, long acceptedConnections) {
+        this.routes = routes;
+        this.activeConnections = activeConnections;
+        this.acceptedConnections = acceptedConnections;
+    }
+
+    /**
+     * @return the statistics of every route and status class which has served a request, sorted by
+     * route and then status class
+     */
+    @NonNull
+    public List<RouteStats> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @return the number of connections being served by a worker
+     */
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    /**
+     * @return the number of connections served since the server started
+     */
+    public long getAcceptedConnections() {
+        return acceptedConnections;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "routes=" + routes +
+                ", activeConnections=" + activeConnections +
+                ", acceptedConnections=" + acceptedConnections +
+                '}';
+    }
+}
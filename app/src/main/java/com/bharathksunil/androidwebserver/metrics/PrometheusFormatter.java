@@ -0,0 +1,93 @@
+package com.bharathksunil.androidwebserver.metrics;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This writes a {@link MetricsSnapshot} in the Prometheus text exposition format, so the server
+ * can be scraped like any other service. Every series is labelled with the route and the status
+ * class, latencies are exported as summaries in seconds.
+ */
+public final class PrometheusFormatter {
+    /**
+     * The content type of the text exposition format
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final double MICROS_PER_SECOND = 1000000.0;
+
+    private PrometheusFormatter() {
+    }
+
+    /**
+     * @param snapshot the metrics to write
+     * @return the metrics in the text exposition format
+     */
+    @NonNull
+    public static String format(@NonNull MetricsSnapshot snapshot) {
+        StringBuilder text = new StringBuilder(1024 + 512 * snapshot.getRoutes().size());
+        header(text, "webserver_requests_total", "counter", "Requests answered, by route and status class");
+        for (RouteStats route : snapshot.getRoutes())
+            sample(text, "webserver_requests_total", route, null, route.getRequestCount());
+        header(text, "webserver_received_bytes_total", "counter", "Bytes read from the clients, by route and status class");
+        for (RouteStats route : snapshot.getRoutes())
+            sample(text, "webserver_received_bytes_total", route, null, route.getBytesIn());
+        header(text, "webserver_sent_bytes_total", "counter", "Bytes sent to the clients, by route and status class");
+        for (RouteStats route : snapshot.getRoutes())
+            sample(text, "webserver_sent_bytes_total", route, null, route.getBytesOut());
+        header(text, "webserver_request_duration_seconds", "summary", "Time from reading a request to having sent the response");
+        for (RouteStats route : snapshot.getRoutes()) {
+            HistogramSnapshot latency = route.getLatency();
+            for (double quantile : QUANTILES)
+                sample(text, "webserver_request_duration_seconds", route, String.valueOf(quantile),
+                        latency.getValueAtQuantile(quantile) / MICROS_PER_SECOND);
+            sample(text, "webserver_request_duration_seconds_sum", route, null, latency.getSum() / MICROS_PER_SECOND);
+            sample(text, "webserver_request_duration_seconds_count", route, null, latency.getCount());
+        }
+        header(text, "webserver_request_duration_max_seconds", "gauge", "The slowest request, by route and status class");
+        for (RouteStats route : snapshot.getRoutes())
+            sample(text, "webserver_request_duration_max_seconds", route, null,
+                    route.getLatency().getMax() / MICROS_PER_SECOND);
+        header(text, "webserver_active_connections", "gauge", "Connections being served by a worker");
+        text.append("webserver_active_connections ").append(snapshot.getActiveConnections()).append('\n');
+        header(text, "webserver_connections_total", "counter", "Connections served since the server started");
+        text.append("webserver_connections_total ").append(snapshot.getAcceptedConnections()).append('\n');
+        return text.toString();
+    }
+
+    private static void header(@NonNull StringBuilder text, @NonNull String name,
+                               @NonNull String type, @NonNull String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(@NonNull StringBuilder text, @NonNull String name, @NonNull RouteStats route,
+                               @Nullable String quantile, double value) {
+        text.append(name).append("{route=\"");
+        escape(text, route.getRoute());
+        text.append("\",status=\"").append(route.getStatusClass()).append("xx\"");
+        if (quantile != null)
+            text.append(",quantile=\"").append(quantile).append('"');
+        text.append("} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            text.append((long) value);
+        else
+            text.append(value);
+        text.append('\n');
+    }
+
+    /**
+     * Label values escape the backslash, the double quote and the line feed
+     */
+    private static void escape(@NonNull StringBuilder text, @NonNull String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"')
+                text.append('\\').append(c);
+            else if (c == '\n')
+                text.append("\\n");
+            else
+                text.append(c);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.bharathksunil.androidwebserver.metrics;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * A snapshot of the requests one route answered with one status class
+ */
+public final class RouteStats {
+    @NonNull
+    private final String route;
+    private final int statusClass;
+    private final long requestCount;
+    private final long bytesIn;
+    private final long bytesOut;
+    @NonNull
+    private final HistogramSnapshot latency;
+
+    RouteStats(@NonNull String route, int statusClass, long requestCount, long bytesIn, long bytesOut,
+               @NonNull HistogramSnapshot latency) {
+        this.route = route;
+        this.statusClass = statusClass;
+        this.requestCount = requestCount;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.latency = latency;
+    }
+
+    /**
+     * @return the pattern of the route, or {@link ServerMetrics#STATIC_ROUTE} and
+     * {@link ServerMetrics#UNMATCHED_ROUTE} for the requests not served by a route
+     */
+    @NonNull
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * @return the first digit of the statuses answered, 1 to 5
+     */
+    public int getStatusClass() {
+        return statusClass;
+    }
+
+    /**
+     * @return the number of requests answered
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return the bytes read from the clients, request heads included
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return the bytes sent to the clients, response heads included
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * @return the time from reading a request to having sent its response, in microseconds
+     */
+    @NonNull
+    public HistogramSnapshot getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteStats{" +
+                "route='" + route + '\'' +
+                ", statusClass=" + statusClass +
+                ", requestCount=" + requestCount +
+                ", bytesIn=" + bytesIn +
+                ", bytesOut=" + bytesOut +
+                ", latency=" + latency +
+                '}';
+    }
+}
@@ -0,0 +1,140 @@
+package com.bharathksunil.androidwebserver.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * This records what the server does, per route and status class: request counts, bytes in and
+ * out and a {@link LatencyHistogram} of the time taken to answer, along with the active
+ * connections. Routes are keyed by their pattern, never by the request path, so the memory used
+ * is bounded by the number of registered routes times the five status classes.
+ * <p>
+ * Recording only touches atomics and is safe from any worker thread, a {@link #snapshot()} may be
+ * taken at any time.
+ * </p>
+ */
+public class ServerMetrics {
+    /**
+     * The route of the requests served from the document root
+     */
+    public static final String STATIC_ROUTE = "static";
+    /**
+     * The route of the requests no handler was found for
+     */
+    public static final String UNMATCHED_ROUTE = "unmatched";
+    private static final int STATUS_CLASS_COUNT = 5;
+
+    @NonNull
+    private final ConcurrentMap<String, RouteMetrics> mRoutes = new ConcurrentHashMap<>();
+    private final AtomicInteger mActiveConnections = new AtomicInteger();
+    private final AtomicLong mAcceptedConnections = new AtomicLong();
+
+    /**
+     * Call this method once a response has been sent
+     *
+     * @param route    the pattern of the route which served the request
+     * @param status   the status of the response
+     * @param bytesIn  the bytes read for the request
+     * @param bytesOut the bytes sent for the response
+     * @param nanos    the time from reading the request to having sent the response
+     */
+    public void record(@NonNull String route, int status, long bytesIn, long bytesOut, long nanos) {
+        RouteMetrics metrics = mRoutes.get(route);
+        if (metrics == null) {
+            RouteMetrics created = new RouteMetrics();
+            metrics = mRoutes.putIfAbsent(route, created);
+            if (metrics == null)
+                metrics = created;
+        }
+        int statusClass = Math.min(STATUS_CLASS_COUNT, Math.max(1, status / 100));
+        StatusClassMetrics statusClassMetrics = metrics.get(statusClass);
+        statusClassMetrics.mRequestCount.incrementAndGet();
+        statusClassMetrics.mBytesIn.addAndGet(bytesIn);
+        statusClassMetrics.mBytesOut.addAndGet(bytesOut);
+        statusClassMetrics.mLatency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Call this method when a worker starts serving a connection
+     */
+    public void onConnectionOpened() {
+        mActiveConnections.incrementAndGet();
+        mAcceptedConnections.incrementAndGet();
+    }
+
+    /**
+     * Call this method when the worker is done with the connection
+     */
+    public void onConnectionClosed() {
+        mActiveConnections.decrementAndGet();
+    }
+
+    /**
+     * Call this method to read the metrics
+     *
+     * @return a copy of the metrics
+     */
+    @NonNull
+    public MetricsSnapshot snapshot() {
+        List<RouteStats> routes = new ArrayList<>(mRoutes.size());
+        for (Map.Entry<String, RouteMetrics> entry : mRoutes.entrySet()) {
+            for (int statusClass = 1; statusClass <= STATUS_CLASS_COUNT; statusClass++) {
+                StatusClassMetrics metrics = entry.getValue().mStatusClasses.get(statusClass - 1);
+                if (metrics == null)
+                    continue;
+                routes.add(new RouteStats(entry.getKey(), statusClass, metrics.mRequestCount.get(),
+                        metrics.mBytesIn.get(), metrics.mBytesOut.get(), metrics.mLatency.snapshot()));
+            }
+        }
+        Collections.sort(routes, new Comparator<RouteStats>() {
+            @Override
+            public int compare(RouteStats first, RouteStats second) {
+                int order = first.getRoute().compareTo(second.getRoute());
+                return order != 0 ? order : first.getStatusClass() - second.getStatusClass();
+            }
+        });
+        return new MetricsSnapshot(Collections.unmodifiableList(routes),
+                mActiveConnections.get(), mAcceptedConnections.get());
+    }
+
+    /**
+     * The counters of one route, created for a status class when it first answers with it
+     */
+    private static final class RouteMetrics {
+        private final AtomicReferenceArray<StatusClassMetrics> mStatusClasses =
+                new AtomicReferenceArray<>(STATUS_CLASS_COUNT);
+
+        @NonNull
+        StatusClassMetrics get(int statusClass) {
+            StatusClassMetrics metrics = mStatusClasses.get(statusClass - 1);
+            if (metrics == null) {
+                StatusClassMetrics created = new StatusClassMetrics();
+                if (mStatusClasses.compareAndSet(statusClass - 1, null, created))
+                    return created;
+                metrics = mStatusClasses.get(statusClass - 1);
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * The counters of the requests a route answered with one status class
+     */
+    private static final class StatusClassMetrics {
+        private final AtomicLong mRequestCount = new AtomicLong();
+        private final AtomicLong mBytesIn = new AtomicLong();
+        private final AtomicLong mBytesOut = new AtomicLong();
+        private final LatencyHistogram mLatency = new LatencyHistogram();
+    }
+}
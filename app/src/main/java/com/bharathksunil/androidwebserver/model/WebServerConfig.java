@@ -1,11 +1,108 @@
 package com.bharathksunil.androidwebserver.model;
 
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
 
 /**
- * This models the web server configurations
+ * This models the web server configurations. Use the constructors for the common case or the
+ * {@link Builder} to tune the engine.
  */
 public final class WebServerConfig {
+    //region Defaults
+    /**
+     * The default number of worker threads kept alive to serve client connections
+     */
+    public static final int DEFAULT_WORKER_POOL_CORE_SIZE = 4;
+    /**
+     * The default upper bound on the number of worker threads
+     */
+    public static final int DEFAULT_WORKER_POOL_MAX_SIZE = 16;
+    /**
+     * The default number of accepted connections that may wait for a free worker
+     */
+    public static final int DEFAULT_WORKER_QUEUE_CAPACITY = 32;
+    /**
+     * The default value of the Retry-After header sent when the server sheds load
+     */
+    public static final int DEFAULT_RETRY_AFTER_SECONDS = 1;
+    /**
+     * The default time a read from a client socket may block
+     */
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 20 * 1000;
+    /**
+     * The default time a keep-alive connection may wait for its next request
+     */
+    public static final int DEFAULT_KEEP_ALIVE_TIMEOUT_MILLIS = 10 * 1000;
+    /**
+     * The default number of requests served on one connection before it is closed
+     */
+    public static final int DEFAULT_MAX_REQUESTS_PER_CONNECTION = 100;
+    /**
+     * The default number of bytes the in-memory response cache may hold
+     */
+    public static final long DEFAULT_RESPONSE_CACHE_BYTES = 4 * 1024 * 1024;
+    /**
+     * The default size of the largest file held in the response cache
+     */
+    public static final long DEFAULT_RESPONSE_CACHE_MAX_ENTRY_BYTES = 256 * 1024;
+    /**
+     * The default size below which bodies are not compressed
+     */
+    public static final int DEFAULT_COMPRESSION_MIN_BYTES = 1024;
+    /**
+     * The MIME types compressed by default, "/*" allows a whole top level type
+     */
+    public static final Set<String> DEFAULT_COMPRESSIBLE_MIME_TYPES = Collections.unmodifiableSet(
+            new LinkedHashSet<>(Arrays.asList(
+                    "text/*",
+                    "application/javascript",
+                    "application/json",
+                    "application/xml",
+                    "image/svg+xml"
+            )));
+    /**
+     * The default size of the largest file accepted by the upload path
+     */
+    public static final long DEFAULT_MAX_UPLOAD_FILE_BYTES = 256L * 1024 * 1024;
+    /**
+     * The default size of the largest upload request accepted by the upload path
+     */
+    public static final long DEFAULT_MAX_UPLOAD_BYTES = 512L * 1024 * 1024;
+    /**
+     * The default time the requests in flight are given to finish when the server stops
+     */
+    public static final int DEFAULT_DRAIN_TIMEOUT_MILLIS = 3 * 1000;
+    /**
+     * The default size the access log file is rotated at
+     */
+    public static final long DEFAULT_ACCESS_LOG_MAX_FILE_BYTES = 8 * 1024 * 1024;
+    /**
+     * The default age the access log file is rotated at
+     */
+    public static final long DEFAULT_ACCESS_LOG_MAX_FILE_AGE_MILLIS = 24 * 60 * 60 * 1000L;
+    /**
+     * The default number of requests the access log holds while they wait for the disk
+     */
+    public static final int DEFAULT_ACCESS_LOG_BUFFER_RECORDS = 4096;
+    /**
+     * The default size under which the request bodies are kept in memory
+     */
+    public static final int DEFAULT_BODY_MEMORY_THRESHOLD_BYTES = 64 * 1024;
+    /**
+     * The default number of bytes the request bodies kept in memory may hold together
+     */
+    public static final long DEFAULT_MAX_BODY_MEMORY_BYTES = 4 * 1024 * 1024;
+    //endregion
+
     /**
      * The Ip address of the WebServer
      */
@@ -16,10 +113,153 @@ public final class WebServerConfig {
      */
     @NonNull
     private final String portNumber;
+    /**
+     * The local address the server listens on, null to listen on every interface
+     */
+    @Nullable
+    private final String bindAddress;
     /**
      * Run the Server in the background
      */
     private final boolean runInBackground;
+    /**
+     * The number of worker threads kept alive to serve client connections
+     */
+    private final int workerPoolCoreSize;
+    /**
+     * The maximum number of worker threads, used only when the queue is full
+     */
+    private final int workerPoolMaxSize;
+    /**
+     * The number of accepted connections that may wait for a free worker before the server
+     * starts answering with 503
+     */
+    private final int workerQueueCapacity;
+    /**
+     * The seconds a client is asked to wait when the server is saturated
+     */
+    private final int retryAfterSeconds;
+    /**
+     * The time a read from a client socket may block, 0 to wait forever
+     */
+    private final int readTimeoutMillis;
+    /**
+     * The time a keep-alive connection may wait for its next request, 0 to only rely on the read
+     * timeout
+     */
+    private final int keepAliveTimeoutMillis;
+    /**
+     * The number of requests served on one connection before it is closed, 0 for no limit
+     */
+    private final int maxRequestsPerConnection;
+    /**
+     * The directory whose files are served, null if the server does not serve static files
+     */
+    @Nullable
+    private final String documentRoot;
+    /**
+     * The number of bytes the in-memory response cache may hold, 0 disables the cache
+     */
+    private final long responseCacheBytes;
+    /**
+     * Files larger than this are never held in the response cache
+     */
+    private final long responseCacheMaxEntryBytes;
+    /**
+     * Compress responses for clients accepting gzip or deflate
+     */
+    private final boolean compressionEnabled;
+    /**
+     * Bodies smaller than this are not compressed
+     */
+    private final int compressionMinBytes;
+    /**
+     * The MIME types which are compressed
+     */
+    @NonNull
+    private final Set<String> compressibleMimeTypes;
+    /**
+     * The directory holding the compressed copies of static files, null to compress only the
+     * files held in the response cache
+     */
+    @Nullable
+    private final String compressionCacheDir;
+    /**
+     * Record the request metrics
+     */
+    private final boolean metricsEnabled;
+    /**
+     * The path serving the metrics in the Prometheus text format, null to not serve them
+     */
+    @Nullable
+    private final String metricsPath;
+    /**
+     * The path accepting multipart/form-data uploads, null to not accept them
+     */
+    @Nullable
+    private final String uploadPath;
+    /**
+     * The directory the uploaded files are stored in
+     */
+    @Nullable
+    private final String uploadDirectory;
+    /**
+     * The size of the largest uploaded file accepted
+     */
+    private final long maxUploadFileBytes;
+    /**
+     * The size of the largest upload request accepted
+     */
+    private final long maxUploadBytes;
+    /**
+     * The engine which accepts the connections and runs the requests
+     */
+    @NonNull
+    private final Engine engine;
+    /**
+     * The rate every client may send requests at, null to not limit it
+     */
+    @Nullable
+    private final RateLimit rateLimit;
+    /**
+     * The rate every client may send requests to a route at, by route pattern
+     */
+    @NonNull
+    private final Map<String, RateLimit> routeRateLimits;
+    /**
+     * The time the requests in flight are given to finish when the server stops
+     */
+    private final int drainTimeoutMillis;
+    /**
+     * The file the served requests are logged to, null to not log them
+     */
+    @Nullable
+    private final String accessLogFile;
+    /**
+     * The size the access log file is rotated at
+     */
+    private final long accessLogMaxFileBytes;
+    /**
+     * The age the access log file is rotated at, 0 to only rotate it by size
+     */
+    private final long accessLogMaxFileAgeMillis;
+    /**
+     * The number of requests the access log holds while they wait for the disk
+     */
+    private final int accessLogBufferRecords;
+    /**
+     * The directory the large request bodies are spilled to, null for java.io.tmpdir
+     */
+    @Nullable
+    private final String tempDirectory;
+    /**
+     * The request bodies smaller than this are kept in memory
+     */
+    private final int bodyMemoryThresholdBytes;
+    /**
+     * The bytes the request bodies kept in memory may hold together
+     */
+    private final long maxBodyMemoryBytes;
 
     /**
      * Using this constructor will result in default configurations for fields other than the ones
@@ -30,9 +270,7 @@ public final class WebServerConfig {
      */
     public WebServerConfig(@NonNull String ipAddress,
                            @NonNull String portNumber) {
-        this.ipAddress = ipAddress;
-        this.portNumber = portNumber;
-        this.runInBackground = false;
+        this(new Builder(ipAddress, portNumber));
     }
 
     /**
@@ -43,9 +281,45 @@ public final class WebServerConfig {
     public WebServerConfig(@NonNull String ipAddress,
                            @NonNull String portNumber,
                            boolean runInBackground) {
-        this.ipAddress = ipAddress;
-        this.portNumber = portNumber;
-        this.runInBackground = runInBackground;
+        this(new Builder(ipAddress, portNumber).setRunInBackground(runInBackground));
+    }
+
+    private WebServerConfig(@NonNull Builder builder) {
+        this.ipAddress = builder.ipAddress;
+        this.portNumber = builder.portNumber;
+        this.bindAddress = builder.bindAddress;
+        this.runInBackground = builder.runInBackground;
+        this.workerPoolCoreSize = builder.workerPoolCoreSize;
+        this.workerPoolMaxSize = builder.workerPoolMaxSize;
+        this.workerQueueCapacity = builder.workerQueueCapacity;
+        this.retryAfterSeconds = builder.retryAfterSeconds;
+        this.readTimeoutMillis = builder.readTimeoutMillis;
+        this.keepAliveTimeoutMillis = builder.keepAliveTimeoutMillis;
+        this.maxRequestsPerConnection = builder.maxRequestsPerConnection;
+        this.documentRoot = builder.documentRoot;
+        this.responseCacheBytes = builder.responseCacheBytes;
+        this.responseCacheMaxEntryBytes = builder.responseCacheMaxEntryBytes;
+        this.compressionEnabled = builder.compressionEnabled;
+        this.compressionMinBytes = builder.compressionMinBytes;
+        this.compressibleMimeTypes = builder.compressibleMimeTypes;
+        this.compressionCacheDir = builder.compressionCacheDir;
+        this.metricsEnabled = builder.metricsEnabled;
+        this.metricsPath = builder.metricsPath;
+        this.uploadPath = builder.uploadPath;
+        this.uploadDirectory = builder.uploadDirectory;
+        this.maxUploadFileBytes = builder.maxUploadFileBytes;
+        this.maxUploadBytes = builder.maxUploadBytes;
+        this.engine = builder.engine;
+        this.rateLimit = builder.rateLimit;
+        this.routeRateLimits = Collections.unmodifiableMap(new LinkedHashMap<>(builder.routeRateLimits));
+        this.drainTimeoutMillis = builder.drainTimeoutMillis;
+        this.accessLogFile = builder.accessLogFile;
+        this.accessLogMaxFileBytes = builder.accessLogMaxFileBytes;
+        this.accessLogMaxFileAgeMillis = builder.accessLogMaxFileAgeMillis;
+        this.accessLogBufferRecords = builder.accessLogBufferRecords;
+        this.tempDirectory = builder.tempDirectory;
+        this.bodyMemoryThresholdBytes = builder.bodyMemoryThresholdBytes;
+        this.maxBodyMemoryBytes = builder.maxBodyMemoryBytes;
     }
 
     /**
@@ -64,6 +338,24 @@ public final class WebServerConfig {
         return portNumber;
     }
 
+    /**
+     * @return the local address the server listens on, null if it listens on every interface
+     */
+    @Nullable
+    public String getBindAddress() {
+        return bindAddress;
+    }
+
+    /**
+     * @return the address and the port the server binds
+     * @throws NumberFormatException if the port is not a number
+     */
+    @NonNull
+    public InetSocketAddress getListenAddress() throws NumberFormatException {
+        int port = Integer.parseInt(portNumber);
+        return bindAddress != null ? new InetSocketAddress(bindAddress, port) : new InetSocketAddress(port);
+    }
+
     /**
      * Can the app run in background
      *
@@ -73,11 +365,854 @@ public final class WebServerConfig {
         return runInBackground;
     }
 
+    /**
+     * @return the number of worker threads kept alive to serve client connections
+     */
+    public int getWorkerPoolCoreSize() {
+        return workerPoolCoreSize;
+    }
+
+    /**
+     * @return the maximum number of worker threads
+     */
+    public int getWorkerPoolMaxSize() {
+        return workerPoolMaxSize;
+    }
+
+    /**
+     * @return the number of connections that may wait for a free worker
+     */
+    public int getWorkerQueueCapacity() {
+        return workerQueueCapacity;
+    }
+
+    /**
+     * @return the value of the Retry-After header sent when the server is saturated
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * @return the time a read from a client socket may block, 0 if it may wait forever
+     */
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * @return the time a keep-alive connection may wait for its next request, 0 if only the read
+     * timeout applies
+     */
+    public int getKeepAliveTimeoutMillis() {
+        return keepAliveTimeoutMillis;
+    }
+
+    /**
+     * @return the number of requests served on one connection before it is closed, 0 for no limit
+     */
+    public int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    /**
+     * @return the directory whose files are served, null if static files are not served
+     */
+    @Nullable
+    public String getDocumentRoot() {
+        return documentRoot;
+    }
+
+    /**
+     * @return the number of bytes the in-memory response cache may hold, 0 if it is disabled
+     */
+    public long getResponseCacheBytes() {
+        return responseCacheBytes;
+    }
+
+    /**
+     * @return the size of the largest file held in the response cache
+     */
+    public long getResponseCacheMaxEntryBytes() {
+        return responseCacheMaxEntryBytes;
+    }
+
+    /**
+     * @return true if responses are compressed for clients accepting it
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * @return the size below which bodies are not compressed
+     */
+    public int getCompressionMinBytes() {
+        return compressionMinBytes;
+    }
+
+    /**
+     * @return the MIME types which are compressed
+     */
+    @NonNull
+    public Set<String> getCompressibleMimeTypes() {
+        return compressibleMimeTypes;
+    }
+
+    /**
+     * @return the directory holding the compressed copies of static files, null if only cached
+     * files are compressed
+     */
+    @Nullable
+    public String getCompressionCacheDir() {
+        return compressionCacheDir;
+    }
+
+    /**
+     * @return true if the request metrics are recorded
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * @return the path serving the metrics in the Prometheus text format, null if they are not
+     * served
+     */
+    @Nullable
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    /**
+     * @return the path accepting multipart/form-data uploads, null if they are not accepted
+     */
+    @Nullable
+    public String getUploadPath() {
+        return uploadPath;
+    }
+
+    /**
+     * @return the directory the uploaded files are stored in, null if uploads are not accepted
+     */
+    @Nullable
+    public String getUploadDirectory() {
+        return uploadDirectory;
+    }
+
+    /**
+     * @return the size of the largest uploaded file accepted
+     */
+    public long getMaxUploadFileBytes() {
+        return maxUploadFileBytes;
+    }
+
+    /**
+     * @return the size of the largest upload request accepted
+     */
+    public long getMaxUploadBytes() {
+        return maxUploadBytes;
+    }
+
+    /**
+     * @return the engine which accepts the connections and runs the requests
+     */
+    @NonNull
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return the rate every client may send requests at, null if it is not limited
+     */
+    @Nullable
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * @return the rate every client may send requests to a route at, by route pattern, on top of
+     * {@link #getRateLimit()}
+     */
+    @NonNull
+    public Map<String, RateLimit> getRouteRateLimits() {
+        return routeRateLimits;
+    }
+
+    /**
+     * @return the time the requests in flight are given to finish when the server stops, 0 if
+     * they are cut at once
+     */
+    public int getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    /**
+     * @return the file the served requests are logged to, null if they are not logged
+     */
+    @Nullable
+    public String getAccessLogFile() {
+        return accessLogFile;
+    }
+
+    /**
+     * @return the size the access log file is rotated at
+     */
+    public long getAccessLogMaxFileBytes() {
+        return accessLogMaxFileBytes;
+    }
+
+    /**
+     * @return the age the access log file is rotated at, 0 if it is only rotated by size
+     */
+    public long getAccessLogMaxFileAgeMillis() {
+        return accessLogMaxFileAgeMillis;
+    }
+
+    /**
+     * @return the number of requests the access log holds while they wait for the disk
+     */
+    public int getAccessLogBufferRecords() {
+        return accessLogBufferRecords;
+    }
+
+    /**
+     * @return the directory the large request bodies are spilled to, null for java.io.tmpdir
+     */
+    @Nullable
+    public String getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * @return the size under which the request bodies are kept in memory
+     */
+    public int getBodyMemoryThresholdBytes() {
+        return bodyMemoryThresholdBytes;
+    }
+
+    /**
+     * @return the bytes the request bodies kept in memory may hold together
+     */
+    public long getMaxBodyMemoryBytes() {
+        return maxBodyMemoryBytes;
+    }
+
+    /**
+     * A running server can switch to a new config when they differ only by the address, the
+     * worker pool size, the timeouts and the limits. The engine, the queue of the worker pool and
+     * the components holding state, like the response cache, the static files, the uploads, the
+     * metrics, the access log and the request body buffers, are built once with the server.
+     *
+     * @param other the new config of the server
+     * @return true if the server can apply the other config without being rebuilt
+     */
+    public boolean canReconfigureTo(@NonNull WebServerConfig other) {
+        return other.engine == this.engine
+                && other.workerQueueCapacity == this.workerQueueCapacity
+                && other.responseCacheBytes == this.responseCacheBytes
+                && other.responseCacheMaxEntryBytes == this.responseCacheMaxEntryBytes
+                && other.compressionEnabled == this.compressionEnabled
+                && other.compressionMinBytes == this.compressionMinBytes
+                && other.compressibleMimeTypes.equals(this.compressibleMimeTypes)
+                && (other.compressionCacheDir == null ? this.compressionCacheDir == null
+                : other.compressionCacheDir.equals(this.compressionCacheDir))
+                && other.metricsEnabled == this.metricsEnabled
+                && (other.metricsPath == null ? this.metricsPath == null
+                : other.metricsPath.equals(this.metricsPath))
+                && (other.uploadPath == null ? this.uploadPath == null
+                : other.uploadPath.equals(this.uploadPath))
+                && (other.uploadDirectory == null ? this.uploadDirectory == null
+                : other.uploadDirectory.equals(this.uploadDirectory))
+                && other.maxUploadFileBytes == this.maxUploadFileBytes
+                && other.maxUploadBytes == this.maxUploadBytes
+                && (other.accessLogFile == null ? this.accessLogFile == null
+                : other.accessLogFile.equals(this.accessLogFile))
+                && other.accessLogMaxFileBytes == this.accessLogMaxFileBytes
+                && other.accessLogMaxFileAgeMillis == this.accessLogMaxFileAgeMillis
+                && other.accessLogBufferRecords == this.accessLogBufferRecords
+                && (other.tempDirectory == null ? this.tempDirectory == null
+                : other.tempDirectory.equals(this.tempDirectory))
+                && other.bodyMemoryThresholdBytes == this.bodyMemoryThresholdBytes
+                && other.maxBodyMemoryBytes == this.maxBodyMemoryBytes
+                && (other.documentRoot == null ? this.documentRoot == null
+                : other.documentRoot.equals(this.documentRoot));
+    }
+
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof WebServerConfig
-                && ((WebServerConfig) obj).ipAddress.equals(this.ipAddress)
-                && ((WebServerConfig) obj).portNumber.equals(this.portNumber)
-                && ((WebServerConfig) obj).runInBackground == this.runInBackground;
+        if (!(obj instanceof WebServerConfig))
+            return false;
+        WebServerConfig other = (WebServerConfig) obj;
+        return other.ipAddress.equals(this.ipAddress)
+                && other.portNumber.equals(this.portNumber)
+                && (other.bindAddress == null ? this.bindAddress == null
+                : other.bindAddress.equals(this.bindAddress))
+                && other.runInBackground == this.runInBackground
+                && other.workerPoolCoreSize == this.workerPoolCoreSize
+                && other.workerPoolMaxSize == this.workerPoolMaxSize
+                && other.workerQueueCapacity == this.workerQueueCapacity
+                && other.retryAfterSeconds == this.retryAfterSeconds
+                && other.readTimeoutMillis == this.readTimeoutMillis
+                && other.keepAliveTimeoutMillis == this.keepAliveTimeoutMillis
+                && other.maxRequestsPerConnection == this.maxRequestsPerConnection
+                && other.responseCacheBytes == this.responseCacheBytes
+                && other.responseCacheMaxEntryBytes == this.responseCacheMaxEntryBytes
+                && other.compressionEnabled == this.compressionEnabled
+                && other.compressionMinBytes == this.compressionMinBytes
+                && other.compressibleMimeTypes.equals(this.compressibleMimeTypes)
+                && (other.compressionCacheDir == null ? this.compressionCacheDir == null
+                : other.compressionCacheDir.equals(this.compressionCacheDir))
+                && other.metricsEnabled == this.metricsEnabled
+                && (other.metricsPath == null ? this.metricsPath == null
+                : other.metricsPath.equals(this.metricsPath))
+                && (other.uploadPath == null ? this.uploadPath == null
+                : other.uploadPath.equals(this.uploadPath))
+                && (other.uploadDirectory == null ? this.uploadDirectory == null
+                : other.uploadDirectory.equals(this.uploadDirectory))
+                && other.maxUploadFileBytes == this.maxUploadFileBytes
+                && other.maxUploadBytes == this.maxUploadBytes
+                && other.engine == this.engine
+                && (other.rateLimit == null ? this.rateLimit == null
+                : other.rateLimit.equals(this.rateLimit))
+                && other.routeRateLimits.equals(this.routeRateLimits)
+                && other.drainTimeoutMillis == this.drainTimeoutMillis
+                && (other.accessLogFile == null ? this.accessLogFile == null
+                : other.accessLogFile.equals(this.accessLogFile))
+                && other.accessLogMaxFileBytes == this.accessLogMaxFileBytes
+                && other.accessLogMaxFileAgeMillis == this.accessLogMaxFileAgeMillis
+                && other.accessLogBufferRecords == this.accessLogBufferRecords
+                && (other.tempDirectory == null ? this.tempDirectory == null
+                : other.tempDirectory.equals(this.tempDirectory))
+                && other.bodyMemoryThresholdBytes == this.bodyMemoryThresholdBytes
+                && other.maxBodyMemoryBytes == this.maxBodyMemoryBytes
+                && (other.documentRoot == null ? this.documentRoot == null
+                : other.documentRoot.equals(this.documentRoot));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = ipAddress.hashCode();
+        result = 31 * result + portNumber.hashCode();
+        result = 31 * result + (bindAddress != null ? bindAddress.hashCode() : 0);
+        result = 31 * result + (runInBackground ? 1 : 0);
+        result = 31 * result + workerPoolCoreSize;
+        result = 31 * result + workerPoolMaxSize;
+        result = 31 * result + workerQueueCapacity;
+        result = 31 * result + retryAfterSeconds;
+        result = 31 * result + readTimeoutMillis;
+        result = 31 * result + keepAliveTimeoutMillis;
+        result = 31 * result + maxRequestsPerConnection;
+        result = 31 * result + (documentRoot != null ? documentRoot.hashCode() : 0);
+        result = 31 * result + (int) (responseCacheBytes ^ (responseCacheBytes >>> 32));
+        result = 31 * result + (int) (responseCacheMaxEntryBytes ^ (responseCacheMaxEntryBytes >>> 32));
+        result = 31 * result + (compressionEnabled ? 1 : 0);
+        result = 31 * result + compressionMinBytes;
+        result = 31 * result + compressibleMimeTypes.hashCode();
+        result = 31 * result + (compressionCacheDir != null ? compressionCacheDir.hashCode() : 0);
+        result = 31 * result + (metricsEnabled ? 1 : 0);
+        result = 31 * result + (metricsPath != null ? metricsPath.hashCode() : 0);
+        result = 31 * result + (uploadPath != null ? uploadPath.hashCode() : 0);
+        result = 31 * result + (uploadDirectory != null ? uploadDirectory.hashCode() : 0);
+        result = 31 * result + (int) (maxUploadFileBytes ^ (maxUploadFileBytes >>> 32));
+        result = 31 * result + (int) (maxUploadBytes ^ (maxUploadBytes >>> 32));
+        result = 31 * result + engine.hashCode();
+        result = 31 * result + (rateLimit != null ? rateLimit.hashCode() : 0);
+        result = 31 * result + routeRateLimits.hashCode();
+        result = 31 * result + drainTimeoutMillis;
+        result = 31 * result + (accessLogFile != null ? accessLogFile.hashCode() : 0);
+        result = 31 * result + (int) (accessLogMaxFileBytes ^ (accessLogMaxFileBytes >>> 32));
+        result = 31 * result + (int) (accessLogMaxFileAgeMillis ^ (accessLogMaxFileAgeMillis >>> 32));
+        result = 31 * result + accessLogBufferRecords;
+        result = 31 * result + (tempDirectory != null ? tempDirectory.hashCode() : 0);
+        result = 31 * result + bodyMemoryThresholdBytes;
+        result = 31 * result + (int) (maxBodyMemoryBytes ^ (maxBodyMemoryBytes >>> 32));
+        return result;
+    }
+
+    /**
+     * Use this to create a {@link WebServerConfig} with non default engine settings. Fields that
+     * are not set keep their default values.
+     */
+    public static final class Builder {
+        @NonNull
+        private String ipAddress;
+        @NonNull
+        private String portNumber;
+        @Nullable
+        private String bindAddress = null;
+        private boolean runInBackground = false;
+        private int workerPoolCoreSize = DEFAULT_WORKER_POOL_CORE_SIZE;
+        private int workerPoolMaxSize = DEFAULT_WORKER_POOL_MAX_SIZE;
+        private int workerQueueCapacity = DEFAULT_WORKER_QUEUE_CAPACITY;
+        private int retryAfterSeconds = DEFAULT_RETRY_AFTER_SECONDS;
+        private int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+        private int keepAliveTimeoutMillis = DEFAULT_KEEP_ALIVE_TIMEOUT_MILLIS;
+        private int maxRequestsPerConnection = DEFAULT_MAX_REQUESTS_PER_CONNECTION;
+        @Nullable
+        private String documentRoot = null;
+        private long responseCacheBytes = DEFAULT_RESPONSE_CACHE_BYTES;
+        private long responseCacheMaxEntryBytes = DEFAULT_RESPONSE_CACHE_MAX_ENTRY_BYTES;
+        private boolean compressionEnabled = true;
+        private int compressionMinBytes = DEFAULT_COMPRESSION_MIN_BYTES;
+        @NonNull
+        private Set<String> compressibleMimeTypes = DEFAULT_COMPRESSIBLE_MIME_TYPES;
+        @Nullable
+        private String compressionCacheDir = null;
+        private boolean metricsEnabled = true;
+        @Nullable
+        private String metricsPath = null;
+        @Nullable
+        private String uploadPath = null;
+        @Nullable
+        private String uploadDirectory = null;
+        private long maxUploadFileBytes = DEFAULT_MAX_UPLOAD_FILE_BYTES;
+        private long maxUploadBytes = DEFAULT_MAX_UPLOAD_BYTES;
+        @NonNull
+        private Engine engine = Engine.BLOCKING;
+        @Nullable
+        private RateLimit rateLimit = null;
+        @NonNull
+        private final Map<String, RateLimit> routeRateLimits = new LinkedHashMap<>();
+        private int drainTimeoutMillis = DEFAULT_DRAIN_TIMEOUT_MILLIS;
+        @Nullable
+        private String accessLogFile = null;
+        private long accessLogMaxFileBytes = DEFAULT_ACCESS_LOG_MAX_FILE_BYTES;
+        private long accessLogMaxFileAgeMillis = DEFAULT_ACCESS_LOG_MAX_FILE_AGE_MILLIS;
+        private int accessLogBufferRecords = DEFAULT_ACCESS_LOG_BUFFER_RECORDS;
+        @Nullable
+        private String tempDirectory = null;
+        private int bodyMemoryThresholdBytes = DEFAULT_BODY_MEMORY_THRESHOLD_BYTES;
+        private long maxBodyMemoryBytes = DEFAULT_MAX_BODY_MEMORY_BYTES;
+
+        /**
+         * @param ipAddress  the Ip address of the device
+         * @param portNumber the port to which the server must receive request
+         */
+        public Builder(@NonNull String ipAddress, @NonNull String portNumber) {
+            this.ipAddress = ipAddress;
+            this.portNumber = portNumber;
+        }
+
+        /**
+         * Creates a builder pre-filled with all the values of the passed config
+         *
+         * @param webServerConfig the config to copy
+         */
+        public Builder(@NonNull WebServerConfig webServerConfig) {
+            this.ipAddress = webServerConfig.ipAddress;
+            this.portNumber = webServerConfig.portNumber;
+            this.bindAddress = webServerConfig.bindAddress;
+            this.runInBackground = webServerConfig.runInBackground;
+            this.workerPoolCoreSize = webServerConfig.workerPoolCoreSize;
+            this.workerPoolMaxSize = webServerConfig.workerPoolMaxSize;
+            this.workerQueueCapacity = webServerConfig.workerQueueCapacity;
+            this.retryAfterSeconds = webServerConfig.retryAfterSeconds;
+            this.readTimeoutMillis = webServerConfig.readTimeoutMillis;
+            this.keepAliveTimeoutMillis = webServerConfig.keepAliveTimeoutMillis;
+            this.maxRequestsPerConnection = webServerConfig.maxRequestsPerConnection;
+            this.documentRoot = webServerConfig.documentRoot;
+            this.responseCacheBytes = webServerConfig.responseCacheBytes;
+            this.responseCacheMaxEntryBytes = webServerConfig.responseCacheMaxEntryBytes;
+            this.compressionEnabled = webServerConfig.compressionEnabled;
+            this.compressionMinBytes = webServerConfig.compressionMinBytes;
+            this.compressibleMimeTypes = webServerConfig.compressibleMimeTypes;
+            this.compressionCacheDir = webServerConfig.compressionCacheDir;
+            this.metricsEnabled = webServerConfig.metricsEnabled;
+            this.metricsPath = webServerConfig.metricsPath;
+            this.uploadPath = webServerConfig.uploadPath;
+            this.uploadDirectory = webServerConfig.uploadDirectory;
+            this.maxUploadFileBytes = webServerConfig.maxUploadFileBytes;
+            this.maxUploadBytes = webServerConfig.maxUploadBytes;
+            this.engine = webServerConfig.engine;
+            this.rateLimit = webServerConfig.rateLimit;
+            this.routeRateLimits.putAll(webServerConfig.routeRateLimits);
+            this.drainTimeoutMillis = webServerConfig.drainTimeoutMillis;
+            this.accessLogFile = webServerConfig.accessLogFile;
+            this.accessLogMaxFileBytes = webServerConfig.accessLogMaxFileBytes;
+            this.accessLogMaxFileAgeMillis = webServerConfig.accessLogMaxFileAgeMillis;
+            this.accessLogBufferRecords = webServerConfig.accessLogBufferRecords;
+            this.tempDirectory = webServerConfig.tempDirectory;
+            this.bodyMemoryThresholdBytes = webServerConfig.bodyMemoryThresholdBytes;
+            this.maxBodyMemoryBytes = webServerConfig.maxBodyMemoryBytes;
+        }
+
+        /**
+         * @param ipAddress  the Ip address of the device
+         * @param portNumber the port to which the server must receive request
+         * @return this builder
+         */
+        public Builder setAddress(@NonNull String ipAddress, @NonNull String portNumber) {
+            this.ipAddress = ipAddress;
+            this.portNumber = portNumber;
+            return this;
+        }
+
+        /**
+         * @param bindAddress the local address to listen on, like 127.0.0.1 for a listener only
+         *                    the device can reach, null to listen on every interface
+         * @return this builder
+         */
+        public Builder setBindAddress(@Nullable String bindAddress) {
+            if (bindAddress != null && bindAddress.isEmpty())
+                throw new IllegalArgumentException("invalid bind address: " + bindAddress);
+            this.bindAddress = bindAddress;
+            return this;
+        }
+
+        /**
+         * @param runInBackground if the server must run in the background
+         * @return this builder
+         */
+        public Builder setRunInBackground(boolean runInBackground) {
+            this.runInBackground = runInBackground;
+            return this;
+        }
+
+        /**
+         * @param coreSize the number of worker threads kept alive, must be at least 1
+         * @param maxSize  the maximum number of worker threads, must not be less than coreSize
+         * @return this builder
+         */
+        public Builder setWorkerPoolSize(int coreSize, int maxSize) {
+            if (coreSize < 1 || maxSize < coreSize)
+                throw new IllegalArgumentException("invalid worker pool size: " + coreSize + "/" + maxSize);
+            this.workerPoolCoreSize = coreSize;
+            this.workerPoolMaxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param capacity the number of connections that may wait for a free worker
+         * @return this builder
+         */
+        public Builder setWorkerQueueCapacity(int capacity) {
+            if (capacity < 1)
+                throw new IllegalArgumentException("invalid worker queue capacity: " + capacity);
+            this.workerQueueCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param seconds the value of the Retry-After header sent when the server is saturated
+         * @return this builder
+         */
+        public Builder setRetryAfterSeconds(int seconds) {
+            if (seconds < 0)
+                throw new IllegalArgumentException("invalid retry after: " + seconds);
+            this.retryAfterSeconds = seconds;
+            return this;
+        }
+
+        /**
+         * @param millis the time a read from a client socket may block, 0 to wait forever
+         * @return this builder
+         */
+        public Builder setReadTimeout(int millis) {
+            if (millis < 0)
+                throw new IllegalArgumentException("invalid read timeout: " + millis);
+            this.readTimeoutMillis = millis;
+            return this;
+        }
+
+        /**
+         * @param idleTimeoutMillis the time a keep-alive connection may wait for its next request,
+         *                          0 to only rely on the read timeout
+         * @param maxRequests       the number of requests served on one connection before it is
+         *                          closed, 0 for no limit
+         * @return this builder
+         */
+        public Builder setKeepAlive(int idleTimeoutMillis, int maxRequests) {
+            if (idleTimeoutMillis < 0)
+                throw new IllegalArgumentException("invalid keep-alive timeout: " + idleTimeoutMillis);
+            if (maxRequests < 0)
+                throw new IllegalArgumentException("invalid max requests per connection: " + maxRequests);
+            this.keepAliveTimeoutMillis = idleTimeoutMillis;
+            this.maxRequestsPerConnection = maxRequests;
+            return this;
+        }
+
+        /**
+         * @param documentRoot the directory whose files are served, null to not serve files
+         * @return this builder
+         */
+        public Builder setDocumentRoot(@Nullable String documentRoot) {
+            this.documentRoot = documentRoot;
+            return this;
+        }
+
+        /**
+         * @param budgetBytes   the number of bytes the response cache may hold, 0 to disable it
+         * @param maxEntryBytes files larger than this are never cached
+         * @return this builder
+         */
+        public Builder setResponseCache(long budgetBytes, long maxEntryBytes) {
+            if (budgetBytes < 0 || maxEntryBytes < 0)
+                throw new IllegalArgumentException("invalid response cache size: " + budgetBytes + "/" + maxEntryBytes);
+            this.responseCacheBytes = budgetBytes;
+            this.responseCacheMaxEntryBytes = maxEntryBytes;
+            return this;
+        }
+
+        /**
+         * @param enabled  true to compress responses for clients accepting gzip or deflate
+         * @param minBytes bodies smaller than this are not compressed
+         * @return this builder
+         */
+        public Builder setCompression(boolean enabled, int minBytes) {
+            if (minBytes < 0)
+                throw new IllegalArgumentException("invalid compression threshold: " + minBytes);
+            this.compressionEnabled = enabled;
+            this.compressionMinBytes = minBytes;
+            return this;
+        }
+
+        /**
+         * @param mimeTypes the MIME types which are compressed, "/*" allows a whole top level type
+         * @return this builder
+         */
+        public Builder setCompressibleMimeTypes(@NonNull Collection<String> mimeTypes) {
+            this.compressibleMimeTypes = Collections.unmodifiableSet(new LinkedHashSet<>(mimeTypes));
+            return this;
+        }
+
+        /**
+         * @param directory a private directory for the compressed copies of static files, null to
+         *                  compress only the files held in the response cache
+         * @return this builder
+         */
+        public Builder setCompressionCacheDir(@Nullable String directory) {
+            this.compressionCacheDir = directory;
+            return this;
+        }
+
+        /**
+         * @param enabled true to record the request metrics
+         * @param path    the path serving the metrics in the Prometheus text format, e.g.
+         *                "/metrics", null to only expose them through the server API
+         * @return this builder
+         */
+        public Builder setMetrics(boolean enabled, @Nullable String path) {
+            if (path != null && (!enabled || !path.startsWith("/")))
+                throw new IllegalArgumentException("invalid metrics path: " + path);
+            this.metricsEnabled = enabled;
+            this.metricsPath = path;
+            return this;
+        }
+
+        /**
+         * @param path      the path accepting multipart/form-data uploads, e.g. "/upload", null to
+         *                  not accept them
+         * @param directory the directory the uploaded files are stored in
+         * @return this builder
+         */
+        public Builder setUploads(@Nullable String path, @Nullable String directory) {
+            if (path != null && (!path.startsWith("/") || directory == null))
+                throw new IllegalArgumentException("invalid upload path: " + path);
+            this.uploadPath = path;
+            this.uploadDirectory = path != null ? directory : null;
+            return this;
+        }
+
+        /**
+         * @param maxFileBytes   the size of the largest uploaded file accepted
+         * @param maxUploadBytes the size of the largest upload request accepted, all files together
+         * @return this builder
+         */
+        public Builder setUploadLimits(long maxFileBytes, long maxUploadBytes) {
+            if (maxFileBytes <= 0 || maxUploadBytes <= 0)
+                throw new IllegalArgumentException("upload limits must be positive");
+            this.maxUploadFileBytes = maxFileBytes;
+            this.maxUploadBytes = maxUploadBytes;
+            return this;
+        }
+
+        /**
+         * @param engine the engine which accepts the connections and runs the requests
+         * @return this builder
+         */
+        public Builder setEngine(@NonNull Engine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        /**
+         * Limits the rate every client, told apart by its IP address, may send requests at.
+         * The requests over the limit are answered 429 with a Retry-After header.
+         *
+         * @param requestsPerSecond the sustained rate of a client, 0 to not limit it
+         * @param burst             the requests a client which was idle may send at once
+         * @return this builder
+         */
+        public Builder setRateLimit(double requestsPerSecond, int burst) {
+            this.rateLimit = requestsPerSecond != 0 ? new RateLimit(requestsPerSecond, burst) : null;
+            return this;
+        }
+
+        /**
+         * Limits the rate every client may send requests to a route at, on top of the limit
+         * set by {@link #setRateLimit(double, int)}
+         *
+         * @param pattern           the pattern the route is added with
+         * @param requestsPerSecond the sustained rate of a client, 0 to not limit the route
+         * @param burst             the requests a client which was idle may send at once
+         * @return this builder
+         */
+        public Builder setRouteRateLimit(@NonNull String pattern, double requestsPerSecond, int burst) {
+            if (!pattern.startsWith("/"))
+                throw new IllegalArgumentException("invalid route pattern: " + pattern);
+            if (requestsPerSecond != 0)
+                this.routeRateLimits.put(pattern, new RateLimit(requestsPerSecond, burst));
+            else
+                this.routeRateLimits.remove(pattern);
+            return this;
+        }
+
+        /**
+         * @param millis the time the requests in flight are given to finish when the server stops,
+         *               0 to cut them at once
+         * @return this builder
+         */
+        public Builder setDrainTimeout(int millis) {
+            if (millis < 0)
+                throw new IllegalArgumentException("invalid drain timeout: " + millis);
+            this.drainTimeoutMillis = millis;
+            return this;
+        }
+
+        /**
+         * Logs every served request, one line each, to a file which is rotated by size and age.
+         * The rotated files are named after it with a numeric suffix, .1 being the most recent.
+         *
+         * @param file          the file the requests are logged to, null to not log them
+         * @param bufferRecords the requests held while they wait for the disk, those served while
+         *                      the buffer is full are counted but not logged
+         * @return this builder
+         */
+        public Builder setAccessLog(@Nullable String file, int bufferRecords) {
+            if (file != null && file.isEmpty())
+                throw new IllegalArgumentException("invalid access log file: " + file);
+            if (bufferRecords < 1)
+                throw new IllegalArgumentException("invalid access log buffer: " + bufferRecords);
+            this.accessLogFile = file;
+            this.accessLogBufferRecords = bufferRecords;
+            return this;
+        }
+
+        /**
+         * @param maxFileBytes the size the access log file is rotated at
+         * @param maxAgeMillis the age the access log file is rotated at, 0 to only rotate it by
+         *                     size
+         * @return this builder
+         */
+        public Builder setAccessLogRotation(long maxFileBytes, long maxAgeMillis) {
+            if (maxFileBytes <= 0 || maxAgeMillis < 0)
+                throw new IllegalArgumentException("invalid access log rotation: " + maxFileBytes + "/" + maxAgeMillis);
+            this.accessLogMaxFileBytes = maxFileBytes;
+            this.accessLogMaxFileAgeMillis = maxAgeMillis;
+            return this;
+        }
+
+        /**
+         * @param directory a private directory the large request bodies are spilled to, null for
+         *                  java.io.tmpdir
+         * @return this builder
+         */
+        public Builder setTempDirectory(@Nullable String directory) {
+            this.tempDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Keeps the small form and text bodies in memory instead of writing them to a temp file,
+         * which costs latency and wear on flash storage
+         *
+         * @param thresholdBytes the bodies smaller than this are kept in memory, 0 to spill all
+         *                       the bodies over 1KB like NanoHTTPD
+         * @param maxBytes       the bytes the bodies kept in memory may hold together, the bodies
+         *                       arriving once they are spent are spilled
+         * @return this builder
+         */
+        public Builder setBodyMemory(int thresholdBytes, long maxBytes) {
+            if (thresholdBytes < 0 || maxBytes < 0)
+                throw new IllegalArgumentException("invalid body memory: " + thresholdBytes + "/" + maxBytes);
+            this.bodyMemoryThresholdBytes = thresholdBytes;
+            this.maxBodyMemoryBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @return the new immutable {@link WebServerConfig}
+         */
+        @NonNull
+        public WebServerConfig build() {
+            return new WebServerConfig(this);
+        }
+    }
+
+    /**
+     * The rate a client may send requests at, a token bucket which holds the burst and refills at
+     * the sustained rate
+     */
+    public static final class RateLimit {
+        private final double requestsPerSecond;
+        private final int burst;
+
+        /**
+         * @param requestsPerSecond the sustained rate of a client
+         * @param burst             the requests a client which was idle may send at once
+         */
+        public RateLimit(double requestsPerSecond, int burst) {
+            if (!(requestsPerSecond > 0) || Double.isInfinite(requestsPerSecond))
+                throw new IllegalArgumentException("invalid requests per second: " + requestsPerSecond);
+            if (burst <= 0)
+                throw new IllegalArgumentException("invalid burst: " + burst);
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+        }
+
+        /**
+         * @return the sustained rate of a client
+         */
+        public double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        /**
+         * @return the requests a client which was idle may send at once
+         */
+        public int getBurst() {
+            return burst;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RateLimit))
+                return false;
+            RateLimit other = (RateLimit) obj;
+            return Double.compare(other.requestsPerSecond, this.requestsPerSecond) == 0
+                    && other.burst == this.burst;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(requestsPerSecond);
+            return 31 * (int) (bits ^ (bits >>> 32)) + burst;
+        }
+    }
+
+    /**
+     * The engines the server can run on. Both serve the same routes and static files.
+     */
+    public enum Engine {
+        /**
+         * NanoHTTPD, which holds a worker thread for every open connection
+         */
+        BLOCKING,
+        /**
+         * A selector event loop, which holds a worker thread only while a request is served so
+         * idle keep-alive connections cost no thread
+         */
+        NIO
     }
 }
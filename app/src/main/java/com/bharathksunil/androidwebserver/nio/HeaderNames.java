@@ -0,0 +1,80 @@
+package com.bharathksunil.androidwebserver.nio;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * This turns the header names of a request into the lower case keys NanoHTTPD hands the handlers.
+ * The names clients commonly send are looked up in a table of constants, matched without regard
+ * to case, so they cost no String at all; any other name is folded to lower case through a byte
+ * table instead of {@link String#toLowerCase()}.
+ */
+final class HeaderNames {
+    /**
+     * The names looked up, in lower case
+     */
+    private static final String[] KNOWN_NAMES = {
+            "accept", "accept-charset", "accept-encoding", "accept-language", "authorization",
+            "cache-control", "connection", "content-encoding", "content-length", "content-type",
+            "cookie", "dnt", "expect", "host", "if-match", "if-modified-since", "if-none-match",
+            "if-range", "if-unmodified-since", "last-event-id", "origin", "pragma", "range",
+            "referer", "sec-websocket-extensions", "sec-websocket-key", "sec-websocket-protocol",
+            "sec-websocket-version", "te", "transfer-encoding", "upgrade",
+            "upgrade-insecure-requests", "user-agent", "x-forwarded-for", "x-forwarded-proto",
+            "x-requested-with"};
+    /**
+     * The known names by the hash of their bytes, an open addressed table at most a quarter full
+     */
+    private static final String[] TABLE = new String[256];
+    private static final int MASK = TABLE.length - 1;
+    /**
+     * Maps every byte to its ASCII lower case
+     */
+    private static final byte[] LOWER_CASE = new byte[256];
+
+    static {
+        for (int i = 0; i < LOWER_CASE.length; i++)
+            LOWER_CASE[i] = (byte) (i >= 'A' && i <= 'Z' ? i + ('a' - 'A') : i);
+        for (String name : KNOWN_NAMES) {
+            //the hash of a lower case ASCII String is the one computed over its folded bytes
+            int index = name.hashCode() & MASK;
+            while (TABLE[index] != null)
+                index = (index + 1) & MASK;
+            TABLE[index] = name;
+        }
+    }
+
+    private HeaderNames() {
+    }
+
+    /**
+     * @param bytes the bytes of the head
+     * @param start the position of the first byte of the name
+     * @param end   the position after the last byte of the name
+     * @return the name in lower case, the same instance for every request when it is known
+     */
+    @NonNull
+    static String lookup(@NonNull byte[] bytes, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + (LOWER_CASE[bytes[i] & 0xff] & 0xff);
+        for (int index = hash & MASK; TABLE[index] != null; index = (index + 1) & MASK) {
+            String name = TABLE[index];
+            if (matches(name, bytes, start, end))
+                return name;
+        }
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++)
+            chars[i - start] = (char) (LOWER_CASE[bytes[i] & 0xff] & 0xff);
+        return new String(chars);
+    }
+
+    private static boolean matches(@NonNull String name, @NonNull byte[] bytes, int start, int end) {
+        if (name.length() != end - start)
+            return false;
+        for (int i = start; i < end; i++) {
+            if (name.charAt(i - start) != (LOWER_CASE[bytes[i] & 0xff] & 0xff))
+                return false;
+        }
+        return true;
+    }
+}
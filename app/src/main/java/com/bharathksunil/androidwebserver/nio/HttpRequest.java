@@ -0,0 +1,465 @@
+package com.bharathksunil.androidwebserver.nio;
+
+import com.bharathksunil.androidwebserver.body.MemoryFirstTempFileManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * The request of the {@link NioWebServer}, parsed straight from the bytes the event loop framed
+ * instead of through the readers, tokenizers and maps of NanoHTTPD's HTTPSession. The request
+ * line and the headers are scanned once, the header names are looked up by {@link HeaderNames},
+ * and the query string is only decoded when a handler asks for the parameters.
+ * <p>
+ * The body is held by the same bytes, a form or text body is decoded from them in place. The
+ * requests whose body NanoHTTPD hands out as temp files, see {@link #needsNanoHttpdBody()}, are
+ * served through its HTTPSession instead.
+ * </p>
+ * <p>
+ * The bytes are pooled and given back once the response has been sent, see {@link #releaseBytes()}.
+ * A handler may keep the request past that point, for a connection it handed over: the head and
+ * the query string stay readable, while the body, like the socket stream NanoHTTPD hands out, is
+ * only readable until the response is sent.
+ * </p>
+ */
+final class HttpRequest implements NanoHTTPD.IHTTPSession {
+    private static final String HTTP_1_1 = "HTTP/1.1";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final NanoHTTPD.Method[] METHODS = NanoHTTPD.Method.values();
+    private static final byte[] HTTP_1_1_BYTES = HTTP_1_1.getBytes(UTF_8);
+    private static final byte[] NO_BYTES = new byte[0];
+
+    /**
+     * The NanoHTTPD the cookies belong to
+     */
+    @NonNull
+    private final NanoHTTPD mCodec;
+    /**
+     * The head of the request, followed by its body unless it is streamed, only the query string
+     * once the bytes have been released
+     */
+    @NonNull
+    private byte[] mBytes;
+    private final int mHeadLength;
+    private final int mLength;
+    private boolean mReleased;
+    /**
+     * The body read from the socket while it is consumed, null if it is in {@link #mBytes}
+     */
+    @Nullable
+    private final InputStream mStreamedBody;
+    @NonNull
+    private final MemoryFirstTempFileManager mTempFileManager;
+    @NonNull
+    private final InetAddress mRemoteAddress;
+    @NonNull
+    private final Map<String, String> mHeaders = new HashMap<>();
+    private NanoHTTPD.Method mMethod;
+    private String mUri;
+    private String mProtocolVersion;
+    /**
+     * The range of the query string in {@link #mBytes}, -1 if the request has none
+     */
+    private int mQueryStart = -1;
+    private int mQueryEnd;
+    @Nullable
+    private String mQueryParameterString;
+    /**
+     * Decoded from the query string on first use
+     */
+    @Nullable
+    private Map<String, List<String>> mParameters;
+    @Nullable
+    private NanoHTTPD.CookieHandler mCookies;
+    @Nullable
+    private InputStream mInputStream;
+
+    /**
+     * @param codec           the NanoHTTPD the cookies belong to
+     * @param bytes           the head of the request, followed by its body unless it is streamed
+     * @param headLength      the length of the head including the empty line
+     * @param length          the length of the request in the bytes
+     * @param streamedBody    the body read from the socket, null if it is in the bytes
+     * @param tempFileManager the temp files of the connection
+     * @param remoteAddress   the address of the client
+     */
+    HttpRequest(@NonNull NanoHTTPD codec,
+                @NonNull byte[] bytes,
+                int headLength,
+                int length,
+                @Nullable InputStream streamedBody,
+                @NonNull MemoryFirstTempFileManager tempFileManager,
+                @NonNull InetAddress remoteAddress) {
+        this.mCodec = codec;
+        this.mBytes = bytes;
+        this.mHeadLength = headLength;
+        this.mLength = length;
+        this.mStreamedBody = streamedBody;
+        this.mTempFileManager = tempFileManager;
+        this.mRemoteAddress = remoteAddress;
+    }
+
+    /**
+     * Call this method once, before handing the request out
+     *
+     * @throws NanoHTTPD.ResponseException with the status to answer a malformed request with
+     */
+    void parseHead() throws NanoHTTPD.ResponseException {
+        int lineEnd = lineEnd(0);
+        int methodStart = skipSpaces(0, lineEnd);
+        int methodEnd = skipToken(methodStart, lineEnd);
+        if (methodStart == methodEnd)
+            throw new NanoHTTPD.ResponseException(NanoHTTPD.Response.Status.BAD_REQUEST,
+                    "BAD REQUEST: Syntax error. Usage: GET /example/file.html");
+        int uriStart = skipSpaces(methodEnd, lineEnd);
+        int uriEnd = skipToken(uriStart, lineEnd);
+        if (uriStart == uriEnd)
+            throw new NanoHTTPD.ResponseException(NanoHTTPD.Response.Status.BAD_REQUEST,
+                    "BAD REQUEST: Missing URI. Usage: GET /example/file.html");
+        int versionStart = skipSpaces(uriEnd, lineEnd);
+        int versionEnd = skipToken(versionStart, lineEnd);
+        mMethod = lookupMethod(methodStart, methodEnd);
+        if (mMethod == null)
+            throw new NanoHTTPD.ResponseException(NanoHTTPD.Response.Status.BAD_REQUEST,
+                    "BAD REQUEST: Syntax error. HTTP verb "
+                            + new String(mBytes, methodStart, methodEnd - methodStart, UTF_8) + " unhandled.");
+        int pathEnd = indexOf('?', uriStart, uriEnd);
+        if (pathEnd >= 0) {
+            mQueryStart = pathEnd + 1;
+            mQueryEnd = uriEnd;
+        } else {
+            pathEnd = uriEnd;
+        }
+        mUri = decode(mBytes, uriStart, pathEnd);
+        if (versionStart == versionEnd || regionEquals(versionStart, versionEnd, HTTP_1_1_BYTES))
+            mProtocolVersion = HTTP_1_1;
+        else
+            mProtocolVersion = new String(mBytes, versionStart, versionEnd - versionStart, UTF_8);
+        parseHeaders(lineEnd + 1);
+        String remoteIp = getRemoteIpAddress();
+        mHeaders.put("remote-addr", remoteIp);
+        mHeaders.put("http-client-ip", remoteIp);
+    }
+
+    /**
+     * @return true if the body must be parsed by NanoHTTPD, which spills it to temp files: a PUT
+     * body, a multipart body and a body too large to be buffered
+     */
+    boolean needsNanoHttpdBody() {
+        if (mMethod == NanoHTTPD.Method.PUT)
+            return true;
+        if (mMethod != NanoHTTPD.Method.POST)
+            return false;
+        String contentType = mHeaders.get("content-type");
+        return mStreamedBody != null
+                || contentType != null && contentType.regionMatches(true, 0, "multipart/", 0, 10);
+    }
+
+    /**
+     * @return the whole request as NanoHTTPD reads it, head and body
+     */
+    @NonNull
+    InputStream newRawInputStream() {
+        InputStream request = new ByteArrayInputStream(mBytes, 0, mLength);
+        return mStreamedBody != null ? new SequenceInputStream(request, mStreamedBody) : request;
+    }
+
+    /**
+     * @return true if the client accepts further requests on the connection, like NanoHTTPD
+     */
+    boolean isKeepAlive() {
+        if (!HTTP_1_1.equals(mProtocolVersion))
+            return false;
+        String connection = mHeaders.get("connection");
+        if (connection == null)
+            return true;
+        for (int i = 0; i + 5 <= connection.length(); i++) {
+            if (connection.regionMatches(true, i, "close", 0, 5))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Call this method after the request was served to set the cookies the handler queued
+     */
+    void unloadCookies(@NonNull NanoHTTPD.Response response) {
+        if (mCookies != null)
+            mCookies.unloadQueue(response);
+    }
+
+    /**
+     * Call this method once the response has been sent, before the bytes are given back to the
+     * pool. The query string not decoded yet is copied out of them, the body is no longer read.
+     */
+    void releaseBytes() {
+        if (mReleased)
+            return;
+        mReleased = true;
+        if (mQueryStart >= 0 && (mParameters == null || mQueryParameterString == null)) {
+            mBytes = Arrays.copyOfRange(mBytes, mQueryStart, mQueryEnd);
+            mQueryEnd -= mQueryStart;
+            mQueryStart = 0;
+        } else {
+            mBytes = NO_BYTES;
+        }
+    }
+
+    @NonNull
+    MemoryFirstTempFileManager getTempFileManager() {
+        return mTempFileManager;
+    }
+
+    @NonNull
+    InetAddress getRemoteAddress() {
+        return mRemoteAddress;
+    }
+
+    //region Overridden Methods: IHTTPSession
+    /**
+     * Does nothing: unlike NanoHTTPD's HTTPSession this request is not read from the socket, the
+     * {@link NioWebServer} frames it, executes it and sends its response
+     */
+    @Override
+    public void execute() {
+        //already executed by the server which handed it out
+    }
+
+    @Override
+    public NanoHTTPD.CookieHandler getCookies() {
+        if (mCookies == null)
+            mCookies = mCodec.new CookieHandler(mHeaders);
+        return mCookies;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return mHeaders;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        if (mInputStream == null) {
+            if (mReleased)
+                return new ByteArrayInputStream(NO_BYTES);
+            InputStream body = new ByteArrayInputStream(mBytes, mHeadLength, mLength - mHeadLength);
+            mInputStream = mStreamedBody != null ? new SequenceInputStream(body, mStreamedBody) : body;
+        }
+        return mInputStream;
+    }
+
+    @Override
+    public NanoHTTPD.Method getMethod() {
+        return mMethod;
+    }
+
+    @Override
+    @Deprecated
+    public Map<String, String> getParms() {
+        Map<String, String> parms = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : getParameters().entrySet())
+            parms.put(entry.getKey(), entry.getValue().get(0));
+        return parms;
+    }
+
+    @Override
+    public Map<String, List<String>> getParameters() {
+        if (mParameters == null) {
+            mParameters = new HashMap<>();
+            if (mQueryStart >= 0)
+                decodeParameters(mBytes, mQueryStart, mQueryEnd, mParameters);
+        }
+        return mParameters;
+    }
+
+    @Override
+    public String getQueryParameterString() {
+        if (mQueryParameterString == null && mQueryStart >= 0)
+            mQueryParameterString = new String(mBytes, mQueryStart, mQueryEnd - mQueryStart, UTF_8);
+        return mQueryParameterString;
+    }
+
+    @Override
+    public String getUri() {
+        return mUri;
+    }
+
+    /**
+     * Decodes a form or text body in place, the other bodies are parsed by NanoHTTPD, see
+     * {@link #needsNanoHttpdBody()}
+     */
+    @Override
+    public void parseBody(Map<String, String> files) throws IOException {
+        if (mMethod == NanoHTTPD.Method.POST && mStreamedBody == null && !mReleased)
+            mTempFileManager.parseBody(this, files, mBytes, mHeadLength, mLength - mHeadLength);
+    }
+
+    @Override
+    public String getRemoteIpAddress() {
+        return mRemoteAddress.isLoopbackAddress() || mRemoteAddress.isAnyLocalAddress()
+                ? "127.0.0.1" : mRemoteAddress.getHostAddress();
+    }
+
+    @Override
+    public String getRemoteHostName() {
+        return mRemoteAddress.isLoopbackAddress() || mRemoteAddress.isAnyLocalAddress()
+                ? "localhost" : mRemoteAddress.getHostName();
+    }
+    //endregion
+
+    /**
+     * Reads the header lines up to the first blank one, a line without a colon is skipped
+     */
+    private void parseHeaders(int lineStart) {
+        while (lineStart < mHeadLength) {
+            int lineEnd = lineEnd(lineStart);
+            int nameStart = skipSpaces(lineStart, lineEnd);
+            if (nameStart == trimEnd(nameStart, lineEnd))
+                return;
+            int colon = indexOf(':', nameStart, lineEnd);
+            if (colon >= 0) {
+                String name = HeaderNames.lookup(mBytes, nameStart, trimEnd(nameStart, colon));
+                int valueStart = skipSpaces(colon + 1, lineEnd);
+                int valueEnd = trimEnd(valueStart, lineEnd);
+                mHeaders.put(name, new String(mBytes, valueStart, valueEnd - valueStart, UTF_8));
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * @return the position of the line feed ending the line, or the end of the head
+     */
+    private int lineEnd(int lineStart) {
+        int lineEnd = indexOf('\n', lineStart, mHeadLength);
+        return lineEnd >= 0 ? lineEnd : mHeadLength;
+    }
+
+    @Nullable
+    private NanoHTTPD.Method lookupMethod(int start, int end) {
+        for (NanoHTTPD.Method method : METHODS) {
+            String name = method.name();
+            if (name.length() != end - start)
+                continue;
+            int i = 0;
+            while (i < name.length() && name.charAt(i) == mBytes[start + i])
+                i++;
+            if (i == name.length())
+                return method;
+        }
+        return null;
+    }
+
+    private boolean regionEquals(int start, int end, @NonNull byte[] expected) {
+        if (end - start != expected.length)
+            return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (mBytes[start + i] != expected[i])
+                return false;
+        }
+        return true;
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (mBytes[i] == c)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position of the first byte which is not white space, like {@link String#trim()}
+     */
+    private int skipSpaces(int from, int to) {
+        while (from < to && (mBytes[from] & 0xff) <= ' ')
+            from++;
+        return from;
+    }
+
+    /**
+     * @return the position after the last byte which is not white space
+     */
+    private int trimEnd(int from, int to) {
+        while (to > from && (mBytes[to - 1] & 0xff) <= ' ')
+            to--;
+        return to;
+    }
+
+    private int skipToken(int from, int to) {
+        while (from < to && (mBytes[from] & 0xff) > ' ')
+            from++;
+        return from;
+    }
+
+    /**
+     * Decodes the parameters of a query string the way NanoHTTPD does
+     */
+    static void decodeParameters(@NonNull byte[] bytes, int start, int end,
+                                 @NonNull Map<String, List<String>> parameters) {
+        int tokenStart = start;
+        while (tokenStart < end) {
+            int tokenEnd = tokenStart;
+            while (tokenEnd < end && bytes[tokenEnd] != '&')
+                tokenEnd++;
+            if (tokenEnd > tokenStart) {
+                int separator = tokenStart;
+                while (separator < tokenEnd && bytes[separator] != '=')
+                    separator++;
+                String key = decode(bytes, tokenStart, separator).trim();
+                String value = separator < tokenEnd ? decode(bytes, separator + 1, tokenEnd) : "";
+                List<String> values = parameters.get(key);
+                if (values == null) {
+                    values = new ArrayList<>();
+                    parameters.put(key, values);
+                }
+                values.add(value);
+            }
+            tokenStart = tokenEnd + 1;
+        }
+    }
+
+    /**
+     * Decodes the percent escapes and the plus signs of a URL part as UTF-8, like
+     * {@link java.net.URLDecoder}, except that a malformed escape is kept as is
+     */
+    @NonNull
+    static String decode(@NonNull byte[] bytes, int start, int end) {
+        int escape = start;
+        while (escape < end && bytes[escape] != '%' && bytes[escape] != '+')
+            escape++;
+        if (escape == end)
+            return new String(bytes, start, end - start, UTF_8);
+        byte[] decoded = new byte[end - start];
+        int length = escape - start;
+        System.arraycopy(bytes, start, decoded, 0, length);
+        for (int i = escape; i < end; i++) {
+            byte b = bytes[i];
+            if (b == '+') {
+                b = ' ';
+            } else if (b == '%' && i + 2 < end) {
+                int high = Character.digit(bytes[i + 1], 16);
+                int low = Character.digit(bytes[i + 2], 16);
+                if (high >= 0 && low >= 0) {
+                    b = (byte) (high << 4 | low);
+                    i += 2;
+                }
+            }
+            decoded[length++] = b;
+        }
+        return new String(decoded, 0, length, UTF_8);
+    }
+}
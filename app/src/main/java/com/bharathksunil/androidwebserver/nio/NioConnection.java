@@ -0,0 +1,510 @@
+package com.bharathksunil.androidwebserver.nio;
+
+import com.bharathksunil.androidwebserver.body.MemoryFirstTempFileManager;
+import com.bharathksunil.androidwebserver.connection.ClientConnection;
+import com.bharathksunil.androidwebserver.response.BufferPool;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * A client connection of the {@link NioWebServer}. The event loop reads the requests into a
+ * {@link RequestBuffer} and hands each complete one to a worker, which serves it and writes the
+ * response straight to the non-blocking socket. While a worker owns the connection the event loop
+ * does not read from it, and when the socket cannot take more bytes the worker waits for the event
+ * loop to report it writable.
+ * <p>
+ * A body too large to be buffered is read by the worker itself while the handler consumes it, and
+ * it waits for the event loop to report the socket readable whenever the client has not sent more
+ * yet. A handler which leaves such a body unread gets its connection closed after the response.
+ * </p>
+ * <p>
+ * A response streaming without end can hand the connection over: the worker is then released and
+ * the event loop only watches the socket, to pass what the client sends to the new owner and
+ * report the socket closed or writable.
+ * </p>
+ */
+final class NioConnection implements Runnable, ClientConnection.WriteReadiness, ClientConnection.Handover {
+    private static final Logger LOG = Logger.getLogger(NioConnection.class.getName());
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @NonNull
+    private final NioWebServer mServer;
+    @NonNull
+    private final SelectionKey mKey;
+    @NonNull
+    private final SocketChannel mChannel;
+    @NonNull
+    private final ClientConnection mConnection;
+    @NonNull
+    private final RequestBuffer mRequest;
+    /**
+     * The socket stream the responses are written to, counting the bytes sent
+     */
+    @NonNull
+    private final OutputStream mOutputStream;
+    /**
+     * Cleared by NanoHTTPD after every request, like the one of a blocking connection
+     */
+    @NonNull
+    private final MemoryFirstTempFileManager mTempFileManager;
+    @NonNull
+    private final AtomicBoolean mClosed = new AtomicBoolean();
+    /**
+     * The tasks a worker posts to the event loop, allocated once
+     */
+    @NonNull
+    private final Runnable mResumeTask = this::resume;
+    @NonNull
+    private final Runnable mWriteInterestTask = () -> awaitOnLoop(SelectionKey.OP_WRITE);
+    @NonNull
+    private final Runnable mReadInterestTask = () -> awaitOnLoop(SelectionKey.OP_READ);
+    @NonNull
+    private final Runnable mHandoverWriteInterestTask =
+            () -> awaitOnLoop(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    @NonNull
+    private final Runnable mHandoverReadInterestTask = this::watchHandedOver;
+    /**
+     * Guards {@link #mReady}, which the event loop sets once the socket is ready for the operation
+     * a worker waits for
+     */
+    @NonNull
+    private final Object mReadyLock = new Object();
+    private boolean mReady;
+    /**
+     * True from the moment a request is handed to a worker until the worker gives the connection
+     * back, only touched by the event loop
+     */
+    private boolean mDispatched;
+    /**
+     * The length of the request handed to the worker, and of its head
+     */
+    private int mRequestLength;
+    private int mHeadLength;
+    /**
+     * The length of the body the worker streams after the request, 0 if it has none
+     */
+    private long mStreamedBodyLength;
+    /**
+     * The {@link System#nanoTime()} of the last read, only touched by the event loop
+     */
+    private long mLastReadNanos;
+    /**
+     * The owner of the connection once it has been handed over, which keeps it dispatched
+     */
+    @Nullable
+    private volatile ClientConnection.HandoverListener mHandoverListener;
+
+    /**
+     * @param server the server which accepted the connection
+     * @param key    the key of the accepted channel, registered for reading
+     */
+    NioConnection(@NonNull NioWebServer server, @NonNull SelectionKey key) {
+        this.mServer = server;
+        this.mKey = key;
+        this.mChannel = (SocketChannel) key.channel();
+        this.mConnection = new ClientConnection(mChannel.socket(), this, this);
+        this.mRequest = new RequestBuffer(NioWebServer.MAX_BUFFERED_BODY_BYTES);
+        this.mOutputStream = mConnection.countOutput(new ChannelOutputStream());
+        this.mTempFileManager = server.createTempFileManager();
+        this.mLastReadNanos = System.nanoTime();
+    }
+
+    //region Event loop
+    /**
+     * Called on the event loop when the socket has bytes to read
+     *
+     * @param buffer the read buffer shared by all connections
+     */
+    void onReadable(@NonNull ByteBuffer buffer) {
+        ClientConnection.HandoverListener listener = mHandoverListener;
+        if (listener != null) {
+            readHandedOver(buffer, listener);
+            return;
+        }
+        if (mDispatched) {
+            //the worker streaming the body waits for the bytes
+            onReady();
+            return;
+        }
+        int read;
+        try {
+            buffer.clear();
+            read = mChannel.read(buffer);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (read < 0) {
+            close();
+            return;
+        }
+        if (read == 0)
+            return;
+        mLastReadNanos = System.nanoTime();
+        mConnection.addBytesIn(read);
+        mRequest.append(buffer.array(), buffer.arrayOffset(), read);
+        dispatchRequest();
+    }
+
+    /**
+     * Called on the event loop when the socket can take more bytes
+     */
+    void onWritable() {
+        ClientConnection.HandoverListener listener = mHandoverListener;
+        if (listener != null) {
+            mKey.interestOps(SelectionKey.OP_READ);
+            listener.onWritable();
+            return;
+        }
+        onReady();
+    }
+
+    /**
+     * Passes what a client sends on a handed over connection to its owner
+     */
+    private void readHandedOver(@NonNull ByteBuffer buffer, @NonNull ClientConnection.HandoverListener listener) {
+        int read;
+        try {
+            buffer.clear();
+            read = mChannel.read(buffer);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (read < 0) {
+            close();
+        } else if (read > 0) {
+            mConnection.addBytesIn(read);
+            buffer.flip();
+            listener.onReceived(buffer);
+        }
+    }
+
+    private void onReady() {
+        mKey.interestOps(0);
+        synchronized (mReadyLock) {
+            mReady = true;
+            mReadyLock.notifyAll();
+        }
+    }
+
+    /**
+     * Called on the event loop to find out whether the client has been silent for too long
+     *
+     * @param nowNanos          the current {@link System#nanoTime()}
+     * @param idleTimeoutNanos  the time a connection may wait for its next request, 0 for ever
+     * @param readTimeoutNanos  the time a request may take to arrive, 0 for ever
+     * @return true if the connection should be closed
+     */
+    boolean isExpired(long nowNanos, long idleTimeoutNanos, long readTimeoutNanos) {
+        if (mDispatched)
+            return false;
+        if (!mRequest.isEmpty())
+            return readTimeoutNanos > 0 && nowNanos - mLastReadNanos > readTimeoutNanos;
+        return idleTimeoutNanos > 0 && mConnection.getIdleNanos(nowNanos) > idleTimeoutNanos;
+    }
+
+    /**
+     * Called on the event loop while the server drains
+     *
+     * @return true while a worker serves a request, until the response is sent
+     */
+    boolean isServing() {
+        return mDispatched && mHandoverListener == null;
+    }
+
+    /**
+     * Called on the event loop while the server drains
+     *
+     * @return true while a request is partly received
+     */
+    boolean isReceiving() {
+        return !mDispatched && !mRequest.isEmpty();
+    }
+
+    /**
+     * Hands the first pending request to a worker if it is complete, or answers the client if it
+     * cannot be served
+     */
+    private void dispatchRequest() {
+        int length = mRequest.frame();
+        if (length == RequestBuffer.INCOMPLETE)
+            return;
+        switch (length) {
+            case RequestBuffer.HEAD_TOO_LARGE:
+                rejectAndClose("431 Request Header Fields Too Large", null);
+                return;
+            case RequestBuffer.LENGTH_REQUIRED:
+                rejectAndClose("411 Length Required", null);
+                return;
+            case RequestBuffer.MALFORMED:
+                rejectAndClose("400 Bad Request", null);
+                return;
+            default:
+                break;
+        }
+        mRequestLength = length;
+        mHeadLength = mRequest.getHeadLength();
+        mStreamedBodyLength = mRequest.getStreamedBodyLength();
+        mDispatched = true;
+        mKey.interestOps(0);
+        if (!mServer.submit(this))
+            rejectAndClose("503 Service Unavailable", "Retry-After: " + mServer.getRetryAfterSeconds());
+    }
+
+    /**
+     * Runs on the event loop once the worker has sent the response, serves a request the client
+     * has already pipelined or waits for the next one
+     */
+    private void resume() {
+        if (mClosed.get())
+            return;
+        mDispatched = false;
+        try {
+            mKey.interestOps(SelectionKey.OP_READ);
+            dispatchRequest();
+        } catch (CancelledKeyException e) {
+            close();
+        }
+    }
+
+    /**
+     * Runs on the event loop once a worker has handed the connection over, to pass what the client
+     * sends to the new owner and notice when it closes. The new owner may have asked to be told
+     * when it is writable already.
+     */
+    private void watchHandedOver() {
+        ClientConnection.HandoverListener listener = mHandoverListener;
+        if (listener != null && !mRequest.isEmpty())
+            //sent by the client right after the request, before the worker was done
+            listener.onReceived(ByteBuffer.wrap(mRequest.take(mRequest.size())));
+        try {
+            mKey.interestOps(mKey.interestOps() | SelectionKey.OP_READ);
+        } catch (CancelledKeyException e) {
+            close();
+        }
+    }
+
+    private void awaitOnLoop(int interestOps) {
+        try {
+            mKey.interestOps(interestOps);
+        } catch (CancelledKeyException e) {
+            close();
+        }
+    }
+
+    /**
+     * Sends an empty error response and closes the connection. The response is tiny, so one
+     * write to the socket buffer is enough.
+     */
+    private void rejectAndClose(@NonNull String status, @Nullable String header) {
+        String response = "HTTP/1.1 " + status + "\r\n"
+                + (header != null ? header + "\r\n" : "")
+                + "Content-Length: 0\r\n"
+                + "Connection: close\r\n\r\n";
+        try {
+            mChannel.write(ByteBuffer.wrap(response.getBytes(ASCII)));
+        } catch (IOException ignored) {
+            //the client has already gone away, nothing more to tell it
+        } finally {
+            close();
+        }
+    }
+    //endregion
+
+    //region Worker
+    @Override
+    public void run() {
+        mConnection.attach();
+        boolean keepAlive = false;
+        //the request is parsed from a pooled copy, the buffer keeps what was pipelined after it
+        byte[] request = BufferPool.shared().acquire(mRequestLength);
+        try {
+            mRequest.take(mRequestLength, request);
+            BodyInputStream body = null;
+            if (mStreamedBodyLength > 0)
+                body = new BodyInputStream(mStreamedBodyLength);
+            mServer.execute(mTempFileManager, request, mHeadLength, mRequestLength, body, mOutputStream,
+                    mChannel.socket().getInetAddress());
+            //the unread rest of a body would be taken for the next request
+            keepAlive = !mClosed.get() && (body == null || body.mRemaining == 0);
+        } catch (SocketException | SocketTimeoutException ignored) {
+            //the response closed the connection, or the client or the server did
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Communication with the client broken", e);
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "A handler failed to serve the client", e);
+        } finally {
+            BufferPool.shared().release(request);
+            mServer.getDispatcher().onResponseSent(mConnection);
+            mConnection.detach();
+            if (mHandoverListener != null)
+                mServer.post(mHandoverReadInterestTask);
+            else if (keepAlive)
+                mServer.post(mResumeTask);
+            else
+                close();
+        }
+    }
+
+    @Override
+    public void handOver(@NonNull ClientConnection.HandoverListener listener) {
+        mHandoverListener = listener;
+        if (mClosed.get())
+            listener.onClosed();
+    }
+
+    @Override
+    public void requestWritable() {
+        mServer.post(mHandoverWriteInterestTask);
+    }
+
+    @Override
+    public void awaitWritable() throws IOException {
+        await(mWriteInterestTask, "the client stopped reading the response");
+    }
+
+    /**
+     * Waits for the event loop to report the socket ready, for at most the read timeout
+     *
+     * @param interestTask the task registering the interest in the operation
+     * @param timeoutMessage the message of the exception thrown on timeout
+     */
+    private void await(@NonNull Runnable interestTask, @NonNull String timeoutMessage) throws IOException {
+        synchronized (mReadyLock) {
+            mReady = false;
+        }
+        mServer.post(interestTask);
+        long timeoutMillis = mServer.getWebServerConfig().getReadTimeoutMillis();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (mReadyLock) {
+            while (!mReady) {
+                if (mClosed.get())
+                    throw new ClosedChannelException();
+                long remaining = deadline - System.currentTimeMillis();
+                if (timeoutMillis > 0 && remaining <= 0)
+                    throw new SocketTimeoutException(timeoutMessage);
+                try {
+                    mReadyLock.wait(timeoutMillis > 0 ? remaining : 0);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+    //endregion
+
+    /**
+     * Call this method from any thread to drop the connection, a worker waiting to write to it
+     * fails and releases the connection
+     */
+    @Override
+    public void close() {
+        if (!mClosed.compareAndSet(false, true))
+            return;
+        try {
+            //also cancels the key, which the selector drops on its next select
+            mChannel.close();
+        } catch (IOException ignored) {
+            //the socket is unusable either way
+        }
+        synchronized (mReadyLock) {
+            mReadyLock.notifyAll();
+        }
+        ClientConnection.HandoverListener listener = mHandoverListener;
+        if (listener != null)
+            listener.onClosed();
+        mServer.getDispatcher().onConnectionClosed();
+    }
+
+    /**
+     * Reads a streamed body, first the bytes which arrived with the head and then the socket,
+     * waiting for the event loop whenever the client has not sent more. No byte past the body is
+     * read, so a pipelined request stays in the socket.
+     */
+    private final class BodyInputStream extends InputStream {
+        /**
+         * The body bytes not read yet
+         */
+        private long mRemaining;
+
+        BodyInputStream(long length) {
+            this.mRemaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (mRemaining == 0)
+                return -1;
+            if (len == 0)
+                return 0;
+            int length = (int) Math.min(len, mRemaining);
+            int read = mRequest.read(b, off, length);
+            if (read == 0) {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, length);
+                while ((read = mChannel.read(buffer)) == 0)
+                    await(mReadInterestTask, "the client stopped sending the request");
+                if (read < 0)
+                    throw new EOFException("the client closed the request body");
+                mConnection.addBytesIn(read);
+            }
+            mRemaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(mRequest.size(), mRemaining);
+        }
+    }
+
+    /**
+     * Writes to the non-blocking socket, waiting for the event loop whenever the socket buffer is
+     * full. Closing it closes the connection, which NanoHTTPD does after an error response.
+     */
+    private final class ChannelOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                if (mChannel.write(buffer) == 0)
+                    awaitWritable();
+            }
+        }
+
+        @Override
+        public void close() {
+            NioConnection.this.close();
+        }
+    }
+}
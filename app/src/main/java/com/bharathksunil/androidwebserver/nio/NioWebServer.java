@@ -0,0 +1,790 @@
+package com.bharathksunil.androidwebserver.nio;
+
+import com.bharathksunil.androidwebserver.DrainStats;
+import com.bharathksunil.androidwebserver.IWebServer;
+import com.bharathksunil.androidwebserver.RequestDispatcher;
+import com.bharathksunil.androidwebserver.accesslog.AccessLogStats;
+import com.bharathksunil.androidwebserver.body.MemoryFirstNanoHTTPD;
+import com.bharathksunil.androidwebserver.body.MemoryFirstTempFileManager;
+import com.bharathksunil.androidwebserver.body.MemoryFirstTempFileManagerFactory;
+import com.bharathksunil.androidwebserver.body.TempFileStats;
+import com.bharathksunil.androidwebserver.cache.CacheStats;
+import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.metrics.MetricsSnapshot;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.ratelimit.RateLimiterStats;
+import com.bharathksunil.androidwebserver.response.BufferPool;
+import com.bharathksunil.androidwebserver.response.BufferPoolStats;
+import com.bharathksunil.androidwebserver.router.RouteHandler;
+import com.bharathksunil.androidwebserver.runner.BoundedAsyncRunner;
+import com.bharathksunil.androidwebserver.runner.WorkerPoolStats;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This is an {@link IWebServer} built on a {@link Selector} event loop instead of a thread per
+ * connection. One thread accepts the clients and reads their requests without blocking, and a
+ * request is handed to the worker pool only once it has been completely received, so idle
+ * keep-alive connections and slow clients cost no worker.
+ * <p>
+ * The worker writes the response straight to the non-blocking socket, file bodies included, and
+ * only waits on the event loop when the socket buffer is full. The requests are parsed by
+ * {@link HttpRequest} straight from the bytes received, the responses are written by NanoHTTPD,
+ * and served by the same {@link RequestDispatcher} as
+ * {@link com.bharathksunil.androidwebserver.MyWebServer}, so both engines answer alike.
+ * </p>
+ * <p>
+ * Request bodies up to {@link #MAX_BUFFERED_BODY_BYTES} are received with the head. Larger ones,
+ * like uploads, are handed to the worker with the head and read by the handler from the socket as
+ * they arrive, the worker waiting on the event loop whenever the client is slower than the handler.
+ * </p>
+ */
+public class NioWebServer implements IWebServer {
+    private static final Logger LOG = Logger.getLogger(NioWebServer.class.getName());
+    /**
+     * The largest request body received before the request is served, larger ones are streamed
+     */
+    public static final int MAX_BUFFERED_BODY_BYTES = 64 * 1024;
+    /**
+     * The bytes read from a socket at once, one buffer is shared as only the event loop reads
+     */
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final long MIN_SWEEP_PERIOD_MILLIS = 250;
+    private static final long MAX_SWEEP_PERIOD_MILLIS = 5000;
+    /**
+     * The interval at which a draining event loop looks for the connections done with their request
+     */
+    private static final long DRAIN_POLL_MILLIS = 20;
+    /**
+     * {@link NanoHTTPD.Response}'s send, protected as NanoHTTPD only sends from its HTTPSession
+     */
+    @NonNull
+    private static final java.lang.reflect.Method RESPONSE_SEND = findSendMethod();
+
+    @NonNull
+    private volatile WebServerConfig mWebServerConfig;
+    /**
+     * Routes the requests and records the metrics
+     */
+    @NonNull
+    private final RequestDispatcher mDispatcher;
+    /**
+     * The worker pool which serves the requests
+     */
+    @NonNull
+    private final BoundedAsyncRunner mAsyncRunner;
+    @NonNull
+    private final HttpCodec mHttpCodec = new HttpCodec();
+    /**
+     * Keeps the small request bodies in memory and spills the others to temp files
+     */
+    @NonNull
+    private final MemoryFirstTempFileManagerFactory mTempFileManagerFactory;
+    /**
+     * The tasks the workers hand to the event loop, which alone may change the interest sets
+     */
+    @NonNull
+    private final Queue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+    @Nullable
+    private volatile Selector mSelector;
+    /**
+     * The channel accepting the clients, a reconfigured server replaces it once the new one is bound
+     */
+    @Nullable
+    private volatile ServerSocketChannel mServerChannel;
+    /**
+     * The listeners added on top of the server config, bound whenever the server starts
+     */
+    @NonNull
+    private final List<WebServerConfig> mListenerConfigs = new CopyOnWriteArrayList<>();
+    /**
+     * The channel of each added listener while the server runs
+     */
+    @NonNull
+    private final Map<WebServerConfig, ServerSocketChannel> mListenerChannels = new ConcurrentHashMap<>();
+    @Nullable
+    private Thread mEventLoop;
+    private volatile boolean mRunning;
+    /**
+     * True from the moment the server is asked to stop until the event loop has closed every
+     * connection
+     */
+    private volatile boolean mDraining;
+    private volatile long mDrainDeadlineNanos;
+    /**
+     * The outcome of the drain, written by the event loop and read once it has ended
+     */
+    private int mDrainAbortedCount;
+    private int mDrainIdleClosedCount;
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    public NioWebServer(@NonNull WebServerConfig webServerConfig) throws NumberFormatException {
+        //an invalid port fails here like it does for MyWebServer, not once the server starts
+        Integer.parseInt(webServerConfig.getPortNumber());
+        this.mWebServerConfig = webServerConfig;
+        this.mDispatcher = new RequestDispatcher(webServerConfig);
+        this.mAsyncRunner = new BoundedAsyncRunner(
+                webServerConfig.getWorkerPoolCoreSize(),
+                webServerConfig.getWorkerPoolMaxSize(),
+                webServerConfig.getWorkerQueueCapacity(),
+                webServerConfig.getRetryAfterSeconds()
+        );
+        String tempDirectory = webServerConfig.getTempDirectory();
+        this.mTempFileManagerFactory = new MemoryFirstTempFileManagerFactory(
+                tempDirectory != null ? new File(tempDirectory) : null,
+                webServerConfig.getBodyMemoryThresholdBytes(),
+                webServerConfig.getMaxBodyMemoryBytes());
+    }
+
+    /**
+     * Call this method to get the port the server listens on, useful when it was started on port 0
+     *
+     * @return the listening port, -1 if the server is not running
+     */
+    public int getListeningPort() {
+        ServerSocketChannel serverChannel = mServerChannel;
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * Call this method to get the current state of the worker pool, use it to size the pool
+     * through the {@link WebServerConfig}
+     *
+     * @return a snapshot of the worker pool statistics
+     */
+    @NonNull
+    public WorkerPoolStats getWorkerPoolStats() {
+        return mAsyncRunner.getStats();
+    }
+
+    /**
+     * Call this method to get the counters of the response cache, use them to tune the byte
+     * budget through the {@link WebServerConfig}
+     *
+     * @return a snapshot of the cache statistics, null if the cache is disabled
+     */
+    @Nullable
+    public CacheStats getResponseCacheStats() {
+        return mDispatcher.getResponseCacheStats();
+    }
+
+    /**
+     * Call this method to get the counters of the rate limit every client is held to
+     *
+     * @return a snapshot of the limiter statistics, null if the requests are not limited
+     */
+    @Nullable
+    public RateLimiterStats getRateLimiterStats() {
+        return mDispatcher.getRateLimiterStats();
+    }
+
+    /**
+     * Call this method to get the counters of the access log, use them to size its buffer through
+     * the {@link WebServerConfig}
+     *
+     * @return a snapshot of the access log statistics, null if the requests are not logged
+     */
+    @Nullable
+    public AccessLogStats getAccessLogStats() {
+        return mDispatcher.getAccessLogStats();
+    }
+
+    /**
+     * Call this method to get the counters of the request bodies kept in memory and spilled to
+     * temp files, use them to tune the body memory through the {@link WebServerConfig}
+     *
+     * @return a snapshot of the temp file statistics
+     */
+    @NonNull
+    public TempFileStats getTempFileStats() {
+        return mTempFileManagerFactory.getStats();
+    }
+
+    /**
+     * Call this method to get the counters of the buffers the responses are written through,
+     * shared by every server of the process
+     *
+     * @return a snapshot of the buffer pool statistics
+     */
+    @NonNull
+    public BufferPoolStats getBufferPoolStats() {
+        return BufferPool.shared().getStats();
+    }
+
+    //region Overridden Methods: IWebServer
+    @Override
+    public synchronized void startServer() throws WebServerException {
+        if (mRunning)
+            return;
+        ServerSocketChannel serverChannel = null;
+        Selector selector = null;
+        try {
+            serverChannel = bind(mWebServerConfig.getListenAddress());
+            selector = Selector.open();
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            for (WebServerConfig listenerConfig : mListenerConfigs) {
+                ServerSocketChannel listenerChannel = bind(listenerConfig.getListenAddress());
+                mListenerChannels.put(listenerConfig, listenerChannel);
+                listenerChannel.register(selector, SelectionKey.OP_ACCEPT);
+            }
+        } catch (IOException e) {
+            closeQuietly(serverChannel);
+            for (ServerSocketChannel listenerChannel : mListenerChannels.values())
+                closeQuietly(listenerChannel);
+            mListenerChannels.clear();
+            closeQuietly(selector);
+            throw new WebServerException(WebServerException.Type.PORT_IN_USE);
+        }
+        mServerChannel = serverChannel;
+        mSelector = selector;
+        mRunning = true;
+        mDispatcher.onServerStarted();
+        Thread eventLoop = new Thread(this::runEventLoop, "WebServer Selector");
+        eventLoop.setDaemon(true);
+        mEventLoop = eventLoop;
+        eventLoop.start();
+    }
+
+    @Override
+    public void stopServer() {
+        DrainStats drainStats = stopServer(mWebServerConfig.getDrainTimeoutMillis());
+        LOG.log(Level.INFO, "Stopped the server: {0}", drainStats);
+    }
+
+    @Override
+    @NonNull
+    public synchronized DrainStats stopServer(long drainTimeoutMillis) {
+        long start = System.nanoTime();
+        mDispatcher.beginDrain();
+        Thread eventLoop = mEventLoop;
+        Selector selector = mSelector;
+        if (eventLoop == null || selector == null)
+            return mDispatcher.endDrain(0, 0, start);
+        mDrainAbortedCount = 0;
+        mDrainIdleClosedCount = 0;
+        mDrainDeadlineNanos = start + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+        //the event loop keeps running until the drain is over
+        mDraining = true;
+        mRunning = false;
+        selector.wakeup();
+        try {
+            eventLoop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mDraining = false;
+        mEventLoop = null;
+        mSelector = null;
+        mServerChannel = null;
+        mListenerChannels.clear();
+        DrainStats drainStats = mDispatcher.endDrain(mDrainAbortedCount, mDrainIdleClosedCount, start);
+        mDispatcher.onServerStopped();
+        return drainStats;
+    }
+
+    @Override
+    public synchronized void reconfigure(@NonNull WebServerConfig webServerConfig) throws WebServerException {
+        WebServerConfig current = mWebServerConfig;
+        if (!current.canReconfigureTo(webServerConfig))
+            throw new IllegalArgumentException("the server must be rebuilt for the config: " + webServerConfig);
+        InetSocketAddress address = webServerConfig.getListenAddress();
+        //only the bind address is bound, the Ip address of the config is the one shown to the user
+        if (mRunning && !address.equals(current.getListenAddress())) {
+            ServerSocketChannel serverChannel;
+            try {
+                //the new address queues clients before the old one stops accepting
+                serverChannel = bind(address);
+            } catch (IOException e) {
+                throw new WebServerException(WebServerException.Type.PORT_IN_USE);
+            }
+            ServerSocketChannel previous = mServerChannel;
+            mServerChannel = serverChannel;
+            post(() -> moveAccepting(serverChannel, previous));
+        }
+        mWebServerConfig = webServerConfig;
+        mAsyncRunner.resize(webServerConfig.getWorkerPoolCoreSize(), webServerConfig.getWorkerPoolMaxSize());
+        mAsyncRunner.setRetryAfterSeconds(webServerConfig.getRetryAfterSeconds());
+        mDispatcher.reconfigure(webServerConfig);
+        LOG.log(Level.INFO, "Reconfigured the server on port {0}", String.valueOf(getListeningPort()));
+    }
+
+    @Override
+    public synchronized void addListener(@NonNull WebServerConfig listenerConfig) throws WebServerException {
+        InetSocketAddress address = listenerConfig.getListenAddress();
+        if (mListenerConfigs.contains(listenerConfig))
+            throw new IllegalArgumentException("listener already added: " + address);
+        if (mRunning) {
+            ServerSocketChannel listenerChannel;
+            try {
+                listenerChannel = bind(address);
+            } catch (IOException e) {
+                throw new WebServerException(WebServerException.Type.PORT_IN_USE);
+            }
+            mListenerChannels.put(listenerConfig, listenerChannel);
+            post(() -> moveAccepting(listenerChannel, null));
+        }
+        mListenerConfigs.add(listenerConfig);
+    }
+
+    @Override
+    public synchronized boolean removeListener(@NonNull WebServerConfig listenerConfig) {
+        if (!mListenerConfigs.remove(listenerConfig))
+            return false;
+        //the key is cancelled with the channel, the clients it accepted keep their connections
+        closeQuietly(mListenerChannels.remove(listenerConfig));
+        Selector selector = mSelector;
+        if (selector != null)
+            selector.wakeup();
+        return true;
+    }
+
+    @Override
+    @NonNull
+    public List<InetSocketAddress> getListeningAddresses() {
+        ServerSocketChannel serverChannel = mServerChannel;
+        if (!mRunning || serverChannel == null)
+            return Collections.emptyList();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        addresses.add((InetSocketAddress) serverChannel.socket().getLocalSocketAddress());
+        for (WebServerConfig listenerConfig : mListenerConfigs) {
+            ServerSocketChannel listenerChannel = mListenerChannels.get(listenerConfig);
+            if (listenerChannel != null)
+                addresses.add((InetSocketAddress) listenerChannel.socket().getLocalSocketAddress());
+        }
+        return addresses;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    @Override
+    public WebServerConfig getWebServerConfig() {
+        return mWebServerConfig;
+    }
+
+    @Override
+    public void addRoute(@NonNull NanoHTTPD.Method method, @NonNull String pattern, @NonNull RouteHandler handler) {
+        mDispatcher.addRoute(method, pattern, handler);
+    }
+
+    @Override
+    @Nullable
+    public MetricsSnapshot getMetrics() {
+        return mDispatcher.getMetrics();
+    }
+    //endregion
+
+    //region Event loop
+    private void runEventLoop() {
+        Selector selector = mSelector;
+        if (selector == null)
+            return;
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long sweepPeriodMillis = sweepPeriodMillis(idleTimeoutNanos(), readTimeoutNanos());
+        long nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sweepPeriodMillis);
+        try {
+            while (mRunning || mDraining) {
+                if (mDraining && drain(selector))
+                    break;
+                selector.select(mDraining ? DRAIN_POLL_MILLIS : sweepPeriodMillis);
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key, selector, readBuffer);
+                }
+                long now = System.nanoTime();
+                if (now - nextSweep >= 0) {
+                    //the timeouts of a reconfigured server apply from its next sweep
+                    long idleTimeoutNanos = idleTimeoutNanos();
+                    long readTimeoutNanos = readTimeoutNanos();
+                    closeExpired(selector, now, idleTimeoutNanos, readTimeoutNanos);
+                    sweepPeriodMillis = sweepPeriodMillis(idleTimeoutNanos, readTimeoutNanos);
+                    nextSweep = now + TimeUnit.MILLISECONDS.toNanos(sweepPeriodMillis);
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "The event loop failed", e);
+        } finally {
+            mRunning = false;
+            closeServerChannels(selector);
+            for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                if (!(key.attachment() instanceof NioConnection))
+                    continue;
+                NioConnection connection = (NioConnection) key.attachment();
+                if (key.isValid() && connection.isServing())
+                    mDrainAbortedCount++;
+                connection.close();
+            }
+            closeQuietly(selector);
+            mTasks.clear();
+        }
+    }
+
+    private void handleKey(@NonNull SelectionKey key,
+                           @NonNull Selector selector,
+                           @NonNull ByteBuffer readBuffer) {
+        try {
+            if (!key.isValid())
+                return;
+            if (key.isAcceptable()) {
+                accept(selector, (ServerSocketChannel) key.channel());
+                return;
+            }
+            NioConnection connection = (NioConnection) key.attachment();
+            if (key.isWritable())
+                connection.onWritable();
+            if (key.isValid() && key.isReadable())
+                connection.onReadable(readBuffer);
+        } catch (CancelledKeyException ignored) {
+            //a worker closed the connection meanwhile
+        }
+    }
+
+    private void accept(@NonNull Selector selector, @NonNull ServerSocketChannel serverChannel) {
+        SocketChannel client;
+        try {
+            client = serverChannel.accept();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not accept a client", e);
+            return;
+        }
+        if (client == null)
+            return;
+        try {
+            client.configureBlocking(false);
+            //the head and the body are separate writes, Nagle would hold the body back until the
+            //client acknowledges the head
+            client.socket().setTcpNoDelay(true);
+            SelectionKey key = client.register(selector, SelectionKey.OP_READ);
+            key.attach(new NioConnection(this, key));
+            mDispatcher.onConnectionOpened();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Could not register a client", e);
+            closeQuietly(client);
+        }
+    }
+
+    /**
+     * Called on the event loop while the server drains: stops accepting connections and closes
+     * the ones waiting for a request
+     *
+     * @return true once no request is left or the deadline has passed
+     */
+    private boolean drain(@NonNull Selector selector) {
+        closeServerChannels(selector);
+        boolean serving = false;
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid() || !(key.attachment() instanceof NioConnection))
+                continue;
+            NioConnection connection = (NioConnection) key.attachment();
+            if (connection.isServing() || connection.isReceiving()) {
+                serving = true;
+            } else {
+                connection.close();
+                mDrainIdleClosedCount++;
+            }
+        }
+        return !serving || System.nanoTime() - mDrainDeadlineNanos >= 0;
+    }
+
+    /**
+     * Called on the event loop once a reconfigured server has bound its new address, or a
+     * listener has been added
+     */
+    private void moveAccepting(@NonNull ServerSocketChannel serverChannel,
+                               @Nullable ServerSocketChannel previous) {
+        Selector selector = mSelector;
+        try {
+            if (selector == null)
+                throw new ClosedChannelException();
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (ClosedChannelException e) {
+            //the server stopped meanwhile
+            closeQuietly(serverChannel);
+        }
+        //the clients the previous channel accepted keep their connections
+        closeQuietly(previous);
+    }
+
+    /**
+     * Called on the event loop to stop accepting clients, including on a channel bound by a
+     * reconfiguration which has not been registered yet
+     */
+    private void closeServerChannels(@NonNull Selector selector) {
+        closeQuietly(mServerChannel);
+        for (ServerSocketChannel listenerChannel : mListenerChannels.values())
+            closeQuietly(listenerChannel);
+        for (SelectionKey key : selector.keys()) {
+            if (key.channel() instanceof ServerSocketChannel && key.channel().isOpen())
+                closeQuietly(key.channel());
+        }
+    }
+
+    private long readTimeoutNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(mWebServerConfig.getReadTimeoutMillis());
+    }
+
+    /**
+     * @return the keep-alive timeout, or the read timeout if the keep-alive one is disabled
+     */
+    private long idleTimeoutNanos() {
+        int keepAliveTimeoutMillis = mWebServerConfig.getKeepAliveTimeoutMillis();
+        return keepAliveTimeoutMillis > 0
+                ? TimeUnit.MILLISECONDS.toNanos(keepAliveTimeoutMillis) : readTimeoutNanos();
+    }
+
+    @NonNull
+    private static ServerSocketChannel bind(@NonNull InetSocketAddress address) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(address);
+        } catch (IOException e) {
+            closeQuietly(serverChannel);
+            throw e;
+        }
+        return serverChannel;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = mTasks.poll()) != null)
+            task.run();
+    }
+
+    private static void closeExpired(@NonNull Selector selector, long nowNanos,
+                                     long idleTimeoutNanos, long readTimeoutNanos) {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof NioConnection
+                    && ((NioConnection) attachment).isExpired(nowNanos, idleTimeoutNanos, readTimeoutNanos))
+                ((NioConnection) attachment).close();
+        }
+    }
+
+    private static long sweepPeriodMillis(long idleTimeoutNanos, long readTimeoutNanos) {
+        long timeoutNanos = idleTimeoutNanos > 0 && readTimeoutNanos > 0
+                ? Math.min(idleTimeoutNanos, readTimeoutNanos)
+                : Math.max(idleTimeoutNanos, readTimeoutNanos);
+        if (timeoutNanos <= 0)
+            return MAX_SWEEP_PERIOD_MILLIS;
+        long periodMillis = TimeUnit.NANOSECONDS.toMillis(timeoutNanos) / 4;
+        return Math.max(MIN_SWEEP_PERIOD_MILLIS, Math.min(MAX_SWEEP_PERIOD_MILLIS, periodMillis));
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            //nothing left to release
+        }
+    }
+    //endregion
+
+    //region Called by the connections
+    /**
+     * Runs the task on the event loop
+     */
+    void post(@NonNull Runnable task) {
+        mTasks.add(task);
+        Selector selector = mSelector;
+        if (selector != null)
+            selector.wakeup();
+    }
+
+    /**
+     * @return false if the worker pool is saturated
+     */
+    boolean submit(@NonNull NioConnection connection) {
+        return mAsyncRunner.submit(connection);
+    }
+
+    int getRetryAfterSeconds() {
+        return mAsyncRunner.getRetryAfterSeconds();
+    }
+
+    @NonNull
+    RequestDispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    @NonNull
+    MemoryFirstTempFileManager createTempFileManager() {
+        return mTempFileManagerFactory.create();
+    }
+
+    /**
+     * Parses a complete request, serves it and writes the response
+     *
+     * @param bytes        the head of the request, followed by its body unless it is streamed, no
+     *                     longer referenced once this method returns
+     * @param headLength   the length of the head including the empty line
+     * @param length       the length of the request in the bytes
+     * @param streamedBody the body read from the socket, null if it is in the bytes
+     * @throws java.net.SocketException if the connection must be closed after the response
+     */
+    void execute(@NonNull MemoryFirstTempFileManager tempFileManager,
+                 @NonNull byte[] bytes,
+                 int headLength,
+                 int length,
+                 @Nullable InputStream streamedBody,
+                 @NonNull OutputStream outputStream,
+                 @NonNull InetAddress remoteAddress) throws IOException {
+        HttpRequest request = new HttpRequest(mHttpCodec, bytes, headLength, length, streamedBody,
+                tempFileManager, remoteAddress);
+        try {
+            mHttpCodec.execute(request, outputStream);
+        } finally {
+            //a handler keeping the request must not read the bytes once the pool lends them again
+            request.releaseBytes();
+        }
+    }
+    //endregion
+
+    /**
+     * A NanoHTTPD which is never started, it only lends its response writing to the event loop,
+     * and its request parsing to the requests whose body it must parse, and serves through the
+     * dispatcher
+     */
+    private final class HttpCodec extends MemoryFirstNanoHTTPD {
+        HttpCodec() {
+            super(0);
+        }
+
+        /**
+         * Serves a request the way HTTPSession does, the requests whose body NanoHTTPD must parse
+         * go through it
+         */
+        void execute(@NonNull HttpRequest request, @NonNull OutputStream outputStream) throws IOException {
+            try {
+                request.parseHead();
+            } catch (ResponseException e) {
+                throw sendError(e, outputStream);
+            }
+            if (request.needsNanoHttpdBody()) {
+                new MemoryFirstSession(request.getTempFileManager(), request.newRawInputStream(), outputStream,
+                        request.getRemoteAddress()).execute();
+                return;
+            }
+            Response response = null;
+            try {
+                response = serve(request);
+                if (response == null)
+                    throw new ResponseException(Response.Status.INTERNAL_ERROR,
+                            "SERVER INTERNAL ERROR: Serve() returned a null response.");
+                request.unloadCookies(response);
+                String acceptEncoding = request.getHeaders().get("accept-encoding");
+                boolean keepAlive = request.isKeepAlive();
+                response.setRequestMethod(request.getMethod());
+                response.setGzipEncoding(useGzipWhenAccepted(response)
+                        && acceptEncoding != null && acceptEncoding.contains("gzip"));
+                response.setKeepAlive(keepAlive);
+                send(response, outputStream);
+                if (!keepAlive || response.isCloseConnection())
+                    throw new SocketException("connection closed after the response");
+            } catch (ResponseException e) {
+                throw sendError(e, outputStream);
+            } finally {
+                if (response != null) {
+                    try {
+                        response.close();
+                    } catch (IOException ignored) {
+                        //nothing left to release
+                    }
+                }
+                request.getTempFileManager().clear();
+            }
+        }
+
+        /**
+         * Answers a request which cannot be served
+         *
+         * @return the exception to throw, as the connection must then be closed
+         */
+        @NonNull
+        private SocketException sendError(@NonNull ResponseException e, @NonNull OutputStream outputStream)
+                throws IOException {
+            Response response = newFixedLengthResponse(e.getStatus(), MIME_PLAINTEXT, e.getMessage());
+            response.setKeepAlive(false);
+            send(response, outputStream);
+            return new SocketException("connection closed after the error response");
+        }
+
+        /**
+         * Calls {@link #RESPONSE_SEND}, the responses handle their own write errors
+         */
+        private void send(@NonNull Response response, @NonNull OutputStream outputStream) throws IOException {
+            try {
+                RESPONSE_SEND.invoke(response, outputStream);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IOException(cause);
+            }
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            return mDispatcher.serve(session);
+        }
+
+        @Override
+        protected boolean useGzipWhenAccepted(Response response) {
+            return mDispatcher.useGzipWhenAccepted(response);
+        }
+    }
+
+    @NonNull
+    private static java.lang.reflect.Method findSendMethod() {
+        try {
+            java.lang.reflect.Method send = NanoHTTPD.Response.class.getDeclaredMethod("send", OutputStream.class);
+            send.setAccessible(true);
+            return send;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("NanoHTTPD without Response.send", e);
+        }
+    }
+}
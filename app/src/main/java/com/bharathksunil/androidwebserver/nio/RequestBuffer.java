@@ -0,0 +1,293 @@
+package com.bharathksunil.androidwebserver.nio;
+
+import java.util.Arrays;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This collects the bytes read from a non-blocking socket until they hold a complete request: the
+ * head up to the empty line, then as many body bytes as its Content-Length announces. Bytes past
+ * the request, sent by a client pipelining its requests, are kept for the next one.
+ * <p>
+ * A body too large to be held in memory is not waited for: the request is framed as soon as its
+ * head is complete, and the body is streamed to the handler with {@link #read(byte[], int, int)}
+ * draining the bytes which arrived with the head.
+ * </p>
+ * <p>
+ * The buffer is only allocated while bytes are pending, so an idle keep-alive connection holds no
+ * memory for it.
+ * </p>
+ */
+final class RequestBuffer {
+    /**
+     * The largest head accepted, the size of the buffer NanoHTTPD parses the head from
+     */
+    static final int MAX_HEAD_BYTES = 8192;
+    /**
+     * {@link #frame()} results other than the length of a complete request
+     */
+    static final int INCOMPLETE = 0;
+    static final int HEAD_TOO_LARGE = -1;
+    static final int MALFORMED = -2;
+    static final int LENGTH_REQUIRED = -3;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final byte[] CONTENT_LENGTH = {
+            'c', 'o', 'n', 't', 'e', 'n', 't', '-', 'l', 'e', 'n', 'g', 't', 'h'};
+    private static final byte[] TRANSFER_ENCODING = {
+            't', 'r', 'a', 'n', 's', 'f', 'e', 'r', '-', 'e', 'n', 'c', 'o', 'd', 'i', 'n', 'g'};
+
+    /**
+     * The largest body held in memory, larger ones are streamed
+     */
+    private final int mMaxBufferedBodyBytes;
+    /**
+     * The pending bytes, null while there are none
+     */
+    @Nullable
+    private byte[] mBytes;
+    private int mSize;
+    /**
+     * The position from which the end of the head is searched, so a head arriving in many reads
+     * is scanned once
+     */
+    private int mScanned;
+    /**
+     * The length of the head including the empty line, 0 until the whole head has been received
+     */
+    private int mHeadLength;
+    private long mBodyLength;
+
+    /**
+     * @param maxBufferedBodyBytes the largest body held in memory, larger ones are streamed
+     */
+    RequestBuffer(int maxBufferedBodyBytes) {
+        this.mMaxBufferedBodyBytes = maxBufferedBodyBytes;
+    }
+
+    /**
+     * Call this method with the bytes read from the client
+     */
+    void append(@NonNull byte[] source, int offset, int length) {
+        int size = mSize + length;
+        if (mBytes == null) {
+            mBytes = new byte[Math.max(INITIAL_CAPACITY, length)];
+        } else if (size > mBytes.length) {
+            mBytes = Arrays.copyOf(mBytes, Math.max(size, 2 * mBytes.length));
+        }
+        System.arraycopy(source, offset, mBytes, mSize, length);
+        mSize = size;
+    }
+
+    /**
+     * @return true if no bytes are pending
+     */
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Call this method after every read to find out whether a request can be served
+     *
+     * @return the length of the first request if it is complete, only of its head if its body is
+     * streamed, {@link #INCOMPLETE} if more bytes are needed, or one of the errors the client must
+     * be answered with
+     */
+    int frame() {
+        if (mHeadLength == 0) {
+            int headLength = findHeadEnd();
+            if (headLength < 0)
+                return mSize > MAX_HEAD_BYTES ? HEAD_TOO_LARGE : INCOMPLETE;
+            if (headLength > MAX_HEAD_BYTES)
+                return HEAD_TOO_LARGE;
+            long bodyLength = parseBodyLength(headLength);
+            if (bodyLength < 0)
+                return (int) bodyLength;
+            mHeadLength = headLength;
+            mBodyLength = bodyLength;
+        }
+        if (mBodyLength > mMaxBufferedBodyBytes)
+            return mHeadLength;
+        long length = mHeadLength + mBodyLength;
+        return mSize >= length ? (int) length : INCOMPLETE;
+    }
+
+    /**
+     * Call this method after {@link #frame()} found a request, before taking it
+     *
+     * @return the length of the body to stream, 0 if the body is framed with the head
+     */
+    long getStreamedBodyLength() {
+        return mBodyLength > mMaxBufferedBodyBytes ? mBodyLength : 0;
+    }
+
+    /**
+     * Call this method after {@link #frame()} found a request, before taking it
+     *
+     * @return the length of the head including the empty line
+     */
+    int getHeadLength() {
+        return mHeadLength;
+    }
+
+    /**
+     * Call this method to remove a complete request, the bytes after it are kept
+     *
+     * @param length the length returned by {@link #frame()}
+     * @return the bytes of the request
+     */
+    @NonNull
+    byte[] take(int length) {
+        byte[] request = new byte[length];
+        take(length, request);
+        return request;
+    }
+
+    /**
+     * Call this method to remove a complete request into a reusable array, the bytes after it are
+     * kept
+     *
+     * @param length      the length returned by {@link #frame()}
+     * @param destination receives the bytes of the request, at least that long
+     */
+    void take(int length, @NonNull byte[] destination) {
+        //noinspection ConstantConditions only called after frame() found a request
+        System.arraycopy(mBytes, 0, destination, 0, length);
+        int remaining = mSize - length;
+        if (remaining == 0)
+            mBytes = null;
+        else
+            System.arraycopy(mBytes, length, mBytes, 0, remaining);
+        mSize = remaining;
+        mScanned = 0;
+        mHeadLength = 0;
+        mBodyLength = 0;
+    }
+
+    /**
+     * Call this method to remove pending bytes of a streamed body
+     *
+     * @return the number of bytes copied, 0 if none are pending
+     */
+    int read(@NonNull byte[] destination, int offset, int length) {
+        int read = Math.min(length, mSize);
+        if (read == 0)
+            return 0;
+        //noinspection ConstantConditions bytes are pending
+        System.arraycopy(mBytes, 0, destination, offset, read);
+        mSize -= read;
+        if (mSize == 0)
+            mBytes = null;
+        else
+            System.arraycopy(mBytes, read, mBytes, 0, mSize);
+        return read;
+    }
+
+    /**
+     * @return the number of pending bytes
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Finds the empty line ending the head, accepting bare line feeds like NanoHTTPD
+     *
+     * @return the length of the head including the empty line, -1 if it is not complete yet
+     */
+    private int findHeadEnd() {
+        byte[] bytes = mBytes;
+        if (bytes == null)
+            return -1;
+        for (int i = mScanned; i < mSize; i++) {
+            if (bytes[i] != '\n')
+                continue;
+            int next = i + 1;
+            if (next < mSize && bytes[next] == '\r')
+                next++;
+            if (next < mSize && bytes[next] == '\n')
+                return next + 1;
+        }
+        //the line feed starting the empty line may be one of the last two bytes
+        mScanned = Math.max(0, mSize - 2);
+        return -1;
+    }
+
+    /**
+     * @return the Content-Length of the request, 0 if it has none, or {@link #MALFORMED} or
+     * {@link #LENGTH_REQUIRED} if the body cannot be framed
+     */
+    private long parseBodyLength(int headLength) {
+        byte[] bytes = mBytes;
+        //noinspection ConstantConditions only called once the head is complete
+        int lineStart = indexOf(bytes, '\n', 0, headLength) + 1;
+        long bodyLength = 0;
+        while (lineStart < headLength) {
+            int lineEnd = indexOf(bytes, '\n', lineStart, headLength);
+            if (lineEnd < 0)
+                lineEnd = headLength;
+            int value = valueStart(bytes, lineStart, lineEnd, CONTENT_LENGTH);
+            if (value >= 0) {
+                bodyLength = parseLength(bytes, value, lineEnd);
+                if (bodyLength < 0)
+                    return MALFORMED;
+            } else if (valueStart(bytes, lineStart, lineEnd, TRANSFER_ENCODING) >= 0) {
+                //NanoHTTPD cannot read chunked bodies either
+                return LENGTH_REQUIRED;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return bodyLength;
+    }
+
+    private static int indexOf(@NonNull byte[] bytes, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == c)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param name the header name in lower case
+     * @return the position after the colon if the line is this header, -1 otherwise
+     */
+    private static int valueStart(@NonNull byte[] bytes, int lineStart, int lineEnd, @NonNull byte[] name) {
+        int colon = lineStart + name.length;
+        if (colon >= lineEnd || bytes[colon] != ':')
+            return -1;
+        for (int i = 0; i < name.length; i++) {
+            byte b = bytes[lineStart + i];
+            byte n = name[i];
+            if (b != n && (n < 'a' || n > 'z' || b != n - ('a' - 'A')))
+                return -1;
+        }
+        return colon + 1;
+    }
+
+    /**
+     * @return the decimal value between the colon and the line end, -1 if it is not a number
+     */
+    private static long parseLength(@NonNull byte[] bytes, int start, int end) {
+        long length = 0;
+        int digits = 0;
+        boolean trailing = false;
+        for (int i = start; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                if (trailing)
+                    return -1;
+                //any length past an int is too large anyway, stop before it can overflow
+                if (length <= Integer.MAX_VALUE)
+                    length = 10 * length + (b - '0');
+                digits++;
+            } else if (b == ' ' || b == '\t' || b == '\r') {
+                trailing = digits > 0;
+            } else {
+                return -1;
+            }
+        }
+        return digits > 0 ? length : -1;
+    }
+}
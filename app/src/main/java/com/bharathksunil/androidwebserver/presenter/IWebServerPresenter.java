@@ -17,6 +17,8 @@ import io.reactivex.annotations.Nullable;
  * not passed then the server will not start
  * <li>Call the {@link #startServer()} to start the server.</li>
  * <li>Call the {@link #stopServer()} to stop the server.</li>
+ * <li>The start and the stop may complete later, off the thread of the view; the view is told
+ * once they do.</li>
  * <li>Call {@link #onWiFiConnected(WebServerConfig)} and {@link #onWiFiDisconnected()} to tell the
  * presenter about any state changes in the wifi</li>
  * <li>To Disconnect to the presenter call {@link #setView(View)} with parameter null</li>
@@ -60,6 +62,23 @@ public interface IWebServerPresenter {
      */
     void onWiFiDisconnected();
 
+    /**
+     * Call this method to get the state of the server, which changes as soon as a start or a stop
+     * is requested and again once it completes
+     *
+     * @return the current {@link ServerState}
+     */
+    @NonNull
+    ServerState getServerState();
+
+    /**
+     * Call this method to measure how fast the server starts
+     *
+     * @return the time the last start took from the request until the server listened, -1 if the
+     * server has not been started by this presenter
+     */
+    long getTimeToListeningMillis();
+
     /**
      * This is the interface that lets the presenter interact with the view.
      */
@@ -7,6 +7,14 @@ import com.bharathksunil.androidwebserver.IWebServer;
 import com.bharathksunil.androidwebserver.exception.WebServerException;
 import com.bharathksunil.androidwebserver.model.WebServerConfig;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
 public final class MyWebServerPresenter implements IWebServerPresenter {
     /**
      * The current instance of the {@link com.bharathksunil.androidwebserver.presenter.IWebServerPresenter.View}
@@ -25,9 +33,51 @@ public final class MyWebServerPresenter implements IWebServerPresenter {
      */
     @Nullable
     private String wifiIp;
+    /**
+     * Runs the start, the stop and the reconfiguration of the server. It must run one task at a
+     * time so a stop requested while the server starts runs after the start.
+     */
+    @NonNull
+    private final Scheduler mLifecycleScheduler;
+    /**
+     * Delivers the outcome of the lifecycle tasks to the view
+     */
+    @NonNull
+    private final Scheduler mViewScheduler;
+    /**
+     * The state of the server, every transition is a compare and set so two requests can never
+     * both win
+     */
+    @NonNull
+    private final AtomicReference<ServerState> mState;
+    /**
+     * The time the last start took from the request until the server listened, -1 if it has not
+     * started yet
+     */
+    private volatile long mTimeToListeningMillis = -1;
 
+    /**
+     * Creates a presenter which starts and stops the server on the calling thread
+     *
+     * @param mWebServer the server to present
+     */
     public MyWebServerPresenter(@NonNull IWebServer mWebServer) {
+        this(mWebServer, Schedulers.trampoline(), Schedulers.trampoline());
+    }
+
+    /**
+     * @param mWebServer          the server to present
+     * @param lifecycleScheduler  runs the blocking start and stop of the server, like
+     *                            {@link Schedulers#single()}
+     * @param viewScheduler       the thread of the view, like the Android main thread
+     */
+    public MyWebServerPresenter(@NonNull IWebServer mWebServer,
+                                @NonNull Scheduler lifecycleScheduler,
+                                @NonNull Scheduler viewScheduler) {
         this.mWebServer = mWebServer;
+        this.mLifecycleScheduler = lifecycleScheduler;
+        this.mViewScheduler = viewScheduler;
+        this.mState = new AtomicReference<>(mWebServer.isRunning() ? ServerState.RUNNING : ServerState.STOPPED);
     }
 
     //region Overridden Methods: IWebServerPresenter
@@ -35,15 +85,15 @@ public final class MyWebServerPresenter implements IWebServerPresenter {
     public void setView(@Nullable View view) {
         this.mView = view;
         if (mView == null) {
-            if (isServerRunning() && !mWebServer.getWebServerConfig().isRunInBackground())
-                //noinspection ConstantConditions
-                mWebServer.stopServer();
+            if (isServerStartingOrRunning() && !mWebServer.getWebServerConfig().isRunInBackground())
+                stop(false);
             return;
         }
         mView.listenToWiFiStatus();
-        if (isServerRunning())
+        //a start or a stop in progress notifies the view once it completes
+        if (mState.get() == ServerState.RUNNING)
             mView.onServerStarted(mWebServer.getWebServerConfig());
-        else
+        else if (mState.get() == ServerState.STOPPED)
             mView.onServerStopped();
     }
 
@@ -54,18 +104,38 @@ public final class MyWebServerPresenter implements IWebServerPresenter {
         WebServerConfig webServerConfig = mWebServer.getWebServerConfig();
         try {
             canStartServer(webServerConfig);    //check if server can be started with this config
-            //if the server was already running, then send its config
-            if (isServerRunning()) {
-                mView.onServerStarted(mWebServer.getWebServerConfig());
-                return;
-            }//else start the server
-            mWebServer.startServer();
-            mView.onServerStarted(webServerConfig); //notify the view
-        } catch (NumberFormatException e) { //thrown by MyWebServer() if invalid integer port
-            mView.onError(new WebServerException(WebServerException.Type.INVALID_PORT));
-        } catch (WebServerException e) { //thrown by canStartServer()
+        } catch (WebServerException e) {
             mView.onError(e);
+            return;
         }
+        //if the server was already running, then send its config
+        if (mState.get() == ServerState.RUNNING) {
+            mView.onServerStarted(mWebServer.getWebServerConfig());
+            return;
+        }
+        //a start already in progress, or a drain, wins over this one
+        if (!mState.compareAndSet(ServerState.STOPPED, ServerState.STARTING))
+            return;
+        long startNanos = System.nanoTime();
+        //noinspection ResultOfMethodCallIgnored the server is started even if the view goes away
+        Single.fromCallable(() -> {
+            mWebServer.startServer();
+            //the server listens once the start returns, the hop to the view thread is not counted
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        })
+                .subscribeOn(mLifecycleScheduler)
+                .observeOn(mViewScheduler)
+                .subscribe(timeToListeningMillis -> {
+                    //a stop requested meanwhile has taken over
+                    if (!mState.compareAndSet(ServerState.STARTING, ServerState.RUNNING))
+                        return;
+                    mTimeToListeningMillis = timeToListeningMillis;
+                    if (mView != null)
+                        mView.onServerStarted(webServerConfig); //notify the view
+                }, throwable -> {
+                    if (mState.compareAndSet(ServerState.STARTING, ServerState.STOPPED))
+                        onLifecycleError(throwable);
+                });
     }
 
     @Override
@@ -73,19 +143,20 @@ public final class MyWebServerPresenter implements IWebServerPresenter {
         if (mView == null)
             return;
         //if the server is already stopped
-        if (!isServerRunning()) {
+        if (mState.get() == ServerState.STOPPED) {
             mView.onServerStopped();
             return;
         }
         //else stop the server
-        //noinspection ConstantConditions as already checked in isServerRunning()
-        mWebServer.stopServer();
-        mView.onServerStopped();
+        stop(true);
     }
 
     @Override
     public void onWiFiConnected(WebServerConfig webServerConfig) {
         this.wifiIp = webServerConfig != null ? webServerConfig.getIpAddress() : null;
+        //a running server moves to the new address, a stopped one keeps its config
+        if (webServerConfig != null && mState.get() == ServerState.RUNNING)
+            reconfigureServer(webServerConfig);
     }
 
     @Override
@@ -94,20 +165,104 @@ public final class MyWebServerPresenter implements IWebServerPresenter {
         //Tell the view that the device must be connected to a wifi
         if (mView != null)
             mView.onError(new WebServerException(WebServerException.Type.WIFI_OFF));
-        //if the server is running then stop it.
-        if (isServerRunning())
-            //noinspection ConstantConditions as already checked in isServerRunning()
-            mWebServer.stopServer();
+        //if the server is running, or about to, then stop it, the view keeps showing the error
+        if (isServerStartingOrRunning())
+            stop(false);
+    }
+
+    @Override
+    @NonNull
+    public ServerState getServerState() {
+        return mState.get();
+    }
+
+    @Override
+    public long getTimeToListeningMillis() {
+        return mTimeToListeningMillis;
     }
     //endregion
 
     /**
      * Call this method to check the status of the server
      *
-     * @return true, if the server is running
+     * @return true, if the server is running or has been asked to start
+     */
+    private boolean isServerStartingOrRunning() {
+        ServerState state = mState.get();
+        return state == ServerState.STARTING || state == ServerState.RUNNING;
+    }
+
+    /**
+     * This method drains the server if it is running or starting
+     *
+     * @param notifyView true to tell the view once the server has stopped
+     */
+    private void stop(boolean notifyView) {
+        if (!mState.compareAndSet(ServerState.RUNNING, ServerState.DRAINING)
+                && !mState.compareAndSet(ServerState.STARTING, ServerState.DRAINING))
+            return;
+        //noinspection ResultOfMethodCallIgnored the server is stopped even if the view goes away
+        Completable.fromAction(mWebServer::stopServer)
+                .subscribeOn(mLifecycleScheduler)
+                .observeOn(mViewScheduler)
+                .subscribe(() -> {
+                    mState.set(ServerState.STOPPED);
+                    if (notifyView && mView != null)
+                        mView.onServerStopped();
+                }, throwable -> {
+                    mState.set(ServerState.STOPPED);
+                    onLifecycleError(throwable);
+                });
+    }
+
+    /**
+     * This method moves the running server to the new address without stopping it
+     *
+     * @param webServerConfig the address and the background setting of the wifi connected
      */
-    private boolean isServerRunning() {
-        return mWebServer.isRunning();
+    private void reconfigureServer(@NonNull WebServerConfig webServerConfig) {
+        WebServerConfig currentConfig = mWebServer.getWebServerConfig();
+        if (currentConfig == null)
+            return;
+        WebServerConfig updatedConfig = new WebServerConfig.Builder(currentConfig)
+                .setAddress(webServerConfig.getIpAddress(), webServerConfig.getPortNumber())
+                .setRunInBackground(webServerConfig.isRunInBackground())
+                .build();
+        if (updatedConfig.equals(currentConfig))
+            return;
+        try {
+            canStartServer(updatedConfig);
+        } catch (WebServerException e) {
+            if (mView != null)
+                mView.onError(e);
+            return;
+        }
+        //noinspection ResultOfMethodCallIgnored the server is moved even if the view goes away
+        Completable.fromAction(() -> mWebServer.reconfigure(updatedConfig))
+                .subscribeOn(mLifecycleScheduler)
+                .observeOn(mViewScheduler)
+                .subscribe(() -> {
+                    if (mView != null && mState.get() == ServerState.RUNNING)
+                        mView.onServerStarted(updatedConfig); //notify the view of the new address
+                }, this::onLifecycleError);
+    }
+
+    /**
+     * This method tells the view why the server could not be started, stopped or reconfigured
+     *
+     * @param throwable the error of the lifecycle task
+     */
+    private void onLifecycleError(@NonNull Throwable throwable) {
+        if (mView == null)
+            return;
+        if (throwable instanceof WebServerException) //the port is in use
+            mView.onError((WebServerException) throwable);
+        else if (throwable instanceof NumberFormatException) //thrown by the server if invalid integer port
+            mView.onError(new WebServerException(WebServerException.Type.INVALID_PORT));
+        else if (throwable instanceof IllegalArgumentException) //a setting the server cannot change
+            mView.onError(new WebServerException(WebServerException.Type.INVALID_CONFIG));
+        else
+            mView.onError(new WebServerException(WebServerException.Type.UNKNOWN));
     }
 
     /**
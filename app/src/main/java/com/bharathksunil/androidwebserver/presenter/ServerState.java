@@ -0,0 +1,25 @@
+package com.bharathksunil.androidwebserver.presenter;
+
+/**
+ * The states the presenter moves the web server through. A start is only accepted while the
+ * server is {@link #STOPPED} and a stop while it is {@link #STARTING} or {@link #RUNNING}, so a
+ * lifecycle request can never race another one.
+ */
+public enum ServerState {
+    /**
+     * The server does not listen
+     */
+    STOPPED,
+    /**
+     * The server is binding its listeners
+     */
+    STARTING,
+    /**
+     * The server accepts clients
+     */
+    RUNNING,
+    /**
+     * The server no longer accepts clients and finishes the requests in flight
+     */
+    DRAINING
+}
@@ -0,0 +1,136 @@
+package com.bharathksunil.androidwebserver.ratelimit;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * A token bucket per client, kept lock-free so it adds no contention in front of the dispatch.
+ * <p>
+ * Each bucket is a single number, the time at which it will be full again (the theoretical
+ * arrival time of the generic cell rate algorithm): taking a token moves it one interval ahead
+ * with a compare-and-set, and the request is refused when it would move more than a burst ahead
+ * of now. Buckets which are full again carry no state worth keeping, they are swept now and then
+ * by whichever request finds the sweep due, so idle clients cost no memory.
+ * </p>
+ */
+public final class RateLimiter {
+    /**
+     * The least time between two sweeps of the idle buckets
+     */
+    private static final long MIN_SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * The time it takes to earn a token
+     */
+    private final long mIntervalNanos;
+    /**
+     * How far ahead of now a bucket may run, the time it takes to earn a whole burst
+     */
+    private final long mToleranceNanos;
+    private final long mSweepIntervalNanos;
+    private final double mRequestsPerSecond;
+    private final int mBurst;
+    /**
+     * The time each client's bucket is full again, by key
+     */
+    @NonNull
+    private final ConcurrentHashMap<String, AtomicLong> mBuckets = new ConcurrentHashMap<>();
+    @NonNull
+    private final AtomicLong mNextSweepNanos;
+    @NonNull
+    private final AtomicLong mThrottledCount = new AtomicLong();
+
+    /**
+     * @param requestsPerSecond the rate the tokens are earned at
+     * @param burst             the number of tokens a bucket holds, the requests a client which
+     *                          was idle may send at once
+     */
+    public RateLimiter(double requestsPerSecond, int burst) {
+        if (requestsPerSecond <= 0 || burst <= 0)
+            throw new IllegalArgumentException("invalid rate limit: " + requestsPerSecond + "/s, burst " + burst);
+        this.mRequestsPerSecond = requestsPerSecond;
+        this.mBurst = burst;
+        this.mIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+        this.mToleranceNanos = mIntervalNanos * burst;
+        this.mSweepIntervalNanos = Math.max(MIN_SWEEP_INTERVAL_NANOS, mToleranceNanos);
+        this.mNextSweepNanos = new AtomicLong(System.nanoTime() + mSweepIntervalNanos);
+    }
+
+    /**
+     * Call this method from any thread to take a token from the bucket of a client
+     *
+     * @param key the client, e.g. its IP address
+     * @return 0 if the request may proceed, otherwise the nanoseconds until the bucket holds a
+     * token again
+     */
+    public long acquire(@NonNull String key) {
+        return acquire(key, System.nanoTime());
+    }
+
+    long acquire(@NonNull String key, long nowNanos) {
+        AtomicLong bucket = mBuckets.get(key);
+        if (bucket == null) {
+            //a new bucket starts full
+            AtomicLong created = new AtomicLong(nowNanos);
+            bucket = mBuckets.putIfAbsent(key, created);
+            if (bucket == null)
+                bucket = created;
+        }
+        long waitNanos;
+        while (true) {
+            long fullAt = bucket.get();
+            //the times are compared by their difference, System.nanoTime() may overflow
+            long next = (fullAt - nowNanos < 0 ? nowNanos : fullAt) + mIntervalNanos;
+            long excess = next - nowNanos - mToleranceNanos;
+            if (excess > 0) {
+                waitNanos = excess;
+                break;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                waitNanos = 0;
+                break;
+            }
+        }
+        if (waitNanos > 0)
+            mThrottledCount.incrementAndGet();
+        sweepIfDue(nowNanos);
+        return waitNanos;
+    }
+
+    /**
+     * Drops the buckets which are full again. A client racing the sweep may take its token from
+     * the dropped bucket and get one request more than its burst, which is harmless.
+     */
+    private void sweepIfDue(long nowNanos) {
+        long due = mNextSweepNanos.get();
+        if (nowNanos - due < 0 || !mNextSweepNanos.compareAndSet(due, nowNanos + mSweepIntervalNanos))
+            return;
+        Iterator<Map.Entry<String, AtomicLong>> iterator = mBuckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().get() - nowNanos <= 0)
+                iterator.remove();
+        }
+    }
+
+    /**
+     * @return a snapshot of the counters of the limiter
+     */
+    @NonNull
+    public RateLimiterStats getStats() {
+        return new RateLimiterStats(mRequestsPerSecond, mBurst, mBuckets.size(), mThrottledCount.get());
+    }
+
+    /**
+     * @param waitNanos the nanoseconds returned by {@link #acquire(String)}
+     * @return the value of the Retry-After header, in whole seconds rounded up
+     */
+    public static long toRetryAfterSeconds(long waitNanos) {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        return Math.max(1, (waitNanos + second - 1) / second);
+    }
+}
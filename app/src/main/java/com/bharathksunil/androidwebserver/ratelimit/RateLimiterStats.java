@@ -0,0 +1,54 @@
+package com.bharathksunil.androidwebserver.ratelimit;
+
+/**
+ * This models a snapshot of the {@link RateLimiter} counters
+ */
+public final class RateLimiterStats {
+    private final double requestsPerSecond;
+    private final int burst;
+    private final int clientCount;
+    private final long throttledCount;
+
+    RateLimiterStats(double requestsPerSecond, int burst, int clientCount, long throttledCount) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.clientCount = clientCount;
+        this.throttledCount = throttledCount;
+    }
+
+    /**
+     * @return the rate the clients earn tokens at
+     */
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * @return the number of requests an idle client may send at once
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * @return the number of clients tracked, the idle ones are dropped now and then
+     */
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * @return the number of requests refused
+     */
+    public long getThrottledCount() {
+        return throttledCount;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiterStats{requestsPerSecond=" + requestsPerSecond
+                + ", burst=" + burst
+                + ", clientCount=" + clientCount
+                + ", throttledCount=" + throttledCount + "}";
+    }
+}
@@ -0,0 +1,182 @@
+package com.bharathksunil.androidwebserver.response;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * This lends the byte arrays the responses encode their head into and copy their body through, and
+ * the requests of the NIO engine are parsed from, so a server in its steady state serves without
+ * allocating any. The arrays come in a few size classes, a request is served from the smallest
+ * class which fits, and an array larger than the largest class is allocated and left to the
+ * garbage collector.
+ * <p>
+ * The arrays given back are kept in stripes picked by the thread, each holding a few arrays per
+ * class, so the worker threads rarely share a lock and the arrays pooled never outgrow
+ * {@link #getMaxPooledBytes()}, even as the worker pool grows and shrinks.
+ * </p>
+ */
+public final class BufferPool {
+    /**
+     * The sizes of the arrays lent, from the head of a small response to a large copy buffer
+     */
+    private static final int[] SIZE_CLASSES = {1024, 8 * 1024, 64 * 1024};
+    /**
+     * The arrays of each class kept by a stripe
+     */
+    private static final int BUFFERS_PER_STRIPE = 4;
+    private static final BufferPool SHARED = new BufferPool(
+            SIZE_CLASSES, BUFFERS_PER_STRIPE, 2 * Runtime.getRuntime().availableProcessors());
+
+    @NonNull
+    private final int[] mSizeClasses;
+    @NonNull
+    private final Stripe[] mStripes;
+    private final int mStripeMask;
+    private final long mMaxPooledBytes;
+    @NonNull
+    private final AtomicLong mAcquireCount = new AtomicLong();
+    @NonNull
+    private final AtomicLong mMissCount = new AtomicLong();
+    @NonNull
+    private final AtomicLong mDiscardedCount = new AtomicLong();
+    @NonNull
+    private final AtomicLong mPooledBytes = new AtomicLong();
+    @NonNull
+    private final AtomicInteger mInUseCount = new AtomicInteger();
+
+    /**
+     * @param sizeClasses      the sizes of the arrays lent, ascending
+     * @param buffersPerStripe the arrays of each class kept by a stripe
+     * @param stripeCount      the number of stripes, rounded up to a power of two
+     */
+    BufferPool(@NonNull int[] sizeClasses, int buffersPerStripe, int stripeCount) {
+        if (sizeClasses.length == 0 || buffersPerStripe < 1 || stripeCount < 1)
+            throw new IllegalArgumentException("invalid buffer pool size");
+        int stripes = Integer.highestOneBit(stripeCount);
+        if (stripes < stripeCount)
+            stripes <<= 1;
+        this.mSizeClasses = sizeClasses.clone();
+        this.mStripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++)
+            mStripes[i] = new Stripe(sizeClasses.length, buffersPerStripe);
+        this.mStripeMask = stripes - 1;
+        long maxPooledBytes = 0;
+        for (int size : sizeClasses)
+            maxPooledBytes += (long) size * buffersPerStripe * stripes;
+        this.mMaxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * @return the pool shared by the responses of every server
+     */
+    @NonNull
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Call this method to borrow an array, give it back with {@link #release(byte[])} once done
+     *
+     * @param minLength the number of bytes needed
+     * @return an array of at least this length, whose content is undefined
+     */
+    @NonNull
+    public byte[] acquire(int minLength) {
+        mAcquireCount.incrementAndGet();
+        mInUseCount.incrementAndGet();
+        int sizeClass = findSizeClass(minLength);
+        if (sizeClass < 0) {
+            mMissCount.incrementAndGet();
+            return new byte[minLength];
+        }
+        byte[] buffer = stripe().poll(sizeClass);
+        if (buffer == null) {
+            mMissCount.incrementAndGet();
+            return new byte[mSizeClasses[sizeClass]];
+        }
+        mPooledBytes.addAndGet(-buffer.length);
+        return buffer;
+    }
+
+    /**
+     * Call this method to give an array back, it must not be used afterwards
+     *
+     * @param buffer an array returned by {@link #acquire(int)}
+     */
+    public void release(@NonNull byte[] buffer) {
+        mInUseCount.decrementAndGet();
+        int sizeClass = findSizeClass(buffer.length);
+        if (sizeClass < 0 || mSizeClasses[sizeClass] != buffer.length)
+            return;
+        if (stripe().offer(sizeClass, buffer))
+            mPooledBytes.addAndGet(buffer.length);
+        else
+            mDiscardedCount.incrementAndGet();
+    }
+
+    /**
+     * @return the most bytes the pool keeps, the arrays given back once it is full are discarded
+     */
+    public long getMaxPooledBytes() {
+        return mMaxPooledBytes;
+    }
+
+    /**
+     * @return a snapshot of the counters of the pool
+     */
+    @NonNull
+    public BufferPoolStats getStats() {
+        return new BufferPoolStats(mAcquireCount.get(), mMissCount.get(), mDiscardedCount.get(),
+                mInUseCount.get(), mPooledBytes.get(), mMaxPooledBytes);
+    }
+
+    /**
+     * @return the index of the smallest class holding the length, -1 if none does
+     */
+    private int findSizeClass(int length) {
+        for (int i = 0; i < mSizeClasses.length; i++) {
+            if (mSizeClasses[i] >= length)
+                return i;
+        }
+        return -1;
+    }
+
+    @NonNull
+    private Stripe stripe() {
+        return mStripes[(int) Thread.currentThread().getId() & mStripeMask];
+    }
+
+    /**
+     * The arrays kept for the threads mapped to it, a stack per size class
+     */
+    private static final class Stripe {
+        @NonNull
+        private final byte[][][] mBuffers;
+        @NonNull
+        private final int[] mCounts;
+
+        Stripe(int sizeClassCount, int buffersPerClass) {
+            this.mBuffers = new byte[sizeClassCount][buffersPerClass][];
+            this.mCounts = new int[sizeClassCount];
+        }
+
+        synchronized byte[] poll(int sizeClass) {
+            if (mCounts[sizeClass] == 0)
+                return null;
+            byte[][] buffers = mBuffers[sizeClass];
+            byte[] buffer = buffers[--mCounts[sizeClass]];
+            buffers[mCounts[sizeClass]] = null;
+            return buffer;
+        }
+
+        synchronized boolean offer(int sizeClass, @NonNull byte[] buffer) {
+            byte[][] buffers = mBuffers[sizeClass];
+            if (mCounts[sizeClass] == buffers.length)
+                return false;
+            buffers[mCounts[sizeClass]++] = buffer;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.bharathksunil.androidwebserver.response;
+
+/**
+ * This models a snapshot of the {@link BufferPool} counters. A miss allocates an array, so a
+ * steady miss rate near zero confirms the responses are sent without allocating buffers, while
+ * discarded arrays tell the pool is too small for the concurrency of the server.
+ */
+public final class BufferPoolStats {
+    private final long acquireCount;
+    private final long missCount;
+    private final long discardedCount;
+    private final int inUseCount;
+    private final long pooledBytes;
+    private final long maxPooledBytes;
+
+    BufferPoolStats(long acquireCount, long missCount, long discardedCount, int inUseCount,
+                    long pooledBytes, long maxPooledBytes) {
+        this.acquireCount = acquireCount;
+        this.missCount = missCount;
+        this.discardedCount = discardedCount;
+        this.inUseCount = inUseCount;
+        this.pooledBytes = pooledBytes;
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * @return the number of arrays borrowed
+     */
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    /**
+     * @return the number of arrays allocated because the pool had none of the size
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the share of the arrays borrowed which had to be allocated, 0 if none was borrowed
+     */
+    public double getMissRate() {
+        return acquireCount > 0 ? (double) missCount / acquireCount : 0;
+    }
+
+    /**
+     * @return the number of arrays given back to a full pool, left to the garbage collector
+     */
+    public long getDiscardedCount() {
+        return discardedCount;
+    }
+
+    /**
+     * @return the number of arrays borrowed and not given back yet
+     */
+    public int getInUseCount() {
+        return inUseCount;
+    }
+
+    /**
+     * @return the bytes of the arrays kept by the pool
+     */
+    public long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * @return the most bytes the pool keeps
+     */
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPoolStats{acquireCount=" + acquireCount
+                + ", missCount=" + missCount
+                + ", discardedCount=" + discardedCount
+                + ", inUseCount=" + inUseCount
+                + ", pooledBytes=" + pooledBytes
+                + ", maxPooledBytes=" + maxPooledBytes + "}";
+    }
+}
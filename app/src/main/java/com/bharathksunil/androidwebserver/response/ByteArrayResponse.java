@@ -0,0 +1,55 @@
+package com.bharathksunil.androidwebserver.response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * A response whose body is already in memory, written to the socket with a single write instead
+ * of being streamed through an intermediate buffer. The array is shared, never modified.
+ */
+public class ByteArrayResponse extends DirectResponse {
+    @NonNull
+    private final byte[] mBody;
+    private final int mOffset;
+
+    /**
+     * @param status   the response status
+     * @param mimeType the content type of the body
+     * @param body     the body, which must not be modified while the response is sent
+     */
+    public ByteArrayResponse(@NonNull IStatus status, @Nullable String mimeType, @NonNull byte[] body) {
+        this(status, mimeType, body, 0, body.length);
+    }
+
+    /**
+     * @param status   the response status
+     * @param mimeType the content type of the body
+     * @param body     the array holding the body
+     * @param offset   the offset of the first body byte in the array
+     * @param length   the number of body bytes
+     */
+    public ByteArrayResponse(@NonNull IStatus status,
+                             @Nullable String mimeType,
+                             @NonNull byte[] body,
+                             int offset,
+                             int length) {
+        super(status, mimeType, length);
+        this.mBody = body;
+        this.mOffset = offset;
+    }
+
+    @Override
+    protected void writeBody(@NonNull OutputStream outputStream,
+                             @Nullable WritableByteChannel channel) throws IOException {
+        outputStream.write(mBody, mOffset, (int) getContentLength());
+    }
+
+    @Override
+    public void close() {
+        //nothing to release, the array is shared
+    }
+}
@@ -0,0 +1,73 @@
+package com.bharathksunil.androidwebserver.response;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * Writes everything written to it as HTTP/1.1 chunks. Every write becomes one chunk, so callers
+ * should write through a buffer. {@link #finish()} writes the last chunk, and closing does not
+ * close the socket stream.
+ */
+public class ChunkedOutputStream extends FilterOutputStream {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    /**
+     * Holds the chunk size line, reused for every chunk
+     */
+    private final byte[] mSizeLine = new byte[10];
+    private boolean mFinished;
+
+    /**
+     * @param outputStream the socket stream
+     */
+    public ChunkedOutputStream(@NonNull OutputStream outputStream) {
+        super(outputStream);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return;
+        int start = mSizeLine.length - 2;
+        mSizeLine[start] = '\r';
+        mSizeLine[start + 1] = '\n';
+        int size = len;
+        do {
+            mSizeLine[--start] = HEX_DIGITS[size & 0xf];
+            size >>>= 4;
+        } while (size != 0);
+        out.write(mSizeLine, start, mSizeLine.length - start);
+        out.write(b, off, len);
+        out.write(CRLF);
+    }
+
+    /**
+     * Call this method once the whole body is written to send the last chunk
+     *
+     * @throws IOException if the client could not be written to
+     */
+    public void finish() throws IOException {
+        if (mFinished)
+            return;
+        mFinished = true;
+        out.write(LAST_CHUNK);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+}
@@ -0,0 +1,241 @@
+package com.bharathksunil.androidwebserver.response;
+
+import com.bharathksunil.androidwebserver.compression.ContentEncoding;
+import com.bharathksunil.androidwebserver.connection.ClientConnection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This is the base of the responses which write their own body instead of handing NanoHTTPD an
+ * {@link java.io.InputStream} to copy through its heap buffer. It writes the status line and the
+ * headers and then calls {@link #writeBody(OutputStream, WritableByteChannel)} with both the
+ * socket stream and, when available, the socket channel.
+ * <p>
+ * A body whose length is not known up front is sent with chunked transfer coding, and may be
+ * compressed on the fly with {@link #setContentEncoding(ContentEncoding)}. In both cases the body
+ * is streamed, never collected in memory first, and the channel passed is null.
+ * </p>
+ * <p>
+ * The head is encoded into a buffer borrowed from the {@link BufferPool}, which then coalesces
+ * the chunks of a chunked body, so sending a response allocates no buffer of its own.
+ * </p>
+ * <p>
+ * A body of {@link #UNTIL_CLOSE} length is neither framed nor compressed: it ends when the
+ * connection is closed, for streams which never complete like an event stream.
+ * </p>
+ */
+public abstract class DirectResponse extends NanoHTTPD.Response {
+    private static final Logger LOG = Logger.getLogger(DirectResponse.class.getName());
+    /**
+     * Headers are plain ASCII, ISO-8859-1 maps every char to one byte
+     */
+    protected static final Charset HEADER_CHARSET = Charset.forName("ISO-8859-1");
+    /**
+     * The buffer which holds the head and coalesces the chunk framing with small writes of a
+     * streamed body
+     */
+    private static final int HEAD_BUFFER_SIZE = 8192;
+    /**
+     * The content length of a body which ends when the connection is closed
+     */
+    public static final long UNTIL_CLOSE = -2;
+
+    /**
+     * A copy of the headers added to this response, as NanoHTTPD keeps its own map private
+     */
+    @NonNull
+    private final Map<String, String> mHeaders = new LinkedHashMap<>();
+    /**
+     * The number of body bytes, -1 if the length is not known up front, {@link #UNTIL_CLOSE} if
+     * the body ends with the connection
+     */
+    private long mContentLength;
+    private boolean mKeepAlive = true;
+    /**
+     * The coding the body is compressed with while it is streamed, null to send it as is
+     */
+    @Nullable
+    private ContentEncoding mContentEncoding;
+
+    /**
+     * @param status        the response status
+     * @param mimeType      the content type of the body, null to omit the header
+     * @param contentLength the number of body bytes, -1 if it is not known up front or
+     *                      {@link #UNTIL_CLOSE}
+     */
+    protected DirectResponse(@NonNull IStatus status, @Nullable String mimeType, long contentLength) {
+        super(status, mimeType, null, contentLength);
+        this.mContentLength = contentLength;
+        if (contentLength == UNTIL_CLOSE)
+            closeConnection(true);
+    }
+
+    /**
+     * Write the body of the response. The headers have already been flushed.
+     *
+     * @param outputStream the socket output stream
+     * @param channel      the socket channel, null if the socket has none
+     * @throws IOException if the client could not be written to
+     */
+    protected abstract void writeBody(@NonNull OutputStream outputStream,
+                                      @Nullable WritableByteChannel channel) throws IOException;
+
+    /**
+     * @return the number of body bytes, -1 if the length is not known up front
+     */
+    public long getContentLength() {
+        return mContentLength;
+    }
+
+    /**
+     * @param contentLength the number of body bytes
+     */
+    protected void setContentLength(long contentLength) {
+        this.mContentLength = contentLength;
+    }
+
+    /**
+     * @return the coding the body is compressed with while it is streamed, null if none
+     */
+    @Nullable
+    public ContentEncoding getContentEncoding() {
+        return mContentEncoding;
+    }
+
+    /**
+     * Call this method to compress the body while it is written. The body is then sent chunked,
+     * so this is meant for bodies whose length is not known up front.
+     *
+     * @param contentEncoding the coding to compress with, null to send the body as is
+     */
+    public void setContentEncoding(@Nullable ContentEncoding contentEncoding) {
+        if (mContentLength != UNTIL_CLOSE)
+            this.mContentEncoding = contentEncoding;
+    }
+
+    /**
+     * @return true if the body is sent with chunked transfer coding
+     */
+    public boolean isChunked() {
+        return mContentLength == -1 || mContentEncoding != null;
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        super.addHeader(name, value);
+        mHeaders.put(name, value);
+    }
+
+    @Override
+    public void closeConnection(boolean close) {
+        super.closeConnection(close);
+        if (close)
+            mHeaders.put("connection", "close");
+        else
+            mHeaders.remove("connection");
+    }
+
+    @Override
+    public void setKeepAlive(boolean useKeepAlive) {
+        super.setKeepAlive(useKeepAlive);
+        this.mKeepAlive = useKeepAlive;
+    }
+
+    @Override
+    protected void send(OutputStream outputStream) {
+        PooledOutputStream pooled = new PooledOutputStream(outputStream, BufferPool.shared(), HEAD_BUFFER_SIZE);
+        try {
+            writeHead(pooled);
+            if (getRequestMethod() != NanoHTTPD.Method.HEAD) {
+                if (isChunked()) {
+                    //the first chunks leave with the head
+                    writeChunkedBody(pooled);
+                } else {
+                    //the body may bypass the stream, so the head must reach the socket first
+                    pooled.flush();
+                    ClientConnection connection = ClientConnection.current();
+                    writeBody(outputStream, connection != null ? connection.getChannel() : null);
+                }
+            }
+            pooled.flush();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Could not send response to the client", e);
+            //the body is incomplete, so the connection cannot be reused
+            closeConnection(true);
+            //a body which failed to be produced still sends the head and the chunks written
+            try {
+                pooled.flush();
+            } catch (IOException ignored) {
+                //the client is gone
+            }
+        } finally {
+            pooled.release();
+            try {
+                close();
+            } catch (IOException ignored) {
+                //nothing left to release
+            }
+        }
+    }
+
+    private void writeChunkedBody(@NonNull PooledOutputStream pooled) throws IOException {
+        ChunkedOutputStream chunked = new ChunkedOutputStream(pooled);
+        if (mContentEncoding == null) {
+            writeBody(chunked, null);
+        } else {
+            try (DeflaterOutputStream compressed = mContentEncoding.wrap(chunked, Deflater.DEFAULT_COMPRESSION)) {
+                writeBody(compressed, null);
+            }
+        }
+        chunked.finish();
+    }
+
+    /**
+     * Write the status line and the headers, terminated by the empty line
+     */
+    private void writeHead(@NonNull PooledOutputStream head) throws IOException {
+        head.writeLatin1("HTTP/1.1 ");
+        head.writeLatin1(getStatus().getDescription());
+        head.writeLatin1(" \r\n");
+        if (getMimeType() != null)
+            writeHeader(head, "Content-Type", getMimeType());
+        if (getHeader("date") == null)
+            writeHeader(head, "Date", HttpDate.now());
+        for (Map.Entry<String, String> entry : mHeaders.entrySet())
+            writeHeader(head, entry.getKey(), entry.getValue());
+        if (getHeader("connection") == null)
+            writeHeader(head, "Connection", mKeepAlive ? "keep-alive" : "close");
+        if (mContentEncoding != null)
+            writeHeader(head, "Content-Encoding", mContentEncoding.getToken());
+        if (isChunked()) {
+            //HEAD answers must announce the same framing as GET, without a body
+            writeHeader(head, "Transfer-Encoding", "chunked");
+        } else if (getHeader("content-length") == null && mContentLength != UNTIL_CLOSE) {
+            head.writeLatin1("Content-Length: ");
+            head.writeDecimal(mContentLength);
+            head.writeLatin1("\r\n");
+        }
+        head.writeLatin1("\r\n");
+    }
+
+    private static void writeHeader(@NonNull PooledOutputStream head, @NonNull String name,
+                                    @NonNull String value) throws IOException {
+        head.writeLatin1(name);
+        head.writeLatin1(": ");
+        head.writeLatin1(value);
+        head.writeLatin1("\r\n");
+    }
+}
@@ -0,0 +1,127 @@
+package com.bharathksunil.androidwebserver.response;
+
+import com.bharathksunil.androidwebserver.connection.ClientConnection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * A response whose body is a region of a file. The region is handed to the kernel with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which on a socket channel
+ * becomes a sendfile and never copies the bytes through the Java heap. A socket without a channel
+ * gets the bytes copied through a buffer borrowed from the {@link BufferPool}.
+ */
+public class FileResponse extends DirectResponse {
+    /**
+     * The buffer a file is copied through to a socket without a channel
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    /**
+     * The open channel of the file, owned and closed by this response
+     */
+    @NonNull
+    private final FileChannel mFileChannel;
+    /**
+     * The offset of the first byte to send
+     */
+    private final long mOffset;
+
+    /**
+     * @param status      the response status
+     * @param mimeType    the content type of the file
+     * @param fileChannel the open file, closed once the response is sent
+     * @param offset      the offset of the first byte to send
+     * @param length      the number of bytes to send
+     */
+    public FileResponse(@NonNull IStatus status,
+                        @NonNull String mimeType,
+                        @NonNull FileChannel fileChannel,
+                        long offset,
+                        long length) {
+        super(status, mimeType, length);
+        this.mFileChannel = fileChannel;
+        this.mOffset = offset;
+    }
+
+    @Override
+    protected void writeBody(@NonNull OutputStream outputStream,
+                             @Nullable WritableByteChannel channel) throws IOException {
+        transfer(mFileChannel, mOffset, getContentLength(), outputStream, channel);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFileChannel.close();
+    }
+
+    /**
+     * Call this method to send a region of a file to the client
+     *
+     * @param fileChannel  the file to read from
+     * @param offset       the offset of the first byte to send
+     * @param length       the number of bytes to send
+     * @param outputStream the socket stream, used only when the socket has no channel
+     * @param channel      the socket channel, null if the socket has none
+     * @throws IOException if the file could not be read or the client could not be written to
+     */
+    static void transfer(@NonNull FileChannel fileChannel,
+                         long offset,
+                         long length,
+                         @NonNull OutputStream outputStream,
+                         @Nullable WritableByteChannel channel) throws IOException {
+        //without a socket channel the bytes are copied through a pooled buffer
+        if (channel == null) {
+            copy(fileChannel, offset, length, outputStream);
+            return;
+        }
+        long position = offset;
+        long end = offset + length;
+        //bytes sent through the channel are not seen by the counting socket stream
+        ClientConnection connection = ClientConnection.current();
+        while (position < end) {
+            long sent = fileChannel.transferTo(position, end - position, channel);
+            if (sent <= 0) {
+                //the file was truncated while it was being sent
+                if (position >= fileChannel.size())
+                    throw new IOException("file truncated while sending");
+                //or a non-blocking socket is full
+                if (connection != null)
+                    connection.awaitWritable();
+                continue;
+            }
+            position += sent;
+            if (connection != null)
+                connection.addBytesOut(sent);
+        }
+    }
+
+    private static void copy(@NonNull FileChannel fileChannel,
+                             long offset,
+                             long length,
+                             @NonNull OutputStream outputStream) throws IOException {
+        BufferPool pool = BufferPool.shared();
+        byte[] buffer = pool.acquire(COPY_BUFFER_SIZE);
+        try {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                byteBuffer.clear();
+                byteBuffer.limit((int) Math.min(buffer.length, end - position));
+                int read = fileChannel.read(byteBuffer, position);
+                if (read < 0)
+                    throw new IOException("file truncated while sending");
+                outputStream.write(buffer, 0, read);
+                position += read;
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.bharathksunil.androidwebserver.response;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.Flowable;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+import io.reactivex.exceptions.MissingBackpressureException;
+
+/**
+ * A chunked response whose body is produced by a {@link Flowable}. The worker sending the response
+ * subscribes, and requests more items only as it writes the previous ones to the socket, so a
+ * producer never gets ahead of the client by more than the prefetch window, however slow the
+ * client reads. When the client has disconnected the next write fails and the subscription is
+ * cancelled.
+ * <p>
+ * The items are written as they come: whenever no item is waiting, the written bytes are flushed
+ * to the client instead of being held back for a fuller chunk.
+ * </p>
+ * <p>
+ * <h3>How to Use:</h3><br/>
+ * Return {@link #ofBytes(String, Flowable)} or {@link #ofStrings(String, Flowable)} from a
+ * {@link com.bharathksunil.androidwebserver.router.RouteHandler}. The Flowable may emit on any
+ * thread, or synchronously when it is requested. Items emitted without being requested fail
+ * the response with a {@link MissingBackpressureException}, use an onBackpressure operator on
+ * sources which cannot slow down.
+ * </p>
+ */
+public class FlowableResponse extends DirectResponse {
+    /**
+     * The default number of items requested ahead of the socket
+     */
+    public static final int DEFAULT_PREFETCH = 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Coalesces small items, every write to the chunked stream becomes a chunk
+     */
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Queued after the last item, an error is kept in {@link BoundedSubscriber#mError}
+     */
+    private static final Object TERMINATED = new Object();
+
+    @NonNull
+    private final Flowable<?> mFlowable;
+    private final int mPrefetch;
+
+    /**
+     * @param status   the response status
+     * @param mimeType the content type of the body
+     * @param flowable emits {@link ByteBuffer}s or {@link CharSequence}s encoded as UTF-8
+     * @param prefetch the number of items requested ahead of the socket
+     */
+    public FlowableResponse(@NonNull IStatus status,
+                            @Nullable String mimeType,
+                            @NonNull Flowable<?> flowable,
+                            int prefetch) {
+        super(status, mimeType, -1);
+        if (prefetch <= 0)
+            throw new IllegalArgumentException("prefetch must be positive: " + prefetch);
+        this.mFlowable = flowable;
+        this.mPrefetch = prefetch;
+    }
+
+    /**
+     * @param mimeType the content type of the body
+     * @param flowable emits the body, the buffers are read from their position to their limit
+     * @return a 200 response streaming the buffers
+     */
+    @NonNull
+    public static FlowableResponse ofBytes(@Nullable String mimeType, @NonNull Flowable<ByteBuffer> flowable) {
+        return new FlowableResponse(NanoHTTPD.Response.Status.OK, mimeType, flowable, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * @param mimeType the content type of the body, which should declare the UTF-8 charset
+     * @param flowable emits the body, encoded as UTF-8
+     * @return a 200 response streaming the strings
+     */
+    @NonNull
+    public static FlowableResponse ofStrings(@Nullable String mimeType, @NonNull Flowable<String> flowable) {
+        return new FlowableResponse(NanoHTTPD.Response.Status.OK, mimeType, flowable, DEFAULT_PREFETCH);
+    }
+
+    @Override
+    protected void writeBody(@NonNull OutputStream outputStream,
+                             @Nullable WritableByteChannel channel) throws IOException {
+        BoundedSubscriber subscriber = new BoundedSubscriber(mPrefetch);
+        OutputStream buffered = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        mFlowable.subscribe(subscriber);
+        try {
+            while (true) {
+                Object item = subscriber.mQueue.poll();
+                if (item == null) {
+                    //the client gets what was produced so far before the worker waits for more
+                    buffered.flush();
+                    item = subscriber.take();
+                }
+                if (item == TERMINATED)
+                    break;
+                write(buffered, item);
+                subscriber.onConsumed();
+            }
+            buffered.flush();
+        } finally {
+            //a no-op once the Flowable terminated, otherwise the client is gone
+            subscriber.cancel();
+        }
+        if (subscriber.mError != null)
+            //the head is already sent, failing the body is the only way left to report it
+            throw new IOException("the body failed", subscriber.mError);
+    }
+
+    private static void write(@NonNull OutputStream outputStream, @NonNull Object item) throws IOException {
+        if (item instanceof ByteBuffer) {
+            ByteBuffer buffer = (ByteBuffer) item;
+            if (buffer.hasArray()) {
+                outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.duplicate().get(bytes);
+                outputStream.write(bytes);
+            }
+        } else if (item instanceof CharSequence) {
+            outputStream.write(item.toString().getBytes(UTF_8));
+        } else {
+            throw new IOException("cannot write a " + item.getClass().getName());
+        }
+    }
+
+    /**
+     * Queues the items for the worker and requests a new batch once half the window is written.
+     * The queue holds the whole window and the terminal signal, so the producer never blocks.
+     */
+    private static final class BoundedSubscriber implements Subscriber<Object> {
+        @NonNull
+        final BlockingQueue<Object> mQueue;
+        private final int mPrefetch;
+        /**
+         * The number of items written to the socket since the last request, worker only
+         */
+        private int mConsumed;
+        @Nullable
+        volatile Throwable mError;
+        @Nullable
+        private volatile Subscription mSubscription;
+        private volatile boolean mCancelled;
+
+        BoundedSubscriber(int prefetch) {
+            this.mPrefetch = prefetch;
+            this.mQueue = new ArrayBlockingQueue<>(prefetch + 1);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            mSubscription = subscription;
+            //the worker may have given up before the subscription arrived
+            if (mCancelled)
+                subscription.cancel();
+            else
+                subscription.request(mPrefetch);
+        }
+
+        @Override
+        public void onNext(Object item) {
+            if (!mQueue.offer(item)) {
+                cancel();
+                //the body is failed anyway, dropping the queued items makes room for the signal
+                mQueue.clear();
+                terminate(new MissingBackpressureException("the Flowable emitted items it was not asked for"));
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            terminate(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            terminate(null);
+        }
+
+        private void terminate(@Nullable Throwable error) {
+            if (mError == null)
+                mError = error;
+            //the queue keeps one slot for this
+            mQueue.offer(TERMINATED);
+        }
+
+        @NonNull
+        Object take() throws InterruptedIOException {
+            try {
+                return mQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        /**
+         * Call this method after an item is written, the socket has taken it so more may come
+         */
+        void onConsumed() {
+            int limit = mPrefetch - (mPrefetch >> 1);
+            if (++mConsumed < limit)
+                return;
+            Subscription subscription = mSubscription;
+            if (subscription != null)
+                subscription.request(mConsumed);
+            mConsumed = 0;
+        }
+
+        void cancel() {
+            mCancelled = true;
+            Subscription subscription = mSubscription;
+            if (subscription != null)
+                subscription.cancel();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.bharathksunil.androidwebserver.response;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * Formats dates in the RFC 1123 form used by HTTP headers. The formatted value of the current
+ * second is cached so that most responses share one string instead of formatting a new one.
+ */
+public final class HttpDate {
+    private static final ThreadLocal<SimpleDateFormat> FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return format;
+        }
+    };
+    /**
+     * The last formatted second, swapped as one object so readers never see a torn pair
+     */
+    private static volatile CachedDate sCachedDate = new CachedDate(0, "");
+
+    private HttpDate() {
+    }
+
+    /**
+     * @return the current time formatted for the Date header
+     */
+    @NonNull
+    public static String now() {
+        long second = System.currentTimeMillis() / 1000;
+        CachedDate cachedDate = sCachedDate;
+        if (cachedDate.second != second) {
+            cachedDate = new CachedDate(second, format(second * 1000));
+            sCachedDate = cachedDate;
+        }
+        return cachedDate.value;
+    }
+
+    /**
+     * @param timeMillis the time to format
+     * @return the time formatted for headers like Last-Modified
+     */
+    @NonNull
+    public static String format(long timeMillis) {
+        return FORMAT.get().format(new Date(timeMillis));
+    }
+
+    /**
+     * @param value the header value to parse
+     * @return the time in milliseconds, -1 if the value is not a valid HTTP date
+     */
+    public static long parse(@NonNull String value) {
+        try {
+            return FORMAT.get().parse(value).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static final class CachedDate {
+        private final long second;
+        @NonNull
+        private final String value;
+
+        private CachedDate(long second, @NonNull String value) {
+            this.second = second;
+            this.value = value;
+        }
+    }
+}
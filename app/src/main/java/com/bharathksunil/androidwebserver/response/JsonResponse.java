@@ -0,0 +1,138 @@
+package com.bharathksunil.androidwebserver.response;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * A JSON response serialized by Gson while it is sent. The body is written element by element
+ * through a {@link JsonWriter} onto the chunked socket stream, so exporting thousands of records
+ * holds one record in memory at a time, and the head reaches the client before the first record
+ * is serialized.
+ * <p>
+ * <h3>How to Use:</h3><br/>
+ * Return {@link #of(Gson, Object)} for a single object, {@link #ofArray(Gson, Iterable)} for a
+ * large or lazily produced collection, or {@link #of(BodyWriter)} to write any structure with
+ * the {@link JsonWriter}. The body is compressed on the fly when the client accepts it.
+ * </p>
+ */
+public class JsonResponse extends DirectResponse {
+    public static final String MIME_JSON = "application/json; charset=utf-8";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Writes the body of a {@link JsonResponse}
+     */
+    public interface BodyWriter {
+        /**
+         * @param writer the writer configured like the Gson of the response, do not close it
+         * @throws IOException if the client could not be written to
+         */
+        void write(@NonNull JsonWriter writer) throws IOException;
+    }
+
+    @Nullable
+    private final Gson mGson;
+    @NonNull
+    private final BodyWriter mBodyWriter;
+    /**
+     * Released once the response is sent, like the cursor behind an iterable
+     */
+    @Nullable
+    private final Closeable mResource;
+
+    /**
+     * @param status     the response status
+     * @param gson       the Gson whose settings the writer takes, null for the defaults
+     * @param bodyWriter writes the body
+     * @param resource   released once the response is sent, null if there is none
+     */
+    public JsonResponse(@NonNull IStatus status,
+                        @Nullable Gson gson,
+                        @NonNull BodyWriter bodyWriter,
+                        @Nullable Closeable resource) {
+        super(status, MIME_JSON, -1);
+        this.mGson = gson;
+        this.mBodyWriter = bodyWriter;
+        this.mResource = resource;
+    }
+
+    /**
+     * @param bodyWriter writes the body
+     * @return a 200 response written by the body writer
+     */
+    @NonNull
+    public static JsonResponse of(@NonNull BodyWriter bodyWriter) {
+        return new JsonResponse(NanoHTTPD.Response.Status.OK, null, bodyWriter, null);
+    }
+
+    /**
+     * @param gson  the Gson which serializes the value
+     * @param value the value to send, serialized while it is sent
+     * @return a 200 response holding the value
+     */
+    @NonNull
+    public static JsonResponse of(@NonNull final Gson gson, @Nullable final Object value) {
+        return new JsonResponse(NanoHTTPD.Response.Status.OK, gson, writer -> {
+            if (value == null)
+                writer.nullValue();
+            else
+                gson.toJson(value, value.getClass(), writer);
+        }, null);
+    }
+
+    /**
+     * Call this method to stream a collection as a JSON array. The iterable is walked only while
+     * the response is sent, so it may produce its elements lazily, and it is closed afterwards if
+     * it is {@link Closeable}.
+     *
+     * @param gson  the Gson which serializes the elements
+     * @param items the elements of the array
+     * @return a 200 response holding the array
+     */
+    @NonNull
+    public static JsonResponse ofArray(@NonNull final Gson gson, @NonNull final Iterable<?> items) {
+        return new JsonResponse(NanoHTTPD.Response.Status.OK, gson, writer -> {
+            writer.beginArray();
+            for (Object item : items) {
+                if (item == null)
+                    writer.nullValue();
+                else
+                    gson.toJson(item, item.getClass(), writer);
+            }
+            writer.endArray();
+        }, items instanceof Closeable ? (Closeable) items : null);
+    }
+
+    @Override
+    protected void writeBody(@NonNull OutputStream outputStream,
+                             @Nullable WritableByteChannel channel) throws IOException {
+        //the stream is buffered by the chunked framing, the writer needs no buffer of its own
+        OutputStreamWriter streamWriter = new OutputStreamWriter(outputStream, UTF_8);
+        JsonWriter writer = mGson != null ? mGson.newJsonWriter(streamWriter) : new JsonWriter(streamWriter);
+        try {
+            mBodyWriter.write(writer);
+        } catch (RuntimeException e) {
+            //the head is already sent, failing the body is the only way left to report it
+            throw new IOException("could not serialize the body", e);
+        }
+        //not closed, that would end the socket stream before the last chunk
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mResource != null)
+            mResource.close();
+    }
+}
@@ -0,0 +1,95 @@
+package com.bharathksunil.androidwebserver.response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * A 206 Partial Content response carrying several regions of a file as multipart/byteranges.
+ * The part headers are small and built up front, so the exact Content-Length is announced and
+ * every region is still handed to the kernel with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+ */
+public class MultiRangeFileResponse extends DirectResponse {
+    private static final Random BOUNDARY_RANDOM = new Random();
+
+    /**
+     * The open channel of the file, owned and closed by this response
+     */
+    @NonNull
+    private final FileChannel mFileChannel;
+    /**
+     * The first and last byte of every region, in pairs
+     */
+    @NonNull
+    private final long[] mRanges;
+    /**
+     * The delimiter and headers written before each region
+     */
+    @NonNull
+    private final byte[][] mPartHeads;
+    /**
+     * The delimiter closing the body
+     */
+    @NonNull
+    private final byte[] mTail;
+
+    /**
+     * @param mimeType    the content type of the file
+     * @param fileChannel the open file, closed once the response is sent
+     * @param fileLength  the size of the file
+     * @param ranges      the first and last byte of every region, in pairs
+     */
+    public MultiRangeFileResponse(@NonNull String mimeType,
+                                  @NonNull FileChannel fileChannel,
+                                  long fileLength,
+                                  @NonNull long[] ranges) {
+        this(Long.toHexString(BOUNDARY_RANDOM.nextLong()) + Long.toHexString(System.nanoTime()),
+                mimeType, fileChannel, fileLength, ranges);
+    }
+
+    private MultiRangeFileResponse(@NonNull String boundary,
+                                   @NonNull String mimeType,
+                                   @NonNull FileChannel fileChannel,
+                                   long fileLength,
+                                   @NonNull long[] ranges) {
+        super(Status.PARTIAL_CONTENT, "multipart/byteranges; boundary=" + boundary, 0);
+        this.mFileChannel = fileChannel;
+        this.mRanges = ranges;
+        this.mPartHeads = new byte[ranges.length / 2][];
+        long contentLength = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            String head = "\r\n--" + boundary + "\r\n"
+                    + "Content-Type: " + mimeType + "\r\n"
+                    + "Content-Range: bytes " + ranges[i] + "-" + ranges[i + 1] + "/" + fileLength + "\r\n"
+                    + "\r\n";
+            mPartHeads[i / 2] = head.getBytes(HEADER_CHARSET);
+            contentLength += mPartHeads[i / 2].length + ranges[i + 1] - ranges[i] + 1;
+        }
+        this.mTail = ("\r\n--" + boundary + "--\r\n").getBytes(HEADER_CHARSET);
+        setContentLength(contentLength + mTail.length);
+    }
+
+    @Override
+    protected void writeBody(@NonNull OutputStream outputStream,
+                             @Nullable WritableByteChannel channel) throws IOException {
+        for (int i = 0; i < mRanges.length; i += 2) {
+            outputStream.write(mPartHeads[i / 2]);
+            //the region bypasses the stream, so the part head must reach the socket first
+            outputStream.flush();
+            FileResponse.transfer(mFileChannel, mRanges[i], mRanges[i + 1] - mRanges[i] + 1,
+                    outputStream, channel);
+        }
+        outputStream.write(mTail);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFileChannel.close();
+    }
+}
@@ -0,0 +1,119 @@
+package com.bharathksunil.androidwebserver.response;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * A buffered stream over the socket whose buffer is borrowed from the {@link BufferPool}, and
+ * which encodes the response head straight into it, without building a String first. Closing it
+ * only flushes, the socket stays open, and {@link #release()} must be called once it is no longer
+ * written to.
+ * <p>
+ * Used by the worker thread sending the response only.
+ * </p>
+ */
+class PooledOutputStream extends FilterOutputStream {
+    @NonNull
+    private final BufferPool mPool;
+    @NonNull
+    private final byte[] mBuffer;
+    private int mCount;
+    /**
+     * Holds the digits of a number, filled from the end
+     */
+    @NonNull
+    private final byte[] mDigits = new byte[20];
+
+    /**
+     * @param outputStream the socket stream
+     * @param pool         the pool to borrow the buffer from
+     * @param size         the minimum size of the buffer
+     */
+    PooledOutputStream(@NonNull OutputStream outputStream, @NonNull BufferPool pool, int size) {
+        super(outputStream);
+        this.mPool = pool;
+        this.mBuffer = pool.acquire(size);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (mCount == mBuffer.length)
+            flushBuffer();
+        mBuffer[mCount++] = (byte) b;
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        if (len >= mBuffer.length) {
+            //a copy would not save a write
+            flushBuffer();
+            out.write(b, off, len);
+            return;
+        }
+        if (len > mBuffer.length - mCount)
+            flushBuffer();
+        System.arraycopy(b, off, mBuffer, mCount, len);
+        mCount += len;
+    }
+
+    /**
+     * Call this method to write a header name or value, whose chars are all ISO-8859-1
+     *
+     * @param value the text to write, one byte per char
+     * @throws IOException if the client could not be written to
+     */
+    void writeLatin1(@NonNull String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; ) {
+            if (mCount == mBuffer.length)
+                flushBuffer();
+            int end = Math.min(length, i + mBuffer.length - mCount);
+            while (i < end)
+                mBuffer[mCount++] = (byte) value.charAt(i++);
+        }
+    }
+
+    /**
+     * @param value a non negative number to write in decimal
+     * @throws IOException if the client could not be written to
+     */
+    void writeDecimal(long value) throws IOException {
+        int start = mDigits.length;
+        do {
+            mDigits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        write(mDigits, start, mDigits.length - start);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Call this method to give the buffer back to the pool, anything not flushed is dropped
+     */
+    void release() {
+        if (mCount < 0)
+            return;
+        mPool.release(mBuffer);
+        mCount = -1;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (mCount > 0) {
+            out.write(mBuffer, 0, mCount);
+            mCount = 0;
+        }
+    }
+}
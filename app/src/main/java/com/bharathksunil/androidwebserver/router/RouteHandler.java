@@ -0,0 +1,19 @@
+package com.bharathksunil.androidwebserver.router;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+
+/**
+ * This is the interface implemented by the endpoints registered with the {@link Router}
+ */
+public interface RouteHandler {
+    /**
+     * This method is called on a worker thread for every request matching the route
+     *
+     * @param session the request
+     * @param match   the matched route and its path parameters
+     * @return the response to send, must not be null
+     */
+    @NonNull
+    NanoHTTPD.Response handle(@NonNull NanoHTTPD.IHTTPSession session, @NonNull RouteMatch match);
+}
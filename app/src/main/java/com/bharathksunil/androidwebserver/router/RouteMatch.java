@@ -0,0 +1,77 @@
+package com.bharathksunil.androidwebserver.router;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This models a request path matched by the {@link Router}. Only the positions of the path
+ * parameters are recorded while matching, their values are cut out of the path when asked for.
+ */
+public final class RouteMatch {
+    /**
+     * The name under which the part of the path matched by a trailing wildcard is stored
+     */
+    public static final String WILDCARD = "*";
+
+    @NonNull
+    private final String mPattern;
+    @NonNull
+    private final String mPath;
+    /**
+     * The parameter names of the route, in the order they appear in the pattern
+     */
+    @NonNull
+    private final String[] mParameterNames;
+    /**
+     * The start and end offsets in the path of every parameter
+     */
+    @NonNull
+    private final int[] mBounds;
+
+    RouteMatch(@NonNull String pattern,
+               @NonNull String path,
+               @NonNull String[] parameterNames,
+               @NonNull int[] bounds) {
+        this.mPattern = pattern;
+        this.mPath = path;
+        this.mParameterNames = parameterNames;
+        this.mBounds = bounds;
+    }
+
+    /**
+     * @return the pattern the route was registered with, for example /users/{id}
+     */
+    @NonNull
+    public String getPattern() {
+        return mPattern;
+    }
+
+    /**
+     * @return the request path that was matched
+     */
+    @NonNull
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * @param name the name of the parameter in the route pattern
+     * @return the value of the parameter, null if the route has no such parameter
+     */
+    @Nullable
+    public String getParameter(@NonNull String name) {
+        for (int i = 0; i < mParameterNames.length; i++) {
+            if (mParameterNames[i].equals(name))
+                return mPath.substring(mBounds[2 * i], mBounds[2 * i + 1]);
+        }
+        return null;
+    }
+
+    /**
+     * @return the part of the path matched by the trailing wildcard, null if the route has none
+     */
+    @Nullable
+    public String getWildcard() {
+        return getParameter(WILDCARD);
+    }
+}
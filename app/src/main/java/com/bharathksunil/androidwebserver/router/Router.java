@@ -0,0 +1,373 @@
+package com.bharathksunil.androidwebserver.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This dispatches requests to the {@link RouteHandler}s registered for a method and a path
+ * pattern. The patterns are compiled into a trie of path segments, so a lookup walks the request
+ * path once without regular expressions and without creating strings for the segments, and its
+ * cost does not grow with the number of routes.
+ * <p>
+ * <h3>Patterns</h3><br/>
+ * <ul>
+ * <li>A plain segment, like {@code users}, must match exactly.</li>
+ * <li>A segment in braces, like {@code {id}}, matches any single segment and captures it.</li>
+ * <li>A trailing {@code *} matches the rest of the path, which may be empty.</li>
+ * </ul>
+ * Plain segments take precedence over parameters, and parameters over wildcards. Repeated and
+ * trailing slashes are ignored.
+ * </p>
+ * <p>
+ * Routes may be added while the server is running: every change is published as a new immutable
+ * table, so lookups never take a lock.
+ * </p>
+ */
+public class Router {
+    private static final int[] NO_BOUNDS = new int[0];
+
+    @NonNull
+    private final Node mRoot = new Node();
+    /**
+     * The largest number of parameters of any route, sizes the bounds array of a lookup
+     */
+    private volatile int mMaxParameters;
+
+    /**
+     * Call this method to register a handler
+     *
+     * @param method  the request method handled
+     * @param pattern the path pattern, see the class documentation
+     * @param handler the handler called for matching requests
+     * @throws IllegalArgumentException if the pattern is invalid or conflicts with another route
+     */
+    public synchronized void addRoute(@NonNull NanoHTTPD.Method method,
+                                      @NonNull String pattern,
+                                      @NonNull RouteHandler handler) {
+        Node node = mRoot;
+        List<String> parameterNames = new ArrayList<>();
+        int length = pattern.length();
+        int start = skipSlashes(pattern, 0);
+        while (start < length) {
+            int end = segmentEnd(pattern, start);
+            String segment = pattern.substring(start, end);
+            if (segment.equals(RouteMatch.WILDCARD)) {
+                if (skipSlashes(pattern, end) < length)
+                    throw new IllegalArgumentException("wildcard must be the last segment: " + pattern);
+                parameterNames.add(RouteMatch.WILDCARD);
+                node = node.wildcardChild();
+            } else if (segment.length() > 2 && segment.startsWith("{") && segment.endsWith("}")) {
+                parameterNames.add(segment.substring(1, segment.length() - 1));
+                node = node.parameterChild();
+            } else {
+                node = node.staticChild(segment);
+            }
+            start = skipSlashes(pattern, end);
+        }
+        //a lookup may reach the route as soon as it is set, its bounds must already fit it
+        mMaxParameters = Math.max(mMaxParameters, parameterNames.size());
+        node.setHandler(method, handler, pattern, parameterNames.toArray(new String[0]));
+    }
+
+    /**
+     * Call this method to find the handler of a request
+     *
+     * @param method the request method
+     * @param path   the decoded request path
+     * @return the match, null if no route handles this method and path
+     */
+    @Nullable
+    public RouteMatch match(@NonNull NanoHTTPD.Method method, @NonNull String path) {
+        int[] bounds = newBounds();
+        Node node = find(mRoot, path, 0, bounds, 0);
+        if (node == null || node.getHandler(method) == null)
+            return null;
+        return node.newMatch(path, bounds);
+    }
+
+    /**
+     * Call this method to dispatch a request to its handler
+     *
+     * @param session the request
+     * @return the response of the handler, 405 if the path is routed but not for this method,
+     * null if no route matches the path
+     */
+    @Nullable
+    public NanoHTTPD.Response route(@NonNull NanoHTTPD.IHTTPSession session) {
+        String path = session.getUri();
+        int[] bounds = newBounds();
+        Node node = find(mRoot, path, 0, bounds, 0);
+        if (node == null)
+            return null;
+        RouteHandler handler = node.getHandler(session.getMethod());
+        if (handler == null) {
+            NanoHTTPD.Response response = NanoHTTPD.newFixedLengthResponse(
+                    NanoHTTPD.Response.Status.METHOD_NOT_ALLOWED,
+                    NanoHTTPD.MIME_PLAINTEXT,
+                    NanoHTTPD.Response.Status.METHOD_NOT_ALLOWED.getDescription());
+            response.addHeader("Allow", node.getAllowedMethods());
+            return response;
+        }
+        return handler.handle(session, node.newMatch(path, bounds));
+    }
+
+    @NonNull
+    private int[] newBounds() {
+        int maxParameters = mMaxParameters;
+        return maxParameters == 0 ? NO_BOUNDS : new int[2 * maxParameters];
+    }
+
+    /**
+     * Walks the trie from the node, backtracking when a more specific branch does not lead to a
+     * route
+     *
+     * @return the node of the matched route, null if there is none
+     */
+    @Nullable
+    private static Node find(@NonNull Node node, @NonNull String path, int position,
+                             @NonNull int[] bounds, int parameterIndex) {
+        int length = path.length();
+        int start = skipSlashes(path, position);
+        if (start >= length) {
+            if (node.isRoute())
+                return node;
+            return matchWildcard(node, length, bounds, parameterIndex);
+        }
+        int end = segmentEnd(path, start);
+        Node child = node.findStaticChild(path, start, end);
+        if (child != null) {
+            Node found = find(child, path, end, bounds, parameterIndex);
+            if (found != null)
+                return found;
+        }
+        Node parameter = node.mParameterChild;
+        if (parameter != null) {
+            bounds[2 * parameterIndex] = start;
+            bounds[2 * parameterIndex + 1] = end;
+            Node found = find(parameter, path, end, bounds, parameterIndex + 1);
+            if (found != null)
+                return found;
+        }
+        Node wildcard = matchWildcard(node, start, bounds, parameterIndex);
+        if (wildcard != null)
+            bounds[2 * parameterIndex + 1] = length;
+        return wildcard;
+    }
+
+    @Nullable
+    private static Node matchWildcard(@NonNull Node node, int start, @NonNull int[] bounds, int parameterIndex) {
+        Node wildcard = node.mWildcardChild;
+        if (wildcard == null || !wildcard.isRoute())
+            return null;
+        bounds[2 * parameterIndex] = start;
+        bounds[2 * parameterIndex + 1] = start;
+        return wildcard;
+    }
+
+    private static int skipSlashes(@NonNull String path, int position) {
+        int length = path.length();
+        while (position < length && path.charAt(position) == '/')
+            position++;
+        return position;
+    }
+
+    private static int segmentEnd(@NonNull String path, int start) {
+        int end = path.indexOf('/', start);
+        return end < 0 ? path.length() : end;
+    }
+
+    /**
+     * A node of the trie, one per distinct path segment. The fields changed by registration are
+     * replaced as a whole, never mutated, so concurrent lookups always see a consistent node.
+     */
+    private static final class Node {
+        private static final int METHOD_COUNT = NanoHTTPD.Method.values().length;
+
+        @NonNull
+        private volatile SegmentTable mStaticChildren = SegmentTable.EMPTY;
+        @Nullable
+        private volatile Node mParameterChild;
+        @Nullable
+        private volatile Node mWildcardChild;
+        /**
+         * The handlers indexed by the ordinal of the method, null if this node ends no route
+         */
+        @Nullable
+        private volatile Route mRoute;
+
+        @Nullable
+        Node findStaticChild(@NonNull String path, int start, int end) {
+            return mStaticChildren.get(path, start, end);
+        }
+
+        @NonNull
+        Node staticChild(@NonNull String segment) {
+            Node child = mStaticChildren.get(segment, 0, segment.length());
+            if (child == null) {
+                child = new Node();
+                mStaticChildren = mStaticChildren.with(segment, child);
+            }
+            return child;
+        }
+
+        @NonNull
+        Node parameterChild() {
+            if (mParameterChild == null)
+                mParameterChild = new Node();
+            return mParameterChild;
+        }
+
+        @NonNull
+        Node wildcardChild() {
+            if (mWildcardChild == null)
+                mWildcardChild = new Node();
+            return mWildcardChild;
+        }
+
+        boolean isRoute() {
+            return mRoute != null;
+        }
+
+        void setHandler(@NonNull NanoHTTPD.Method method,
+                        @NonNull RouteHandler handler,
+                        @NonNull String pattern,
+                        @NonNull String[] parameterNames) {
+            Route route = mRoute;
+            RouteHandler[] handlers = new RouteHandler[METHOD_COUNT];
+            if (route != null) {
+                if (!Arrays.equals(route.parameterNames, parameterNames))
+                    throw new IllegalArgumentException(pattern + " conflicts with " + route.pattern);
+                System.arraycopy(route.handlers, 0, handlers, 0, METHOD_COUNT);
+            }
+            handlers[method.ordinal()] = handler;
+            mRoute = new Route(pattern, parameterNames, handlers);
+        }
+
+        @Nullable
+        RouteHandler getHandler(@NonNull NanoHTTPD.Method method) {
+            Route route = mRoute;
+            if (route == null)
+                return null;
+            RouteHandler handler = route.handlers[method.ordinal()];
+            //a HEAD request is served by the GET handler, the body is dropped when sent
+            if (handler == null && method == NanoHTTPD.Method.HEAD)
+                handler = route.handlers[NanoHTTPD.Method.GET.ordinal()];
+            return handler;
+        }
+
+        @NonNull
+        String getAllowedMethods() {
+            Route route = mRoute;
+            StringBuilder allowed = new StringBuilder();
+            if (route == null)
+                return "";
+            for (NanoHTTPD.Method method : NanoHTTPD.Method.values()) {
+                if (route.handlers[method.ordinal()] == null)
+                    continue;
+                if (allowed.length() > 0)
+                    allowed.append(", ");
+                allowed.append(method.name());
+            }
+            return allowed.toString();
+        }
+
+        @NonNull
+        RouteMatch newMatch(@NonNull String path, @NonNull int[] bounds) {
+            Route route = mRoute;
+            //noinspection ConstantConditions only called on a node which ends a route
+            return new RouteMatch(route.pattern, path, route.parameterNames, bounds);
+        }
+    }
+
+    /**
+     * The handlers of one pattern
+     */
+    private static final class Route {
+        @NonNull
+        private final String pattern;
+        @NonNull
+        private final String[] parameterNames;
+        @NonNull
+        private final RouteHandler[] handlers;
+
+        Route(@NonNull String pattern, @NonNull String[] parameterNames, @NonNull RouteHandler[] handlers) {
+            this.pattern = pattern;
+            this.parameterNames = parameterNames;
+            this.handlers = handlers;
+        }
+    }
+
+    /**
+     * An immutable open addressing table of the static children of a node. It hashes a region of
+     * the request path the same way {@link String#hashCode()} does, so a segment is looked up
+     * without being copied into a string.
+     */
+    private static final class SegmentTable {
+        static final SegmentTable EMPTY = new SegmentTable(new String[1], new Node[1], 0);
+
+        @NonNull
+        private final String[] mKeys;
+        @NonNull
+        private final Node[] mNodes;
+        private final int mSize;
+
+        private SegmentTable(@NonNull String[] keys, @NonNull Node[] nodes, int size) {
+            this.mKeys = keys;
+            this.mNodes = nodes;
+            this.mSize = size;
+        }
+
+        @Nullable
+        Node get(@NonNull String path, int start, int end) {
+            int length = end - start;
+            int mask = mKeys.length - 1;
+            for (int index = hash(path, start, end) & mask; ; index = (index + 1) & mask) {
+                String key = mKeys[index];
+                if (key == null)
+                    return null;
+                if (key.length() == length && path.regionMatches(start, key, 0, length))
+                    return mNodes[index];
+            }
+        }
+
+        /**
+         * @return a copy of this table with the segment added, resized to stay at most half full
+         */
+        @NonNull
+        SegmentTable with(@NonNull String segment, @NonNull Node node) {
+            int capacity = mKeys.length;
+            while (capacity < 2 * (mSize + 1))
+                capacity *= 2;
+            String[] keys = new String[capacity];
+            Node[] nodes = new Node[capacity];
+            for (int i = 0; i < mKeys.length; i++) {
+                if (mKeys[i] != null)
+                    insert(keys, nodes, mKeys[i], mNodes[i]);
+            }
+            insert(keys, nodes, segment, node);
+            return new SegmentTable(keys, nodes, mSize + 1);
+        }
+
+        private static void insert(@NonNull String[] keys, @NonNull Node[] nodes,
+                                   @NonNull String key, @NonNull Node node) {
+            int mask = keys.length - 1;
+            int index = key.hashCode() & mask;
+            while (keys[index] != null)
+                index = (index + 1) & mask;
+            keys[index] = key;
+            nodes[index] = node;
+        }
+
+        private static int hash(@NonNull String path, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++)
+                hash = 31 * hash + path.charAt(i);
+            return hash;
+        }
+    }
+}
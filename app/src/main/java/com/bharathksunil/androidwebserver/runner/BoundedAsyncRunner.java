@@ -0,0 +1,295 @@
+package com.bharathksunil.androidwebserver.runner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+
+/**
+ * This is a {@link NanoHTTPD.AsyncRunner} that runs client connections on a bounded pool of
+ * worker threads instead of creating a new thread for every accepted connection.
+ * <p>
+ * A connection is handed to an idle worker if there is one, otherwise a worker is created up to
+ * the maximum pool size, and only once every worker is busy is the connection queued. A worker
+ * serves a keep-alive connection until it closes, so queueing first, as a plain
+ * {@link ThreadPoolExecutor} does, would leave new clients waiting behind idle connections while
+ * the pool could still grow. Once both the pool and the queue are full the connection is shed: if
+ * the handler is {@link Rejectable} it is asked to answer with 503 and a Retry-After header,
+ * otherwise it is simply closed.
+ * </p>
+ */
+public class BoundedAsyncRunner implements NanoHTTPD.AsyncRunner {
+    /**
+     * The seconds an idle worker above the core size waits before it is terminated
+     */
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * The executor that runs the client handlers
+     */
+    @NonNull
+    private final WorkerPool mExecutor;
+    /**
+     * The handlers which are queued or running
+     */
+    @NonNull
+    private final Set<NanoHTTPD.ClientHandler> mRunning =
+            Collections.newSetFromMap(new ConcurrentHashMap<NanoHTTPD.ClientHandler, Boolean>());
+    /**
+     * The value passed to {@link Rejectable#reject(int)}
+     */
+    private volatile int mRetryAfterSeconds;
+    private final AtomicLong mAcceptedCount = new AtomicLong();
+    private final AtomicLong mRejectedCount = new AtomicLong();
+
+    /**
+     * @param coreSize          the number of worker threads kept alive
+     * @param maxSize           the maximum number of worker threads
+     * @param queueCapacity     the number of connections that may wait for a free worker
+     * @param retryAfterSeconds the seconds a rejected client is asked to wait
+     */
+    public BoundedAsyncRunner(int coreSize, int maxSize, int queueCapacity, int retryAfterSeconds) {
+        this.mRetryAfterSeconds = retryAfterSeconds;
+        this.mExecutor = new WorkerPool(coreSize, maxSize, new WorkerQueue(queueCapacity));
+        //let an idle phone give back the memory of the worker stacks
+        this.mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    //region Overridden Methods: AsyncRunner
+    @Override
+    public void closeAll() {
+        for (NanoHTTPD.ClientHandler clientHandler : new ArrayList<>(mRunning))
+            clientHandler.close();
+    }
+
+    @Override
+    public void closed(NanoHTTPD.ClientHandler clientHandler) {
+        mRunning.remove(clientHandler);
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler clientHandler) {
+        mRunning.add(clientHandler);
+        try {
+            mExecutor.execute(clientHandler);
+            mAcceptedCount.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            mRunning.remove(clientHandler);
+            mRejectedCount.incrementAndGet();
+            if (clientHandler instanceof Rejectable)
+                ((Rejectable) clientHandler).reject(mRetryAfterSeconds);
+            else
+                clientHandler.close();
+        }
+    }
+    //endregion
+
+    /**
+     * Call this method to run a task on the worker pool, for engines which hand the workers
+     * single requests rather than whole connections
+     *
+     * @param task the task to run
+     * @return true if the task was accepted, false if the pool and the queue are full
+     */
+    public boolean submit(@NonNull Runnable task) {
+        try {
+            mExecutor.execute(task);
+            mAcceptedCount.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            mRejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Call this method to change the size of the running pool, the queue keeps its capacity. The
+     * workers above the new maximum end once they finish their task.
+     *
+     * @param coreSize the number of worker threads kept alive
+     * @param maxSize  the maximum number of worker threads
+     */
+    public void resize(int coreSize, int maxSize) {
+        if (coreSize <= 0 || maxSize < coreSize)
+            throw new IllegalArgumentException("invalid worker pool size: " + coreSize + "/" + maxSize);
+        //the core size may never exceed the maximum, not even between the two calls
+        if (coreSize > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(maxSize);
+            mExecutor.setCorePoolSize(coreSize);
+        } else {
+            mExecutor.setCorePoolSize(coreSize);
+            mExecutor.setMaximumPoolSize(maxSize);
+        }
+    }
+
+    /**
+     * @param retryAfterSeconds the seconds a rejected client is asked to wait
+     */
+    public void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.mRetryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return the seconds a rejected client is asked to wait
+     */
+    public int getRetryAfterSeconds() {
+        return mRetryAfterSeconds;
+    }
+
+    /**
+     * Call this method to get the current state of the worker pool
+     *
+     * @return a snapshot of the pool statistics
+     */
+    @NonNull
+    public WorkerPoolStats getStats() {
+        return new WorkerPoolStats(
+                mExecutor.getPoolSize(),
+                mExecutor.getActiveCount(),
+                mExecutor.getLargestPoolSize(),
+                mExecutor.getQueue().size(),
+                mExecutor.getQueue().remainingCapacity(),
+                mAcceptedCount.get(),
+                mRejectedCount.get()
+        );
+    }
+
+    /**
+     * Call this method to get the handlers which are queued or running
+     *
+     * @return a copy of the live handlers
+     */
+    @NonNull
+    public List<NanoHTTPD.ClientHandler> getRunning() {
+        return new ArrayList<>(mRunning);
+    }
+
+    /**
+     * Call this method to close all connections and terminate the workers. The runner cannot be
+     * used after this call.
+     */
+    public void shutdown() {
+        closeAll();
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * A {@link NanoHTTPD.ClientHandler} that can answer the client itself when the pool is saturated
+     */
+    public interface Rejectable {
+        /**
+         * Called on the listener thread when no worker or queue slot is free. The implementation
+         * must answer quickly, for example with a 503 status, and close the connection.
+         *
+         * @param retryAfterSeconds the value to send in the Retry-After header
+         */
+        void reject(int retryAfterSeconds);
+    }
+
+    /**
+     * The executor of the workers, counting the tasks submitted and not finished yet so that its
+     * queue can tell whether a worker is idle
+     */
+    private static final class WorkerPool extends ThreadPoolExecutor {
+        private final AtomicInteger mSubmittedCount = new AtomicInteger();
+
+        WorkerPool(int coreSize, int maxSize, @NonNull WorkerQueue queue) {
+            super(coreSize, maxSize, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue,
+                    new WorkerThreadFactory(), new QueueWhenPoolIsFull());
+            queue.mPool = this;
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mSubmittedCount.incrementAndGet();
+            try {
+                super.execute(command);
+            } catch (RejectedExecutionException e) {
+                mSubmittedCount.decrementAndGet();
+                throw e;
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable runnable, Throwable throwable) {
+            mSubmittedCount.decrementAndGet();
+        }
+
+        int getSubmittedCount() {
+            return mSubmittedCount.get();
+        }
+    }
+
+    /**
+     * A bounded queue which refuses a task while an extra worker may still be created for it, so
+     * the executor grows the pool before it queues
+     */
+    private static final class WorkerQueue extends LinkedBlockingQueue<Runnable> {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Set once by the pool it belongs to
+         */
+        private transient volatile WorkerPool mPool;
+
+        WorkerQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(@NonNull Runnable runnable) {
+            WorkerPool pool = mPool;
+            //an idle worker takes the task from the queue at once
+            if (pool == null || pool.getSubmittedCount() <= pool.getPoolSize())
+                return super.offer(runnable);
+            if (pool.getPoolSize() < pool.getMaximumPoolSize())
+                return false;
+            return super.offer(runnable);
+        }
+
+        /**
+         * Queues the task whatever the size of the pool
+         */
+        boolean force(@NonNull Runnable runnable) {
+            return super.offer(runnable);
+        }
+    }
+
+    /**
+     * Queues a task refused because the pool could not grow after all, for example when it
+     * reached its maximum size meanwhile, and rejects it only when the queue is full too
+     */
+    private static final class QueueWhenPoolIsFull implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown() || !((WorkerQueue) executor.getQueue()).force(runnable))
+                throw new RejectedExecutionException("the worker pool and its queue are full");
+        }
+    }
+
+    /**
+     * Creates named daemon worker threads so they never keep the process alive
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "WebServer Worker #" + mThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
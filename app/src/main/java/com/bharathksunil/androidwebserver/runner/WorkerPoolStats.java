@@ -0,0 +1,91 @@
+package com.bharathksunil.androidwebserver.runner;
+
+/**
+ * This models a snapshot of the {@link BoundedAsyncRunner} worker pool, use it to size the pool
+ * and its queue.
+ */
+public final class WorkerPoolStats {
+    private final int poolSize;
+    private final int activeWorkers;
+    private final int largestPoolSize;
+    private final int queueDepth;
+    private final int queueRemainingCapacity;
+    private final long acceptedCount;
+    private final long rejectedCount;
+
+    WorkerPoolStats(int poolSize,
+                    int activeWorkers,
+                    int largestPoolSize,
+                    int queueDepth,
+                    int queueRemainingCapacity,
+                    long acceptedCount,
+                    long rejectedCount) {
+        this.poolSize = poolSize;
+        this.activeWorkers = activeWorkers;
+        this.largestPoolSize = largestPoolSize;
+        this.queueDepth = queueDepth;
+        this.queueRemainingCapacity = queueRemainingCapacity;
+        this.acceptedCount = acceptedCount;
+        this.rejectedCount = rejectedCount;
+    }
+
+    /**
+     * @return the number of worker threads currently alive
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return the number of workers currently serving a connection
+     */
+    public int getActiveWorkers() {
+        return activeWorkers;
+    }
+
+    /**
+     * @return the largest number of workers that were alive at the same time
+     */
+    public int getLargestPoolSize() {
+        return largestPoolSize;
+    }
+
+    /**
+     * @return the number of connections waiting for a free worker
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return the number of connections that can still be queued before load is shed
+     */
+    public int getQueueRemainingCapacity() {
+        return queueRemainingCapacity;
+    }
+
+    /**
+     * @return the total number of connections handed to the pool
+     */
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    /**
+     * @return the total number of connections answered with 503 because the pool was saturated
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "WorkerPoolStats{poolSize=" + poolSize
+                + ", activeWorkers=" + activeWorkers
+                + ", largestPoolSize=" + largestPoolSize
+                + ", queueDepth=" + queueDepth
+                + ", queueRemainingCapacity=" + queueRemainingCapacity
+                + ", acceptedCount=" + acceptedCount
+                + ", rejectedCount=" + rejectedCount + "}";
+    }
+}
@@ -0,0 +1,310 @@
+package com.bharathksunil.androidwebserver.sse;
+
+import com.bharathksunil.androidwebserver.router.RouteHandler;
+import com.bharathksunil.androidwebserver.router.RouteMatch;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This pushes Server-Sent Events to every client of an endpoint. Register it as the handler of a
+ * GET route: each request opens an event stream, and every event published is written to all of
+ * them.
+ * <p>
+ * A single dispatcher thread fans the events out. Each event is encoded once, and queued for every
+ * subscriber in a bounded queue, so a slow client never delays the others nor makes the server
+ * hold more than its queue: when the queue is full the {@link OverflowPolicy} drops its oldest
+ * event or disconnects the client. The dispatcher also writes the events to the non-blocking
+ * sockets of the connections handed over by the engine, so the streams hold no worker thread on
+ * either engine. Only a connection the engine cannot hand over, a socket without a channel, keeps
+ * its worker for as long as its stream lasts.
+ * </p>
+ * <p>
+ * The last events are kept in a ring buffer. A client reconnecting with a Last-Event-ID header
+ * first gets the events it missed, as far as the buffer reaches back. Comments are sent at the
+ * heartbeat interval so proxies keep idle streams open and dead clients are noticed.
+ * </p>
+ * <p>
+ * <h3>How to Use:</h3><br/>
+ * Call {@link #start()}, add the broadcaster as the handler of a GET route, then
+ * {@link #publish(String, String)} from any thread. {@link #stop()} ends all the streams.
+ * </p>
+ */
+public class SseBroadcaster implements RouteHandler {
+    private static final Logger LOG = Logger.getLogger(SseBroadcaster.class.getName());
+    public static final String MIME_EVENT_STREAM = "text/event-stream; charset=utf-8";
+    /**
+     * The default number of past events kept for reconnecting clients
+     */
+    public static final int DEFAULT_REPLAY_CAPACITY = 256;
+    /**
+     * The default number of events queued for a subscriber
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    /**
+     * The default interval between two heartbeat comments
+     */
+    public static final long DEFAULT_HEARTBEAT_MILLIS = 15 * 1000;
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(Charset.forName("US-ASCII"));
+
+    /**
+     * What is done when an event is published to a subscriber whose queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * The oldest queued event is dropped, the client misses it but stays connected
+         */
+        DROP_OLDEST,
+        /**
+         * The client is disconnected, it reconnects and catches up through Last-Event-ID
+         */
+        DISCONNECT
+    }
+
+    private final int mQueueCapacity;
+    @NonNull
+    private final OverflowPolicy mOverflowPolicy;
+    private final long mHeartbeatMillis;
+    /**
+     * The work of the dispatcher: events to fan out, subscribers to add or to write to
+     */
+    @NonNull
+    private final LinkedBlockingQueue<Runnable> mTasks = new LinkedBlockingQueue<>();
+    /**
+     * The last events, oldest first from mReplayStart, only touched by the dispatcher
+     */
+    @NonNull
+    private final SseEvent[] mReplay;
+    private int mReplayStart;
+    private int mReplaySize;
+    /**
+     * The connected subscribers, only touched by the dispatcher
+     */
+    @NonNull
+    private final List<SseSubscriber> mSubscribers = new ArrayList<>();
+    /**
+     * The id of the last event published, guarded by mTasks so events are queued in id order
+     */
+    private long mLastEventId;
+    private volatile int mSubscriberCount;
+    @NonNull
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    @NonNull
+    private final AtomicLong mDisconnectedCount = new AtomicLong();
+    /**
+     * Runs the fan-out, null while the broadcaster is stopped
+     */
+    @Nullable
+    private volatile Thread mDispatcher;
+
+    public SseBroadcaster() {
+        this(DEFAULT_REPLAY_CAPACITY, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST, DEFAULT_HEARTBEAT_MILLIS);
+    }
+
+    /**
+     * @param replayCapacity  the number of past events kept for reconnecting clients, 0 for none
+     * @param queueCapacity   the number of events queued for a subscriber
+     * @param overflowPolicy  what is done when a subscriber's queue is full
+     * @param heartbeatMillis the interval between two heartbeat comments
+     */
+    public SseBroadcaster(int replayCapacity,
+                          int queueCapacity,
+                          @NonNull OverflowPolicy overflowPolicy,
+                          long heartbeatMillis) {
+        if (replayCapacity < 0 || queueCapacity <= 0 || heartbeatMillis <= 0)
+            throw new IllegalArgumentException("invalid broadcaster capacities");
+        this.mReplay = new SseEvent[replayCapacity];
+        this.mQueueCapacity = queueCapacity;
+        this.mOverflowPolicy = overflowPolicy;
+        this.mHeartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * Call this method to start the dispatcher, before the route is served
+     */
+    public synchronized void start() {
+        if (mDispatcher != null)
+            return;
+        Thread dispatcher = new Thread(this::dispatch, "SSE Dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        mDispatcher = dispatcher;
+    }
+
+    /**
+     * Call this method to stop the dispatcher and close all the streams
+     */
+    public synchronized void stop() {
+        Thread dispatcher = mDispatcher;
+        if (dispatcher == null)
+            return;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mDispatcher = null;
+        //the dispatcher is gone, the subscribers are ours now
+        Runnable task;
+        while ((task = mTasks.poll()) != null)
+            task.run();
+        for (SseSubscriber subscriber : mSubscribers)
+            subscriber.close();
+        mSubscribers.clear();
+        mSubscriberCount = 0;
+    }
+
+    /**
+     * Call this method from any thread to send an event to all subscribers
+     *
+     * @param event the event type, null for the default "message" type
+     * @param data  the data of the event, may span lines
+     * @return the id of the event
+     */
+    public long publish(@Nullable String event, @NonNull String data) {
+        synchronized (mTasks) {
+            final SseEvent sseEvent = new SseEvent(++mLastEventId, event, data);
+            if (mDispatcher != null)
+                mTasks.add(() -> fanOut(sseEvent));
+            return sseEvent.getId();
+        }
+    }
+
+    @NonNull
+    @Override
+    public NanoHTTPD.Response handle(@NonNull NanoHTTPD.IHTTPSession session, @NonNull RouteMatch match) {
+        if (mDispatcher == null)
+            return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.SERVICE_UNAVAILABLE,
+                    NanoHTTPD.MIME_PLAINTEXT, NanoHTTPD.Response.Status.SERVICE_UNAVAILABLE.getDescription());
+        return new SseResponse(this, new SseSubscriber(this, mQueueCapacity),
+                parseLastEventId(session.getHeaders().get("last-event-id")));
+    }
+
+    /**
+     * @return a snapshot of the broadcaster counters
+     */
+    @NonNull
+    public SseStats getStats() {
+        long published;
+        synchronized (mTasks) {
+            published = mLastEventId;
+        }
+        return new SseStats(mSubscriberCount, published, mDroppedCount.get(), mDisconnectedCount.get());
+    }
+
+    /**
+     * Called by the response to add its subscriber, the missed events are queued first
+     */
+    synchronized void subscribe(@NonNull final SseSubscriber subscriber, final long lastEventId) {
+        if (mDispatcher == null) {
+            subscriber.close();
+            return;
+        }
+        mTasks.add(() -> {
+            if (subscriber.isClosed())
+                return;
+            if (lastEventId >= 0) {
+                for (int i = 0; i < mReplaySize; i++) {
+                    SseEvent event = mReplay[(mReplayStart + i) % mReplay.length];
+                    if (event.getId() > lastEventId)
+                        subscriber.add(event.getBytes());
+                }
+            }
+            mSubscribers.add(subscriber);
+            mSubscriberCount = mSubscribers.size();
+            subscriber.flush();
+        });
+    }
+
+    /**
+     * Called when an attached subscriber's socket is writable again
+     */
+    void flushLater(@NonNull final SseSubscriber subscriber) {
+        mTasks.add(subscriber::flush);
+    }
+
+    private void dispatch() {
+        long nextHeartbeat = System.currentTimeMillis() + mHeartbeatMillis;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Runnable task = mTasks.poll(Math.max(1, nextHeartbeat - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS);
+                if (task != null)
+                    task.run();
+                if (System.currentTimeMillis() >= nextHeartbeat) {
+                    send(HEARTBEAT);
+                    nextHeartbeat = System.currentTimeMillis() + mHeartbeatMillis;
+                }
+            } catch (InterruptedException e) {
+                //stopped
+                return;
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "An SSE dispatcher task failed", e);
+            }
+        }
+    }
+
+    private void fanOut(@NonNull SseEvent event) {
+        if (mReplay.length > 0) {
+            if (mReplaySize < mReplay.length) {
+                mReplay[(mReplayStart + mReplaySize++) % mReplay.length] = event;
+            } else {
+                mReplay[mReplayStart] = event;
+                mReplayStart = (mReplayStart + 1) % mReplay.length;
+            }
+        }
+        send(event.getBytes());
+    }
+
+    /**
+     * Queues the bytes for every subscriber and writes them to the attached ones
+     */
+    private void send(@NonNull byte[] bytes) {
+        Iterator<SseSubscriber> iterator = mSubscribers.iterator();
+        while (iterator.hasNext()) {
+            SseSubscriber subscriber = iterator.next();
+            if (!subscriber.isClosed() && !subscriber.offer(bytes)) {
+                if (mOverflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                    subscriber.dropOldest();
+                    subscriber.offer(bytes);
+                    mDroppedCount.incrementAndGet();
+                } else {
+                    subscriber.close();
+                    mDisconnectedCount.incrementAndGet();
+                }
+            }
+            if (subscriber.isClosed()) {
+                iterator.remove();
+                continue;
+            }
+            if (subscriber.isAttached())
+                subscriber.flush();
+        }
+        mSubscriberCount = mSubscribers.size();
+    }
+
+    /**
+     * @return the id sent by a reconnecting client, -1 if there is none
+     */
+    private static long parseLastEventId(@Nullable String header) {
+        if (header == null)
+            return -1;
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
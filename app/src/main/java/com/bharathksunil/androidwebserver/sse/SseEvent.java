@@ -0,0 +1,55 @@
+package com.bharathksunil.androidwebserver.sse;
+
+import java.nio.charset.Charset;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * An event of a {@link SseBroadcaster}, encoded once in the text/event-stream format and then
+ * written as is to every subscriber
+ */
+final class SseEvent {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long mId;
+    @NonNull
+    private final byte[] mBytes;
+
+    /**
+     * @param id    the id sent to the client, which returns it in Last-Event-ID on reconnecting
+     * @param event the event type, null for the default "message" type
+     * @param data  the data, split into one data field per line
+     */
+    SseEvent(long id, @Nullable String event, @NonNull String data) {
+        this.mId = id;
+        StringBuilder text = new StringBuilder(data.length() + 32);
+        text.append("id: ").append(id).append('\n');
+        if (event != null)
+            text.append("event: ").append(event).append('\n');
+        int lineStart = 0;
+        for (int i = 0; i <= data.length(); i++) {
+            char c = i < data.length() ? data.charAt(i) : '\n';
+            if (c != '\n' && c != '\r')
+                continue;
+            text.append("data: ").append(data, lineStart, i).append('\n');
+            //a CRLF is one line break
+            if (c == '\r' && i + 1 < data.length() && data.charAt(i + 1) == '\n')
+                i++;
+            lineStart = i + 1;
+        }
+        this.mBytes = text.append('\n').toString().getBytes(UTF_8);
+    }
+
+    long getId() {
+        return mId;
+    }
+
+    /**
+     * @return the encoded event, shared by all subscribers so it must not be modified
+     */
+    @NonNull
+    byte[] getBytes() {
+        return mBytes;
+    }
+}
@@ -0,0 +1,73 @@
+package com.bharathksunil.androidwebserver.sse;
+
+import com.bharathksunil.androidwebserver.connection.ClientConnection;
+import com.bharathksunil.androidwebserver.response.DirectResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * The event stream of one subscriber of a {@link SseBroadcaster}. The body has no length and ends
+ * when the connection is closed. If the engine can hand the connection over the broadcaster writes
+ * the events, otherwise the worker writes them as they come and is held until the stream ends.
+ */
+final class SseResponse extends DirectResponse {
+    /**
+     * Sent first, so the client sees the stream open before the first event
+     */
+    private static final byte[] OPENING = ":\n\n".getBytes(HEADER_CHARSET);
+
+    @NonNull
+    private final SseBroadcaster mBroadcaster;
+    @NonNull
+    private final SseSubscriber mSubscriber;
+    /**
+     * The id of the last event the client received before reconnecting, -1 if it did not send one
+     */
+    private final long mLastEventId;
+
+    SseResponse(@NonNull SseBroadcaster broadcaster, @NonNull SseSubscriber subscriber, long lastEventId) {
+        super(NanoHTTPD.Response.Status.OK, SseBroadcaster.MIME_EVENT_STREAM, UNTIL_CLOSE);
+        this.mBroadcaster = broadcaster;
+        this.mSubscriber = subscriber;
+        this.mLastEventId = lastEventId;
+        addHeader("Cache-Control", "no-cache");
+    }
+
+    @Override
+    protected void writeBody(@NonNull OutputStream outputStream,
+                             @Nullable WritableByteChannel channel) throws IOException {
+        outputStream.write(OPENING);
+        outputStream.flush();
+        ClientConnection connection = ClientConnection.current();
+        if (connection != null && connection.getChannel() != null && connection.handOver(mSubscriber)) {
+            mSubscriber.attach(connection);
+            mBroadcaster.subscribe(mSubscriber, mLastEventId);
+            return;
+        }
+        mBroadcaster.subscribe(mSubscriber, mLastEventId);
+        try {
+            byte[] event;
+            while ((event = mSubscriber.take()) != null) {
+                outputStream.write(event);
+                outputStream.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            mSubscriber.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        //the subscriber ends with the connection, not with the response
+    }
+}
@@ -0,0 +1,55 @@
+package com.bharathksunil.androidwebserver.sse;
+
+/**
+ * This models a snapshot of the {@link SseBroadcaster} counters, use it to size the subscriber
+ * queues
+ */
+public final class SseStats {
+    private final int subscriberCount;
+    private final long publishedCount;
+    private final long droppedCount;
+    private final long disconnectedCount;
+
+    SseStats(int subscriberCount, long publishedCount, long droppedCount, long disconnectedCount) {
+        this.subscriberCount = subscriberCount;
+        this.publishedCount = publishedCount;
+        this.droppedCount = droppedCount;
+        this.disconnectedCount = disconnectedCount;
+    }
+
+    /**
+     * @return the number of connected subscribers
+     */
+    public int getSubscriberCount() {
+        return subscriberCount;
+    }
+
+    /**
+     * @return the number of events published
+     */
+    public long getPublishedCount() {
+        return publishedCount;
+    }
+
+    /**
+     * @return the number of events a slow subscriber lost to make room for newer ones
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return the number of slow subscribers disconnected because their queue was full
+     */
+    public long getDisconnectedCount() {
+        return disconnectedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "SseStats{subscriberCount=" + subscriberCount
+                + ", publishedCount=" + publishedCount
+                + ", droppedCount=" + droppedCount
+                + ", disconnectedCount=" + disconnectedCount + "}";
+    }
+}
@@ -0,0 +1,175 @@
+package com.bharathksunil.androidwebserver.sse;
+
+import com.bharathksunil.androidwebserver.connection.ClientConnection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * A client of a {@link SseBroadcaster}, holding the encoded events not written to it yet in a
+ * bounded queue. The queue is drained either by the worker serving the connection, which blocks
+ * on it, or, on a connection handed over by the engine, by the dispatcher itself, which writes as
+ * much as the socket takes and resumes once it is writable again.
+ */
+final class SseSubscriber implements ClientConnection.HandoverListener {
+    @NonNull
+    private final SseBroadcaster mBroadcaster;
+    private final int mCapacity;
+    /**
+     * The events not written yet, guarded by this
+     */
+    @NonNull
+    private final ArrayDeque<byte[]> mQueue;
+    private volatile boolean mClosed;
+    /**
+     * The handed over connection the dispatcher writes to, null while a worker drains the queue
+     */
+    @Nullable
+    private ClientConnection mConnection;
+    @Nullable
+    private SocketChannel mChannel;
+    /**
+     * The rest of an event the socket did not take yet, only touched by the dispatcher
+     */
+    @Nullable
+    private ByteBuffer mPending;
+
+    /**
+     * @param broadcaster the broadcaster the subscriber is added to
+     * @param capacity    the number of events the queue holds
+     */
+    SseSubscriber(@NonNull SseBroadcaster broadcaster, int capacity) {
+        this.mBroadcaster = broadcaster;
+        this.mCapacity = capacity;
+        this.mQueue = new ArrayDeque<>(Math.min(capacity, 16));
+    }
+
+    /**
+     * Call this method on the worker before the subscriber is added, once the connection has been
+     * handed over
+     */
+    void attach(@NonNull ClientConnection connection) {
+        this.mConnection = connection;
+        this.mChannel = connection.getChannel();
+    }
+
+    /**
+     * @return true if the dispatcher writes the events itself
+     */
+    boolean isAttached() {
+        return mChannel != null;
+    }
+
+    boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * Called on the dispatcher to queue an event
+     *
+     * @return false if the queue is full
+     */
+    synchronized boolean offer(@NonNull byte[] event) {
+        if (mQueue.size() >= mCapacity)
+            return false;
+        add(event);
+        return true;
+    }
+
+    /**
+     * Called on the dispatcher to queue a replayed event, which the capacity does not limit as the
+     * replay buffer already bounds them
+     */
+    synchronized void add(@NonNull byte[] event) {
+        mQueue.addLast(event);
+        notifyAll();
+    }
+
+    /**
+     * Called on the dispatcher to make room for a newer event
+     */
+    synchronized void dropOldest() {
+        mQueue.pollFirst();
+    }
+
+    /**
+     * Called on the worker to wait for the next event to write
+     *
+     * @return the event, null once the subscriber is closed
+     * @throws InterruptedException if the worker was interrupted
+     */
+    @Nullable
+    synchronized byte[] take() throws InterruptedException {
+        while (mQueue.isEmpty() && !mClosed)
+            wait();
+        return mClosed ? null : mQueue.pollFirst();
+    }
+
+    /**
+     * Called on the dispatcher to write the queued events to an attached subscriber, until the
+     * socket takes no more
+     */
+    void flush() {
+        SocketChannel channel = mChannel;
+        ClientConnection connection = mConnection;
+        if (channel == null || connection == null || mClosed)
+            return;
+        try {
+            while (true) {
+                if (mPending == null) {
+                    byte[] event;
+                    synchronized (this) {
+                        event = mQueue.pollFirst();
+                    }
+                    if (event == null)
+                        return;
+                    mPending = ByteBuffer.wrap(event);
+                }
+                channel.write(mPending);
+                if (mPending.hasRemaining()) {
+                    connection.requestWritable();
+                    return;
+                }
+                mPending = null;
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Call this method from any thread to end the stream
+     */
+    void close() {
+        synchronized (this) {
+            if (mClosed)
+                return;
+            mClosed = true;
+            mQueue.clear();
+            notifyAll();
+        }
+        ClientConnection connection = mConnection;
+        if (connection != null)
+            connection.close();
+    }
+
+    @Override
+    public void onReceived(@NonNull ByteBuffer bytes) {
+        //a client sends nothing on an event stream
+    }
+
+    @Override
+    public void onWritable() {
+        mBroadcaster.flushLater(this);
+    }
+
+    @Override
+    public void onClosed() {
+        close();
+    }
+}
@@ -0,0 +1,380 @@
+package com.bharathksunil.androidwebserver.upload;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This reads a multipart/form-data body part by part while it arrives, through one fixed buffer.
+ * The bytes of a part are handed to the destination as soon as they are known not to belong to
+ * the next boundary, so a part of any size passes through the same few kilobytes of heap, and the
+ * client is only read as fast as the destination takes the bytes.
+ * <p>
+ * <h3>How to Use:</h3><br/>
+ * Call {@link #nextPart()} until it returns null, and {@link #transferPart(WritableByteChannel, long)}
+ * or {@link #readPart(int)} after each part returned.
+ * </p>
+ */
+public final class MultipartStream {
+    private static final Charset HEADER_CHARSET = Charset.forName("ISO-8859-1");
+    /**
+     * The buffer must hold the headers of a part, which are kept well under this size by clients
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_PART_HEADER_BYTES = 8 * 1024;
+
+    @NonNull
+    private final InputStream mInputStream;
+    /**
+     * CRLF, two dashes and the boundary, which ends every part
+     */
+    @NonNull
+    private final byte[] mDelimiter;
+    @NonNull
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    /**
+     * The unconsumed bytes are mBuffer[mStart, mEnd)
+     */
+    private int mStart;
+    private int mEnd;
+    /**
+     * The body bytes not read from the stream yet
+     */
+    private long mRemaining;
+    /**
+     * True while the bytes at mStart belong to the body of the current part
+     */
+    private boolean mInPart;
+    private boolean mFinished;
+
+    /**
+     * @param inputStream   the request body, positioned at its first byte
+     * @param contentLength the length of the body, no byte after it is read
+     * @param boundary      the boundary parameter of the Content-Type
+     */
+    public MultipartStream(@NonNull InputStream inputStream, long contentLength, @NonNull String boundary) {
+        this.mInputStream = inputStream;
+        this.mDelimiter = ("\r\n--" + boundary).getBytes(HEADER_CHARSET);
+        this.mRemaining = contentLength;
+        //the first boundary has no line break before it, pretending one lets all boundaries
+        //be matched alike and skips the preamble like the body of a part
+        mBuffer[0] = '\r';
+        mBuffer[1] = '\n';
+        this.mEnd = 2;
+        this.mInPart = true;
+    }
+
+    /**
+     * Call this method to get the boundary of a multipart/form-data content type
+     *
+     * @param contentType the Content-Type header of the request
+     * @return the boundary, null if the content type is not multipart/form-data with a boundary
+     */
+    @Nullable
+    public static String parseBoundary(@Nullable String contentType) {
+        if (contentType == null
+                || !contentType.toLowerCase(Locale.US).startsWith("multipart/form-data"))
+            return null;
+        String boundary = parseParameter(contentType, "boundary");
+        return boundary == null || boundary.isEmpty() || boundary.length() > 70 ? null : boundary;
+    }
+
+    /**
+     * Call this method to skip to the next part, the rest of the current one is discarded
+     *
+     * @return the headers of the next part, null if the body has no more parts
+     * @throws IOException if the body ended early or is not a multipart body
+     */
+    @Nullable
+    public Part nextPart() throws IOException {
+        if (mInPart)
+            transferPart(null, Long.MAX_VALUE);
+        if (mFinished)
+            return null;
+        //the boundary is followed by two dashes on the last one, or by a line break
+        fill(2);
+        if (mBuffer[mStart] == '-' && mBuffer[mStart + 1] == '-') {
+            mFinished = true;
+            skipEpilogue();
+            return null;
+        }
+        int headersEnd = findHeadersEnd();
+        String headers = new String(mBuffer, mStart, headersEnd - mStart, HEADER_CHARSET);
+        mStart = headersEnd;
+        mInPart = true;
+        return Part.parse(headers);
+    }
+
+    /**
+     * Call this method to stream the body of the current part
+     *
+     * @param channel  the destination, null to discard the body
+     * @param maxBytes the largest body accepted
+     * @return the number of body bytes
+     * @throws PartTooLargeException if the body is larger than maxBytes, the rest of the upload
+     *                               is then left unread
+     * @throws IOException           if the body ended early or the destination failed
+     */
+    public long transferPart(@Nullable WritableByteChannel channel, long maxBytes) throws IOException {
+        if (!mInPart)
+            throw new IllegalStateException("no part to transfer");
+        long transferred = 0;
+        while (true) {
+            int delimiter = indexOfDelimiter();
+            //bytes which could still be the start of the delimiter are kept for the next read
+            int end = delimiter >= 0 ? delimiter : Math.max(mStart, mEnd - mDelimiter.length + 1);
+            int length = end - mStart;
+            if (length > 0) {
+                transferred += length;
+                if (transferred > maxBytes)
+                    throw new PartTooLargeException(maxBytes);
+                if (channel != null)
+                    write(channel, length);
+                mStart = end;
+            }
+            if (delimiter >= 0) {
+                mStart += mDelimiter.length;
+                mInPart = false;
+                return transferred;
+            }
+            fill(mDelimiter.length);
+        }
+    }
+
+    /**
+     * Call this method to read the body of a small part, like a form field, into memory
+     *
+     * @param maxBytes the largest body accepted
+     * @return the body
+     * @throws PartTooLargeException if the body is larger than maxBytes
+     * @throws IOException           if the body ended early
+     */
+    @NonNull
+    public byte[] readPart(int maxBytes) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        transferPart(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) {
+                int length = source.remaining();
+                body.write(source.array(), source.arrayOffset() + source.position(), length);
+                source.position(source.limit());
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+                //nothing to release
+            }
+        }, maxBytes);
+        return body.toByteArray();
+    }
+
+    private void write(@NonNull WritableByteChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(mBuffer, mStart, length);
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * @return the position of the delimiter in the unconsumed bytes, -1 if they do not hold it
+     */
+    private int indexOfDelimiter() {
+        byte first = mDelimiter[0];
+        int last = mEnd - mDelimiter.length;
+        outer:
+        for (int i = mStart; i <= last; i++) {
+            if (mBuffer[i] != first)
+                continue;
+            for (int j = 1; j < mDelimiter.length; j++) {
+                if (mBuffer[i + j] != mDelimiter[j])
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Skips the rest of the boundary line and finds the empty line ending the part headers
+     *
+     * @return the position after the empty line
+     */
+    private int findHeadersEnd() throws IOException {
+        int scanned = mStart;
+        while (true) {
+            //the boundary line ends at the first line feed, the headers at the next empty line
+            for (int i = scanned; i < mEnd; i++) {
+                if (mBuffer[i] != '\n')
+                    continue;
+                int next = i + 1;
+                if (next < mEnd && mBuffer[next] == '\r')
+                    next++;
+                if (next < mEnd && mBuffer[next] == '\n')
+                    return next + 1;
+            }
+            if (mEnd - mStart >= MAX_PART_HEADER_BYTES)
+                throw new IOException("part headers too large");
+            scanned = Math.max(mStart, mEnd - 2);
+            fill(mEnd - mStart + 1);
+        }
+    }
+
+    /**
+     * Reads the bytes after the last boundary, so a keep-alive connection is positioned at the
+     * next request
+     */
+    private void skipEpilogue() throws IOException {
+        while (mRemaining > 0) {
+            int read = mInputStream.read(mBuffer, 0, (int) Math.min(mBuffer.length, mRemaining));
+            if (read < 0)
+                return;
+            mRemaining -= read;
+        }
+        mStart = 0;
+        mEnd = 0;
+    }
+
+    /**
+     * Reads from the stream until at least the given number of bytes are unconsumed
+     *
+     * @throws EOFException if the body ends first
+     */
+    private void fill(int minimum) throws IOException {
+        if (mEnd - mStart >= minimum)
+            return;
+        if (mStart > 0) {
+            System.arraycopy(mBuffer, mStart, mBuffer, 0, mEnd - mStart);
+            mEnd -= mStart;
+            mStart = 0;
+        }
+        while (mEnd < minimum) {
+            if (mRemaining <= 0)
+                throw new EOFException("multipart body truncated");
+            int read = mInputStream.read(mBuffer, mEnd, (int) Math.min(mBuffer.length - mEnd, mRemaining));
+            if (read < 0)
+                throw new EOFException("multipart body truncated");
+            mEnd += read;
+            mRemaining -= read;
+        }
+    }
+
+    /**
+     * @return the unquoted value of the parameter in a header value, null if it is absent
+     */
+    @Nullable
+    static String parseParameter(@NonNull String header, @NonNull String name) {
+        int length = header.length();
+        int position = header.indexOf(';');
+        while (position >= 0) {
+            int equals = header.indexOf('=', position);
+            if (equals < 0)
+                return null;
+            String key = header.substring(position + 1, equals).trim();
+            int valueStart = equals + 1;
+            while (valueStart < length && header.charAt(valueStart) == ' ')
+                valueStart++;
+            String value;
+            if (valueStart < length && header.charAt(valueStart) == '"') {
+                //a quoted value may hold the separator, it ends at the closing quote
+                int quoteEnd = header.indexOf('"', valueStart + 1);
+                if (quoteEnd < 0)
+                    return null;
+                value = header.substring(valueStart + 1, quoteEnd);
+                position = header.indexOf(';', quoteEnd);
+            } else {
+                position = header.indexOf(';', valueStart);
+                value = header.substring(valueStart, position < 0 ? length : position).trim();
+            }
+            if (key.equalsIgnoreCase(name))
+                return value;
+        }
+        return null;
+    }
+
+    /**
+     * The headers of a part
+     */
+    public static final class Part {
+        @Nullable
+        private final String mName;
+        @Nullable
+        private final String mFileName;
+        @Nullable
+        private final String mContentType;
+
+        private Part(@Nullable String name, @Nullable String fileName, @Nullable String contentType) {
+            this.mName = name;
+            this.mFileName = fileName;
+            this.mContentType = contentType;
+        }
+
+        @NonNull
+        static Part parse(@NonNull String headers) {
+            String name = null;
+            String fileName = null;
+            String contentType = null;
+            for (String line : headers.split("\r?\n")) {
+                int colon = line.indexOf(':');
+                if (colon <= 0)
+                    continue;
+                String header = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (header.equalsIgnoreCase("content-disposition")) {
+                    name = parseParameter(value, "name");
+                    fileName = parseParameter(value, "filename");
+                } else if (header.equalsIgnoreCase("content-type")) {
+                    contentType = value;
+                }
+            }
+            return new Part(name, fileName, contentType);
+        }
+
+        /**
+         * @return the name of the form field, null if none was sent
+         */
+        @Nullable
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return the file name as sent by the client, null if the part is not a file
+         */
+        @Nullable
+        public String getFileName() {
+            return mFileName;
+        }
+
+        /**
+         * @return the content type of the part, null if none was sent
+         */
+        @Nullable
+        public String getContentType() {
+            return mContentType;
+        }
+    }
+
+    /**
+     * Thrown when a part is larger than the limit it is read with
+     */
+    public static final class PartTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        PartTooLargeException(long maxBytes) {
+            super("part larger than " + maxBytes + " bytes");
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.bharathksunil.androidwebserver.upload;
+
+import com.bharathksunil.androidwebserver.router.RouteHandler;
+import com.bharathksunil.androidwebserver.router.RouteMatch;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This stores the files of multipart/form-data uploads in a directory. Unlike
+ * {@link NanoHTTPD.IHTTPSession#parseBody(java.util.Map)}, which buffers the body in memory or a
+ * temp file and copies it again afterwards, every file part is streamed by a
+ * {@link MultipartStream} straight into the channel of its destination, so the heap used does not
+ * grow with the upload and the client is read only as fast as the storage writes.
+ * <p>
+ * An upload whose Content-Length exceeds the upload limit is refused before its body is read,
+ * and one whose file exceeds the file limit is aborted as soon as it does. Both are answered with
+ * 413 and the connection is closed, as the rest of the body is never read. The files of an
+ * aborted upload are deleted.
+ * </p>
+ * <p>
+ * A file is written under a hidden temporary name and renamed once complete, so a partial file is
+ * never visible, and it never replaces an existing one: a number is added to the name instead.
+ * Form fields which are not files are skipped. A successful upload is answered with 201 and the
+ * stored files as JSON:
+ * <pre>
+ *   {"files":[{"field":"photo","name":"IMG_1.jpg","size":1048576}]}
+ * </pre>
+ * </p>
+ */
+public class UploadHandler implements RouteHandler {
+    private static final Logger LOG = Logger.getLogger(UploadHandler.class.getName());
+    private static final String MIME_JSON = "application/json";
+    private static final String TEMP_FILE_PREFIX = ".upload-";
+    private static final String TEMP_FILE_SUFFIX = ".part";
+    private static final int MAX_FILE_NAME_LENGTH = 128;
+
+    /**
+     * The directory the files are stored in
+     */
+    @NonNull
+    private final File mDirectory;
+    /**
+     * The largest file accepted
+     */
+    private final long mMaxFileBytes;
+    /**
+     * The largest request body accepted
+     */
+    private final long mMaxUploadBytes;
+
+    /**
+     * @param directory      the directory the files are stored in, created if missing
+     * @param maxFileBytes   the largest file accepted
+     * @param maxUploadBytes the largest request body accepted, all parts together
+     */
+    public UploadHandler(@NonNull File directory, long maxFileBytes, long maxUploadBytes) {
+        this.mDirectory = directory;
+        this.mMaxFileBytes = maxFileBytes;
+        this.mMaxUploadBytes = maxUploadBytes;
+    }
+
+    @NonNull
+    @Override
+    public NanoHTTPD.Response handle(@NonNull NanoHTTPD.IHTTPSession session, @NonNull RouteMatch match) {
+        String contentLengthHeader = session.getHeaders().get("content-length");
+        if (contentLengthHeader == null)
+            return abort(NanoHTTPD.Response.Status.LENGTH_REQUIRED);
+        long contentLength;
+        try {
+            contentLength = Long.parseLong(contentLengthHeader.trim());
+        } catch (NumberFormatException e) {
+            return abort(NanoHTTPD.Response.Status.BAD_REQUEST);
+        }
+        if (contentLength > mMaxUploadBytes)
+            return abort(NanoHTTPD.Response.Status.PAYLOAD_TOO_LARGE);
+        String boundary = MultipartStream.parseBoundary(session.getHeaders().get("content-type"));
+        if (boundary == null)
+            return abort(NanoHTTPD.Response.Status.UNSUPPORTED_MEDIA_TYPE);
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+            return abort(NanoHTTPD.Response.Status.INTERNAL_ERROR);
+
+        MultipartStream multipartStream = new MultipartStream(session.getInputStream(), contentLength, boundary);
+        List<StoredFile> storedFiles = new ArrayList<>();
+        try {
+            MultipartStream.Part part;
+            while ((part = multipartStream.nextPart()) != null) {
+                if (part.getFileName() != null)
+                    storedFiles.add(store(part, multipartStream));
+            }
+        } catch (MultipartStream.PartTooLargeException e) {
+            delete(storedFiles);
+            return abort(NanoHTTPD.Response.Status.PAYLOAD_TOO_LARGE);
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Upload failed", e);
+            delete(storedFiles);
+            return abort(NanoHTTPD.Response.Status.BAD_REQUEST);
+        }
+        return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.CREATED, MIME_JSON, toJson(storedFiles));
+    }
+
+    /**
+     * Streams the body of a file part into a temporary file and renames it once complete
+     */
+    @NonNull
+    private StoredFile store(@NonNull MultipartStream.Part part,
+                             @NonNull MultipartStream multipartStream) throws IOException {
+        File partial = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, mDirectory);
+        boolean stored = false;
+        try {
+            long size;
+            try (FileOutputStream outputStream = new FileOutputStream(partial)) {
+                size = multipartStream.transferPart(outputStream.getChannel(), mMaxFileBytes);
+            }
+            //noinspection ConstantConditions only file parts are stored
+            File target = moveToUniqueName(partial, safeFileName(part.getFileName()));
+            stored = true;
+            return new StoredFile(part.getName(), target, size);
+        } finally {
+            if (!stored && !partial.delete())
+                LOG.warning("Could not delete " + partial);
+        }
+    }
+
+    /**
+     * Renames the file to the name, or to the name with a number added if a file already has it.
+     * Synchronized so two uploads of the same name cannot pick the same target.
+     */
+    @NonNull
+    private synchronized File moveToUniqueName(@NonNull File file, @NonNull String name) throws IOException {
+        int extension = name.lastIndexOf('.');
+        String base = extension > 0 ? name.substring(0, extension) : name;
+        String suffix = extension > 0 ? name.substring(extension) : "";
+        File target = new File(mDirectory, name);
+        for (int i = 1; target.exists(); i++)
+            target = new File(mDirectory, base + "-" + i + suffix);
+        if (!file.renameTo(target))
+            throw new IOException("could not rename " + file + " to " + target);
+        return target;
+    }
+
+    /**
+     * Reduces the file name sent by the client to a plain name inside the directory
+     *
+     * @param fileName the file name of the part, which may be a full path
+     * @return a name without separators, control characters or a leading dot
+     */
+    @NonNull
+    static String safeFileName(@NonNull String fileName) {
+        String name = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+        StringBuilder safe = new StringBuilder(name.length());
+        for (int i = 0; i < name.length() && safe.length() < MAX_FILE_NAME_LENGTH; i++) {
+            char c = name.charAt(i);
+            if (c < 0x20 || c == 0x7f || c == ':')
+                continue;
+            //a leading dot would hide the file, and could make it a temporary file
+            if (c == '.' && safe.length() == 0)
+                continue;
+            safe.append(c);
+        }
+        return safe.length() > 0 ? safe.toString() : "upload";
+    }
+
+    private static void delete(@NonNull List<StoredFile> storedFiles) {
+        for (StoredFile storedFile : storedFiles) {
+            if (!storedFile.file.delete())
+                LOG.warning("Could not delete " + storedFile.file);
+        }
+    }
+
+    @NonNull
+    private static String toJson(@NonNull List<StoredFile> storedFiles) {
+        StringWriter json = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(json)) {
+            writer.beginObject().name("files").beginArray();
+            for (StoredFile storedFile : storedFiles) {
+                writer.beginObject()
+                        .name("field").value(storedFile.field)
+                        .name("name").value(storedFile.file.getName())
+                        .name("size").value(storedFile.size)
+                        .endObject();
+            }
+            writer.endArray().endObject();
+        } catch (IOException e) {
+            //a StringWriter does not fail
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * @return an error response which closes the connection, as the body may be left unread
+     */
+    @NonNull
+    private static NanoHTTPD.Response abort(@NonNull NanoHTTPD.Response.Status status) {
+        NanoHTTPD.Response response = NanoHTTPD.newFixedLengthResponse(
+                status, NanoHTTPD.MIME_PLAINTEXT, status.getDescription());
+        response.closeConnection(true);
+        return response;
+    }
+
+    /**
+     * A file stored by an upload
+     */
+    private static final class StoredFile {
+        @Nullable
+        private final String field;
+        @NonNull
+        private final File file;
+        private final long size;
+
+        StoredFile(@Nullable String field, @NonNull File file, long size) {
+            this.field = field;
+            this.file = file;
+            this.size = size;
+        }
+    }
+}
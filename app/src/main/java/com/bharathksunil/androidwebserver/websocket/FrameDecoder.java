@@ -0,0 +1,208 @@
+package com.bharathksunil.androidwebserver.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This parses the frames a client sends, as they arrive in pieces of any size. The payloads are
+ * unmasked, and the fragments of a message are joined before it is passed on. A frame breaking
+ * RFC 6455 or a message larger than the limit fails with the status code the connection must be
+ * closed with.
+ */
+final class FrameDecoder {
+    /**
+     * Receives the frames parsed
+     */
+    interface Handler {
+        /**
+         * @param opcode  {@link WebSocketFrames#OPCODE_TEXT} or {@link WebSocketFrames#OPCODE_BINARY}
+         * @param payload the whole message
+         * @throws CloseException if the message is invalid
+         */
+        void onMessage(int opcode, @NonNull byte[] payload) throws CloseException;
+
+        /**
+         * @param opcode  a close, ping or pong opcode
+         * @param payload the payload of the control frame
+         * @throws CloseException if the frame is invalid
+         */
+        void onControl(int opcode, @NonNull byte[] payload) throws CloseException;
+    }
+
+    /**
+     * Thrown when the connection must be closed, with the status code to send the client
+     */
+    static final class CloseException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int mCode;
+
+        CloseException(int code, @NonNull String message) {
+            super(message);
+            this.mCode = code;
+        }
+
+        int getCode() {
+            return mCode;
+        }
+    }
+
+    /**
+     * The largest head: two bytes, a 64 bit length and the mask
+     */
+    private static final int MAX_HEAD_LENGTH = 14;
+
+    private final int mMaxMessageBytes;
+    @NonNull
+    private final byte[] mHead = new byte[MAX_HEAD_LENGTH];
+    private int mHeadSize;
+    @NonNull
+    private final byte[] mMask = new byte[4];
+    private boolean mFinal;
+    private int mOpcode;
+    /**
+     * The payload of the frame being read, null while its head is
+     */
+    @Nullable
+    private byte[] mPayload;
+    private int mPayloadSize;
+    /**
+     * The opcode of the fragmented message being joined, -1 if there is none
+     */
+    private int mMessageOpcode = -1;
+    @Nullable
+    private byte[] mMessage;
+    private int mMessageSize;
+
+    /**
+     * @param maxMessageBytes the largest message accepted, fragments joined
+     */
+    FrameDecoder(int maxMessageBytes) {
+        this.mMaxMessageBytes = maxMessageBytes;
+    }
+
+    /**
+     * Call this method with every piece of the stream, in order
+     *
+     * @param bytes   the bytes received, all consumed
+     * @param handler receives the complete messages and control frames
+     * @throws CloseException if the client broke the protocol or the limit
+     */
+    void feed(@NonNull ByteBuffer bytes, @NonNull Handler handler) throws CloseException {
+        while (true) {
+            if (mPayload == null && !readHead(bytes))
+                return;
+            int length = Math.min(bytes.remaining(), mPayload.length - mPayloadSize);
+            bytes.get(mPayload, mPayloadSize, length);
+            mPayloadSize += length;
+            if (mPayloadSize < mPayload.length)
+                return;
+            byte[] payload = mPayload;
+            mPayload = null;
+            for (int i = 0; i < payload.length; i++)
+                payload[i] ^= mMask[i & 3];
+            onFrame(payload, handler);
+        }
+    }
+
+    /**
+     * @return true once the head is complete and the payload allocated
+     */
+    private boolean readHead(@NonNull ByteBuffer bytes) throws CloseException {
+        int headLength;
+        while (mHeadSize < (headLength = headLength())) {
+            if (!bytes.hasRemaining())
+                return false;
+            mHead[mHeadSize++] = bytes.get();
+        }
+        mHeadSize = 0;
+        if ((mHead[0] & 0x70) != 0)
+            throw new CloseException(WebSocketSession.CLOSE_PROTOCOL_ERROR, "no extension was negotiated");
+        if ((mHead[1] & 0x80) == 0)
+            throw new CloseException(WebSocketSession.CLOSE_PROTOCOL_ERROR, "client frames must be masked");
+        mFinal = (mHead[0] & 0x80) != 0;
+        mOpcode = mHead[0] & 0x0F;
+        long length = mHead[1] & 0x7F;
+        if (length == 126) {
+            length = (mHead[2] & 0xff) << 8 | mHead[3] & 0xff;
+        } else if (length == 127) {
+            length = 0;
+            for (int i = 2; i < 10; i++)
+                length = length << 8 | mHead[i] & 0xff;
+        }
+        System.arraycopy(mHead, headLength - 4, mMask, 0, 4);
+        checkFrame(length);
+        mPayload = new byte[(int) length];
+        mPayloadSize = 0;
+        return true;
+    }
+
+    /**
+     * @return the length of the head, as far as the bytes read so far tell
+     */
+    private int headLength() {
+        if (mHeadSize < 2)
+            return 2;
+        int length = mHead[1] & 0x7F;
+        int mask = (mHead[1] & 0x80) != 0 ? 4 : 0;
+        return 2 + (length == 126 ? 2 : length == 127 ? 8 : 0) + mask;
+    }
+
+    private void checkFrame(long length) throws CloseException {
+        switch (mOpcode) {
+            case WebSocketFrames.OPCODE_CLOSE:
+            case WebSocketFrames.OPCODE_PING:
+            case WebSocketFrames.OPCODE_PONG:
+                if (!mFinal || length > WebSocketFrames.MAX_CONTROL_PAYLOAD)
+                    throw new CloseException(WebSocketSession.CLOSE_PROTOCOL_ERROR, "invalid control frame");
+                return;
+            case WebSocketFrames.OPCODE_CONTINUATION:
+                if (mMessageOpcode < 0)
+                    throw new CloseException(WebSocketSession.CLOSE_PROTOCOL_ERROR, "no message to continue");
+                break;
+            case WebSocketFrames.OPCODE_TEXT:
+            case WebSocketFrames.OPCODE_BINARY:
+                if (mMessageOpcode >= 0)
+                    throw new CloseException(WebSocketSession.CLOSE_PROTOCOL_ERROR, "the previous message is not complete");
+                break;
+            default:
+                throw new CloseException(WebSocketSession.CLOSE_PROTOCOL_ERROR, "unknown opcode " + mOpcode);
+        }
+        //a negative length has its most significant bit set, which the RFC forbids
+        if (length < 0 || mMessageSize + length > mMaxMessageBytes)
+            throw new CloseException(WebSocketSession.CLOSE_TOO_BIG, "the message is too large");
+    }
+
+    private void onFrame(@NonNull byte[] payload, @NonNull Handler handler) throws CloseException {
+        if (mOpcode >= WebSocketFrames.OPCODE_CLOSE) {
+            handler.onControl(mOpcode, payload);
+            return;
+        }
+        if (mOpcode != WebSocketFrames.OPCODE_CONTINUATION && mFinal) {
+            //a message in one frame, the common case, is passed on without a copy
+            handler.onMessage(mOpcode, payload);
+            return;
+        }
+        if (mOpcode != WebSocketFrames.OPCODE_CONTINUATION) {
+            mMessageOpcode = mOpcode;
+            mMessage = new byte[Math.max(payload.length * 2, 256)];
+        } else if (mMessageSize + payload.length > mMessage.length) {
+            mMessage = Arrays.copyOf(mMessage, Math.min(Math.max(mMessage.length * 2, mMessageSize + payload.length),
+                    mMaxMessageBytes));
+        }
+        System.arraycopy(payload, 0, mMessage, mMessageSize, payload.length);
+        mMessageSize += payload.length;
+        if (!mFinal)
+            return;
+        int opcode = mMessageOpcode;
+        byte[] message = Arrays.copyOf(mMessage, mMessageSize);
+        mMessageOpcode = -1;
+        mMessage = null;
+        mMessageSize = 0;
+        handler.onMessage(opcode, message);
+    }
+}
@@ -0,0 +1,125 @@
+package com.bharathksunil.androidwebserver.websocket;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * Encodes the frames the server sends, which RFC 6455 leaves unmasked, and computes the key which
+ * accepts the opening handshake
+ */
+final class WebSocketFrames {
+    static final int OPCODE_CONTINUATION = 0x0;
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_BINARY = 0x2;
+    static final int OPCODE_CLOSE = 0x8;
+    static final int OPCODE_PING = 0x9;
+    static final int OPCODE_PONG = 0xA;
+    /**
+     * The largest payload of a control frame
+     */
+    static final int MAX_CONTROL_PAYLOAD = 125;
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private WebSocketFrames() {
+    }
+
+    /**
+     * @param payloadLength the length of the payload
+     * @return the length of the head of an unmasked frame
+     */
+    static int headLength(int payloadLength) {
+        return payloadLength < 126 ? 2 : payloadLength <= 0xFFFF ? 4 : 10;
+    }
+
+    /**
+     * Writes the head of a final, unmasked frame
+     *
+     * @param destination   the array the head is written to
+     * @param offset        the offset of the head, {@link #headLength(int)} bytes are written
+     * @param opcode        the opcode of the frame
+     * @param payloadLength the length of the payload following the head
+     */
+    static void writeHead(@NonNull byte[] destination, int offset, int opcode, int payloadLength) {
+        destination[offset] = (byte) (0x80 | opcode);
+        if (payloadLength < 126) {
+            destination[offset + 1] = (byte) payloadLength;
+        } else if (payloadLength <= 0xFFFF) {
+            destination[offset + 1] = 126;
+            destination[offset + 2] = (byte) (payloadLength >>> 8);
+            destination[offset + 3] = (byte) payloadLength;
+        } else {
+            destination[offset + 1] = 127;
+            for (int i = 0; i < 8; i++)
+                destination[offset + 2 + i] = (byte) ((long) payloadLength >>> (56 - 8 * i));
+        }
+    }
+
+    /**
+     * @param opcode  the opcode of the frame
+     * @param payload the payload of the frame
+     * @return the final, unmasked frame
+     */
+    @NonNull
+    static byte[] encode(int opcode, @NonNull byte[] payload) {
+        int headLength = headLength(payload.length);
+        byte[] frame = new byte[headLength + payload.length];
+        writeHead(frame, 0, opcode, payload.length);
+        System.arraycopy(payload, 0, frame, headLength, payload.length);
+        return frame;
+    }
+
+    /**
+     * @param code   the status code of the close frame
+     * @param reason the reason, cut to fit a control frame, null to send none
+     * @return the close frame
+     */
+    @NonNull
+    static byte[] encodeClose(int code, @Nullable String reason) {
+        byte[] reasonBytes = reason != null ? reason.getBytes(UTF_8) : new byte[0];
+        //the cut may split a character, the reason is only meant for debugging
+        int reasonLength = Math.min(reasonBytes.length, MAX_CONTROL_PAYLOAD - 2);
+        byte[] payload = new byte[2 + reasonLength];
+        payload[0] = (byte) (code >>> 8);
+        payload[1] = (byte) code;
+        System.arraycopy(reasonBytes, 0, payload, 2, reasonLength);
+        return encode(OPCODE_CLOSE, payload);
+    }
+
+    /**
+     * @param key the Sec-WebSocket-Key of the opening handshake
+     * @return the Sec-WebSocket-Accept of the answer
+     */
+    @NonNull
+    static String acceptKey(@NonNull String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return base64(sha1.digest((key.trim() + ACCEPT_GUID).getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            //every Java platform provides SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    private static String base64(@NonNull byte[] bytes) {
+        StringBuilder encoded = new StringBuilder((bytes.length + 2) / 3 * 4);
+        for (int i = 0; i < bytes.length; i += 3) {
+            int remaining = bytes.length - i;
+            int group = (bytes[i] & 0xff) << 16
+                    | (remaining > 1 ? (bytes[i + 1] & 0xff) << 8 : 0)
+                    | (remaining > 2 ? bytes[i + 2] & 0xff : 0);
+            encoded.append(BASE64[group >>> 18 & 0x3f])
+                    .append(BASE64[group >>> 12 & 0x3f])
+                    .append(remaining > 1 ? BASE64[group >>> 6 & 0x3f] : '=')
+                    .append(remaining > 2 ? BASE64[group & 0x3f] : '=');
+        }
+        return encoded.toString();
+    }
+}
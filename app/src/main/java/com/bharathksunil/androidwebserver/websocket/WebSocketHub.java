@@ -0,0 +1,379 @@
+package com.bharathksunil.androidwebserver.websocket;
+
+import com.bharathksunil.androidwebserver.connection.ClientConnection;
+import com.bharathksunil.androidwebserver.router.RouteHandler;
+import com.bharathksunil.androidwebserver.router.RouteMatch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * This serves a WebSocket endpoint. Register it as the handler of a GET route: each request
+ * completing the opening handshake becomes a {@link WebSocketSession}, whose messages reach the
+ * {@link WebSocketListener}.
+ * <p>
+ * A broadcast is encoded once, into the batch of the current flush window. A single flusher
+ * thread waits for the window to close, then queues the whole batch for every session and writes
+ * each session's queue with one gathering write, so thousands of small updates per second cost
+ * one system call per client per window instead of one per message. The messages sent to a
+ * single session join the same writes. The sockets are non-blocking: a slow client only grows
+ * its own queue, and is disconnected once the queue is over the limit.
+ * </p>
+ * <p>
+ * <h3>How to Use:</h3><br/>
+ * Call {@link #start()}, add the hub as the handler of a GET route, then {@link #broadcast(String)}
+ * from any thread. {@link #stop()} closes all the sessions.
+ * </p>
+ */
+public class WebSocketHub implements RouteHandler {
+    private static final Logger LOG = Logger.getLogger(WebSocketHub.class.getName());
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * The default time the frames wait for others to join their write
+     */
+    public static final long DEFAULT_FLUSH_WINDOW_MILLIS = 10;
+    /**
+     * The default number of bytes queued for a session above which it is disconnected
+     */
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 1024 * 1024;
+    /**
+     * The default size of the largest message accepted from a client
+     */
+    public static final int DEFAULT_MAX_MESSAGE_BYTES = 64 * 1024;
+    private static final int INITIAL_BATCH_BYTES = 4096;
+
+    @NonNull
+    private final WebSocketListener mListener;
+    private final long mFlushWindowNanos;
+    private final long mMaxQueuedBytes;
+    private final int mMaxMessageBytes;
+    /**
+     * The open sessions, iterated by the flusher on every broadcast and rarely changed
+     */
+    @NonNull
+    private final List<WebSocketSession> mSessions = new CopyOnWriteArrayList<>();
+    /**
+     * Guards the batch and the scheduled sessions, and wakes the flusher up
+     */
+    @NonNull
+    private final Object mLock = new Object();
+    /**
+     * The frames broadcast in the current window, back to back
+     */
+    @NonNull
+    private byte[] mBatch = new byte[INITIAL_BATCH_BYTES];
+    private int mBatchSize;
+    /**
+     * The sessions with frames of their own, or a socket writable again, to flush in this window
+     */
+    @NonNull
+    private ArrayList<WebSocketSession> mScheduled = new ArrayList<>();
+    /**
+     * True while the current window has something to flush, which opened it at mWindowStartNanos
+     */
+    private boolean mPending;
+    private long mWindowStartNanos;
+    private boolean mRunning;
+    /**
+     * Writes the frames, null while the hub is stopped
+     */
+    @Nullable
+    private Thread mFlusher;
+    @NonNull
+    private final AtomicLong mBroadcastCount = new AtomicLong();
+    @NonNull
+    private final AtomicLong mWriteCount = new AtomicLong();
+    @NonNull
+    private final AtomicLong mBytesWritten = new AtomicLong();
+    @NonNull
+    private final AtomicLong mDisconnectedCount = new AtomicLong();
+
+    /**
+     * @param listener receives the events of the sessions
+     */
+    public WebSocketHub(@NonNull WebSocketListener listener) {
+        this(listener, DEFAULT_FLUSH_WINDOW_MILLIS, DEFAULT_MAX_QUEUED_BYTES, DEFAULT_MAX_MESSAGE_BYTES);
+    }
+
+    /**
+     * @param listener          receives the events of the sessions
+     * @param flushWindowMillis the time the frames wait for others to join their write, 0 to
+     *                          write them as soon as the flusher gets to them
+     * @param maxQueuedBytes    the bytes queued for a session above which it is disconnected
+     * @param maxMessageBytes   the largest message accepted from a client
+     */
+    public WebSocketHub(@NonNull WebSocketListener listener,
+                        long flushWindowMillis,
+                        long maxQueuedBytes,
+                        int maxMessageBytes) {
+        if (flushWindowMillis < 0 || maxQueuedBytes <= 0 || maxMessageBytes <= 0)
+            throw new IllegalArgumentException("invalid hub limits");
+        this.mListener = listener;
+        this.mFlushWindowNanos = TimeUnit.MILLISECONDS.toNanos(flushWindowMillis);
+        this.mMaxQueuedBytes = maxQueuedBytes;
+        this.mMaxMessageBytes = maxMessageBytes;
+    }
+
+    /**
+     * Call this method to start the flusher, before the route is served
+     */
+    public void start() {
+        synchronized (mLock) {
+            if (mFlusher != null)
+                return;
+            mRunning = true;
+            Thread flusher = new Thread(this::flushLoop, "WebSocket Flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+            mFlusher = flusher;
+        }
+    }
+
+    /**
+     * Call this method to stop the flusher and close all the sessions
+     */
+    public void stop() {
+        Thread flusher;
+        synchronized (mLock) {
+            flusher = mFlusher;
+            if (flusher == null)
+                return;
+            mRunning = false;
+            mFlusher = null;
+            mLock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //the flusher is gone, this thread writes the close frames the sockets take at once
+        for (WebSocketSession session : mSessions) {
+            session.close(WebSocketSession.CLOSE_GOING_AWAY, null);
+            session.flush();
+            session.abort();
+        }
+        synchronized (mLock) {
+            mBatchSize = 0;
+            mScheduled.clear();
+            mPending = false;
+        }
+    }
+
+    /**
+     * Call this method from any thread to send a text message to every session
+     *
+     * @param text the message
+     */
+    public void broadcast(@NonNull String text) {
+        broadcast(WebSocketFrames.OPCODE_TEXT, text.getBytes(UTF_8));
+    }
+
+    /**
+     * Call this method from any thread to send a binary message to every session
+     *
+     * @param data the message
+     */
+    public void broadcast(@NonNull byte[] data) {
+        broadcast(WebSocketFrames.OPCODE_BINARY, data);
+    }
+
+    private void broadcast(int opcode, @NonNull byte[] payload) {
+        mBroadcastCount.incrementAndGet();
+        if (mSessions.isEmpty())
+            return;
+        int headLength = WebSocketFrames.headLength(payload.length);
+        synchronized (mLock) {
+            if (!mRunning)
+                return;
+            int size = mBatchSize + headLength + payload.length;
+            if (size > mBatch.length)
+                mBatch = Arrays.copyOf(mBatch, Math.max(mBatch.length * 2, size));
+            WebSocketFrames.writeHead(mBatch, mBatchSize, opcode, payload.length);
+            System.arraycopy(payload, 0, mBatch, mBatchSize + headLength, payload.length);
+            mBatchSize = size;
+            openWindow();
+        }
+    }
+
+    @NonNull
+    @Override
+    public NanoHTTPD.Response handle(@NonNull NanoHTTPD.IHTTPSession session, @NonNull RouteMatch match) {
+        Map<String, String> headers = session.getHeaders();
+        String key = headers.get("sec-websocket-key");
+        if (!"websocket".equalsIgnoreCase(trim(headers.get("upgrade")))
+                || !hasToken(headers.get("connection"), "upgrade")
+                || key == null || key.trim().isEmpty())
+            return error(NanoHTTPD.Response.Status.BAD_REQUEST);
+        if (!"13".equals(trim(headers.get("sec-websocket-version")))) {
+            NanoHTTPD.Response response = error(NanoHTTPD.Response.Status.BAD_REQUEST);
+            response.addHeader("Sec-WebSocket-Version", "13");
+            return response;
+        }
+        synchronized (mLock) {
+            if (!mRunning)
+                return error(NanoHTTPD.Response.Status.SERVICE_UNAVAILABLE);
+        }
+        ClientConnection connection = ClientConnection.current();
+        if (connection == null || connection.getChannel() == null || !connection.canHandOver())
+            return error(NanoHTTPD.Response.Status.NOT_IMPLEMENTED);
+        return new WebSocketResponse(this, new WebSocketSession(this, mListener, mMaxQueuedBytes, mMaxMessageBytes,
+                connection.getSocket().getInetAddress()), WebSocketFrames.acceptKey(key));
+    }
+
+    /**
+     * @return a snapshot of the hub counters
+     */
+    @NonNull
+    public WebSocketStats getStats() {
+        return new WebSocketStats(mSessions.size(), mBroadcastCount.get(), mWriteCount.get(), mBytesWritten.get(),
+                mDisconnectedCount.get());
+    }
+
+    /**
+     * Called on the worker once the handshake is sent
+     */
+    void open(@NonNull WebSocketSession session) {
+        mSessions.add(session);
+        try {
+            mListener.onOpen(session);
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "A WebSocket listener failed", e);
+            session.close(WebSocketSession.CLOSE_INTERNAL_ERROR, null);
+        }
+        //the hub may have stopped before the session was added
+        synchronized (mLock) {
+            if (mRunning)
+                return;
+        }
+        session.abort();
+    }
+
+    /**
+     * Called once the connection of a session is closed
+     */
+    void remove(@NonNull WebSocketSession session) {
+        mSessions.remove(session);
+    }
+
+    /**
+     * Called from any thread to have a session flushed at the end of the window
+     */
+    void schedule(@NonNull WebSocketSession session) {
+        synchronized (mLock) {
+            if (!mRunning || session.mScheduled)
+                return;
+            session.mScheduled = true;
+            mScheduled.add(session);
+            openWindow();
+        }
+    }
+
+    /**
+     * Called when a session is disconnected because its queue is full
+     */
+    void onOverflow() {
+        mDisconnectedCount.incrementAndGet();
+    }
+
+    /**
+     * Called on the flusher after every write to a socket
+     */
+    void onWritten(long bytes) {
+        mWriteCount.incrementAndGet();
+        mBytesWritten.addAndGet(bytes);
+    }
+
+    /**
+     * Called with the lock held when there is something to flush
+     */
+    private void openWindow() {
+        if (mPending)
+            return;
+        mPending = true;
+        mWindowStartNanos = System.nanoTime();
+        mLock.notifyAll();
+    }
+
+    private void flushLoop() {
+        ArrayList<WebSocketSession> scheduled = new ArrayList<>();
+        while (true) {
+            byte[] batch = null;
+            synchronized (mLock) {
+                try {
+                    while (mRunning && !mPending)
+                        mLock.wait();
+                    //lets more frames join the writes
+                    long remaining;
+                    while (mRunning && (remaining = mWindowStartNanos + mFlushWindowNanos - System.nanoTime()) > 0)
+                        TimeUnit.NANOSECONDS.timedWait(mLock, remaining);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!mRunning)
+                    return;
+                if (mBatchSize > 0) {
+                    //the sessions which cannot take it at once keep it queued, so it is not reused
+                    batch = Arrays.copyOf(mBatch, mBatchSize);
+                    mBatchSize = 0;
+                }
+                ArrayList<WebSocketSession> swapped = mScheduled;
+                mScheduled = scheduled;
+                scheduled = swapped;
+                for (WebSocketSession session : scheduled)
+                    session.mScheduled = false;
+                mPending = false;
+            }
+            try {
+                if (batch != null) {
+                    for (WebSocketSession session : mSessions)
+                        session.enqueue(ByteBuffer.wrap(batch));
+                    for (WebSocketSession session : mSessions)
+                        session.flush();
+                }
+                //a session flushed above has nothing left, this returns at once for it
+                for (WebSocketSession session : scheduled)
+                    session.flush();
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "The WebSocket flusher failed", e);
+            }
+            scheduled.clear();
+        }
+    }
+
+    @Nullable
+    private static String trim(@Nullable String value) {
+        return value != null ? value.trim() : null;
+    }
+
+    /**
+     * @return true if the comma separated header lists the token
+     */
+    private static boolean hasToken(@Nullable String header, @NonNull String token) {
+        if (header == null)
+            return false;
+        for (String value : header.split(",")) {
+            if (value.trim().equalsIgnoreCase(token))
+                return true;
+        }
+        return false;
+    }
+
+    @NonNull
+    private static NanoHTTPD.Response error(@NonNull NanoHTTPD.Response.Status status) {
+        return NanoHTTPD.newFixedLengthResponse(status, NanoHTTPD.MIME_PLAINTEXT, status.getDescription());
+    }
+}
@@ -0,0 +1,39 @@
+package com.bharathksunil.androidwebserver.websocket;
+
+import io.reactivex.annotations.NonNull;
+
+/**
+ * Receives the events of the sessions of a {@link WebSocketHub}. The messages are delivered on
+ * the thread watching the connection, which is shared by all the connections: the event loop on
+ * the NIO engine, the handover selector on the blocking one. Hand any slow work over to another
+ * thread.
+ */
+public interface WebSocketListener {
+    /**
+     * Called once the handshake is sent, the session may be sent messages from now on
+     *
+     * @param session the new session
+     */
+    void onOpen(@NonNull WebSocketSession session);
+
+    /**
+     * @param session the session the message came from
+     * @param text    the text message
+     */
+    void onMessage(@NonNull WebSocketSession session, @NonNull String text);
+
+    /**
+     * @param session the session the message came from
+     * @param data    the binary message
+     */
+    void onMessage(@NonNull WebSocketSession session, @NonNull byte[] data);
+
+    /**
+     * Called once the connection is closed
+     *
+     * @param session the closed session
+     * @param code    the status code of the close frame received or sent,
+     *                {@link WebSocketSession#CLOSE_ABNORMAL} if the connection was dropped
+     */
+    void onClose(@NonNull WebSocketSession session, int code);
+}
@@ -0,0 +1,50 @@
+package com.bharathksunil.androidwebserver.websocket;
+
+import com.bharathksunil.androidwebserver.connection.ClientConnection;
+import com.bharathksunil.androidwebserver.response.DirectResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * The answer accepting the opening handshake of a {@link WebSocketSession}. Once it is sent the
+ * connection is handed over to the session, and the engine stops reading requests from it.
+ */
+final class WebSocketResponse extends DirectResponse {
+    @NonNull
+    private final WebSocketHub mHub;
+    @NonNull
+    private final WebSocketSession mSession;
+
+    /**
+     * @param hub       the hub opening the session
+     * @param session   the session the connection is handed over to
+     * @param acceptKey the Sec-WebSocket-Accept computed from the key of the client
+     */
+    WebSocketResponse(@NonNull WebSocketHub hub, @NonNull WebSocketSession session, @NonNull String acceptKey) {
+        super(NanoHTTPD.Response.Status.SWITCH_PROTOCOL, null, UNTIL_CLOSE);
+        this.mHub = hub;
+        this.mSession = session;
+        addHeader("Upgrade", "websocket");
+        //replaces the close of a body ending with the connection, the frames follow instead
+        addHeader("connection", "Upgrade");
+        addHeader("Sec-WebSocket-Accept", acceptKey);
+    }
+
+    @Override
+    protected void writeBody(@NonNull OutputStream outputStream,
+                             @Nullable WritableByteChannel channel) throws IOException {
+        outputStream.flush();
+        ClientConnection connection = ClientConnection.current();
+        //the hub only accepts the handshake on connections which can be handed over
+        if (connection == null || !connection.handOver(mSession))
+            throw new IOException("the connection cannot be handed over");
+        mSession.attach(connection);
+        mHub.open(mSession);
+    }
+}
@@ -0,0 +1,333 @@
+package com.bharathksunil.androidwebserver.websocket;
+
+import com.bharathksunil.androidwebserver.connection.ClientConnection;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
+
+/**
+ * A WebSocket connection of a {@link WebSocketHub}. The frames sent to it are queued, together
+ * with the broadcasts, and written by the flusher of the hub at the end of its window, so a burst
+ * of small messages costs one write. A client too slow to keep its queue under the limit is
+ * disconnected.
+ * <p>
+ * The messages of the client are parsed on the thread watching the connection and passed to the
+ * {@link WebSocketListener}; pings are answered and the closing handshake is completed here.
+ * </p>
+ */
+public final class WebSocketSession implements ClientConnection.HandoverListener, FrameDecoder.Handler {
+    private static final Logger LOG = Logger.getLogger(WebSocketSession.class.getName());
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //region Close Status Codes
+    public static final int CLOSE_NORMAL = 1000;
+    public static final int CLOSE_GOING_AWAY = 1001;
+    public static final int CLOSE_PROTOCOL_ERROR = 1002;
+    /**
+     * Reported when the client sent a close frame without a code, never sent
+     */
+    public static final int CLOSE_NO_STATUS = 1005;
+    /**
+     * Reported when the connection was dropped without a close frame, never sent
+     */
+    public static final int CLOSE_ABNORMAL = 1006;
+    public static final int CLOSE_INVALID_DATA = 1007;
+    public static final int CLOSE_POLICY_VIOLATION = 1008;
+    public static final int CLOSE_TOO_BIG = 1009;
+    public static final int CLOSE_INTERNAL_ERROR = 1011;
+    //endregion
+
+    @NonNull
+    private final WebSocketHub mHub;
+    @NonNull
+    private final WebSocketListener mListener;
+    /**
+     * Parses the frames of the client, only touched by the thread watching the connection
+     */
+    @NonNull
+    private final FrameDecoder mDecoder;
+    private final long mMaxQueuedBytes;
+    @Nullable
+    private final InetAddress mRemoteAddress;
+    /**
+     * The frames not written yet, guarded by this. Only the flusher removes them.
+     */
+    @NonNull
+    private final ArrayDeque<ByteBuffer> mQueue = new ArrayDeque<>();
+    private long mQueuedBytes;
+    /**
+     * True once the close frame is queued, nothing is sent after it. Guarded by this.
+     */
+    private boolean mCloseQueued;
+    /**
+     * True once the connection is closed
+     */
+    private volatile boolean mClosed;
+    private volatile int mCloseCode = CLOSE_ABNORMAL;
+    /**
+     * True once the client sent a close frame or broke the protocol, its next bytes are ignored
+     */
+    private boolean mInputEnded;
+    /**
+     * True while the flusher has the session scheduled, guarded by the lock of the hub
+     */
+    boolean mScheduled;
+    @Nullable
+    private ClientConnection mConnection;
+    @Nullable
+    private SocketChannel mChannel;
+
+    /**
+     * @param hub             the hub the session belongs to
+     * @param listener        receives the messages of the client
+     * @param maxQueuedBytes  the bytes queued for the client above which it is disconnected
+     * @param maxMessageBytes the largest message accepted from the client
+     * @param remoteAddress   the address of the client
+     */
+    WebSocketSession(@NonNull WebSocketHub hub,
+                     @NonNull WebSocketListener listener,
+                     long maxQueuedBytes,
+                     int maxMessageBytes,
+                     @Nullable InetAddress remoteAddress) {
+        this.mHub = hub;
+        this.mListener = listener;
+        this.mMaxQueuedBytes = maxQueuedBytes;
+        this.mDecoder = new FrameDecoder(maxMessageBytes);
+        this.mRemoteAddress = remoteAddress;
+    }
+
+    /**
+     * Call this method on the worker once the connection has been handed over, before the session
+     * is opened
+     */
+    void attach(@NonNull ClientConnection connection) {
+        this.mConnection = connection;
+        this.mChannel = connection.getChannel();
+    }
+
+    /**
+     * Call this method from any thread to send a text message, it is written with the next flush
+     * of the hub
+     *
+     * @param text the message
+     */
+    public void send(@NonNull String text) {
+        sendFrame(WebSocketFrames.encode(WebSocketFrames.OPCODE_TEXT, text.getBytes(UTF_8)));
+    }
+
+    /**
+     * Call this method from any thread to send a binary message, it is written with the next flush
+     * of the hub
+     *
+     * @param data the message
+     */
+    public void send(@NonNull byte[] data) {
+        sendFrame(WebSocketFrames.encode(WebSocketFrames.OPCODE_BINARY, data));
+    }
+
+    /**
+     * Call this method from any thread to start the closing handshake. The connection is closed
+     * once the close frame is written.
+     *
+     * @param code   the status code sent to the client
+     * @param reason the reason sent to the client, null to send none
+     */
+    public void close(int code, @Nullable String reason) {
+        synchronized (this) {
+            if (mCloseQueued || mClosed)
+                return;
+            mCloseQueued = true;
+            ByteBuffer frame = ByteBuffer.wrap(WebSocketFrames.encodeClose(code, reason));
+            //the close frame is tiny, the limit does not apply
+            mQueue.addLast(frame);
+            mQueuedBytes += frame.remaining();
+        }
+        if (mCloseCode == CLOSE_ABNORMAL)
+            mCloseCode = code;
+        mHub.schedule(this);
+    }
+
+    /**
+     * @return true until the closing handshake starts
+     */
+    public boolean isOpen() {
+        synchronized (this) {
+            return !mCloseQueued && !mClosed;
+        }
+    }
+
+    /**
+     * @return the address of the client, null if it is not known
+     */
+    @Nullable
+    public InetAddress getRemoteAddress() {
+        return mRemoteAddress;
+    }
+
+    private void sendFrame(@NonNull byte[] frame) {
+        if (enqueue(ByteBuffer.wrap(frame)))
+            mHub.schedule(this);
+    }
+
+    /**
+     * Queues a frame, or disconnects the client if its queue is over the limit
+     *
+     * @param frame the frame, which may be shared with other sessions but not its position
+     * @return true if the frame was queued
+     */
+    boolean enqueue(@NonNull ByteBuffer frame) {
+        synchronized (this) {
+            if (mCloseQueued || mClosed)
+                return false;
+            if (mQueuedBytes + frame.remaining() <= mMaxQueuedBytes) {
+                mQueue.addLast(frame);
+                mQueuedBytes += frame.remaining();
+                return true;
+            }
+        }
+        mHub.onOverflow();
+        abort();
+        return false;
+    }
+
+    /**
+     * Called on the flusher to write the queued frames, all at once, until the socket takes no
+     * more
+     */
+    void flush() {
+        SocketChannel channel = mChannel;
+        ClientConnection connection = mConnection;
+        if (channel == null || connection == null || mClosed)
+            return;
+        ByteBuffer[] frames;
+        synchronized (this) {
+            if (mQueue.isEmpty())
+                return;
+            frames = mQueue.toArray(new ByteBuffer[mQueue.size()]);
+        }
+        long written;
+        try {
+            written = channel.write(frames);
+        } catch (IOException e) {
+            abort();
+            return;
+        }
+        boolean drained;
+        boolean closing;
+        synchronized (this) {
+            mQueuedBytes -= written;
+            while (!mQueue.isEmpty() && !mQueue.peekFirst().hasRemaining())
+                mQueue.pollFirst();
+            drained = mQueue.isEmpty();
+            closing = mCloseQueued;
+        }
+        mHub.onWritten(written);
+        if (!drained)
+            connection.requestWritable();
+        else if (closing)
+            abort();
+    }
+
+    /**
+     * Closes the connection without a closing handshake
+     */
+    void abort() {
+        ClientConnection connection = mConnection;
+        if (connection != null)
+            connection.close();
+        else
+            onClosed();
+    }
+
+    //region Overridden Methods: HandoverListener
+    @Override
+    public void onReceived(@NonNull ByteBuffer bytes) {
+        if (mInputEnded || mClosed)
+            return;
+        try {
+            mDecoder.feed(bytes, this);
+        } catch (FrameDecoder.CloseException e) {
+            LOG.log(Level.FINE, "A WebSocket client broke the protocol", e);
+            mInputEnded = true;
+            close(e.getCode(), e.getMessage());
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "A WebSocket listener failed", e);
+            mInputEnded = true;
+            close(CLOSE_INTERNAL_ERROR, null);
+        }
+    }
+
+    @Override
+    public void onWritable() {
+        mHub.schedule(this);
+    }
+
+    @Override
+    public void onClosed() {
+        synchronized (this) {
+            if (mClosed)
+                return;
+            mClosed = true;
+            mQueue.clear();
+            mQueuedBytes = 0;
+        }
+        mHub.remove(this);
+        try {
+            mListener.onClose(this, mCloseCode);
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "A WebSocket listener failed", e);
+        }
+    }
+    //endregion
+
+    //region Overridden Methods: FrameDecoder.Handler
+    @Override
+    public void onMessage(int opcode, @NonNull byte[] payload) throws FrameDecoder.CloseException {
+        if (opcode == WebSocketFrames.OPCODE_BINARY) {
+            mListener.onMessage(this, payload);
+            return;
+        }
+        CharBuffer text;
+        try {
+            //unlike new String(), the decoder rejects the invalid sequences
+            text = UTF_8.newDecoder().decode(ByteBuffer.wrap(payload));
+        } catch (CharacterCodingException e) {
+            throw new FrameDecoder.CloseException(CLOSE_INVALID_DATA, "the text is not UTF-8");
+        }
+        mListener.onMessage(this, text.toString());
+    }
+
+    @Override
+    public void onControl(int opcode, @NonNull byte[] payload) throws FrameDecoder.CloseException {
+        switch (opcode) {
+            case WebSocketFrames.OPCODE_PING:
+                sendFrame(WebSocketFrames.encode(WebSocketFrames.OPCODE_PONG, payload));
+                break;
+            case WebSocketFrames.OPCODE_CLOSE:
+                if (payload.length == 1)
+                    throw new FrameDecoder.CloseException(CLOSE_PROTOCOL_ERROR, "invalid close frame");
+                mInputEnded = true;
+                int code = payload.length >= 2 ? (payload[0] & 0xff) << 8 | payload[1] & 0xff : CLOSE_NO_STATUS;
+                if (mCloseCode == CLOSE_ABNORMAL)
+                    mCloseCode = code;
+                //the answer echoes the code, the connection is closed once it is written
+                close(code == CLOSE_NO_STATUS ? CLOSE_NORMAL : code, null);
+                break;
+            default:
+                //an answer to a ping, the client is alive
+                break;
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,65 @@
+package com.bharathksunil.androidwebserver.websocket;
+
+/**
+ * This models a snapshot of the {@link WebSocketHub} counters, use them to tune the flush window:
+ * the messages per write tell how much the batching saves
+ */
+public final class WebSocketStats {
+    private final int sessionCount;
+    private final long broadcastCount;
+    private final long writeCount;
+    private final long bytesWritten;
+    private final long disconnectedCount;
+
+    WebSocketStats(int sessionCount, long broadcastCount, long writeCount, long bytesWritten, long disconnectedCount) {
+        this.sessionCount = sessionCount;
+        this.broadcastCount = broadcastCount;
+        this.writeCount = writeCount;
+        this.bytesWritten = bytesWritten;
+        this.disconnectedCount = disconnectedCount;
+    }
+
+    /**
+     * @return the number of open sessions
+     */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * @return the number of messages broadcast
+     */
+    public long getBroadcastCount() {
+        return broadcastCount;
+    }
+
+    /**
+     * @return the number of writes to the sockets, each sending the frames queued for a session
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * @return the number of bytes written to the sockets
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the number of slow sessions disconnected because their queue was full
+     */
+    public long getDisconnectedCount() {
+        return disconnectedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "WebSocketStats{sessionCount=" + sessionCount
+                + ", broadcastCount=" + broadcastCount
+                + ", writeCount=" + writeCount
+                + ", bytesWritten=" + bytesWritten
+                + ", disconnectedCount=" + disconnectedCount + "}";
+    }
+}
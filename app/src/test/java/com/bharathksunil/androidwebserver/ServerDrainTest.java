@@ -0,0 +1,171 @@
+package com.bharathksunil.androidwebserver;
+
+import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.metrics.MetricsSnapshot;
+import com.bharathksunil.androidwebserver.metrics.RouteStats;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.nio.NioWebServer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+
+import static com.bharathksunil.androidwebserver.TestSockets.readAll;
+import static com.bharathksunil.androidwebserver.TestSockets.readHead;
+import static com.bharathksunil.androidwebserver.TestSockets.send;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ServerDrainTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    /**
+     * Counted down once the slow handler is serving a request
+     */
+    private final CountDownLatch serving = new CountDownLatch(1);
+    private IWebServer webServer;
+    private int port;
+
+    @After
+    public void tearDown() {
+        if (webServer != null)
+            webServer.stopServer(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void blockingDrainTest() throws Exception {
+        startServer(WebServerConfig.Engine.BLOCKING, 300);
+        drain();
+    }
+
+    @Test
+    public void nioDrainTest() throws Exception {
+        startServer(WebServerConfig.Engine.NIO, 300);
+        drain();
+    }
+
+    @Test
+    public void blockingDeadlineTest() throws Exception {
+        startServer(WebServerConfig.Engine.BLOCKING, 5000);
+        deadline();
+    }
+
+    @Test
+    public void nioDeadlineTest() throws Exception {
+        startServer(WebServerConfig.Engine.NIO, 5000);
+        deadline();
+    }
+
+    private void drain() throws Exception {
+        try (Socket idle = connect(); Socket slow = connect()) {
+            //a keep-alive connection waiting for its next request
+            send(idle, "GET /fast HTTP/1.1\r\n\r\n");
+            assertTrue(readHead(idle).startsWith("HTTP/1.1 200 OK"));
+            awaitRecorded("/fast");
+            Future<String> slowResponse = executor.submit(() -> {
+                send(slow, "GET /slow HTTP/1.1\r\n\r\n");
+                return readAll(slow);
+            });
+            assertTrue(serving.await(5, TimeUnit.SECONDS));
+
+            DrainStats drainStats = webServer.stopServer(5000);
+
+            //region Verify
+            String response = slowResponse.get(5, TimeUnit.SECONDS);
+            assertTrue(response, response.startsWith("HTTP/1.1 200 OK"));
+            assertTrue(response, response.contains("onnection: close"));
+            assertTrue(response, response.endsWith("slow"));
+            //the body of the fast response is still unread, the connection is closed after it
+            assertEquals("fast", readAll(idle).substring(0, 4));
+            assertEquals(1, drainStats.getCompletedCount());
+            assertEquals(0, drainStats.getAbortedCount());
+            assertEquals(1, drainStats.getIdleClosedCount());
+            assertFalse(webServer.isRunning());
+            assertRefused();
+            //endregion
+        }
+    }
+
+    private void deadline() throws Exception {
+        try (Socket slow = connect()) {
+            send(slow, "GET /slow HTTP/1.1\r\n\r\n");
+            assertTrue(serving.await(5, TimeUnit.SECONDS));
+
+            DrainStats drainStats = webServer.stopServer(100);
+
+            //region Verify
+            assertEquals(0, drainStats.getCompletedCount());
+            assertEquals(1, drainStats.getAbortedCount());
+            assertTrue(drainStats.toString(), drainStats.getDrainMillis() < 2000);
+            assertEquals("", readAll(slow));
+            //endregion
+        }
+    }
+
+    private void startServer(WebServerConfig.Engine engine, long handlerMillis) throws WebServerException {
+        webServer = WebServerFactory.create(new WebServerConfig.Builder("127.0.0.1", "0")
+                .setEngine(engine)
+                .setWorkerPoolSize(4, 4)
+                .build());
+        webServer.addRoute(NanoHTTPD.Method.GET, "/fast", (session, match) ->
+                NanoHTTPD.newFixedLengthResponse("fast"));
+        webServer.addRoute(NanoHTTPD.Method.GET, "/slow", (session, match) -> {
+            serving.countDown();
+            try {
+                Thread.sleep(handlerMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return NanoHTTPD.newFixedLengthResponse("slow");
+        });
+        webServer.startServer();
+        port = webServer instanceof NioWebServer
+                ? ((NioWebServer) webServer).getListeningPort()
+                : ((MyWebServer) webServer).getListeningPort();
+    }
+
+    /**
+     * Waits until the server is done with the request, which it records once the response is sent
+     */
+    private void awaitRecorded(@NonNull String route) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            MetricsSnapshot metrics = webServer.getMetrics();
+            for (RouteStats routeStats : metrics != null ? metrics.getRoutes() : new ArrayList<RouteStats>()) {
+                if (routeStats.getRoute().equals(route) && routeStats.getRequestCount() > 0)
+                    return;
+            }
+            Thread.sleep(10);
+        }
+        fail("the request to " + route + " was not recorded");
+    }
+
+    private void assertRefused() throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+            fail("the server still accepts connections");
+        } catch (ConnectException expected) {
+            //the listening socket is closed
+        }
+    }
+
+    @NonNull
+    private Socket connect() throws IOException {
+        return TestSockets.connect(port);
+    }
+}
@@ -0,0 +1,158 @@
+package com.bharathksunil.androidwebserver;
+
+import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.metrics.MetricsSnapshot;
+import com.bharathksunil.androidwebserver.metrics.RouteStats;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.nio.NioWebServer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+
+import static com.bharathksunil.androidwebserver.TestSockets.awaitRefused;
+import static com.bharathksunil.androidwebserver.TestSockets.connect;
+import static com.bharathksunil.androidwebserver.TestSockets.freePort;
+import static com.bharathksunil.androidwebserver.TestSockets.readAll;
+import static com.bharathksunil.androidwebserver.TestSockets.send;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ServerListenerTest {
+    private IWebServer webServer;
+    /**
+     * A listener only the device can reach, added before the server starts
+     */
+    private final WebServerConfig loopbackConfig = new WebServerConfig.Builder("127.0.0.1", "0")
+            .setBindAddress("127.0.0.1")
+            .build();
+
+    @After
+    public void tearDown() {
+        if (webServer != null)
+            webServer.stopServer(0);
+    }
+
+    @Test
+    public void blockingListenersTest() throws Exception {
+        startServer(WebServerConfig.Engine.BLOCKING);
+        listeners();
+    }
+
+    @Test
+    public void nioListenersTest() throws Exception {
+        startServer(WebServerConfig.Engine.NIO);
+        listeners();
+    }
+
+    @Test
+    public void blockingListenerPortInUseTest() throws Exception {
+        startServer(WebServerConfig.Engine.BLOCKING);
+        listenerPortInUse();
+    }
+
+    @Test
+    public void nioListenerPortInUseTest() throws Exception {
+        startServer(WebServerConfig.Engine.NIO);
+        listenerPortInUse();
+    }
+
+    private void listeners() throws Exception {
+        WebServerConfig adminConfig = new WebServerConfig("127.0.0.1", String.valueOf(freePort()));
+        webServer.addListener(adminConfig);
+        List<InetSocketAddress> addresses = webServer.getListeningAddresses();
+
+        //region Verify
+        assertEquals(3, addresses.size());
+        assertEquals(getListeningPort(), addresses.get(0).getPort());
+        assertTrue(addresses.get(1).getAddress().isLoopbackAddress());
+        assertEquals(Integer.parseInt(adminConfig.getPortNumber()), addresses.get(2).getPort());
+        //every listener is served by the same routes and recorded by the same metrics
+        for (InetSocketAddress address : addresses)
+            assertEquals("hello", get(address.getPort()));
+        assertEquals(3, awaitRequestCount("/hello", 3));
+
+        assertTrue(webServer.removeListener(adminConfig));
+        assertFalse(webServer.removeListener(adminConfig));
+        awaitRefused(addresses.get(2).getPort());
+        assertEquals(2, webServer.getListeningAddresses().size());
+        assertEquals("hello", get(addresses.get(1).getPort()));
+        //endregion
+    }
+
+    private void listenerPortInUse() throws Exception {
+        try (ServerSocket taken = new ServerSocket(0)) {
+            WebServerConfig takenConfig = new WebServerConfig("127.0.0.1", String.valueOf(taken.getLocalPort()));
+            try {
+                webServer.addListener(takenConfig);
+                fail("the listener was bound to a port in use");
+            } catch (WebServerException e) {
+                assertEquals(WebServerException.Type.PORT_IN_USE, e.getType());
+            }
+
+            //region Verify
+            assertFalse(webServer.removeListener(takenConfig));
+            assertEquals(2, webServer.getListeningAddresses().size());
+            assertEquals("hello", get(getListeningPort()));
+            //endregion
+        }
+    }
+
+    private void startServer(WebServerConfig.Engine engine) throws WebServerException {
+        webServer = WebServerFactory.create(new WebServerConfig.Builder("127.0.0.1", "0")
+                .setEngine(engine)
+                .setWorkerPoolSize(4, 4)
+                .build());
+        webServer.addRoute(NanoHTTPD.Method.GET, "/hello", (session, match) ->
+                NanoHTTPD.newFixedLengthResponse("hello"));
+        webServer.addListener(loopbackConfig);
+        webServer.startServer();
+    }
+
+    private int getListeningPort() {
+        return webServer instanceof NioWebServer
+                ? ((NioWebServer) webServer).getListeningPort()
+                : ((MyWebServer) webServer).getListeningPort();
+    }
+
+    private long awaitRequestCount(@NonNull String route, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        long requestCount = 0;
+        //a request is recorded once its response has been sent
+        while (requestCount < expected && System.currentTimeMillis() < deadline) {
+            MetricsSnapshot metrics = webServer.getMetrics();
+            if (metrics != null) {
+                requestCount = 0;
+                for (RouteStats routeStats : metrics.getRoutes()) {
+                    if (routeStats.getRoute().equals(route))
+                        requestCount += routeStats.getRequestCount();
+                }
+            }
+            Thread.sleep(10);
+        }
+        return requestCount;
+    }
+
+    /**
+     * @return the body of the response, read until the server closes the connection
+     */
+    @NonNull
+    private static String get(int port) throws IOException {
+        try (Socket socket = connect(port)) {
+            send(socket, "GET /hello HTTP/1.1\r\nConnection: close\r\n\r\n");
+            String response = readAll(socket);
+            assertTrue(response, response.startsWith("HTTP/1.1 200 OK"));
+            return response.substring(response.indexOf("\r\n\r\n") + 4);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.bharathksunil.androidwebserver;
+
+import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.metrics.MetricsSnapshot;
+import com.bharathksunil.androidwebserver.metrics.RouteStats;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.nio.NioWebServer;
+import com.bharathksunil.androidwebserver.runner.WorkerPoolStats;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+
+import static com.bharathksunil.androidwebserver.TestSockets.awaitRefused;
+import static com.bharathksunil.androidwebserver.TestSockets.connect;
+import static com.bharathksunil.androidwebserver.TestSockets.freePort;
+import static com.bharathksunil.androidwebserver.TestSockets.readHead;
+import static com.bharathksunil.androidwebserver.TestSockets.send;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ServerReconfigureTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private IWebServer webServer;
+
+    @After
+    public void tearDown() {
+        if (webServer != null)
+            webServer.stopServer(0);
+    }
+
+    @Test
+    public void blockingRebindTest() throws Exception {
+        startServer(WebServerConfig.Engine.BLOCKING);
+        rebind();
+    }
+
+    @Test
+    public void nioRebindTest() throws Exception {
+        startServer(WebServerConfig.Engine.NIO);
+        rebind();
+    }
+
+    @Test
+    public void blockingPortInUseTest() throws Exception {
+        startServer(WebServerConfig.Engine.BLOCKING);
+        portInUse();
+    }
+
+    @Test
+    public void nioPortInUseTest() throws Exception {
+        startServer(WebServerConfig.Engine.NIO);
+        portInUse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fixedSettingTest() throws Exception {
+        startServer(WebServerConfig.Engine.BLOCKING);
+        webServer.reconfigure(new WebServerConfig.Builder(webServer.getWebServerConfig())
+                .setResponseCache(0, 0)
+                .build());
+    }
+
+    private void rebind() throws Exception {
+        int oldPort = getListeningPort();
+        int newPort = freePort();
+        try (Socket keptAlive = connect(oldPort)) {
+            assertEquals("hello", get(keptAlive));
+
+            webServer.reconfigure(new WebServerConfig.Builder(webServer.getWebServerConfig())
+                    .setAddress("127.0.0.1", String.valueOf(newPort))
+                    .setWorkerPoolSize(2, 8)
+                    .build());
+
+            //region Verify
+            assertTrue(webServer.isRunning());
+            assertEquals(newPort, getListeningPort());
+            assertEquals(String.valueOf(newPort), webServer.getWebServerConfig().getPortNumber());
+            try (Socket socket = connect(newPort)) {
+                assertEquals("hello", get(socket));
+            }
+            //the connection accepted on the old port is served until it closes
+            assertEquals("hello", get(keptAlive));
+            //the event loop of the NIO engine closes the old channel once it has taken the new one over
+            awaitRefused(oldPort);
+            //the routes and the metrics survive the move
+            assertEquals(3, requestCount("/hello"));
+            WorkerPoolStats workerPoolStats = webServer instanceof NioWebServer
+                    ? ((NioWebServer) webServer).getWorkerPoolStats()
+                    : ((MyWebServer) webServer).getWorkerPoolStats();
+            assertTrue(workerPoolStats.toString(), workerPoolStats.getPoolSize() <= 8);
+            //endregion
+        }
+    }
+
+    private void portInUse() throws Exception {
+        int oldPort = getListeningPort();
+        WebServerConfig oldConfig = webServer.getWebServerConfig();
+        try (ServerSocket taken = new ServerSocket(0)) {
+            try {
+                webServer.reconfigure(new WebServerConfig.Builder(oldConfig)
+                        .setAddress("127.0.0.1", String.valueOf(taken.getLocalPort()))
+                        .build());
+                fail("the server moved to a port in use");
+            } catch (WebServerException e) {
+                assertEquals(WebServerException.Type.PORT_IN_USE, e.getType());
+            }
+        }
+
+        //region Verify
+        assertEquals(oldConfig, webServer.getWebServerConfig());
+        assertEquals(oldPort, getListeningPort());
+        try (Socket socket = connect(oldPort)) {
+            assertEquals("hello", get(socket));
+        }
+        //endregion
+    }
+
+    private void startServer(WebServerConfig.Engine engine) throws WebServerException {
+        webServer = WebServerFactory.create(new WebServerConfig.Builder("127.0.0.1", "0")
+                .setEngine(engine)
+                .setWorkerPoolSize(4, 4)
+                .build());
+        webServer.addRoute(NanoHTTPD.Method.GET, "/hello", (session, match) ->
+                NanoHTTPD.newFixedLengthResponse("hello"));
+        webServer.startServer();
+    }
+
+    private int getListeningPort() {
+        return webServer instanceof NioWebServer
+                ? ((NioWebServer) webServer).getListeningPort()
+                : ((MyWebServer) webServer).getListeningPort();
+    }
+
+    private long requestCount(@NonNull String route) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        long requestCount = 0;
+        //a request is recorded once its response has been sent
+        while (requestCount < 3 && System.currentTimeMillis() < deadline) {
+            MetricsSnapshot metrics = webServer.getMetrics();
+            if (metrics != null) {
+                requestCount = 0;
+                for (RouteStats routeStats : metrics.getRoutes()) {
+                    if (routeStats.getRoute().equals(route))
+                        requestCount += routeStats.getRequestCount();
+                }
+            }
+            Thread.sleep(10);
+        }
+        return requestCount;
+    }
+
+    /**
+     * @return the body of the response, the connection is kept alive
+     */
+    @NonNull
+    private static String get(@NonNull Socket socket) throws IOException {
+        send(socket, "GET /hello HTTP/1.1\r\n\r\n");
+        String head = readHead(socket);
+        assertTrue(head, head.startsWith("HTTP/1.1 200 OK"));
+        assertNotEquals(head, -1, head.indexOf("ontent-Length: 5"));
+        InputStream inputStream = socket.getInputStream();
+        byte[] body = new byte[5];
+        int read = 0;
+        while (read < body.length) {
+            int count = inputStream.read(body, read, body.length - read);
+            if (count < 0)
+                throw new IOException("the connection closed before the body ended");
+            read += count;
+        }
+        return new String(body, ASCII);
+    }
+}
@@ -0,0 +1,101 @@
+package com.bharathksunil.androidwebserver;
+
+import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static com.bharathksunil.androidwebserver.TestSockets.connect;
+import static com.bharathksunil.androidwebserver.TestSockets.readAll;
+import static com.bharathksunil.androidwebserver.TestSockets.readUntil;
+import static com.bharathksunil.androidwebserver.TestSockets.send;
+import static org.junit.Assert.assertTrue;
+
+public class ServerWorkerPoolTest {
+    private static final int CORE_WORKERS = 2;
+    private MyWebServer webServer;
+
+    @After
+    public void tearDown() {
+        if (webServer != null)
+            webServer.stopServer(0);
+    }
+
+    @Test
+    public void idleKeepAliveConnectionsDoNotStarveNewClientsTest() throws Exception {
+        startServer(new WebServerConfig.Builder("127.0.0.1", "0")
+                .setWorkerPoolSize(CORE_WORKERS, 2 * CORE_WORKERS));
+        List<Socket> idle = new ArrayList<>();
+        try {
+            //every core worker now waits for the next request of its connection
+            for (int i = 0; i < CORE_WORKERS; i++) {
+                Socket socket = connect(webServer.getListeningPort());
+                idle.add(socket);
+                send(socket, "GET /hello HTTP/1.1\r\n\r\n");
+                readUntil(socket, "hello");
+            }
+            long start = System.currentTimeMillis();
+            String response;
+            try (Socket socket = connect(webServer.getListeningPort())) {
+                send(socket, "GET /hello HTTP/1.1\r\nConnection: close\r\n\r\n");
+                response = readAll(socket);
+            }
+            long elapsedMillis = System.currentTimeMillis() - start;
+
+            //region Verify
+            assertTrue(response, response.startsWith("HTTP/1.1 200 OK"));
+            assertTrue(response, response.endsWith("hello"));
+            assertTrue("answered after " + elapsedMillis + " ms", elapsedMillis < 1000);
+            //endregion
+        } finally {
+            for (Socket socket : idle)
+                socket.close();
+        }
+    }
+
+    @Test
+    public void connectionQueuedLongerThanTheIdleTimeoutIsServedTest() throws Exception {
+        int idleTimeoutMillis = 600;
+        startServer(new WebServerConfig.Builder("127.0.0.1", "0")
+                .setWorkerPoolSize(1, 1)
+                .setKeepAlive(idleTimeoutMillis, 100));
+        webServer.addRoute(NanoHTTPD.Method.GET, "/slow", (session, match) -> {
+            try {
+                Thread.sleep(2 * idleTimeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return NanoHTTPD.newFixedLengthResponse("slow");
+        });
+        String response;
+        try (Socket busy = connect(webServer.getListeningPort());
+             Socket queued = connect(webServer.getListeningPort())) {
+            //the only worker serves the slow request while the second connection waits in the queue
+            send(busy, "GET /slow HTTP/1.1\r\nConnection: close\r\n\r\n");
+            readAll(busy);
+            //the worker now serves the queued connection, a sweep runs before the client speaks
+            Thread.sleep(idleTimeoutMillis / 2 + 50);
+            send(queued, "GET /hello HTTP/1.1\r\nConnection: close\r\n\r\n");
+            response = readAll(queued);
+        }
+
+        //region Verify
+        assertTrue(response, response.startsWith("HTTP/1.1 200 OK"));
+        assertTrue(response, response.endsWith("hello"));
+        //endregion
+    }
+
+    private void startServer(WebServerConfig.Builder builder) throws WebServerException {
+        webServer = (MyWebServer) WebServerFactory.create(builder.build());
+        webServer.addRoute(NanoHTTPD.Method.GET, "/hello", (session, match) ->
+                NanoHTTPD.newFixedLengthResponse("hello"));
+        webServer.startServer();
+    }
+}
@@ -0,0 +1,111 @@
+package com.bharathksunil.androidwebserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+import io.reactivex.annotations.NonNull;
+
+import static org.junit.Assert.fail;
+
+/**
+ * The plain socket client the server tests talk HTTP through, so they see the bytes on the wire
+ */
+public final class TestSockets {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private TestSockets() {
+    }
+
+    /**
+     * @return a socket connected to the port on the loopback address, whose reads time out
+     */
+    @NonNull
+    public static Socket connect(int port) throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress("127.0.0.1", port));
+        socket.setSoTimeout(TIMEOUT_MILLIS);
+        return socket;
+    }
+
+    public static void send(@NonNull Socket socket, @NonNull String request) throws IOException {
+        send(socket, request.getBytes(UTF_8));
+    }
+
+    public static void send(@NonNull Socket socket, @NonNull byte[] bytes) throws IOException {
+        socket.getOutputStream().write(bytes);
+        socket.getOutputStream().flush();
+    }
+
+    /**
+     * @return the head of the response, read byte by byte so what follows it stays unread
+     */
+    @NonNull
+    public static String readHead(@NonNull Socket socket) throws IOException {
+        return readUntil(socket, "\r\n\r\n");
+    }
+
+    /**
+     * @return the bytes read until the marker, included
+     */
+    @NonNull
+    public static String readUntil(@NonNull Socket socket, @NonNull String marker) throws IOException {
+        InputStream inputStream = socket.getInputStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        while (!new String(bytes.toByteArray(), UTF_8).endsWith(marker)) {
+            int b = inputStream.read();
+            if (b < 0)
+                throw new IOException("the connection closed before " + marker);
+            bytes.write(b);
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    /**
+     * @return what the server sends until it closes the connection, a cut connection may be reset
+     */
+    @NonNull
+    public static String readAll(@NonNull Socket socket) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        try {
+            while ((read = socket.getInputStream().read(buffer)) >= 0)
+                bytes.write(buffer, 0, read);
+        } catch (IOException e) {
+            //what was read before the reset is returned
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    /**
+     * Waits until the port refuses connections, a listener may be closed asynchronously
+     */
+    public static void awaitRefused(int port) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+            } catch (ConnectException expected) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("port " + port + " still accepts connections");
+    }
+
+    /**
+     * @return a port nothing listens on
+     */
+    public static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+}
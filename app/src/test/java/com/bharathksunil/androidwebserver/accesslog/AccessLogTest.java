@@ -0,0 +1,116 @@
+package com.bharathksunil.androidwebserver.accesslog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.annotations.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AccessLogTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    @Rule
+    public TemporaryFolder logs = new TemporaryFolder();
+
+    @Test
+    public void requestsAreWrittenOneLineEachTest() throws IOException {
+        File file = new File(logs.getRoot(), "logs/access.log");
+        AccessLog accessLog = new AccessLog(file, 16, 1024 * 1024, 0);
+        accessLog.start();
+        InetAddress client = InetAddress.getByName("192.168.1.20");
+        accessLog.append(0, client, "GET", "/users/42", 200, 312, 1045, TimeUnit.MICROSECONDS.toNanos(830));
+        accessLog.append(0, null, "POST", "/a b\nc", 404, 10, 20, 0);
+        accessLog.stop();
+
+        //region Verify
+        String[] lines = read(file).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(" 192.168.1.20 GET /users/42 200 312 1045 830"));
+        //the path can never break the layout of the line
+        assertTrue(lines[1], lines[1].endsWith(" - POST /a%20b%0Ac 404 10 20 0"));
+        AccessLogStats stats = accessLog.getStats();
+        assertEquals(2, stats.getWrittenCount());
+        assertEquals(0, stats.getDroppedCount());
+        assertEquals(0, stats.getPendingCount());
+        //endregion
+    }
+
+    @Test
+    public void fullBufferDropsRequestsTest() throws IOException {
+        File file = new File(logs.getRoot(), "access.log");
+        AccessLog accessLog = new AccessLog(file, 3, 1024 * 1024, 0);
+        int appended = 0;
+        //the writer is not started, the buffer rounded up to 4 requests fills up
+        for (int i = 0; i < 6; i++) {
+            if (accessLog.append(0, null, "GET", "/" + i, 200, 0, 0, 0))
+                appended++;
+        }
+
+        //region Verify
+        assertEquals(4, appended);
+        AccessLogStats stats = accessLog.getStats();
+        assertEquals(2, stats.getDroppedCount());
+        assertEquals(4, stats.getPendingCount());
+        accessLog.start();
+        accessLog.stop();
+        assertEquals(4, read(file).split("\n").length);
+        assertEquals(4, accessLog.getStats().getWrittenCount());
+        //endregion
+    }
+
+    @Test
+    public void fileIsRotatedBySizeTest() throws IOException {
+        File file = new File(logs.getRoot(), "access.log");
+        AccessLog accessLog = new AccessLog(file, 64, 200, 0);
+        accessLog.start();
+        for (int i = 0; i < 10; i++)
+            accessLog.append(0, null, "GET", "/" + i, 200, 10, 20, 30);
+        accessLog.stop();
+
+        //region Verify
+        int lineCount = 0;
+        int rotatedCount = 0;
+        File[] files = {file, new File(file.getPath() + ".1"), new File(file.getPath() + ".2"),
+                new File(file.getPath() + ".3"), new File(file.getPath() + ".4")};
+        for (File logFile : files) {
+            if (!logFile.exists())
+                continue;
+            assertTrue(logFile + " " + logFile.length(), logFile.length() <= 200);
+            lineCount += read(logFile).split("\n").length;
+            if (logFile != file)
+                rotatedCount++;
+        }
+        assertEquals(10, lineCount);
+        //the most recent requests are in the file, the older ones in the rotated files
+        assertTrue(read(file).contains(" /9 "));
+        assertTrue(read(new File(file.getPath() + ".1")).contains(" /6 "));
+        assertFalse(new File(file.getPath() + "." + (AccessLog.KEPT_FILES + 1)).exists());
+        assertTrue(rotatedCount >= 2);
+        assertEquals(rotatedCount, accessLog.getStats().getRotationCount());
+        //endregion
+    }
+
+    @NonNull
+    private static String read(@NonNull File file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream inputStream = new FileInputStream(file)) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0)
+                bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+package com.bharathksunil.androidwebserver.body;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class MemoryFirstTempFileManagerTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+    @Mock
+    private NanoHTTPD.IHTTPSession mMockSession;
+    private Map<String, String> headers;
+    private Map<String, List<String>> parameters;
+    private MemoryFirstTempFileManagerFactory factory;
+
+    @Before
+    public void setup() {
+        headers = new HashMap<>();
+        parameters = new HashMap<>();
+        when(mMockSession.getHeaders()).thenReturn(headers);
+        when(mMockSession.getParameters()).thenReturn(parameters);
+        when(mMockSession.getMethod()).thenReturn(NanoHTTPD.Method.POST);
+        factory = new MemoryFirstTempFileManagerFactory(temp.getRoot(), 4096, 4096);
+    }
+
+    @Test
+    public void formBodyIsParsedInMemoryTest() throws Exception {
+        //over the 1KB NanoHTTPD keeps in memory
+        char[] padding = new char[2000];
+        Arrays.fill(padding, 'x');
+        body("application/x-www-form-urlencoded", "name=a%20b&flag&pad=" + new String(padding));
+        Map<String, String> files = new HashMap<>();
+
+        //region Verify
+        assertTrue(factory.create().parseBody(mMockSession, files));
+        assertEquals(Arrays.asList("a b"), parameters.get("name"));
+        assertEquals(Arrays.asList(""), parameters.get("flag"));
+        assertEquals(2000, parameters.get("pad").get(0).length());
+        assertTrue(files.isEmpty());
+        TempFileStats stats = factory.getStats();
+        assertEquals(1, stats.getMemoryBodyCount());
+        assertEquals(0, stats.getSpilledFileCount());
+        assertEquals(0, stats.getBytesInUse());
+        assertEquals(4096, stats.getBytesAllocated());
+        assertEquals(0, temp.getRoot().list().length);
+        //endregion
+    }
+
+    @Test
+    public void textBodyIsPostDataTest() throws Exception {
+        body("application/json; charset=UTF-8", " {\"a\":1} ");
+        Map<String, String> files = new HashMap<>();
+
+        //region Verify
+        assertTrue(factory.create().parseBody(mMockSession, files));
+        assertEquals("{\"a\":1}", files.get("postData"));
+        //endregion
+    }
+
+    @Test
+    public void largeAndMultipartBodiesAreLeftToNanoHttpdTest() throws Exception {
+        MemoryFirstTempFileManager tempFileManager = factory.create();
+        Map<String, String> files = new HashMap<>();
+
+        //region Verify
+        headers.put("content-type", "text/plain");
+        headers.put("content-length", "4096");
+        assertFalse(tempFileManager.parseBody(mMockSession, files));
+        headers.put("content-type", "multipart/form-data; boundary=b");
+        headers.put("content-length", "10");
+        assertFalse(tempFileManager.parseBody(mMockSession, files));
+        headers.remove("content-type");
+        when(mMockSession.getMethod()).thenReturn(NanoHTTPD.Method.PUT);
+        assertFalse(tempFileManager.parseBody(mMockSession, files));
+        assertEquals(0, factory.getStats().getMemoryBodyCount());
+        //endregion
+    }
+
+    @Test
+    public void bodyOverTheBudgetIsSpilledTest() throws Exception {
+        byte[] held = factory.acquire();
+        assertNotNull(held);
+        body("text/plain", "hello");
+        Map<String, String> files = new HashMap<>();
+
+        //region Verify
+        //the budget is spent by another connection
+        assertFalse(factory.create().parseBody(mMockSession, files));
+        assertEquals(1, factory.getStats().getOverBudgetCount());
+        factory.release(held);
+        body("text/plain", "hello");
+        assertTrue(factory.create().parseBody(mMockSession, files));
+        assertEquals("hello", files.get("postData"));
+        //the buffer given back is reused
+        assertEquals(4096, factory.getStats().getBytesAllocated());
+        //endregion
+    }
+
+    @Test
+    public void tempFilesAreDeletedOnClearTest() throws Exception {
+        MemoryFirstTempFileManager tempFileManager = factory.create();
+        NanoHTTPD.TempFile tempFile = tempFileManager.createTempFile(null);
+        File file = new File(tempFile.getName());
+
+        //region Verify
+        assertEquals(temp.getRoot().getCanonicalFile(), file.getParentFile().getCanonicalFile());
+        assertTrue(file.exists());
+        assertEquals(1, factory.getStats().getSpilledFileCount());
+        tempFileManager.clear();
+        assertFalse(file.exists());
+        assertArrayEquals(new String[0], temp.getRoot().list());
+        //endregion
+    }
+
+    private void body(@NonNull String contentType, @NonNull String body) {
+        byte[] bytes = body.getBytes(ASCII);
+        headers.put("content-type", contentType);
+        headers.put("content-length", String.valueOf(bytes.length));
+        when(mMockSession.getInputStream()).thenReturn(new ByteArrayInputStream(bytes));
+    }
+}
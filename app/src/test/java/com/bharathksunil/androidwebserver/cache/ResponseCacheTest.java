@@ -0,0 +1,104 @@
+package com.bharathksunil.androidwebserver.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ResponseCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void secondLookupIsAHitTest() throws IOException {
+        ResponseCache responseCache = new ResponseCache(1024, 512);
+        File file = writeFile("app.js", 100);
+
+        CachedFile first = get(responseCache, file);
+        CachedFile second = get(responseCache, file);
+
+        //region Verify
+        assertNotNull(first);
+        assertSame(first, second);
+        CacheStats stats = responseCache.getStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(100, stats.getUsedBytes());
+        //endregion
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvictedTest() throws IOException {
+        ResponseCache responseCache = new ResponseCache(250, 250);
+        File a = writeFile("a.css", 100);
+        File b = writeFile("b.css", 100);
+        File c = writeFile("c.css", 100);
+
+        get(responseCache, a);
+        get(responseCache, b);
+        get(responseCache, a);  //b is now the least recently used
+        get(responseCache, c);
+
+        //region Verify
+        CacheStats stats = responseCache.getStats();
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(2, stats.getEntryCount());
+        assertEquals(200, stats.getUsedBytes());
+        get(responseCache, a);
+        assertEquals(2, responseCache.getStats().getHitCount());
+        get(responseCache, b);
+        assertEquals(4, responseCache.getStats().getMissCount());
+        //endregion
+    }
+
+    @Test
+    public void changedFileIsInvalidatedTest() throws IOException {
+        ResponseCache responseCache = new ResponseCache(1024, 1024);
+        File file = writeFile("data.json", 10);
+        get(responseCache, file);
+
+        writeFile("data.json", 20);
+        CachedFile reloaded = responseCache.get(file, file.length(), file.lastModified() + 1000);
+
+        //region Verify
+        assertNotNull(reloaded);
+        assertEquals(20, reloaded.getBody().length);
+        assertArrayEquals(new byte[20], reloaded.getBody());
+        CacheStats stats = responseCache.getStats();
+        assertEquals(1, stats.getInvalidationCount());
+        assertEquals(20, stats.getUsedBytes());
+        //endregion
+    }
+
+    @Test
+    public void largeFileIsNotCachedTest() throws IOException {
+        ResponseCache responseCache = new ResponseCache(1024, 64);
+        File file = writeFile("video.mp4", 65);
+
+        //region Verify
+        assertNull(get(responseCache, file));
+        assertEquals(0, responseCache.getStats().getEntryCount());
+        //endregion
+    }
+
+    private static CachedFile get(ResponseCache responseCache, File file) {
+        return responseCache.get(file, file.length(), file.lastModified());
+    }
+
+    private File writeFile(String name, int length) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(new byte[length]);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,68 @@
+package com.bharathksunil.androidwebserver.compression;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ContentEncodingTest {
+
+    @Test
+    public void negotiateTest() {
+        //region Verify
+        assertNull(ContentEncoding.negotiate(null));
+        assertNull(ContentEncoding.negotiate("identity"));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("gzip, deflate, br"));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("GZIP;q=0 , Deflate"));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("*"));
+        assertNull(ContentEncoding.negotiate("gzip;q=0, deflate;q=0.000"));
+        //endregion
+    }
+
+    @Test
+    public void compressRoundTripTest() throws IOException {
+        byte[] body = new byte[4096];
+        Arrays.fill(body, (byte) 'a');
+
+        byte[] compressed = ContentEncoding.GZIP.compress(body, Deflater.BEST_COMPRESSION);
+
+        //region Verify
+        assertTrue(compressed.length < body.length);
+        assertArrayEquals(body, read(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        //endregion
+    }
+
+    @Test
+    public void compressionPolicyTest() {
+        CompressionPolicy policy = new CompressionPolicy(Arrays.asList("text/*", "application/json"), 100);
+
+        //region Verify
+        assertTrue(policy.isCompressible("text/html; charset=utf-8", 1000));
+        assertTrue(policy.isCompressible("application/json", -1));
+        assertFalse(policy.isCompressible("application/json", 99));
+        assertFalse(policy.isCompressible("image/png", 1000));
+        assertFalse(policy.isCompressible(null, 1000));
+        //endregion
+    }
+
+    private static byte[] read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1)
+            outputStream.write(buffer, 0, read);
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,89 @@
+package com.bharathksunil.androidwebserver.connection;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ConnectionReaperTest {
+    private static final long IDLE_TIMEOUT_MILLIS = 1000;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+    @Mock
+    private Socket mIdleSocket;
+    @Mock
+    private Socket mBusySocket;
+    private ClientConnection idleConnection;
+    private ClientConnection busyConnection;
+    private ConnectionReaper connectionReaper;
+
+    @Before
+    public void setup() {
+        idleConnection = new ClientConnection(mIdleSocket);
+        busyConnection = new ClientConnection(mBusySocket);
+        connectionReaper = new ConnectionReaper(IDLE_TIMEOUT_MILLIS);
+        connectionReaper.register(idleConnection);
+        connectionReaper.register(busyConnection);
+    }
+
+    @Test
+    public void idleConnectionIsReapedTest() throws IOException {
+        idleConnection.onRequestStarted();
+        idleConnection.onResponseSent();
+        busyConnection.onRequestStarted();
+
+        int reaped = connectionReaper.reap(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS + 1));
+
+        //region Verify
+        assertEquals(1, reaped);
+        verify(mIdleSocket).close();
+        verify(mBusySocket, never()).close();
+        assertEquals(1, connectionReaper.getStats().getOpenConnections());
+        assertEquals(1, connectionReaper.getStats().getReapedCount());
+        //endregion
+    }
+
+    @Test
+    public void recentlyIdleConnectionIsKeptTest() throws IOException {
+        idleConnection.onResponseSent();
+
+        int reaped = connectionReaper.reap(System.nanoTime());
+
+        //region Verify
+        assertEquals(0, reaped);
+        verify(mIdleSocket, never()).close();
+        assertEquals(2, connectionReaper.getStats().getOpenConnections());
+        //endregion
+    }
+
+    @Test
+    public void unregisteredConnectionIsIgnoredTest() throws IOException {
+        connectionReaper.unregister(idleConnection);
+
+        connectionReaper.reap(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS + 1));
+
+        verify(mIdleSocket, never()).close();
+    }
+
+    @Test
+    public void requestsAreCountedTest() {
+        idleConnection.onRequestStarted();
+        idleConnection.onResponseSent();
+
+        //region Verify
+        assertEquals(2, idleConnection.onRequestStarted());
+        assertEquals(2, idleConnection.getRequestCount());
+        //endregion
+    }
+}
@@ -0,0 +1,57 @@
+package com.bharathksunil.androidwebserver.handler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ByteRangesTest {
+
+    @Test
+    public void singleRangeTest() {
+        //region Verify
+        assertArrayEquals(new long[]{0, 499}, ByteRanges.parse("bytes=0-499", 1000));
+        assertArrayEquals(new long[]{500, 999}, ByteRanges.parse("bytes=500-", 1000));
+        assertArrayEquals(new long[]{900, 999}, ByteRanges.parse("bytes=-100", 1000));
+        assertArrayEquals(new long[]{0, 999}, ByteRanges.parse("bytes=-5000", 1000));
+        assertArrayEquals(new long[]{990, 999}, ByteRanges.parse("Bytes=990-99999999999999999999", 1000));
+        //endregion
+    }
+
+    @Test
+    public void rangesAreSortedAndMergedTest() {
+        //region Verify
+        assertArrayEquals(new long[]{0, 9, 50, 59}, ByteRanges.parse("bytes=50-59, 0-9", 1000));
+        assertArrayEquals(new long[]{0, 29}, ByteRanges.parse("bytes=0-9,10-19,5-29", 1000));
+        //endregion
+    }
+
+    @Test
+    public void unsatisfiableRangeTest() {
+        //region Verify
+        assertEquals(0, ByteRanges.parse("bytes=1000-", 1000).length);
+        assertEquals(0, ByteRanges.parse("bytes=-0", 1000).length);
+        assertEquals(0, ByteRanges.parse("bytes=0-", 0).length);
+        //endregion
+    }
+
+    @Test
+    public void malformedRangeIsIgnoredTest() {
+        //region Verify
+        assertNull(ByteRanges.parse("items=0-1", 1000));
+        assertNull(ByteRanges.parse("bytes=5-1", 1000));
+        assertNull(ByteRanges.parse("bytes=a-b", 1000));
+        assertNull(ByteRanges.parse("bytes=-", 1000));
+        //endregion
+    }
+
+    @Test
+    public void tooManyRangesAreIgnoredTest() {
+        StringBuilder range = new StringBuilder("bytes=");
+        for (int i = 0; i <= ByteRanges.MAX_RANGES; i++)
+            range.append(i * 10).append('-').append(i * 10 + 1).append(',');
+
+        assertNull(ByteRanges.parse(range.toString(), 1000));
+    }
+}
@@ -0,0 +1,239 @@
+package com.bharathksunil.androidwebserver.handler;
+
+import com.bharathksunil.androidwebserver.compression.CompressedFileStore;
+import com.bharathksunil.androidwebserver.compression.CompressionPolicy;
+import com.bharathksunil.androidwebserver.response.FileResponse;
+import com.bharathksunil.androidwebserver.response.HttpDate;
+import com.bharathksunil.androidwebserver.response.MultiRangeFileResponse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class StaticFileHandlerTest {
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+    @Rule
+    public TemporaryFolder documentRoot = new TemporaryFolder();
+    @Rule
+    public TemporaryFolder outside = new TemporaryFolder();
+    @Mock
+    private NanoHTTPD.IHTTPSession mMockSession;
+    private Map<String, String> headers;
+    private StaticFileHandler staticFileHandler;
+
+    @Before
+    public void setup() throws IOException {
+        headers = new HashMap<>();
+        when(mMockSession.getHeaders()).thenReturn(headers);
+        when(mMockSession.getMethod()).thenReturn(NanoHTTPD.Method.GET);
+        writeFile("index.html", "<h1>Hello</h1>");
+        writeFile("app.js", "console.log(1);");
+        staticFileHandler = new StaticFileHandler(documentRoot.getRoot());
+    }
+
+    @Test
+    public void serveExistingFileTest() throws IOException {
+        when(mMockSession.getUri()).thenReturn("/app.js");
+
+        NanoHTTPD.Response response = staticFileHandler.serve(mMockSession);
+
+        //region Verify
+        assertTrue(response instanceof FileResponse);
+        assertEquals(NanoHTTPD.Response.Status.OK, response.getStatus());
+        assertEquals("application/javascript", response.getMimeType());
+        assertEquals(15, ((FileResponse) response).getContentLength());
+        response.close();
+        //endregion
+    }
+
+    @Test
+    public void serveDirectoryIndexTest() throws IOException {
+        when(mMockSession.getUri()).thenReturn("/");
+
+        NanoHTTPD.Response response = staticFileHandler.serve(mMockSession);
+
+        //region Verify
+        assertEquals(NanoHTTPD.Response.Status.OK, response.getStatus());
+        assertEquals("text/html", response.getMimeType());
+        response.close();
+        //endregion
+    }
+
+    @Test
+    public void missingFileTest() {
+        when(mMockSession.getUri()).thenReturn("/missing.css");
+
+        assertEquals(NanoHTTPD.Response.Status.NOT_FOUND, staticFileHandler.serve(mMockSession).getStatus());
+    }
+
+    @Test
+    public void pathTraversalIsForbiddenTest() {
+        when(mMockSession.getUri()).thenReturn("/../secret.txt");
+
+        //region Verify
+        assertEquals(NanoHTTPD.Response.Status.FORBIDDEN, staticFileHandler.serve(mMockSession).getStatus());
+        assertNull(staticFileHandler.resolve("/a/../../b"));
+        assertNull(staticFileHandler.resolve("/a/.."));
+        //endregion
+    }
+
+    @Test
+    public void symbolicLinkOutOfTheRootIsForbiddenTest() throws IOException {
+        File secret = outside.newFile("secret.txt");
+        Path root = documentRoot.getRoot().toPath();
+        List<Path> links = new ArrayList<>();
+        try {
+            links.add(Files.createSymbolicLink(root.resolve("leak.txt"), secret.toPath()));
+            links.add(Files.createSymbolicLink(root.resolve("outside"), outside.getRoot().toPath()));
+            links.add(Files.createSymbolicLink(root.resolve("alias.js"), root.resolve("app.js")));
+            when(mMockSession.getUri()).thenReturn("/leak.txt");
+
+            //region Verify
+            assertEquals(NanoHTTPD.Response.Status.FORBIDDEN, staticFileHandler.serve(mMockSession).getStatus());
+            assertNull(staticFileHandler.resolve("/outside/secret.txt"));
+            assertNotNull(staticFileHandler.resolve("/alias.js"));
+            //endregion
+        } finally {
+            //the folder cleanup would follow a link to a directory
+            for (Path link : links)
+                Files.delete(link);
+        }
+    }
+
+    @Test
+    public void unsupportedMethodTest() {
+        when(mMockSession.getMethod()).thenReturn(NanoHTTPD.Method.POST);
+
+        NanoHTTPD.Response response = staticFileHandler.serve(mMockSession);
+
+        //region Verify
+        assertEquals(NanoHTTPD.Response.Status.METHOD_NOT_ALLOWED, response.getStatus());
+        assertEquals("GET, HEAD", response.getHeader("Allow"));
+        //endregion
+    }
+
+    @Test
+    public void matchingETagIsNotModifiedTest() {
+        File file = new File(documentRoot.getRoot(), "app.js");
+        headers.put("if-none-match", StaticFileHandler.eTag(file.length(), file.lastModified()));
+        when(mMockSession.getUri()).thenReturn("/app.js");
+
+        assertEquals(NanoHTTPD.Response.Status.NOT_MODIFIED, staticFileHandler.serve(mMockSession).getStatus());
+    }
+
+    @Test
+    public void serveGzipVariantTest() throws IOException {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+            script.append("console.log(").append(i % 10).append(");\n");
+        writeFile("big.js", script.toString());
+        StaticFileHandler handler = new StaticFileHandler(documentRoot.getRoot(), null,
+                new CompressionPolicy(Collections.singleton("application/javascript"), 64),
+                new CompressedFileStore(documentRoot.newFolder("compressed")));
+        headers.put("accept-encoding", "gzip, deflate");
+        when(mMockSession.getUri()).thenReturn("/big.js");
+
+        NanoHTTPD.Response response = handler.serve(mMockSession);
+
+        //region Verify
+        assertEquals(NanoHTTPD.Response.Status.OK, response.getStatus());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertTrue(((FileResponse) response).getContentLength() < script.length());
+        response.close();
+        //endregion
+    }
+
+    @Test
+    public void serveSingleRangeTest() throws IOException {
+        headers.put("range", "bytes=8-");
+        when(mMockSession.getUri()).thenReturn("/app.js");
+
+        NanoHTTPD.Response response = staticFileHandler.serve(mMockSession);
+
+        //region Verify
+        assertEquals(NanoHTTPD.Response.Status.PARTIAL_CONTENT, response.getStatus());
+        assertEquals("bytes 8-14/15", response.getHeader("Content-Range"));
+        assertEquals(7, ((FileResponse) response).getContentLength());
+        response.close();
+        //endregion
+    }
+
+    @Test
+    public void serveMultipleRangesTest() throws IOException {
+        headers.put("range", "bytes=0-6,12-");
+        when(mMockSession.getUri()).thenReturn("/app.js");
+
+        NanoHTTPD.Response response = staticFileHandler.serve(mMockSession);
+
+        //region Verify
+        assertEquals(NanoHTTPD.Response.Status.PARTIAL_CONTENT, response.getStatus());
+        assertTrue(response instanceof MultiRangeFileResponse);
+        assertTrue(response.getMimeType().startsWith("multipart/byteranges; boundary="));
+        response.close();
+        //endregion
+    }
+
+    @Test
+    public void unsatisfiableRangeTest() {
+        headers.put("range", "bytes=100-");
+        when(mMockSession.getUri()).thenReturn("/app.js");
+
+        NanoHTTPD.Response response = staticFileHandler.serve(mMockSession);
+
+        //region Verify
+        assertEquals(NanoHTTPD.Response.Status.RANGE_NOT_SATISFIABLE, response.getStatus());
+        assertEquals("bytes */15", response.getHeader("Content-Range"));
+        //endregion
+    }
+
+    @Test
+    public void staleIfRangeSendsWholeFileTest() throws IOException {
+        File file = new File(documentRoot.getRoot(), "app.js");
+        headers.put("range", "bytes=8-");
+        headers.put("if-range", "\"stale\"");
+        when(mMockSession.getUri()).thenReturn("/app.js");
+
+        NanoHTTPD.Response response = staticFileHandler.serve(mMockSession);
+        headers.put("if-range", HttpDate.format(file.lastModified()));
+        NanoHTTPD.Response current = staticFileHandler.serve(mMockSession);
+
+        //region Verify
+        assertEquals(NanoHTTPD.Response.Status.OK, response.getStatus());
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertEquals(NanoHTTPD.Response.Status.PARTIAL_CONTENT, current.getStatus());
+        response.close();
+        current.close();
+        //endregion
+    }
+
+    private void writeFile(String name, String content) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(documentRoot.newFile(name))) {
+            outputStream.write(content.getBytes("UTF-8"));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.bharathksunil.androidwebserver.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueTest() {
+        //region Verify
+        for (int index = 0; index < LatencyHistogram.BUCKET_COUNT - 1; index++) {
+            long highest = LatencyHistogram.highestValue(index);
+            assertEquals(index, LatencyHistogram.bucketIndex(highest));
+            assertEquals(index + 1, LatencyHistogram.bucketIndex(highest + 1));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+        //endregion
+    }
+
+    @Test
+    public void quantilesAreWithinPrecisionTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10000; micros++)
+            histogram.record(micros);
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        //region Verify
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(10000, snapshot.getMax());
+        assertEquals(50005000, snapshot.getSum());
+        assertWithin(5000, snapshot.getValueAtQuantile(0.5));
+        assertWithin(9000, snapshot.getValueAtQuantile(0.9));
+        assertWithin(9900, snapshot.getValueAtQuantile(0.99));
+        assertEquals(10000, snapshot.getValueAtQuantile(1));
+        //endregion
+    }
+
+    @Test
+    public void emptyHistogramTest() {
+        HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+
+        //region Verify
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtQuantile(0.99));
+        //endregion
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / LatencyHistogram.SUB_BUCKET_COUNT);
+    }
+}
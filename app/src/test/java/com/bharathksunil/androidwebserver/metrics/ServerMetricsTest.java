@@ -0,0 +1,75 @@
+package com.bharathksunil.androidwebserver.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ServerMetricsTest {
+    private ServerMetrics serverMetrics;
+
+    @Before
+    public void setup() {
+        serverMetrics = new ServerMetrics();
+        serverMetrics.onConnectionOpened();
+        serverMetrics.record("/users/{id}", 200, 100, 1000, TimeUnit.MILLISECONDS.toNanos(2));
+        serverMetrics.record("/users/{id}", 404, 100, 50, TimeUnit.MILLISECONDS.toNanos(1));
+        serverMetrics.record(ServerMetrics.STATIC_ROUTE, 206, 80, 4096, TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void snapshotTest() {
+        MetricsSnapshot snapshot = serverMetrics.snapshot();
+        RouteStats usersFound = snapshot.getRoutes().get(0);
+        RouteStats usersNotFound = snapshot.getRoutes().get(1);
+
+        //region Verify
+        assertEquals(3, snapshot.getRoutes().size());
+        assertEquals(ServerMetrics.STATIC_ROUTE, snapshot.getRoutes().get(2).getRoute());
+        assertEquals("/users/{id}", usersFound.getRoute());
+        assertEquals(2, usersFound.getStatusClass());
+        assertEquals(1, usersFound.getRequestCount());
+        assertEquals(100, usersFound.getBytesIn());
+        assertEquals(1000, usersFound.getBytesOut());
+        assertEquals(2000, usersFound.getLatency().getMax());
+        assertEquals("/users/{id}", usersNotFound.getRoute());
+        assertEquals(4, usersNotFound.getStatusClass());
+        assertEquals(1, usersNotFound.getRequestCount());
+        assertEquals(50, usersNotFound.getBytesOut());
+        assertEquals(1000, usersNotFound.getLatency().getMax());
+        assertEquals(1, snapshot.getActiveConnections());
+        //endregion
+    }
+
+    @Test
+    public void connectionsAreCountedTest() {
+        serverMetrics.onConnectionOpened();
+        serverMetrics.onConnectionClosed();
+        serverMetrics.onConnectionClosed();
+
+        //region Verify
+        assertEquals(0, serverMetrics.snapshot().getActiveConnections());
+        assertEquals(2, serverMetrics.snapshot().getAcceptedConnections());
+        //endregion
+    }
+
+    @Test
+    public void prometheusFormatTest() {
+        serverMetrics.record("/say/\"hi\"", 500, 0, 0, 0);
+
+        String text = PrometheusFormatter.format(serverMetrics.snapshot());
+
+        //region Verify
+        assertTrue(text.contains("# TYPE webserver_requests_total counter\n"));
+        assertTrue(text.contains("webserver_requests_total{route=\"/users/{id}\",status=\"2xx\"} 1\n"));
+        assertTrue(text.contains("webserver_requests_total{route=\"/say/\\\"hi\\\"\",status=\"5xx\"} 1\n"));
+        assertTrue(text.contains("webserver_sent_bytes_total{route=\"static\",status=\"2xx\"} 4096\n"));
+        assertTrue(text.contains("webserver_request_duration_seconds{route=\"static\",status=\"2xx\",quantile=\"0.99\"} 0.005"));
+        assertTrue(text.contains("webserver_request_duration_seconds_count{route=\"/users/{id}\",status=\"4xx\"} 1\n"));
+        assertTrue(text.contains("webserver_active_connections 1\n"));
+        //endregion
+    }
+}
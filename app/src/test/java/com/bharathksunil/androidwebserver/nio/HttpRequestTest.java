@@ -0,0 +1,173 @@
+package com.bharathksunil.androidwebserver.nio;
+
+import com.bharathksunil.androidwebserver.body.MemoryFirstTempFileManagerFactory;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpRequestTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final NanoHTTPD codec = new NanoHTTPD(0) {
+    };
+    private final MemoryFirstTempFileManagerFactory factory = new MemoryFirstTempFileManagerFactory(null, 1024, 4096);
+
+    @Test
+    public void requestLineAndHeadersAreParsedTest() throws Exception {
+        HttpRequest request = parse("GET /a%20b+c/%e2%82%ac?x=1 HTTP/1.1\r\n"
+                + "Host: example.com\r\n"
+                + "X-Custom-Header :  some value \r\n"
+                + "not a header\r\n"
+                + "\r\n");
+
+        //region Verify
+        assertEquals(NanoHTTPD.Method.GET, request.getMethod());
+        assertEquals("/a b c/\u20ac", request.getUri());
+        assertEquals("example.com", request.getHeaders().get("host"));
+        assertEquals("some value", request.getHeaders().get("x-custom-header"));
+        assertEquals("127.0.0.1", request.getHeaders().get("remote-addr"));
+        assertEquals(4, request.getHeaders().size());
+        assertTrue(request.isKeepAlive());
+        assertFalse(request.needsNanoHttpdBody());
+        //endregion
+    }
+
+    @Test
+    public void knownHeaderNamesAreSharedTest() throws Exception {
+        HttpRequest first = parse("GET / HTTP/1.1\r\nCONTENT-TYPE: a\r\n\r\n");
+        HttpRequest second = parse("GET / HTTP/1.1\r\ncontent-type: b\r\n\r\n");
+
+        //region Verify
+        assertSame(keyOf(first.getHeaders(), "content-type"), keyOf(second.getHeaders(), "content-type"));
+        assertEquals("b", second.getHeaders().get("content-type"));
+        //endregion
+    }
+
+    @Test
+    public void queryIsDecodedOnDemandTest() throws Exception {
+        HttpRequest request = parse("GET /search?q=a+b%26c&q=d&&flag&bad=%zz HTTP/1.1\r\n\r\n");
+
+        //region Verify
+        assertEquals("q=a+b%26c&q=d&&flag&bad=%zz", request.getQueryParameterString());
+        Map<String, List<String>> parameters = request.getParameters();
+        assertEquals(Arrays.asList("a b&c", "d"), parameters.get("q"));
+        assertEquals(Arrays.asList(""), parameters.get("flag"));
+        assertEquals(Arrays.asList("%zz"), parameters.get("bad"));
+        assertSame(parameters, request.getParameters());
+        assertNull(parse("GET / HTTP/1.1\r\n\r\n").getQueryParameterString());
+        //endregion
+    }
+
+    @Test
+    public void formBodyIsDecodedInPlaceTest() throws Exception {
+        HttpRequest request = parse("POST /form?a=1 HTTP/1.1\r\n"
+                + "Content-Type: application/x-www-form-urlencoded\r\n"
+                + "Content-Length: 9\r\n"
+                + "\r\n"
+                + "a=2&b=x+y");
+        Map<String, String> files = new HashMap<>();
+        request.parseBody(files);
+
+        //region Verify
+        assertFalse(request.needsNanoHttpdBody());
+        assertEquals(Arrays.asList("1", "2"), request.getParameters().get("a"));
+        assertEquals(Arrays.asList("x y"), request.getParameters().get("b"));
+        assertTrue(files.isEmpty());
+        assertEquals(1, factory.getStats().getMemoryBodyCount());
+        //endregion
+    }
+
+    @Test
+    public void bodiesSpilledByNanoHttpdAreLeftToItTest() throws Exception {
+        //region Verify
+        assertTrue(parse("PUT /file HTTP/1.1\r\nContent-Length: 0\r\n\r\n").needsNanoHttpdBody());
+        assertTrue(parse("POST /upload HTTP/1.1\r\nContent-Type: Multipart/form-data; boundary=b\r\n\r\n")
+                .needsNanoHttpdBody());
+        //endregion
+    }
+
+    @Test
+    public void requestKeptPastItsResponseOutlivesThePooledBytesTest() throws Exception {
+        String raw = "POST /events?topic=a+b HTTP/1.1\r\nContent-Length: 4\r\n\r\nbody";
+        byte[] bytes = raw.getBytes(UTF_8);
+        HttpRequest request = new HttpRequest(codec, bytes, raw.length() - 4, bytes.length, null,
+                factory.create(), InetAddress.getLoopbackAddress());
+        request.parseHead();
+        request.releaseBytes();
+        //the pool lends the array to the next request
+        Arrays.fill(bytes, (byte) 'x');
+        Map<String, String> files = new HashMap<>();
+        request.parseBody(files);
+
+        //region Verify
+        assertEquals(Arrays.asList("a b"), request.getParameters().get("topic"));
+        assertEquals("topic=a+b", request.getQueryParameterString());
+        assertEquals("4", request.getHeaders().get("content-length"));
+        assertEquals(-1, request.getInputStream().read());
+        assertTrue(files.isEmpty());
+        //endregion
+    }
+
+    @Test
+    public void connectionCloseAndOldVersionsAreNotKeptAliveTest() throws Exception {
+        //region Verify
+        assertFalse(parse("GET / HTTP/1.1\r\nConnection: Close\r\n\r\n").isKeepAlive());
+        assertFalse(parse("GET / HTTP/1.0\r\n\r\n").isKeepAlive());
+        assertTrue(parse("GET /\r\n\r\n").isKeepAlive());
+        //endregion
+    }
+
+    @Test
+    public void malformedRequestLinesAreRejectedTest() {
+        //region Verify
+        assertBadRequest("\r\n\r\n");
+        assertBadRequest("GET\r\n\r\n");
+        assertBadRequest("FETCH / HTTP/1.1\r\n\r\n");
+        //endregion
+    }
+
+    @NonNull
+    private HttpRequest parse(@NonNull String raw) throws Exception {
+        byte[] bytes = raw.getBytes(UTF_8);
+        int headLength = raw.indexOf("\r\n\r\n") + 4;
+        HttpRequest request = new HttpRequest(codec, bytes, headLength, bytes.length, null,
+                factory.create(), InetAddress.getLoopbackAddress());
+        request.parseHead();
+        return request;
+    }
+
+    private void assertBadRequest(@NonNull String raw) {
+        try {
+            parse(raw);
+            fail("parsed " + raw);
+        } catch (NanoHTTPD.ResponseException e) {
+            assertEquals(NanoHTTPD.Response.Status.BAD_REQUEST, e.getStatus());
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @NonNull
+    private static String keyOf(@NonNull Map<String, String> headers, @NonNull String name) {
+        for (String key : headers.keySet()) {
+            if (key.equals(name))
+                return key;
+        }
+        throw new AssertionError(name);
+    }
+}
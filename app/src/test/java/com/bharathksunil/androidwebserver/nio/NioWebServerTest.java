@@ -0,0 +1,139 @@
+package com.bharathksunil.androidwebserver.nio;
+
+import com.bharathksunil.androidwebserver.TestSockets;
+import com.bharathksunil.androidwebserver.WebServerFactory;
+import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static com.bharathksunil.androidwebserver.TestSockets.readAll;
+import static com.bharathksunil.androidwebserver.TestSockets.send;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NioWebServerTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private NioWebServer webServer;
+
+    @Before
+    public void setup() throws WebServerException {
+        webServer = (NioWebServer) WebServerFactory.create(new WebServerConfig.Builder("127.0.0.1", "0")
+                .setEngine(WebServerConfig.Engine.NIO)
+                .setKeepAlive(500, 3)
+                .build());
+        webServer.addRoute(NanoHTTPD.Method.GET, "/hello/{name}",
+                (session, match) -> NanoHTTPD.newFixedLengthResponse("Hello " + match.getParameter("name")));
+        webServer.addRoute(NanoHTTPD.Method.POST, "/echo", (session, match) -> {
+            try {
+                byte[] body = new byte[Integer.parseInt(session.getHeaders().get("content-length"))];
+                int read = 0;
+                while (read < body.length)
+                    read += session.getInputStream().read(body, read, body.length - read);
+                return NanoHTTPD.newFixedLengthResponse(new String(body, ASCII));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        webServer.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        webServer.stopServer();
+    }
+
+    @Test
+    public void pipelinedKeepAliveRequestsTest() throws IOException {
+        try (Socket socket = connect()) {
+            send(socket, "GET /hello/a HTTP/1.1\r\n\r\n"
+                    + "POST /echo HTTP/1.1\r\nContent-Length: 4\r\n\r\nbody"
+                    + "GET /hello/c HTTP/1.1\r\n\r\n");
+
+            String responses = readAll(socket);
+
+            //region Verify
+            assertTrue(responses.startsWith("HTTP/1.1 200 OK"));
+            assertTrue(responses.contains("\r\n\r\nHello aHTTP/1.1 200 OK"));
+            assertTrue(responses.contains("\r\n\r\nbodyHTTP/1.1 200 OK"));
+            //the third request reaches the limit of requests per connection
+            assertTrue(responses.contains("onnection: close"));
+            assertTrue(responses.endsWith("Hello c"));
+            //endregion
+        }
+    }
+
+    @Test
+    public void largeBodyIsStreamedTest() throws IOException {
+        String body = new String(new char[3 * NioWebServer.MAX_BUFFERED_BODY_BYTES]).replace('\0', 'b');
+        String responses;
+        try (Socket socket = connect()) {
+            send(socket, "POST /echo HTTP/1.1\r\nContent-Length: " + body.length() + "\r\n\r\n"
+                    + body.substring(0, 100));
+            //the rest arrives while the handler reads
+            send(socket, body.substring(100) + "GET /hello/d HTTP/1.1\r\nConnection: close\r\n\r\n");
+            responses = readAll(socket);
+        }
+
+        //region Verify
+        assertTrue(responses.startsWith("HTTP/1.1 200 OK"));
+        assertTrue(responses.contains("\r\n\r\n" + body + "HTTP/1.1 200 OK"));
+        assertTrue(responses.endsWith("Hello d"));
+        //endregion
+    }
+
+    @Test
+    public void unreadStreamedBodyClosesTheConnectionTest() throws IOException {
+        String notFound;
+        try (Socket socket = connect()) {
+            send(socket, "GET /missing HTTP/1.0\r\n\r\n");
+            notFound = readAll(socket);
+        }
+        String unread;
+        try (Socket socket = connect()) {
+            send(socket, "POST /missing HTTP/1.1\r\nContent-Length: "
+                    + (NioWebServer.MAX_BUFFERED_BODY_BYTES + 1) + "\r\n\r\n");
+            unread = readAll(socket);
+        }
+
+        //region Verify
+        assertTrue(notFound.startsWith("HTTP/1.1 404 Not Found"));
+        assertTrue(unread.startsWith("HTTP/1.1 404 Not Found"));
+        //endregion
+    }
+
+    @Test
+    public void idleConnectionIsClosedTest() throws IOException {
+        try (Socket socket = connect()) {
+            long start = System.nanoTime();
+
+            //region Verify
+            assertEquals(-1, socket.getInputStream().read());
+            assertTrue(System.nanoTime() - start >= 400 * 1000 * 1000L);
+            //endregion
+        }
+    }
+
+    @Test
+    public void stopClosesTheListenerTest() {
+        webServer.stopServer();
+
+        //region Verify
+        assertFalse(webServer.isRunning());
+        assertEquals(-1, webServer.getListeningPort());
+        //endregion
+    }
+
+    private Socket connect() throws IOException {
+        return TestSockets.connect(webServer.getListeningPort());
+    }
+}
@@ -0,0 +1,103 @@
+package com.bharathksunil.androidwebserver.nio;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestBufferTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private RequestBuffer requestBuffer;
+
+    @Before
+    public void setup() {
+        requestBuffer = new RequestBuffer(16);
+    }
+
+    @Test
+    public void headArrivingInPiecesTest() {
+        append("GET / HTTP/1.1\r\nHost: a\r");
+        int incomplete = requestBuffer.frame();
+        append("\n\r");
+        int stillIncomplete = requestBuffer.frame();
+        append("\n");
+
+        //region Verify
+        assertEquals(RequestBuffer.INCOMPLETE, incomplete);
+        assertEquals(RequestBuffer.INCOMPLETE, stillIncomplete);
+        assertEquals(27, requestBuffer.frame());
+        assertEquals("GET / HTTP/1.1\r\nHost: a\r\n\r\n", new String(requestBuffer.take(27), ASCII));
+        assertTrue(requestBuffer.isEmpty());
+        //endregion
+    }
+
+    @Test
+    public void bodyIsFramedByContentLengthTest() {
+        append("POST /a HTTP/1.1\r\nCONTENT-Length: 5 \r\n\r\nhel");
+        int incomplete = requestBuffer.frame();
+        append("loGET");
+
+        //region Verify
+        assertEquals(RequestBuffer.INCOMPLETE, incomplete);
+        assertEquals(45, requestBuffer.frame());
+        assertTrue(new String(requestBuffer.take(45), ASCII).endsWith("\r\n\r\nhello"));
+        assertEquals(RequestBuffer.INCOMPLETE, requestBuffer.frame());
+        //endregion
+    }
+
+    @Test
+    public void pipelinedRequestsTest() {
+        append("GET /a HTTP/1.1\n\nGET /b HTTP/1.1\r\n\r\n");
+
+        //region Verify
+        assertEquals(17, requestBuffer.frame());
+        assertEquals("GET /a HTTP/1.1\n\n", new String(requestBuffer.take(17), ASCII));
+        assertEquals(19, requestBuffer.frame());
+        assertEquals("GET /b HTTP/1.1\r\n\r\n", new String(requestBuffer.take(19), ASCII));
+        //endregion
+    }
+
+    @Test
+    public void largeBodyIsStreamedTest() {
+        append("POST /a HTTP/1.1\r\nContent-Length: 20\r\n\r\n0123456789");
+        int headLength = requestBuffer.frame();
+        long streamedBodyLength = requestBuffer.getStreamedBodyLength();
+        requestBuffer.take(headLength);
+        byte[] body = new byte[8];
+        int read = requestBuffer.read(body, 0, body.length);
+
+        //region Verify
+        assertEquals(40, headLength);
+        assertEquals(20, streamedBodyLength);
+        assertEquals(8, read);
+        assertEquals("01234567", new String(body, ASCII));
+        assertEquals(2, requestBuffer.size());
+        assertEquals(2, requestBuffer.read(body, 0, body.length));
+        assertTrue(requestBuffer.isEmpty());
+        //endregion
+    }
+
+    @Test
+    public void unframeableRequestsTest() {
+        //region Verify
+        assertEquals(RequestBuffer.MALFORMED, frame("POST / HTTP/1.1\r\nContent-Length: 1 2\r\n\r\n"));
+        assertEquals(RequestBuffer.MALFORMED, frame("POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n"));
+        assertEquals(RequestBuffer.LENGTH_REQUIRED, frame("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"));
+        assertEquals(RequestBuffer.HEAD_TOO_LARGE, frame("GET /" + new String(new char[RequestBuffer.MAX_HEAD_BYTES]).replace('\0', 'a')));
+        //endregion
+    }
+
+    private int frame(String request) {
+        requestBuffer = new RequestBuffer(16);
+        append(request);
+        return requestBuffer.frame();
+    }
+
+    private void append(String bytes) {
+        byte[] data = bytes.getBytes(ASCII);
+        requestBuffer.append(data, 0, data.length);
+    }
+}
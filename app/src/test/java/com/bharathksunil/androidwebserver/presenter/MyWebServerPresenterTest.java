@@ -7,12 +7,20 @@ import com.bharathksunil.androidwebserver.model.WebServerConfig;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -341,4 +349,136 @@ public class MyWebServerPresenterTest {
         //endregion
     }
     //endregion
-}
\ No newline at end of file
+
+    //region WiFi Change Tests
+    @Test
+    public void wifiIpChangedWhileServerRunningTest() throws WebServerException {
+        when(mMockWebServer.isRunning()).thenReturn(true); //initially set server running
+        when(mMockWebServer.getWebServerConfig()).thenReturn(webServerConfig);
+
+        IWebServerPresenter webServerPresenter = new MyWebServerPresenter(mMockWebServer);
+        webServerPresenter.setView(mMockView);
+        webServerPresenter.onWiFiConnected(webServerConfig); //initially connected
+        WebServerConfig newWebServerConfig = new WebServerConfig(
+                "192.168.1.2",
+                "8080",
+                true
+        );
+        webServerPresenter.onWiFiConnected(newWebServerConfig); //simulate a new network
+
+        //region Verify
+        verify(mMockWebServer, times(1)).reconfigure(newWebServerConfig);
+        verify(mMockWebServer, never()).startServer();
+        verify(mMockWebServer, never()).stopServer();
+        verify(mMockView, never()).onError(any(WebServerException.class));
+        verify(mMockView, times(1)).onServerStarted(webServerConfig); //called when setView()
+        verify(mMockView, times(1)).onServerStarted(newWebServerConfig);
+        //endregion
+    }
+
+    @Test
+    public void wifiChangedToPortInUseTest() throws WebServerException {
+        when(mMockWebServer.isRunning()).thenReturn(true); //initially set server running
+        when(mMockWebServer.getWebServerConfig()).thenReturn(webServerConfig);
+        WebServerConfig newWebServerConfig = new WebServerConfig(
+                "192.168.1.1",
+                "8081",
+                true
+        );
+        doThrow(new WebServerException(WebServerException.Type.PORT_IN_USE))
+                .when(mMockWebServer).reconfigure(newWebServerConfig);
+
+        IWebServerPresenter webServerPresenter = new MyWebServerPresenter(mMockWebServer);
+        webServerPresenter.setView(mMockView);
+        webServerPresenter.onWiFiConnected(newWebServerConfig);
+
+        //region Verify
+        verify(mMockWebServer, times(1)).reconfigure(newWebServerConfig);
+        verify(mMockWebServer, never()).stopServer();
+        verify(mMockView, never()).onServerStarted(newWebServerConfig);
+        verify(mMockView, times(1))
+                .onError(new WebServerException(WebServerException.Type.PORT_IN_USE));
+        //endregion
+    }
+    //endregion
+
+    //region Lifecycle State Tests
+    @Test
+    public void startServerRunsInTheBackgroundOnceTest() throws WebServerException {
+        TestScheduler lifecycleScheduler = new TestScheduler();
+        when(mMockWebServer.isRunning()).thenReturn(false);//set as stopped
+        when(mMockWebServer.getWebServerConfig()).thenReturn(webServerConfig);
+
+        IWebServerPresenter webServerPresenter = new MyWebServerPresenter(mMockWebServer,
+                lifecycleScheduler, Schedulers.trampoline());
+        webServerPresenter.setView(mMockView);
+        webServerPresenter.onWiFiConnected(webServerConfig);
+        webServerPresenter.startServer();
+        webServerPresenter.startServer(); //simulate a second tap on the power button
+
+        //the server is not started on the thread of the view
+        verify(mMockWebServer, never()).startServer();
+        assertEquals(ServerState.STARTING, webServerPresenter.getServerState());
+        assertEquals(-1, webServerPresenter.getTimeToListeningMillis());
+
+        lifecycleScheduler.triggerActions();
+
+        //region Verify
+        verify(mMockWebServer, times(1)).startServer();
+        verify(mMockView, never()).onError(any(WebServerException.class));
+        verify(mMockView, times(1)).onServerStarted(webServerConfig);
+        assertEquals(ServerState.RUNNING, webServerPresenter.getServerState());
+        assertTrue(webServerPresenter.getTimeToListeningMillis() >= 0);
+        //endregion
+    }
+
+    @Test
+    public void wifiSwitchedOffWhileServerStartingTest() throws WebServerException {
+        TestScheduler lifecycleScheduler = new TestScheduler();
+        when(mMockWebServer.isRunning()).thenReturn(false);//set as stopped
+        when(mMockWebServer.getWebServerConfig()).thenReturn(webServerConfig);
+
+        IWebServerPresenter webServerPresenter = new MyWebServerPresenter(mMockWebServer,
+                lifecycleScheduler, Schedulers.trampoline());
+        webServerPresenter.setView(mMockView);
+        webServerPresenter.onWiFiConnected(webServerConfig);
+        webServerPresenter.startServer();
+        webServerPresenter.onWiFiDisconnected();//simulate wifi gets disconnected while starting
+
+        assertEquals(ServerState.DRAINING, webServerPresenter.getServerState());
+        webServerPresenter.startServer(); //refused as the wifi is off
+        lifecycleScheduler.triggerActions();
+
+        //region Verify
+        InOrder lifecycle = inOrder(mMockWebServer);
+        lifecycle.verify(mMockWebServer).startServer();
+        lifecycle.verify(mMockWebServer).stopServer();
+        verify(mMockWebServer, times(1)).startServer();
+        verify(mMockView, never()).onServerStarted(webServerConfig);
+        verify(mMockView, times(2))
+                .onError(new WebServerException(WebServerException.Type.WIFI_OFF));
+        assertEquals(ServerState.STOPPED, webServerPresenter.getServerState());
+        //endregion
+    }
+
+    @Test
+    public void startServerWithPortInUseTest() throws WebServerException {
+        when(mMockWebServer.isRunning()).thenReturn(false);//set as stopped
+        when(mMockWebServer.getWebServerConfig()).thenReturn(webServerConfig);
+        doThrow(new WebServerException(WebServerException.Type.PORT_IN_USE))
+                .when(mMockWebServer).startServer();
+
+        IWebServerPresenter webServerPresenter = new MyWebServerPresenter(mMockWebServer);
+        webServerPresenter.setView(mMockView);
+        webServerPresenter.onWiFiConnected(webServerConfig);
+        webServerPresenter.startServer();
+
+        //region Verify
+        verify(mMockView, never()).onServerStarted(webServerConfig);
+        verify(mMockView, times(1))
+                .onError(new WebServerException(WebServerException.Type.PORT_IN_USE));
+        assertEquals(ServerState.STOPPED, webServerPresenter.getServerState());
+        //endregion
+    }
+    //endregion
+}
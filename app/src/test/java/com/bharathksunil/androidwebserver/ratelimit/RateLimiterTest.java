@@ -0,0 +1,105 @@
+package com.bharathksunil.androidwebserver.ratelimit;
+
+import com.bharathksunil.androidwebserver.RequestDispatcher;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class RateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+    //region Mock Objects
+    @Mock
+    private NanoHTTPD.IHTTPSession mMockSession;
+    //endregion
+
+    @Test
+    public void burstThenRefillTest() {
+        RateLimiter rateLimiter = new RateLimiter(10, 3);
+        long now = 1000 * SECOND;
+
+        //region Verify
+        for (int i = 0; i < 3; i++)
+            assertEquals(0, rateLimiter.acquire("10.0.0.1", now));
+        long waitNanos = rateLimiter.acquire("10.0.0.1", now);
+        assertEquals(SECOND / 10, waitNanos);
+        assertEquals(1, RateLimiter.toRetryAfterSeconds(waitNanos));
+        //a refused request takes no token
+        assertEquals(0, rateLimiter.acquire("10.0.0.1", now + waitNanos));
+        assertTrue(rateLimiter.acquire("10.0.0.1", now + waitNanos) > 0);
+        //the other clients have their own bucket
+        assertEquals(0, rateLimiter.acquire("10.0.0.2", now));
+        assertEquals(2, rateLimiter.getStats().getThrottledCount());
+        //endregion
+    }
+
+    @Test
+    public void sustainedRateTest() {
+        RateLimiter rateLimiter = new RateLimiter(100, 1);
+        long now = 0;
+        int allowed = 0;
+        //a client sending twice the rate for 10 seconds
+        for (int i = 0; i < 2000; i++, now += SECOND / 200) {
+            if (rateLimiter.acquire("10.0.0.1", now) == 0)
+                allowed++;
+        }
+
+        //region Verify
+        assertEquals(1000, allowed);
+        //endregion
+    }
+
+    @Test
+    public void idleBucketsAreDroppedTest() {
+        RateLimiter rateLimiter = new RateLimiter(1, 5);
+        long now = System.nanoTime();
+        for (int i = 0; i < 100; i++)
+            rateLimiter.acquire("10.0.0." + i, now);
+        assertEquals(100, rateLimiter.getStats().getClientCount());
+        rateLimiter.acquire("10.0.1.1", now + 60 * SECOND);
+
+        //region Verify
+        assertEquals(1, rateLimiter.getStats().getClientCount());
+        //endregion
+    }
+
+    @Test
+    public void dispatcherAnswers429Test() {
+        RequestDispatcher dispatcher = new RequestDispatcher(new WebServerConfig.Builder("127.0.0.1", "0")
+                .setRateLimit(1, 2)
+                .setRouteRateLimit("/login", 1, 1)
+                .build());
+        dispatcher.addRoute(NanoHTTPD.Method.POST, "/login", (session, match) ->
+                NanoHTTPD.newFixedLengthResponse("welcome"));
+        when(mMockSession.getMethod()).thenReturn(NanoHTTPD.Method.POST);
+        when(mMockSession.getUri()).thenReturn("/login");
+        when(mMockSession.getRemoteIpAddress()).thenReturn("10.0.0.1");
+
+        //region Verify
+        assertEquals(NanoHTTPD.Response.Status.OK, dispatcher.serve(mMockSession).getStatus());
+        //the route allows one request at once
+        NanoHTTPD.Response response = dispatcher.serve(mMockSession);
+        assertEquals(NanoHTTPD.Response.Status.TOO_MANY_REQUESTS, response.getStatus());
+        assertEquals("1", response.getHeader("Retry-After"));
+        //the whole server allows two
+        assertEquals(NanoHTTPD.Response.Status.TOO_MANY_REQUESTS, dispatcher.serve(mMockSession).getStatus());
+        assertEquals(1, dispatcher.getRateLimiterStats().getThrottledCount());
+        assertEquals(1, dispatcher.getRouteRateLimiterStats("/login").getThrottledCount());
+        assertNull(dispatcher.getRouteRateLimiterStats("/"));
+        //endregion
+    }
+}
@@ -0,0 +1,94 @@
+package com.bharathksunil.androidwebserver.response;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class BufferPoolTest {
+    private BufferPool pool;
+
+    @Before
+    public void setup() {
+        //a single stripe, so every thread shares the buffers
+        pool = new BufferPool(new int[]{16, 64}, 1, 1);
+    }
+
+    @Test
+    public void releasedBufferIsReusedTest() {
+        byte[] first = pool.acquire(10);
+        assertEquals(16, first.length);
+        pool.release(first);
+        byte[] second = pool.acquire(16);
+        byte[] third = pool.acquire(16);
+
+        //region Verify
+        assertSame(first, second);
+        assertNotSame(second, third);
+        BufferPoolStats stats = pool.getStats();
+        assertEquals(3, stats.getAcquireCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(2, stats.getInUseCount());
+        assertEquals(0, stats.getPooledBytes());
+        assertEquals(2.0 / 3, stats.getMissRate(), 1e-9);
+        //endregion
+    }
+
+    @Test
+    public void bufferGivenBackToAFullPoolIsDiscardedTest() {
+        byte[] first = pool.acquire(64);
+        byte[] second = pool.acquire(64);
+        pool.release(first);
+        pool.release(second);
+
+        //region Verify
+        BufferPoolStats stats = pool.getStats();
+        assertEquals(1, stats.getDiscardedCount());
+        assertEquals(0, stats.getInUseCount());
+        assertEquals(64, stats.getPooledBytes());
+        assertEquals(80, stats.getMaxPooledBytes());
+        //endregion
+    }
+
+    @Test
+    public void oversizedBufferIsNeverPooledTest() {
+        byte[] buffer = pool.acquire(100);
+        pool.release(buffer);
+
+        //region Verify
+        assertEquals(100, buffer.length);
+        assertNotSame(buffer, pool.acquire(100));
+        BufferPoolStats stats = pool.getStats();
+        assertEquals(2, stats.getMissCount());
+        assertEquals(0, stats.getPooledBytes());
+        assertEquals(0, stats.getDiscardedCount());
+        //endregion
+    }
+
+    @Test
+    public void pooledStreamEncodesAndGivesBackItsBufferTest() throws Exception {
+        ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        PooledOutputStream stream = new PooledOutputStream(socket, pool, 16);
+        stream.writeLatin1("Content-Length: ");
+        stream.writeDecimal(1234567890123L);
+        stream.writeLatin1("\r\n");
+        stream.write(new byte[40], 0, 40);
+        stream.flush();
+        stream.release();
+        stream.release();
+
+        //region Verify
+        assertEquals("Content-Length: 1234567890123\r\n",
+                new String(socket.toByteArray(), 0, 31, Charset.forName("ISO-8859-1")));
+        assertEquals(71, socket.size());
+        BufferPoolStats stats = pool.getStats();
+        assertEquals(0, stats.getInUseCount());
+        assertEquals(16, stats.getPooledBytes());
+        //endregion
+    }
+}
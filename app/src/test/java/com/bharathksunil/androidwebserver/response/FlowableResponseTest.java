@@ -0,0 +1,152 @@
+package com.bharathksunil.androidwebserver.response;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlowableResponseTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void itemsAreSentChunkedTest() {
+        FlowableResponse response = FlowableResponse.ofStrings("text/plain; charset=utf-8",
+                Flowable.just("a", "bc", "").concatWith(Flowable.just("d").subscribeOn(Schedulers.computation())));
+
+        String sent = send(response);
+
+        //region Verify
+        assertTrue(sent.contains("Transfer-Encoding: chunked\r\n"));
+        assertTrue(sent.endsWith("\r\n\r\n4\r\nabcd\r\n0\r\n\r\n")
+                //the first items may be flushed before the last one arrives on the other thread
+                || sent.endsWith("\r\n3\r\nabc\r\n1\r\nd\r\n0\r\n\r\n"));
+        //endregion
+    }
+
+    @Test
+    public void producerFollowsTheSocketTest() throws IOException {
+        final AtomicInteger produced = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        Flowable<ByteBuffer> flowable = Flowable.range(0, 1000)
+                .subscribeOn(Schedulers.computation())
+                .map(i -> {
+                    produced.incrementAndGet();
+                    return ByteBuffer.wrap(new byte[1024]);
+                });
+        FlowableResponse response = new FlowableResponse(NanoHTTPD.Response.Status.OK, null, flowable, 8);
+        final AtomicInteger written = new AtomicInteger();
+
+        response.writeBody(new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                //a slow client
+                Thread.yield();
+                int writtenItems = written.addAndGet(len) / 1024;
+                maxAhead.set(Math.max(maxAhead.get(), produced.get() - writtenItems));
+            }
+        }, null);
+
+        //region Verify
+        assertEquals(1000 * 1024, written.get());
+        //the prefetch window and the items coalesced into one chunk
+        assertTrue("ran ahead by " + maxAhead.get(), maxAhead.get() <= 8 + 8);
+        //endregion
+    }
+
+    @Test
+    public void disconnectCancelsTheFlowableTest() {
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final AtomicInteger produced = new AtomicInteger();
+        FlowableResponse response = FlowableResponse.ofStrings("text/plain",
+                Flowable.range(0, Integer.MAX_VALUE)
+                        .doOnNext(i -> produced.incrementAndGet())
+                        .map(i -> new String(new char[1024]).replace('\0', 'x'))
+                        .doOnCancel(() -> cancelled.set(true)));
+
+        response.send(new OutputStream() {
+            private int mWritten;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                mWritten += len;
+                if (mWritten > 64 * 1024)
+                    throw new IOException("Broken pipe");
+            }
+        });
+
+        //region Verify
+        assertTrue(cancelled.get());
+        assertTrue(produced.get() < 64 + 2 * FlowableResponse.DEFAULT_PREFETCH);
+        assertEquals("close", response.getHeader("connection"));
+        //endregion
+    }
+
+    @Test
+    public void failingFlowableClosesTheConnectionTest() {
+        FlowableResponse response = FlowableResponse.ofStrings("text/plain",
+                Flowable.just("partial").concatWith(Flowable.<String>error(new IllegalStateException("source failed"))));
+
+        String sent = send(response);
+
+        //region Verify
+        assertFalse(sent.endsWith("0\r\n\r\n"));
+        assertEquals("close", response.getHeader("connection"));
+        //endregion
+    }
+
+    @Test
+    public void sourceIgnoringBackpressureFailsTheBodyTest() {
+        Flowable<String> flowable = Flowable.fromPublisher(subscriber -> {
+            subscriber.onSubscribe(new org.reactivestreams.Subscription() {
+                @Override
+                public void request(long n) {
+                    //ignored
+                }
+
+                @Override
+                public void cancel() {
+                    //ignored
+                }
+            });
+            for (int i = 0; i < 100; i++)
+                subscriber.onNext("x");
+            subscriber.onComplete();
+        });
+        FlowableResponse response = new FlowableResponse(NanoHTTPD.Response.Status.OK, "text/plain", flowable, 4);
+
+        send(response);
+
+        //region Verify
+        assertEquals("close", response.getHeader("connection"));
+        //endregion
+    }
+
+    private static String send(DirectResponse response) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        response.send(bytes);
+        return new String(bytes.toByteArray(), ASCII);
+    }
+}
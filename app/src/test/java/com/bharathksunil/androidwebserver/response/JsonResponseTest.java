@@ -0,0 +1,166 @@
+package com.bharathksunil.androidwebserver.response;
+
+import com.bharathksunil.androidwebserver.compression.ContentEncoding;
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonResponseTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final Gson gson = new Gson();
+
+    @Test
+    public void arrayIsStreamedChunkedTest() {
+        JsonResponse response = JsonResponse.ofArray(gson, Arrays.asList(new Record(1, "\u00e4"), null, new Record(2, "b")));
+
+        String sent = send(response);
+
+        //region Verify
+        assertTrue(sent.startsWith("HTTP/1.1 200 OK \r\n"));
+        assertTrue(sent.contains("Content-Type: application/json; charset=utf-8\r\n"));
+        assertTrue(sent.contains("Transfer-Encoding: chunked\r\n"));
+        assertEquals("[{\"id\":1,\"name\":\"\u00e4\"},null,{\"id\":2,\"name\":\"b\"}]", unchunk(sent));
+        //endregion
+    }
+
+    @Test
+    public void lazyIterableIsWalkedWhileSendingAndClosedTest() {
+        RecordCursor cursor = new RecordCursor(10000);
+        JsonResponse response = JsonResponse.ofArray(gson, cursor);
+        int producedBeforeSending = cursor.mProduced;
+
+        String body = unchunk(send(response));
+
+        //region Verify
+        assertEquals(0, producedBeforeSending);
+        assertEquals(10000, cursor.mProduced);
+        assertTrue(cursor.mClosed);
+        assertTrue(body.startsWith("[{\"id\":0,\"name\":\"r0\"},{\"id\":1,"));
+        assertTrue(body.endsWith("{\"id\":9999,\"name\":\"r9999\"}]"));
+        //endregion
+    }
+
+    @Test
+    public void bodyIsCompressedWhenAcceptedTest() throws IOException {
+        JsonResponse response = JsonResponse.of(gson, new Record(7, "gzip"));
+        response.setContentEncoding(ContentEncoding.GZIP);
+
+        String sent = send(response);
+
+        //region Verify
+        assertTrue(sent.contains("Content-Encoding: gzip\r\n"));
+        InputStream body = new GZIPInputStream(new ByteArrayInputStream(unchunk(sent).getBytes(Charset.forName("ISO-8859-1"))));
+        assertEquals("{\"id\":7,\"name\":\"gzip\"}", new String(readAll(body), UTF_8));
+        //endregion
+    }
+
+    @Test
+    public void failingSerializationClosesTheConnectionTest() {
+        JsonResponse response = JsonResponse.of(writer -> {
+            writer.beginArray().value(1);
+            throw new IllegalStateException("cursor failed");
+        });
+
+        String sent = send(response);
+
+        //region Verify
+        assertTrue(sent.contains("Transfer-Encoding: chunked\r\n"));
+        //the last chunk is never sent, so the client sees a truncated body
+        assertFalse(sent.endsWith("0\r\n\r\n"));
+        assertEquals("close", response.getHeader("connection"));
+        //endregion
+    }
+
+    private static String send(DirectResponse response) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        response.send(bytes);
+        //ISO-8859-1 keeps every byte as one char, bodies are decoded by the tests
+        return new String(bytes.toByteArray(), Charset.forName("ISO-8859-1"));
+    }
+
+    /**
+     * @return the body of a chunked response, decoded as UTF-8 unless it is compressed
+     */
+    private static String unchunk(String sent) {
+        int position = sent.indexOf("\r\n\r\n") + 4;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            int lineEnd = sent.indexOf("\r\n", position);
+            int size = Integer.parseInt(sent.substring(position, lineEnd), 16);
+            if (size == 0)
+                break;
+            byte[] chunk = sent.substring(lineEnd + 2, lineEnd + 2 + size).getBytes(Charset.forName("ISO-8859-1"));
+            body.write(chunk, 0, chunk.length);
+            position = lineEnd + 2 + size + 2;
+        }
+        boolean compressed = sent.contains("Content-Encoding");
+        return new String(body.toByteArray(), compressed ? Charset.forName("ISO-8859-1") : UTF_8);
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) >= 0)
+            bytes.write(buffer, 0, read);
+        return bytes.toByteArray();
+    }
+
+    private static final class Record {
+        private final int id;
+        private final String name;
+
+        Record(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Produces the records only when asked, like a database cursor
+     */
+    private static final class RecordCursor implements Iterable<Record>, Closeable {
+        private final int mCount;
+        private int mProduced;
+        private boolean mClosed;
+
+        RecordCursor(int count) {
+            this.mCount = count;
+        }
+
+        @Override
+        public Iterator<Record> iterator() {
+            return new Iterator<Record>() {
+                @Override
+                public boolean hasNext() {
+                    return mProduced < mCount;
+                }
+
+                @Override
+                public Record next() {
+                    int id = mProduced++;
+                    return new Record(id, "r" + id);
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            mClosed = true;
+        }
+    }
+}
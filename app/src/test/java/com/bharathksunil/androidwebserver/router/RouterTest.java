@@ -0,0 +1,150 @@
+package com.bharathksunil.androidwebserver.router;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RouterTest {
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+    //region Mock Objects
+    @Mock
+    private RouteHandler mMockHandler;
+    @Mock
+    private NanoHTTPD.IHTTPSession mMockSession;
+    //endregion
+    private Router router;
+
+    @Before
+    public void setup() {
+        router = new Router();
+        router.addRoute(NanoHTTPD.Method.GET, "/", mMockHandler);
+        router.addRoute(NanoHTTPD.Method.GET, "/users/me", mMockHandler);
+        router.addRoute(NanoHTTPD.Method.GET, "/users/{id}", mMockHandler);
+        router.addRoute(NanoHTTPD.Method.GET, "/users/{id}/posts/{postId}", mMockHandler);
+        router.addRoute(NanoHTTPD.Method.POST, "/users/{id}", mMockHandler);
+        router.addRoute(NanoHTTPD.Method.GET, "/assets/*", mMockHandler);
+    }
+
+    @Test
+    public void staticRouteTest() {
+        RouteMatch match = router.match(NanoHTTPD.Method.GET, "/users/me");
+
+        //region Verify
+        assertNotNull(match);
+        assertEquals("/users/me", match.getPattern());
+        assertNotNull(router.match(NanoHTTPD.Method.GET, "/"));
+        assertNotNull(router.match(NanoHTTPD.Method.GET, "//users/me/"));
+        //endregion
+    }
+
+    @Test
+    public void pathParametersTest() {
+        RouteMatch match = router.match(NanoHTTPD.Method.GET, "/users/42/posts/7");
+
+        //region Verify
+        assertNotNull(match);
+        assertEquals("/users/{id}/posts/{postId}", match.getPattern());
+        assertEquals("42", match.getParameter("id"));
+        assertEquals("7", match.getParameter("postId"));
+        assertNull(match.getParameter("missing"));
+        //endregion
+    }
+
+    @Test
+    public void staticSegmentBacktracksToParameterTest() {
+        RouteMatch match = router.match(NanoHTTPD.Method.GET, "/users/me/posts/1");
+
+        //region Verify
+        assertNotNull(match);
+        assertEquals("me", match.getParameter("id"));
+        //endregion
+    }
+
+    @Test
+    public void wildcardTest() {
+        RouteMatch match = router.match(NanoHTTPD.Method.GET, "/assets/css/site.css");
+
+        //region Verify
+        assertNotNull(match);
+        assertEquals("css/site.css", match.getWildcard());
+        assertEquals("", router.match(NanoHTTPD.Method.GET, "/assets").getWildcard());
+        //endregion
+    }
+
+    @Test
+    public void unknownPathTest() {
+        when(mMockSession.getUri()).thenReturn("/nothing/here");
+        when(mMockSession.getMethod()).thenReturn(NanoHTTPD.Method.GET);
+
+        //region Verify
+        assertNull(router.route(mMockSession));
+        assertNull(router.match(NanoHTTPD.Method.GET, "/users/1/posts"));
+        verify(mMockHandler, never()).handle(any(NanoHTTPD.IHTTPSession.class), any(RouteMatch.class));
+        //endregion
+    }
+
+    @Test
+    public void methodNotAllowedTest() {
+        when(mMockSession.getUri()).thenReturn("/users/1");
+        when(mMockSession.getMethod()).thenReturn(NanoHTTPD.Method.DELETE);
+
+        NanoHTTPD.Response response = router.route(mMockSession);
+
+        //region Verify
+        assertNotNull(response);
+        assertEquals(NanoHTTPD.Response.Status.METHOD_NOT_ALLOWED, response.getStatus());
+        assertEquals("GET, POST", response.getHeader("Allow"));
+        verify(mMockHandler, never()).handle(any(NanoHTTPD.IHTTPSession.class), any(RouteMatch.class));
+        //endregion
+    }
+
+    @Test
+    public void headIsServedByGetTest() {
+        NanoHTTPD.Response ok = NanoHTTPD.newFixedLengthResponse("ok");
+        when(mMockSession.getUri()).thenReturn("/users/1");
+        when(mMockSession.getMethod()).thenReturn(NanoHTTPD.Method.HEAD);
+        when(mMockHandler.handle(any(NanoHTTPD.IHTTPSession.class), any(RouteMatch.class))).thenReturn(ok);
+
+        //region Verify
+        assertEquals(ok, router.route(mMockSession));
+        verify(mMockHandler, times(1)).handle(any(NanoHTTPD.IHTTPSession.class), any(RouteMatch.class));
+        //endregion
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void conflictingParameterNamesTest() {
+        router.addRoute(NanoHTTPD.Method.PUT, "/users/{userId}", mMockHandler);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wildcardMustBeLastTest() {
+        router.addRoute(NanoHTTPD.Method.GET, "/files/*/meta", mMockHandler);
+    }
+
+    @Test
+    public void manyStaticSiblingsTest() {
+        for (int i = 0; i < 300; i++)
+            router.addRoute(NanoHTTPD.Method.GET, "/api/endpoint" + i, mMockHandler);
+
+        //region Verify
+        for (int i = 0; i < 300; i++)
+            assertEquals("/api/endpoint" + i, router.match(NanoHTTPD.Method.GET, "/api/endpoint" + i).getPattern());
+        assertNull(router.match(NanoHTTPD.Method.GET, "/api/endpoint300"));
+        //endregion
+    }
+}
@@ -0,0 +1,125 @@
+package com.bharathksunil.androidwebserver.runner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+public class BoundedAsyncRunnerTest {
+    private BoundedAsyncRunner asyncRunner;
+    private CountDownLatch releaseWorkers;
+
+    @Before
+    public void setup() {
+        asyncRunner = new BoundedAsyncRunner(1, 2, 1, 5);
+        releaseWorkers = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        releaseWorkers.countDown();
+        asyncRunner.shutdown();
+    }
+
+    @Test
+    public void saturatedPoolRejectsWithRetryAfterTest() throws Exception {
+        NanoHTTPD.ClientHandler first = blockingHandler();
+        NanoHTTPD.ClientHandler second = blockingHandler();
+        NanoHTTPD.ClientHandler queued = blockingHandler();
+        NanoHTTPD.ClientHandler rejected = blockingHandler();
+
+        asyncRunner.exec(first);    //taken by the core worker
+        asyncRunner.exec(second);   //no worker is idle, so a second one is created
+        asyncRunner.exec(queued);   //pool full, waits in the queue
+        asyncRunner.exec(rejected); //pool and queue full
+
+        //region Verify
+        verify(first, timeout(1000)).run();
+        verify(second, timeout(1000)).run();
+        verify(queued, never()).run();
+        verify(rejected, never()).run();
+        verify((BoundedAsyncRunner.Rejectable) rejected, times(1)).reject(5);
+        WorkerPoolStats stats = asyncRunner.getStats();
+        assertEquals(2, stats.getPoolSize());
+        assertEquals(1, stats.getQueueDepth());
+        assertEquals(3, stats.getAcceptedCount());
+        assertEquals(1, stats.getRejectedCount());
+        assertEquals(3, asyncRunner.getRunning().size());
+        //endregion
+    }
+
+    @Test
+    public void idleWorkerTakesTheTaskWithoutGrowingThePoolTest() throws Exception {
+        CountDownLatch ran = new CountDownLatch(2);
+        asyncRunner.submit(ran::countDown);
+        //wait for the core worker to be idle again
+        long deadline = System.currentTimeMillis() + 1000;
+        while (asyncRunner.getStats().getActiveWorkers() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        asyncRunner.submit(ran::countDown);
+
+        //region Verify
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        assertEquals(1, asyncRunner.getStats().getLargestPoolSize());
+        //endregion
+    }
+
+    @Test
+    public void closedHandlerIsNoLongerTrackedTest() throws Exception {
+        NanoHTTPD.ClientHandler handler = blockingHandler();
+        asyncRunner.exec(handler);
+        verify(handler, timeout(1000)).run();
+
+        asyncRunner.closed(handler);
+        asyncRunner.closeAll();
+
+        //region Verify
+        assertTrue(asyncRunner.getRunning().isEmpty());
+        verify(handler, never()).close();
+        //endregion
+    }
+
+    @Test
+    public void closeAllClosesRunningHandlersTest() throws Exception {
+        NanoHTTPD.ClientHandler handler = blockingHandler();
+        asyncRunner.exec(handler);
+        verify(handler, timeout(1000)).run();
+
+        asyncRunner.closeAll();
+
+        //region Verify
+        verify(handler, times(1)).close();
+        //endregion
+    }
+
+    /**
+     * @return a mocked handler whose run() blocks until the test is torn down
+     */
+    private NanoHTTPD.ClientHandler blockingHandler() {
+        NanoHTTPD.ClientHandler handler = mock(NanoHTTPD.ClientHandler.class,
+                withSettings().extraInterfaces(BoundedAsyncRunner.Rejectable.class));
+        doAnswer(invocation -> {
+            try {
+                releaseWorkers.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                //the runner was shut down
+            }
+            return null;
+        }).when(handler).run();
+        return handler;
+    }
+}
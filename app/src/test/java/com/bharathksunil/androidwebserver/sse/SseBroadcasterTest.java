@@ -0,0 +1,163 @@
+package com.bharathksunil.androidwebserver.sse;
+
+import com.bharathksunil.androidwebserver.IWebServer;
+import com.bharathksunil.androidwebserver.MyWebServer;
+import com.bharathksunil.androidwebserver.TestSockets;
+import com.bharathksunil.androidwebserver.WebServerFactory;
+import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.nio.NioWebServer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static com.bharathksunil.androidwebserver.TestSockets.readUntil;
+import static com.bharathksunil.androidwebserver.TestSockets.send;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SseBroadcasterTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private SseBroadcaster broadcaster;
+    private IWebServer webServer;
+
+    @After
+    public void tearDown() {
+        if (webServer != null)
+            webServer.stopServer();
+        if (broadcaster != null)
+            broadcaster.stop();
+    }
+
+    @Test
+    public void eventEncodingTest() {
+        //region Verify
+        assertEquals("id: 7\nevent: status\ndata: a\ndata: b\ndata: \ndata: c\n\n",
+                new String(new SseEvent(7, "status", "a\r\nb\n\rc").getBytes(), UTF_8));
+        assertEquals("id: 8\ndata: \n\n", new String(new SseEvent(8, null, "").getBytes(), UTF_8));
+        //endregion
+    }
+
+    @Test
+    public void slowSubscriberLosesTheOldestEventsTest() throws InterruptedException {
+        broadcaster = new SseBroadcaster(0, 2, SseBroadcaster.OverflowPolicy.DROP_OLDEST, 60000);
+        broadcaster.start();
+        SseSubscriber subscriber = new SseSubscriber(broadcaster, 2);
+        broadcaster.subscribe(subscriber, -1);
+        for (int i = 0; i < 3; i++)
+            broadcaster.publish(null, String.valueOf(i));
+        awaitDropped(1);
+
+        //region Verify
+        assertArrayEquals(new SseEvent(2, null, "1").getBytes(), subscriber.take());
+        assertArrayEquals(new SseEvent(3, null, "2").getBytes(), subscriber.take());
+        assertEquals(1, broadcaster.getStats().getSubscriberCount());
+        //endregion
+    }
+
+    @Test
+    public void slowSubscriberIsDisconnectedTest() throws InterruptedException {
+        broadcaster = new SseBroadcaster(0, 2, SseBroadcaster.OverflowPolicy.DISCONNECT, 60000);
+        broadcaster.start();
+        SseSubscriber subscriber = new SseSubscriber(broadcaster, 2);
+        broadcaster.subscribe(subscriber, -1);
+        for (int i = 0; i < 3; i++)
+            broadcaster.publish(null, String.valueOf(i));
+        awaitDisconnected(1);
+
+        //region Verify
+        assertNull(subscriber.take());
+        assertEquals(1, broadcaster.getStats().getDisconnectedCount());
+        //endregion
+    }
+
+    @Test
+    public void nioStreamsHoldNoWorkerTest() throws IOException, WebServerException {
+        //a single worker serves the plain requests while three streams are open
+        startServer(WebServerConfig.Engine.NIO, 1);
+        streamAndReplay(3);
+    }
+
+    @Test
+    public void blockingStreamsHoldNoWorkerTest() throws IOException, WebServerException {
+        //the handed over streams are watched by the shared selector, the worker is free again
+        startServer(WebServerConfig.Engine.BLOCKING, 1);
+        streamAndReplay(3);
+    }
+
+    private void streamAndReplay(int streamCount) throws IOException {
+        List<Socket> streams = new ArrayList<>();
+        try {
+            for (int i = 0; i < streamCount; i++) {
+                Socket stream = connect();
+                send(stream, "GET /events HTTP/1.1\r\n\r\n");
+                String head = readUntil(stream, ":\n\n");
+                assertTrue(head.startsWith("HTTP/1.1 200 OK"));
+                assertTrue(head.contains("Content-Type: text/event-stream; charset=utf-8\r\n"));
+                streams.add(stream);
+            }
+            try (Socket plain = connect()) {
+                send(plain, "GET /hello HTTP/1.1\r\nConnection: close\r\n\r\n");
+                assertTrue(readUntil(plain, "hello").startsWith("HTTP/1.1 200 OK"));
+            }
+
+            long first = broadcaster.publish("status", "one");
+            broadcaster.publish(null, "two");
+
+            //region Verify
+            for (Socket stream : streams)
+                assertEquals("id: 1\nevent: status\ndata: one\n\nid: 2\ndata: two\n\n",
+                        readUntil(stream, "data: two\n\n"));
+            try (Socket reconnected = connect()) {
+                send(reconnected, "GET /events HTTP/1.1\r\nLast-Event-ID: " + first + "\r\n\r\n");
+                String replayed = readUntil(reconnected, "data: two\n\n");
+                assertTrue(replayed.endsWith(":\n\nid: 2\ndata: two\n\n"));
+            }
+            //endregion
+        } finally {
+            for (Socket stream : streams)
+                stream.close();
+        }
+    }
+
+    private void startServer(WebServerConfig.Engine engine, int workers) throws WebServerException {
+        broadcaster = new SseBroadcaster();
+        broadcaster.start();
+        webServer = WebServerFactory.create(new WebServerConfig.Builder("127.0.0.1", "0")
+                .setEngine(engine)
+                .setWorkerPoolSize(workers, workers)
+                .build());
+        webServer.addRoute(NanoHTTPD.Method.GET, "/events", broadcaster);
+        webServer.addRoute(NanoHTTPD.Method.GET, "/hello", (session, match) -> NanoHTTPD.newFixedLengthResponse("hello"));
+        webServer.startServer();
+    }
+
+    private Socket connect() throws IOException {
+        int port = webServer instanceof NioWebServer
+                ? ((NioWebServer) webServer).getListeningPort()
+                : ((MyWebServer) webServer).getListeningPort();
+        return TestSockets.connect(port);
+    }
+
+    private void awaitDropped(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (broadcaster.getStats().getDroppedCount() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+
+    private void awaitDisconnected(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (broadcaster.getStats().getDisconnectedCount() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+}
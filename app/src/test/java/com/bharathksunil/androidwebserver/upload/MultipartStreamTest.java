@@ -0,0 +1,121 @@
+package com.bharathksunil.androidwebserver.upload;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MultipartStreamTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String BOUNDARY = "----xyz";
+
+    @Test
+    public void partsAreSplitAtTheBoundariesTest() throws IOException {
+        String body = "preamble\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+                + "holiday\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"photo\"; filename=\"a;b.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n"
+                + "\r\n--" + BOUNDARY.substring(0, 4) + "\r\n"
+                + "--" + BOUNDARY + "--\r\n"
+                + "epilogue";
+        MultipartStream multipartStream = new MultipartStream(trickle(body), body.length(), BOUNDARY);
+
+        MultipartStream.Part title = multipartStream.nextPart();
+        byte[] titleBody = multipartStream.readPart(100);
+        MultipartStream.Part photo = multipartStream.nextPart();
+        ByteArrayOutputStream photoBody = new ByteArrayOutputStream();
+        long photoSize = multipartStream.transferPart(Channels.newChannel(photoBody), 100);
+
+        //region Verify
+        //noinspection ConstantConditions
+        assertEquals("title", title.getName());
+        assertNull(title.getFileName());
+        assertEquals("holiday", new String(titleBody, ASCII));
+        //noinspection ConstantConditions
+        assertEquals("photo", photo.getName());
+        assertEquals("a;b.jpg", photo.getFileName());
+        assertEquals("image/jpeg", photo.getContentType());
+        //a partial boundary is part of the body
+        assertEquals("\r\n--" + BOUNDARY.substring(0, 4), new String(photoBody.toByteArray(), ASCII));
+        assertEquals(photoBody.size(), photoSize);
+        assertNull(multipartStream.nextPart());
+        assertNull(multipartStream.nextPart());
+        //endregion
+    }
+
+    @Test
+    public void largePartPassesThroughTheBufferTest() throws IOException {
+        byte[] file = new byte[200 * 1024];
+        for (int i = 0; i < file.length; i++)
+            file[i] = (byte) (i % 251);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"f\"; filename=\"f\"\r\n\r\n").getBytes(ASCII));
+        body.write(file);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(ASCII));
+        MultipartStream multipartStream = new MultipartStream(
+                new ByteArrayInputStream(body.toByteArray()), body.size(), BOUNDARY);
+
+        multipartStream.nextPart();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        multipartStream.transferPart(Channels.newChannel(received), file.length);
+
+        //region Verify
+        assertArrayEquals(file, received.toByteArray());
+        assertNull(multipartStream.nextPart());
+        //endregion
+    }
+
+    @Test(expected = MultipartStream.PartTooLargeException.class)
+    public void partOverTheLimitIsRejectedTest() throws IOException {
+        String body = "--" + BOUNDARY + "\r\n\r\n0123456789\r\n--" + BOUNDARY + "--";
+        MultipartStream multipartStream = new MultipartStream(trickle(body), body.length(), BOUNDARY);
+
+        multipartStream.nextPart();
+        multipartStream.transferPart(null, 9);
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedBodyFailsTest() throws IOException {
+        String body = "--" + BOUNDARY + "\r\n\r\n0123456789";
+        MultipartStream multipartStream = new MultipartStream(trickle(body), body.length(), BOUNDARY);
+
+        multipartStream.nextPart();
+        multipartStream.transferPart(null, 100);
+    }
+
+    @Test
+    public void parseBoundaryTest() {
+        //region Verify
+        assertEquals("abc", MultipartStream.parseBoundary("multipart/form-data; boundary=abc"));
+        assertEquals("a; b", MultipartStream.parseBoundary("Multipart/Form-Data; charset=utf-8; boundary=\"a; b\""));
+        assertNull(MultipartStream.parseBoundary("multipart/mixed; boundary=abc"));
+        assertNull(MultipartStream.parseBoundary("multipart/form-data"));
+        assertNull(MultipartStream.parseBoundary(null));
+        //endregion
+    }
+
+    /**
+     * @return a stream returning the bytes three at a time, so the boundaries are split across
+     * reads
+     */
+    private static InputStream trickle(String body) {
+        return new ByteArrayInputStream(body.getBytes(ASCII)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+    }
+}
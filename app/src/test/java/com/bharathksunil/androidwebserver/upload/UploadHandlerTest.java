@@ -0,0 +1,157 @@
+package com.bharathksunil.androidwebserver.upload;
+
+import com.bharathksunil.androidwebserver.router.Router;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UploadHandlerTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String BOUNDARY = "b0undary";
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+    @Rule
+    public TemporaryFolder uploads = new TemporaryFolder();
+    @Mock
+    private NanoHTTPD.IHTTPSession mMockSession;
+    @Mock
+    private InputStream mMockInputStream;
+    private Map<String, String> headers;
+    private Router router;
+
+    @Before
+    public void setup() {
+        headers = new HashMap<>();
+        headers.put("content-type", "multipart/form-data; boundary=" + BOUNDARY);
+        when(mMockSession.getHeaders()).thenReturn(headers);
+        when(mMockSession.getMethod()).thenReturn(NanoHTTPD.Method.POST);
+        when(mMockSession.getUri()).thenReturn("/upload");
+        router = new Router();
+        router.addRoute(NanoHTTPD.Method.POST, "/upload", new UploadHandler(uploads.getRoot(), 10, 1000));
+    }
+
+    @Test
+    public void filesAreStoredUnderUniqueNamesTest() throws IOException {
+        try (FileOutputStream existing = new FileOutputStream(new File(uploads.getRoot(), "a.txt"))) {
+            existing.write('x');
+        }
+        body(file("first", "../../a.txt", "0123456789")
+                + "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"note\"\r\n\r\nskipped\r\n"
+                + file("second", "C:\\tmp\\.b", "") + "--" + BOUNDARY + "--\r\n");
+
+        NanoHTTPD.Response response = router.route(mMockSession);
+
+        //region Verify
+        //noinspection ConstantConditions
+        assertEquals(NanoHTTPD.Response.Status.CREATED, response.getStatus());
+        assertEquals("{\"files\":[{\"field\":\"first\",\"name\":\"a-1.txt\",\"size\":10},"
+                + "{\"field\":\"second\",\"name\":\"b\",\"size\":0}]}", read(response));
+        assertArrayEquals("0123456789".getBytes(ASCII), read(new File(uploads.getRoot(), "a-1.txt")));
+        assertEquals(3, uploads.getRoot().list().length);
+        //endregion
+    }
+
+    @Test
+    public void fileOverTheLimitAbortsTheUploadTest() throws IOException {
+        body(file("first", "a", "fits") + file("second", "b", "01234567890") + "--" + BOUNDARY + "--\r\n");
+
+        NanoHTTPD.Response response = router.route(mMockSession);
+
+        //region Verify
+        //noinspection ConstantConditions
+        assertEquals(NanoHTTPD.Response.Status.PAYLOAD_TOO_LARGE, response.getStatus());
+        assertEquals("close", response.getHeader("connection"));
+        //the file stored before the limit was hit is removed with the partial one
+        assertEquals(0, uploads.getRoot().list().length);
+        //endregion
+    }
+
+    @Test
+    public void oversizedOrUnframedRequestsAreNotReadTest() throws IOException {
+        when(mMockSession.getInputStream()).thenReturn(mMockInputStream);
+        headers.put("content-length", "1001");
+        NanoHTTPD.Response tooLarge = router.route(mMockSession);
+        headers.remove("content-length");
+        NanoHTTPD.Response noLength = router.route(mMockSession);
+        headers.put("content-length", "10");
+        headers.put("content-type", "application/octet-stream");
+        NanoHTTPD.Response notMultipart = router.route(mMockSession);
+
+        //region Verify
+        //noinspection ConstantConditions
+        assertEquals(NanoHTTPD.Response.Status.PAYLOAD_TOO_LARGE, tooLarge.getStatus());
+        //noinspection ConstantConditions
+        assertEquals(NanoHTTPD.Response.Status.LENGTH_REQUIRED, noLength.getStatus());
+        //noinspection ConstantConditions
+        assertEquals(NanoHTTPD.Response.Status.UNSUPPORTED_MEDIA_TYPE, notMultipart.getStatus());
+        verify(mMockSession, never()).getInputStream();
+        //endregion
+    }
+
+    @Test
+    public void safeFileNameTest() {
+        //region Verify
+        assertEquals("photo.jpg", UploadHandler.safeFileName("/sdcard/DCIM/photo.jpg"));
+        assertEquals("photo.jpg", UploadHandler.safeFileName("C:\\Users\\me\\photo.jpg"));
+        assertEquals("upload", UploadHandler.safeFileName(".."));
+        assertTrue(UploadHandler.safeFileName(new String(new char[300]).replace('\0', 'a')).length() <= 128);
+        //endregion
+    }
+
+    private void body(String body) {
+        byte[] bytes = body.getBytes(ASCII);
+        headers.put("content-length", String.valueOf(bytes.length));
+        when(mMockSession.getInputStream()).thenReturn(new ByteArrayInputStream(bytes));
+    }
+
+    private static String file(String field, String fileName, String content) {
+        return "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + field + "\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n"
+                + content + "\r\n";
+    }
+
+    private static String read(NanoHTTPD.Response response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = response.getData().read(buffer)) >= 0)
+            bytes.write(buffer, 0, read);
+        return new String(bytes.toByteArray(), ASCII);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int read = 0;
+            while (read < bytes.length)
+                read += inputStream.read(bytes, read, bytes.length - read);
+        }
+        return bytes;
+    }
+}
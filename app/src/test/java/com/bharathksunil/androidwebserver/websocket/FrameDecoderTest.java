@@ -0,0 +1,158 @@
+package com.bharathksunil.androidwebserver.websocket;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.annotations.NonNull;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FrameDecoderTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private FrameDecoder decoder;
+    private List<String> frames;
+    private final FrameDecoder.Handler handler = new FrameDecoder.Handler() {
+        @Override
+        public void onMessage(int opcode, @NonNull byte[] payload) {
+            frames.add(opcode + ":" + new String(payload, UTF_8));
+        }
+
+        @Override
+        public void onControl(int opcode, @NonNull byte[] payload) {
+            frames.add(opcode + ":" + new String(payload, UTF_8));
+        }
+    };
+
+    @Before
+    public void setup() {
+        decoder = new FrameDecoder(1024);
+        frames = new ArrayList<>();
+    }
+
+    @Test
+    public void framesSplitAnywhereTest() throws FrameDecoder.CloseException {
+        byte[] stream = concat(
+                clientFrame(0x81, "hello".getBytes(UTF_8)),
+                clientFrame(0x82, new byte[0]),
+                clientFrame(0x81, repeat('x', 300).getBytes(UTF_8)));
+        for (byte b : stream)
+            decoder.feed(ByteBuffer.wrap(new byte[]{b}), handler);
+
+        //region Verify
+        assertEquals(3, frames.size());
+        assertEquals("1:hello", frames.get(0));
+        assertEquals("2:", frames.get(1));
+        assertEquals("1:" + repeat('x', 300), frames.get(2));
+        //endregion
+    }
+
+    @Test
+    public void fragmentsAreJoinedAroundControlFramesTest() throws FrameDecoder.CloseException {
+        decoder.feed(ByteBuffer.wrap(concat(
+                clientFrame(0x01, "frag".getBytes(UTF_8)),
+                clientFrame(0x89, "ping".getBytes(UTF_8)),
+                clientFrame(0x00, "men".getBytes(UTF_8)),
+                clientFrame(0x80, "ted".getBytes(UTF_8)))), handler);
+
+        //region Verify
+        assertEquals(2, frames.size());
+        assertEquals("9:ping", frames.get(0));
+        assertEquals("1:fragmented", frames.get(1));
+        //endregion
+    }
+
+    @Test
+    public void protocolViolationsTest() {
+        //region Verify
+        assertCloseCode(WebSocketSession.CLOSE_PROTOCOL_ERROR, unmasked(0x81, "hi"));
+        assertCloseCode(WebSocketSession.CLOSE_PROTOCOL_ERROR, clientFrame(0x80, "orphan".getBytes(UTF_8)));
+        assertCloseCode(WebSocketSession.CLOSE_PROTOCOL_ERROR, clientFrame(0x09, "fragmented ping".getBytes(UTF_8)));
+        assertCloseCode(WebSocketSession.CLOSE_PROTOCOL_ERROR, clientFrame(0x83, new byte[0]));
+        assertCloseCode(WebSocketSession.CLOSE_TOO_BIG, clientFrame(0x82, new byte[1025]));
+        assertCloseCode(WebSocketSession.CLOSE_TOO_BIG, concat(
+                clientFrame(0x02, new byte[1000]), clientFrame(0x80, new byte[100])));
+        //endregion
+    }
+
+    @Test
+    public void serverFramesTest() {
+        //region Verify
+        assertArrayEquals(new byte[]{(byte) 0x81, 2, 'h', 'i'},
+                WebSocketFrames.encode(WebSocketFrames.OPCODE_TEXT, "hi".getBytes(UTF_8)));
+        byte[] large = WebSocketFrames.encode(WebSocketFrames.OPCODE_BINARY, new byte[300]);
+        assertEquals(304, large.length);
+        assertArrayEquals(new byte[]{(byte) 0x82, 126, 1, 44}, new byte[]{large[0], large[1], large[2], large[3]});
+        assertEquals(10 + 70000, WebSocketFrames.encode(WebSocketFrames.OPCODE_BINARY, new byte[70000]).length);
+        assertArrayEquals(new byte[]{(byte) 0x88, 2, 0x03, (byte) 0xe8},
+                WebSocketFrames.encodeClose(WebSocketSession.CLOSE_NORMAL, null));
+        //the example of RFC 6455
+        assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", WebSocketFrames.acceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+        //endregion
+    }
+
+    private void assertCloseCode(int code, @NonNull byte[] stream) {
+        FrameDecoder decoder = new FrameDecoder(1024);
+        try {
+            decoder.feed(ByteBuffer.wrap(stream), handler);
+            fail("the stream was accepted");
+        } catch (FrameDecoder.CloseException e) {
+            assertEquals(code, e.getCode());
+        }
+    }
+
+    /**
+     * @param firstByte the FIN bit and the opcode
+     * @param payload   the payload, masked with a fixed key
+     * @return the frame as a client sends it
+     */
+    @NonNull
+    static byte[] clientFrame(int firstByte, @NonNull byte[] payload) {
+        byte[] mask = {0x12, 0x34, 0x56, 0x78};
+        int lengthBytes = payload.length < 126 ? 0 : payload.length <= 0xFFFF ? 2 : 8;
+        ByteBuffer frame = ByteBuffer.allocate(2 + lengthBytes + 4 + payload.length);
+        frame.put((byte) firstByte);
+        if (lengthBytes == 0) {
+            frame.put((byte) (0x80 | payload.length));
+        } else if (lengthBytes == 2) {
+            frame.put((byte) (0x80 | 126)).putShort((short) payload.length);
+        } else {
+            frame.put((byte) (0x80 | 127)).putLong(payload.length);
+        }
+        frame.put(mask);
+        for (int i = 0; i < payload.length; i++)
+            frame.put((byte) (payload[i] ^ mask[i & 3]));
+        return frame.array();
+    }
+
+    @NonNull
+    private static byte[] unmasked(int firstByte, @NonNull String payload) {
+        byte[] bytes = payload.getBytes(UTF_8);
+        return concat(new byte[]{(byte) firstByte, (byte) bytes.length}, bytes);
+    }
+
+    @NonNull
+    static byte[] concat(@NonNull byte[]... arrays) {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for (byte[] array : arrays)
+            buffer.put(array);
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @NonNull
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++)
+            builder.append(c);
+        return builder.toString();
+    }
+}
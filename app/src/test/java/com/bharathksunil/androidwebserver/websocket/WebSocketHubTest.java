@@ -0,0 +1,279 @@
+package com.bharathksunil.androidwebserver.websocket;
+
+import com.bharathksunil.androidwebserver.IWebServer;
+import com.bharathksunil.androidwebserver.MyWebServer;
+import com.bharathksunil.androidwebserver.TestSockets;
+import com.bharathksunil.androidwebserver.WebServerFactory;
+import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.nio.NioWebServer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoHTTPD;
+import io.reactivex.annotations.NonNull;
+
+import static com.bharathksunil.androidwebserver.TestSockets.readAll;
+import static com.bharathksunil.androidwebserver.TestSockets.readHead;
+import static com.bharathksunil.androidwebserver.TestSockets.send;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WebSocketHubTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int WORKERS = 4;
+    private WebSocketHub hub;
+    private IWebServer webServer;
+    /**
+     * The close codes reported to the listener
+     */
+    private final BlockingQueue<Integer> closeCodes = new ArrayBlockingQueue<>(16);
+    /**
+     * Echoes the text messages
+     */
+    private final WebSocketListener echo = new WebSocketListener() {
+        @Override
+        public void onOpen(@NonNull WebSocketSession session) {
+        }
+
+        @Override
+        public void onMessage(@NonNull WebSocketSession session, @NonNull String text) {
+            session.send("echo " + text);
+        }
+
+        @Override
+        public void onMessage(@NonNull WebSocketSession session, @NonNull byte[] data) {
+        }
+
+        @Override
+        public void onClose(@NonNull WebSocketSession session, int code) {
+            closeCodes.add(code);
+        }
+    };
+
+    @After
+    public void tearDown() {
+        if (webServer != null)
+            webServer.stopServer();
+        if (hub != null)
+            hub.stop();
+    }
+
+    @Test
+    public void invalidHandshakeTest() throws IOException, WebServerException {
+        startServer(WebServerConfig.Engine.BLOCKING, WebSocketHub.DEFAULT_MAX_QUEUED_BYTES);
+
+        //region Verify
+        try (Socket socket = connect()) {
+            send(socket, "GET /ws HTTP/1.1\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Version: 13\r\n\r\n");
+            assertTrue(readHead(socket).startsWith("HTTP/1.1 400 Bad Request"));
+            assertEquals("400 Bad Request", readFully(socket.getInputStream(), 15));
+        }
+        try (Socket socket = connect()) {
+            send(socket, "GET /ws HTTP/1.1\r\nUpgrade: websocket\r\nConnection: keep-alive, Upgrade\r\n"
+                    + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 8\r\n\r\n");
+            String head = readHead(socket);
+            assertTrue(head.startsWith("HTTP/1.1 400 Bad Request"));
+            assertTrue(head.contains("Sec-WebSocket-Version: 13\r\n"));
+            assertEquals("400 Bad Request", readFully(socket.getInputStream(), 15));
+        }
+        //endregion
+    }
+
+    @Test
+    public void nioEchoPingAndCloseTest() throws IOException, WebServerException, InterruptedException {
+        startServer(WebServerConfig.Engine.NIO, WebSocketHub.DEFAULT_MAX_QUEUED_BYTES);
+        echoPingAndClose();
+    }
+
+    @Test
+    public void blockingEchoPingAndCloseTest() throws IOException, WebServerException, InterruptedException {
+        startServer(WebServerConfig.Engine.BLOCKING, WebSocketHub.DEFAULT_MAX_QUEUED_BYTES);
+        echoPingAndClose();
+    }
+
+    @Test
+    public void nioBroadcastIsBatchedTest() throws IOException, WebServerException {
+        startServer(WebServerConfig.Engine.NIO, WebSocketHub.DEFAULT_MAX_QUEUED_BYTES);
+        broadcastIsBatched();
+    }
+
+    @Test
+    public void blockingBroadcastIsBatchedTest() throws IOException, WebServerException {
+        startServer(WebServerConfig.Engine.BLOCKING, WebSocketHub.DEFAULT_MAX_QUEUED_BYTES);
+        broadcastIsBatched();
+    }
+
+    @Test
+    public void blockingSessionsHoldNoWorkerTest() throws IOException, WebServerException {
+        startServer(WebServerConfig.Engine.BLOCKING, WebSocketHub.DEFAULT_MAX_QUEUED_BYTES);
+        webServer.addRoute(NanoHTTPD.Method.GET, "/hello", (session, match) ->
+                NanoHTTPD.newFixedLengthResponse("hello"));
+        int sessionCount = 2 * WORKERS;
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < sessionCount; i++)
+                sockets.add(open());
+            awaitSessions(sessionCount);
+            String response;
+            try (Socket plain = connect()) {
+                send(plain, "GET /hello HTTP/1.1\r\nConnection: close\r\n\r\n");
+                response = readAll(plain);
+            }
+
+            //region Verify
+            assertTrue(response, response.startsWith("HTTP/1.1 200 OK"));
+            assertTrue(response, response.endsWith("hello"));
+            for (Socket socket : sockets) {
+                send(socket, FrameDecoderTest.clientFrame(0x81, "hi".getBytes(UTF_8)));
+                assertFrame(new DataInputStream(socket.getInputStream()), 0x81, "echo hi".getBytes(UTF_8));
+            }
+            //endregion
+        } finally {
+            for (Socket socket : sockets)
+                socket.close();
+        }
+    }
+
+    @Test
+    public void slowSessionIsDisconnectedTest() throws IOException, WebServerException, InterruptedException {
+        startServer(WebServerConfig.Engine.NIO, 64 * 1024);
+        //the client never reads, the socket only has to stay open
+        Socket socket = open();
+        try {
+            byte[] message = new byte[32 * 1024];
+            long deadline = System.currentTimeMillis() + 10000;
+            //the socket buffers fill up and then the queue
+            while (hub.getStats().getDisconnectedCount() == 0 && System.currentTimeMillis() < deadline) {
+                hub.broadcast(message);
+                Thread.sleep(1);
+            }
+
+            //region Verify
+            assertEquals(1, hub.getStats().getDisconnectedCount());
+            assertEquals(Integer.valueOf(WebSocketSession.CLOSE_ABNORMAL), closeCodes.poll(5, TimeUnit.SECONDS));
+            assertEquals(0, hub.getStats().getSessionCount());
+            //endregion
+        } finally {
+            socket.close();
+        }
+    }
+
+    private void echoPingAndClose() throws IOException, InterruptedException {
+        try (Socket socket = open()) {
+            send(socket, FrameDecoderTest.clientFrame(0x81, "hello".getBytes(UTF_8)));
+            send(socket, FrameDecoderTest.clientFrame(0x89, "beat".getBytes(UTF_8)));
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+
+            //region Verify
+            assertFrame(input, 0x81, "echo hello".getBytes(UTF_8));
+            assertFrame(input, 0x8A, "beat".getBytes(UTF_8));
+            send(socket, FrameDecoderTest.clientFrame(0x88, new byte[]{0x03, (byte) 0xe8}));
+            assertFrame(input, 0x88, new byte[]{0x03, (byte) 0xe8});
+            assertEquals(-1, input.read());
+            assertEquals(Integer.valueOf(WebSocketSession.CLOSE_NORMAL), closeCodes.poll(5, TimeUnit.SECONDS));
+            //endregion
+        }
+    }
+
+    private void broadcastIsBatched() throws IOException {
+        int sessionCount = 3;
+        int messageCount = 1000;
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < sessionCount; i++)
+                sockets.add(open());
+            awaitSessions(sessionCount);
+            for (int i = 0; i < messageCount; i++)
+                hub.broadcast("update " + i);
+
+            //region Verify
+            for (Socket socket : sockets) {
+                DataInputStream input = new DataInputStream(socket.getInputStream());
+                for (int i = 0; i < messageCount; i++)
+                    assertFrame(input, 0x81, ("update " + i).getBytes(UTF_8));
+            }
+            WebSocketStats stats = hub.getStats();
+            assertEquals(messageCount, stats.getBroadcastCount());
+            assertTrue(stats.toString(), stats.getWriteCount() < messageCount * sessionCount / 10);
+            //endregion
+        } finally {
+            for (Socket socket : sockets)
+                socket.close();
+        }
+    }
+
+    private void startServer(WebServerConfig.Engine engine, long maxQueuedBytes) throws WebServerException {
+        hub = new WebSocketHub(echo, WebSocketHub.DEFAULT_FLUSH_WINDOW_MILLIS, maxQueuedBytes,
+                WebSocketHub.DEFAULT_MAX_MESSAGE_BYTES);
+        hub.start();
+        webServer = WebServerFactory.create(new WebServerConfig.Builder("127.0.0.1", "0")
+                .setEngine(engine)
+                .setWorkerPoolSize(WORKERS, WORKERS)
+                .build());
+        webServer.addRoute(NanoHTTPD.Method.GET, "/ws", hub);
+        webServer.startServer();
+    }
+
+    /**
+     * @return a socket which completed the opening handshake
+     */
+    @NonNull
+    private Socket open() throws IOException {
+        Socket socket = connect();
+        send(socket, "GET /ws HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n");
+        String head = readHead(socket);
+        assertTrue(head, head.startsWith("HTTP/1.1 101 Switching Protocols"));
+        assertTrue(head, head.contains("Upgrade: websocket\r\n"));
+        assertTrue(head, head.contains("Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo=\r\n"));
+        return socket;
+    }
+
+    @NonNull
+    private Socket connect() throws IOException {
+        int port = webServer instanceof NioWebServer
+                ? ((NioWebServer) webServer).getListeningPort()
+                : ((MyWebServer) webServer).getListeningPort();
+        return TestSockets.connect(port);
+    }
+
+    private void awaitSessions(int count) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (hub.getStats().getSessionCount() < count && System.currentTimeMillis() < deadline)
+            Thread.yield();
+        assertEquals(count, hub.getStats().getSessionCount());
+    }
+
+    @NonNull
+    private static String readFully(@NonNull InputStream inputStream, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        new DataInputStream(inputStream).readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void assertFrame(@NonNull DataInputStream input, int firstByte, @NonNull byte[] payload)
+            throws IOException {
+        assertEquals(firstByte, input.readUnsignedByte());
+        int length = input.readUnsignedByte();
+        if (length == 126)
+            length = input.readUnsignedShort();
+        byte[] received = new byte[length];
+        input.readFully(received);
+        assertArrayEquals(payload, received);
+    }
+}
@@ -0,0 +1,88 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * A parsed request, to benchmark the handlers without the cost of parsing
+ */
+final class FakeSession implements NanoHTTPD.IHTTPSession {
+    private final NanoHTTPD.Method mMethod;
+    private final String mUri;
+    private final Map<String, String> mHeaders = new HashMap<>();
+
+    FakeSession(NanoHTTPD.Method method, String uri) {
+        this.mMethod = method;
+        this.mUri = uri;
+    }
+
+    FakeSession header(String name, String value) {
+        mHeaders.put(name, value);
+        return this;
+    }
+
+    @Override
+    public void execute() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NanoHTTPD.CookieHandler getCookies() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return mHeaders;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NanoHTTPD.Method getMethod() {
+        return mMethod;
+    }
+
+    @Override
+    @Deprecated
+    public Map<String, String> getParms() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, List<String>> getParameters() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public String getQueryParameterString() {
+        return null;
+    }
+
+    @Override
+    public String getUri() {
+        return mUri;
+    }
+
+    @Override
+    public void parseBody(Map<String, String> files) {
+    }
+
+    @Override
+    public String getRemoteIpAddress() {
+        return "127.0.0.1";
+    }
+
+    @Override
+    public String getRemoteHostName() {
+        return "localhost";
+    }
+}
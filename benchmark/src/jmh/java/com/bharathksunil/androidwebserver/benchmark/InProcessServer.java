@@ -0,0 +1,78 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import com.bharathksunil.androidwebserver.MyWebServer;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Runs requests through the whole serve path of {@link MyWebServer}, parsing, dispatch and
+ * response writing, without sockets: a keep-alive session reads the same request over and over
+ * and writes the responses to a stream which only counts them.
+ */
+final class InProcessServer extends MyWebServer {
+    private final CountingOutputStream mOutputStream = new CountingOutputStream();
+    private HTTPSession mSession;
+
+    InProcessServer(WebServerConfig webServerConfig) {
+        super(webServerConfig);
+    }
+
+    /**
+     * @param request the request every {@link #execute()} reads
+     */
+    void setRequest(byte[] request) {
+        mSession = new HTTPSession(new DefaultTempFileManager(), new RepeatingInputStream(request), mOutputStream);
+    }
+
+    /**
+     * @return the number of bytes sent so far, to be consumed by the benchmark
+     */
+    long execute() throws IOException {
+        mSession.execute();
+        return mOutputStream.mCount;
+    }
+
+    /**
+     * Serves the same bytes forever, like a client pipelining one request
+     */
+    private static final class RepeatingInputStream extends InputStream {
+        private final byte[] mRequest;
+        private int mPosition;
+
+        RepeatingInputStream(byte[] request) {
+            this.mRequest = request;
+        }
+
+        @Override
+        public int read() {
+            int b = mRequest[mPosition] & 0xff;
+            mPosition = (mPosition + 1) % mRequest.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int read = Math.min(len, mRequest.length - mPosition);
+            System.arraycopy(mRequest, mPosition, b, off, read);
+            mPosition = (mPosition + read) % mRequest.length;
+            return read;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long mCount;
+
+        @Override
+        public void write(int b) {
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            mCount += len;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import com.bharathksunil.androidwebserver.MyWebServer;
+import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Requests sent to a running {@link MyWebServer} over loopback on keep-alive connections, one per
+ * benchmark thread. Each connection holds a worker, so the pool has a core worker per thread: run
+ * with -t to measure more concurrent clients.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class LoopbackBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ServerState {
+        @Param({"/hello/world", DocumentRoot.INDEX, DocumentRoot.STYLESHEET, DocumentRoot.MEDIA})
+        public String path;
+
+        DocumentRoot documentRoot;
+        MyWebServer server;
+        byte[] request;
+
+        @Setup(Level.Trial)
+        public void start(BenchmarkParams params) throws IOException, WebServerException {
+            documentRoot = DocumentRoot.create();
+            int workers = params.getThreads();
+            server = new MyWebServer(new WebServerConfig.Builder("127.0.0.1", "0")
+                    .setWorkerPoolSize(workers, Math.max(workers, WebServerConfig.DEFAULT_WORKER_POOL_MAX_SIZE))
+                    .setDocumentRoot(documentRoot.getDirectory().getPath())
+                    .setKeepAlive(WebServerConfig.DEFAULT_KEEP_ALIVE_TIMEOUT_MILLIS, 0)
+                    .build());
+            server.addRoute(NanoHTTPD.Method.GET, "/hello/{name}",
+                    (session, match) -> NanoHTTPD.newFixedLengthResponse("Hello " + match.getParameter("name")));
+            server.startServer();
+            request = Requests.get(path, "");
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            server.stopServer();
+            documentRoot.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ClientState {
+        Socket socket;
+        OutputStream outputStream;
+        InputStream inputStream;
+        byte[] buffer = new byte[64 * 1024];
+
+        @Setup(Level.Trial)
+        public void connect(ServerState server) throws IOException {
+            socket = new Socket(InetAddress.getByName("127.0.0.1"), server.server.getListeningPort());
+            socket.setTcpNoDelay(true);
+            outputStream = socket.getOutputStream();
+            inputStream = new BufferedInputStream(socket.getInputStream(), buffer.length);
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public long request(ServerState server, ClientState client) throws IOException {
+        client.outputStream.write(server.request);
+        client.outputStream.flush();
+        long length = readHead(client.inputStream);
+        long remaining = length;
+        while (remaining > 0) {
+            int read = client.inputStream.read(client.buffer, 0, (int) Math.min(remaining, client.buffer.length));
+            if (read < 0)
+                throw new EOFException("connection closed in the body");
+            remaining -= read;
+        }
+        return length;
+    }
+
+    /**
+     * @return the Content-Length of the response whose head was read
+     */
+    private static long readHead(InputStream inputStream) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        long contentLength = 0;
+        while (true) {
+            int c = inputStream.read();
+            if (c < 0)
+                throw new EOFException("connection closed in the head");
+            if (c != '\n') {
+                if (c != '\r')
+                    line.append((char) c);
+                continue;
+            }
+            if (line.length() == 0)
+                return contentLength;
+            if (line.length() > 15 && line.substring(0, 15).equalsIgnoreCase("content-length:"))
+                contentLength = Long.parseLong(line.substring(15).trim());
+            line.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import com.bharathksunil.androidwebserver.router.RouteHandler;
+import com.bharathksunil.androidwebserver.router.RouteMatch;
+import com.bharathksunil.androidwebserver.router.Router;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * The cost of matching a request path against a realistic route table
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouterBenchmark {
+    private static final int GENERATED_ROUTES = 40;
+
+    @Param({
+            "/api/v1/users",
+            "/api/v1/users/42/posts/7",
+            "/assets/js/vendor/app.js",
+            "/api/v1/resource39/abc",
+            "/not/routed"
+    })
+    public String path;
+
+    private Router router;
+
+    @Setup
+    public void setup() {
+        RouteHandler handler = (session, match) -> null;
+        router = new Router();
+        router.addRoute(NanoHTTPD.Method.GET, "/", handler);
+        router.addRoute(NanoHTTPD.Method.GET, "/api/v1/users", handler);
+        router.addRoute(NanoHTTPD.Method.POST, "/api/v1/users", handler);
+        router.addRoute(NanoHTTPD.Method.GET, "/api/v1/users/{id}", handler);
+        router.addRoute(NanoHTTPD.Method.GET, "/api/v1/users/{id}/posts/{post}", handler);
+        router.addRoute(NanoHTTPD.Method.GET, "/assets/*", handler);
+        for (int i = 0; i < GENERATED_ROUTES; i++) {
+            router.addRoute(NanoHTTPD.Method.GET, "/api/v1/resource" + i + "/{id}", handler);
+            router.addRoute(NanoHTTPD.Method.DELETE, "/api/v1/resource" + i + "/{id}", handler);
+        }
+    }
+
+    @Benchmark
+    public RouteMatch match() {
+        return router.match(NanoHTTPD.Method.GET, path);
+    }
+}
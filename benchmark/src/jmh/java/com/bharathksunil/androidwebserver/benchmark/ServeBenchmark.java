@@ -0,0 +1,62 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.response.ByteArrayResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * The whole serve path in-process: parsing the request, dispatching it and writing the response,
+ * minus the socket. /hello/{name} answers with a plain NanoHTTPD response and /direct with a
+ * {@link ByteArrayResponse}, the other paths are static files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServeBenchmark {
+    private static final byte[] DIRECT_BODY = "Hello World".getBytes();
+
+    @Param({"/hello/world", "/direct", DocumentRoot.INDEX, DocumentRoot.STYLESHEET, DocumentRoot.MEDIA})
+    public String path;
+    @Param({"", "gzip, deflate"})
+    public String acceptEncoding;
+
+    private DocumentRoot documentRoot;
+    private InProcessServer server;
+
+    @Setup
+    public void setup() throws IOException {
+        documentRoot = DocumentRoot.create();
+        server = new InProcessServer(new WebServerConfig.Builder("127.0.0.1", "0")
+                .setDocumentRoot(documentRoot.getDirectory().getPath())
+                .build());
+        server.addRoute(NanoHTTPD.Method.GET, "/hello/{name}",
+                (session, match) -> NanoHTTPD.newFixedLengthResponse("Hello " + match.getParameter("name")));
+        server.addRoute(NanoHTTPD.Method.GET, "/direct",
+                (session, match) -> new ByteArrayResponse(NanoHTTPD.Response.Status.OK, NanoHTTPD.MIME_HTML, DIRECT_BODY));
+        server.setRequest(Requests.get(path, acceptEncoding));
+    }
+
+    @TearDown
+    public void tearDown() {
+        documentRoot.delete();
+    }
+
+    @Benchmark
+    public long serve() throws IOException {
+        return server.execute();
+    }
+}
@@ -0,0 +1,83 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import com.bharathksunil.androidwebserver.cache.ResponseCache;
+import com.bharathksunil.androidwebserver.compression.CompressedFileStore;
+import com.bharathksunil.androidwebserver.compression.CompressionPolicy;
+import com.bharathksunil.androidwebserver.handler.StaticFileHandler;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * The cost of resolving a static file and building its response, with and without the response
+ * cache and compression. The body itself is not sent, see {@link ServeBenchmark} for that.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StaticFileHandlerBenchmark {
+    @Param({DocumentRoot.INDEX, DocumentRoot.STYLESHEET, DocumentRoot.MEDIA})
+    public String path;
+    @Param({"true", "false"})
+    public boolean cache;
+    @Param({"", "gzip, deflate"})
+    public String acceptEncoding;
+
+    private DocumentRoot documentRoot;
+    private File compressedDirectory;
+    private StaticFileHandler staticFileHandler;
+    private FakeSession session;
+
+    @Setup
+    public void setup() throws IOException {
+        documentRoot = DocumentRoot.create();
+        compressedDirectory = new File(documentRoot.getDirectory(), ".compressed");
+        ResponseCache responseCache = cache ? new ResponseCache(
+                WebServerConfig.DEFAULT_RESPONSE_CACHE_BYTES,
+                WebServerConfig.DEFAULT_RESPONSE_CACHE_MAX_ENTRY_BYTES) : null;
+        staticFileHandler = new StaticFileHandler(
+                documentRoot.getDirectory(),
+                responseCache,
+                new CompressionPolicy(WebServerConfig.DEFAULT_COMPRESSIBLE_MIME_TYPES,
+                        WebServerConfig.DEFAULT_COMPRESSION_MIN_BYTES),
+                new CompressedFileStore(compressedDirectory));
+        session = new FakeSession(NanoHTTPD.Method.GET, path);
+        if (!acceptEncoding.isEmpty())
+            session.header("accept-encoding", acceptEncoding);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = compressedDirectory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        compressedDirectory.delete();
+        documentRoot.delete();
+    }
+
+    @Benchmark
+    public NanoHTTPD.Response serve() throws IOException {
+        NanoHTTPD.Response response = staticFileHandler.serve(session);
+        //file responses hold an open channel until they are sent
+        response.close();
+        return response;
+    }
+}
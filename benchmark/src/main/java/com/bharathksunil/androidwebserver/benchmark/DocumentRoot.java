@@ -0,0 +1,61 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A temporary document root holding files shaped like the ones the server is used for: a small
+ * page, a compressible stylesheet which fits the response cache and a media file which does not
+ */
+final class DocumentRoot {
+    static final String INDEX = "/index.html";
+    static final String STYLESHEET = "/app.css";
+    static final String MEDIA = "/video.bin";
+    private static final int STYLESHEET_BYTES = 16 * 1024;
+    private static final int MEDIA_BYTES = 1024 * 1024;
+
+    private final File mDirectory;
+
+    private DocumentRoot(File directory) {
+        this.mDirectory = directory;
+    }
+
+    static DocumentRoot create() throws IOException {
+        File directory = File.createTempFile("benchmark", "root");
+        if (!directory.delete() || !directory.mkdir())
+            throw new IOException("could not create " + directory);
+        DocumentRoot root = new DocumentRoot(directory);
+        root.write(INDEX, "<!DOCTYPE html><html><body><h1>Hello World</h1></body></html>".getBytes("UTF-8"));
+        StringBuilder stylesheet = new StringBuilder(STYLESHEET_BYTES);
+        for (int i = 0; stylesheet.length() < STYLESHEET_BYTES; i++)
+            stylesheet.append(".item-").append(i).append(" { margin: ").append(i % 16).append("px; }\n");
+        root.write(STYLESHEET, stylesheet.toString().getBytes("UTF-8"));
+        byte[] media = new byte[MEDIA_BYTES];
+        new Random(42).nextBytes(media);
+        root.write(MEDIA, media);
+        return root;
+    }
+
+    File getDirectory() {
+        return mDirectory;
+    }
+
+    void delete() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.delete();
+    }
+
+    private void write(String path, byte[] content) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(new File(mDirectory, path.substring(1)))) {
+            outputStream.write(content);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+/**
+ * One keep-alive client of the load test. It sends a request, reads the whole response and sends
+ * the next one, reconnecting whenever the server closes the connection. The load is closed loop:
+ * a slow server slows its clients down, so latencies are measured per request, not against a
+ * schedule.
+ */
+final class LoadClient implements Runnable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+
+    private final InetSocketAddress mAddress;
+    private final LoadTest.RequestMix mMix;
+    private final LoadStats mStats;
+    private final long mWarmupEndNanos;
+    private final long mEndNanos;
+    private final long mBackoffMillis;
+    private final Random mRandom;
+    private final byte[] mBuffer = new byte[64 * 1024];
+    private Socket mSocket;
+    private OutputStream mOutputStream;
+    private InputStream mInputStream;
+    /**
+     * The parsed head of the last response
+     */
+    private int mStatus;
+    private long mContentLength;
+    private boolean mChunked;
+    private boolean mClose;
+
+    LoadClient(InetSocketAddress address, LoadTest.RequestMix mix, LoadStats stats,
+               long warmupEndNanos, long endNanos, long backoffMillis, long seed) {
+        this.mAddress = address;
+        this.mMix = mix;
+        this.mStats = stats;
+        this.mWarmupEndNanos = warmupEndNanos;
+        this.mEndNanos = endNanos;
+        this.mBackoffMillis = backoffMillis;
+        this.mRandom = new Random(seed);
+    }
+
+    @Override
+    public void run() {
+        long now;
+        while ((now = System.nanoTime()) < mEndNanos) {
+            boolean measured = now >= mWarmupEndNanos;
+            if (mSocket == null && !connect(measured))
+                continue;
+            try {
+                mOutputStream.write(mMix.next(mRandom));
+                mOutputStream.flush();
+                long bytes = readResponse();
+                long end = System.nanoTime();
+                if (measured && end <= mEndNanos)
+                    mStats.record(mStatus, end - now, bytes);
+                if (mStatus == 503) {
+                    disconnect();
+                    backoff();
+                } else if (mClose) {
+                    disconnect();
+                }
+            } catch (SocketTimeoutException e) {
+                if (measured)
+                    mStats.timeouts.incrementAndGet();
+                disconnect();
+            } catch (IOException e) {
+                if (measured)
+                    mStats.ioErrors.incrementAndGet();
+                disconnect();
+                backoff();
+            }
+        }
+        disconnect();
+    }
+
+    private boolean connect(boolean measured) {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            socket.connect(mAddress, CONNECT_TIMEOUT_MILLIS);
+            mSocket = socket;
+            mOutputStream = socket.getOutputStream();
+            mInputStream = new BufferedInputStream(socket.getInputStream(), mBuffer.length);
+            if (measured)
+                mStats.connects.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            if (measured)
+                mStats.connectErrors.incrementAndGet();
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                //never connected
+            }
+            backoff();
+            return false;
+        }
+    }
+
+    private void disconnect() {
+        if (mSocket == null)
+            return;
+        try {
+            mSocket.close();
+        } catch (IOException ignored) {
+            //nothing left to release
+        }
+        mSocket = null;
+    }
+
+    private void backoff() {
+        try {
+            Thread.sleep(mBackoffMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of bytes of the response, head included
+     */
+    private long readResponse() throws IOException {
+        long bytes = readHead();
+        if (mChunked) {
+            long size;
+            while ((size = Long.parseLong(readLine().trim(), 16)) > 0) {
+                skip(size);
+                readLine();
+                bytes += size;
+            }
+            readLine();
+        } else {
+            skip(mContentLength);
+            bytes += mContentLength;
+        }
+        return bytes;
+    }
+
+    private long readHead() throws IOException {
+        String statusLine = readLine();
+        long bytes = statusLine.length() + 2;
+        mStatus = Integer.parseInt(statusLine.substring(9, 12));
+        mContentLength = 0;
+        mChunked = false;
+        mClose = false;
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            bytes += line.length() + 2;
+            int colon = line.indexOf(':');
+            if (colon < 0)
+                continue;
+            String name = line.substring(0, colon);
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("content-length"))
+                mContentLength = Long.parseLong(value);
+            else if (name.equalsIgnoreCase("transfer-encoding"))
+                mChunked = value.equalsIgnoreCase("chunked");
+            else if (name.equalsIgnoreCase("connection"))
+                mClose = value.equalsIgnoreCase("close");
+        }
+        return bytes + 2;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int c;
+        while ((c = mInputStream.read()) != '\n') {
+            if (c < 0)
+                throw new EOFException("connection closed in the head");
+            if (c != '\r')
+                line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    private void skip(long length) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            int read = mInputStream.read(mBuffer, 0, (int) Math.min(remaining, mBuffer.length));
+            if (read < 0)
+                throw new EOFException("connection closed in the body");
+            remaining -= read;
+        }
+    }
+}
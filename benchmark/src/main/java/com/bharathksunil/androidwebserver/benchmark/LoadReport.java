@@ -0,0 +1,63 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The machine readable result of a load test, written as JSON so two builds can be diffed.
+ * Latencies are in microseconds.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+final class LoadReport {
+    String javaVersion = System.getProperty("java.version");
+    String osName = System.getProperty("os.name") + " " + System.getProperty("os.arch");
+    int availableProcessors = Runtime.getRuntime().availableProcessors();
+    String engine;
+    int workerPoolCoreSize;
+    int workerPoolMaxSize;
+    int workerQueueCapacity;
+    int warmupSeconds;
+    int durationSeconds;
+    Map<String, Integer> mix = new LinkedHashMap<>();
+    List<Run> runs = new ArrayList<>();
+
+    static final class Run {
+        int concurrency;
+        long requests;
+        double throughputPerSecond;
+        double receivedMegabytesPerSecond;
+        Latency latencyMicros = new Latency();
+        Map<String, Long> statusCounts = new LinkedHashMap<>();
+        Errors errors = new Errors();
+        long connects;
+        Server server = new Server();
+    }
+
+    static final class Latency {
+        long p50;
+        long p90;
+        long p99;
+        long p999;
+        long max;
+        double mean;
+    }
+
+    static final class Errors {
+        long connect;
+        long io;
+        long timeout;
+        long total;
+    }
+
+    /**
+     * What the server itself reports at the end of the run
+     */
+    static final class Server {
+        long acceptedConnections;
+        long rejectedConnections;
+        int largestPoolSize;
+        long reapedConnections;
+    }
+}
@@ -0,0 +1,28 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import com.bharathksunil.androidwebserver.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * What the clients of one load test run observed within the measured window, shared by all of
+ * them
+ */
+final class LoadStats {
+    private static final int MAX_STATUS = 600;
+
+    final LatencyHistogram latency = new LatencyHistogram();
+    final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS);
+    final AtomicLong bytesReceived = new AtomicLong();
+    final AtomicLong connects = new AtomicLong();
+    final AtomicLong connectErrors = new AtomicLong();
+    final AtomicLong ioErrors = new AtomicLong();
+    final AtomicLong timeouts = new AtomicLong();
+
+    void record(int status, long nanos, long bytes) {
+        latency.record(nanos / 1000);
+        statusCounts.incrementAndGet(Math.min(MAX_STATUS - 1, Math.max(0, status)));
+        bytesReceived.addAndGet(bytes);
+    }
+}
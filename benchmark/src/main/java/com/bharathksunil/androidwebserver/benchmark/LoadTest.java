@@ -0,0 +1,271 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import com.bharathksunil.androidwebserver.IWebServer;
+import com.bharathksunil.androidwebserver.MyWebServer;
+import com.bharathksunil.androidwebserver.WebServerFactory;
+import com.bharathksunil.androidwebserver.connection.ConnectionStats;
+import com.bharathksunil.androidwebserver.exception.WebServerException;
+import com.bharathksunil.androidwebserver.metrics.HistogramSnapshot;
+import com.bharathksunil.androidwebserver.model.WebServerConfig;
+import com.bharathksunil.androidwebserver.nio.NioWebServer;
+import com.bharathksunil.androidwebserver.runner.WorkerPoolStats;
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Drives a server started on an ephemeral loopback port with keep-alive clients, one
+ * thread each, at every requested concurrency in turn, and writes a JSON {@link LoadReport}.
+ * Run it through the loadTest Gradle task:
+ * <pre>
+ *   ./gradlew :benchmark:loadTest -Pconcurrency=50,200,1000 -Pduration=30
+ *       -Pmix=/hello/world=60,/index.html=20,/app.css=15,/video.bin=5 -Pworkers=16,256 -Pqueue=1024
+ *       -Pengine=nio
+ * </pre>
+ * Every option has a default, see {@link Options}. The server keeps its default configuration
+ * unless the worker pool is overridden, so a default run measures what the app ships with.
+ */
+public final class LoadTest {
+    private static final long JOIN_GRACE_MILLIS = 30 * 1000;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        WebServerConfig config = options.serverConfig();
+        LoadReport report = new LoadReport();
+        report.engine = config.getEngine().name();
+        report.workerPoolCoreSize = config.getWorkerPoolCoreSize();
+        report.workerPoolMaxSize = config.getWorkerPoolMaxSize();
+        report.workerQueueCapacity = config.getWorkerQueueCapacity();
+        report.warmupSeconds = options.warmupSeconds;
+        report.durationSeconds = options.durationSeconds;
+        report.mix.putAll(options.mix);
+        for (int concurrency : options.concurrency) {
+            LoadReport.Run run = run(options, config, concurrency);
+            report.runs.add(run);
+            System.out.println(summary(run));
+        }
+        File reportFile = new File(options.reportPath);
+        File parent = reportFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs())
+            throw new IOException("could not create " + parent);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8")) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+        }
+        System.out.println("Report written to " + reportFile.getAbsolutePath());
+    }
+
+    private static LoadReport.Run run(Options options, WebServerConfig config, int concurrency)
+            throws IOException, WebServerException, InterruptedException {
+        DocumentRoot documentRoot = DocumentRoot.create();
+        IWebServer server = WebServerFactory.create(new WebServerConfig.Builder(config)
+                .setDocumentRoot(documentRoot.getDirectory().getPath())
+                .build());
+        server.addRoute(NanoHTTPD.Method.GET, "/hello/{name}",
+                (session, match) -> NanoHTTPD.newFixedLengthResponse("Hello " + match.getParameter("name")));
+        server.startServer();
+        try {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", getListeningPort(server));
+            RequestMix mix = new RequestMix(options.mix);
+            LoadStats stats = new LoadStats();
+            long start = System.nanoTime();
+            long warmupEnd = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+            long end = warmupEnd + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+            List<Thread> threads = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                Thread thread = new Thread(new LoadClient(address, mix, stats, warmupEnd, end,
+                        options.backoffMillis, i), "Load Client #" + i);
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
+            }
+            long joinDeadline = System.currentTimeMillis()
+                    + TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()) + JOIN_GRACE_MILLIS;
+            for (Thread thread : threads)
+                thread.join(Math.max(1, joinDeadline - System.currentTimeMillis()));
+            return buildRun(concurrency, options.durationSeconds, stats, server);
+        } finally {
+            server.stopServer();
+            documentRoot.delete();
+        }
+    }
+
+    private static int getListeningPort(IWebServer server) {
+        return server instanceof NioWebServer
+                ? ((NioWebServer) server).getListeningPort()
+                : ((MyWebServer) server).getListeningPort();
+    }
+
+    private static LoadReport.Run buildRun(int concurrency, int durationSeconds, LoadStats stats, IWebServer server) {
+        LoadReport.Run run = new LoadReport.Run();
+        run.concurrency = concurrency;
+        HistogramSnapshot latency = stats.latency.snapshot();
+        run.requests = latency.getCount();
+        run.throughputPerSecond = (double) run.requests / durationSeconds;
+        run.receivedMegabytesPerSecond = stats.bytesReceived.get() / (1024.0 * 1024.0) / durationSeconds;
+        run.latencyMicros.p50 = latency.getValueAtQuantile(0.5);
+        run.latencyMicros.p90 = latency.getValueAtQuantile(0.9);
+        run.latencyMicros.p99 = latency.getValueAtQuantile(0.99);
+        run.latencyMicros.p999 = latency.getValueAtQuantile(0.999);
+        run.latencyMicros.max = latency.getMax();
+        run.latencyMicros.mean = latency.getCount() == 0 ? 0 : (double) latency.getSum() / latency.getCount();
+        for (int status = 0; status < stats.statusCounts.length(); status++) {
+            long count = stats.statusCounts.get(status);
+            if (count > 0)
+                run.statusCounts.put(String.valueOf(status), count);
+        }
+        run.errors.connect = stats.connectErrors.get();
+        run.errors.io = stats.ioErrors.get();
+        run.errors.timeout = stats.timeouts.get();
+        run.errors.total = run.errors.connect + run.errors.io + run.errors.timeout;
+        run.connects = stats.connects.get();
+        //the blocking engine hands the pool connections, the NIO engine single requests
+        WorkerPoolStats pool = server instanceof NioWebServer
+                ? ((NioWebServer) server).getWorkerPoolStats()
+                : ((MyWebServer) server).getWorkerPoolStats();
+        run.server.acceptedConnections = pool.getAcceptedCount();
+        run.server.rejectedConnections = pool.getRejectedCount();
+        run.server.largestPoolSize = pool.getLargestPoolSize();
+        ConnectionStats connections = server instanceof MyWebServer
+                ? ((MyWebServer) server).getConnectionStats() : null;
+        run.server.reapedConnections = connections != null ? connections.getReapedCount() : 0;
+        return run;
+    }
+
+    private static String summary(LoadReport.Run run) {
+        return String.format(Locale.US,
+                "concurrency=%d requests=%d throughput=%.1f/s p50=%dus p99=%dus p999=%dus max=%dus statuses=%s errors=%d rejected=%d",
+                run.concurrency, run.requests, run.throughputPerSecond, run.latencyMicros.p50,
+                run.latencyMicros.p99, run.latencyMicros.p999, run.latencyMicros.max, run.statusCounts,
+                run.errors.total, run.server.rejectedConnections);
+    }
+
+    /**
+     * The requests the clients send, picked at random by weight
+     */
+    static final class RequestMix {
+        private final byte[][] mRequests;
+        private final int[] mCumulativeWeights;
+
+        RequestMix(Map<String, Integer> weights) {
+            mRequests = new byte[weights.size()][];
+            mCumulativeWeights = new int[weights.size()];
+            int index = 0;
+            int total = 0;
+            for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+                total += entry.getValue();
+                mRequests[index] = Requests.get(entry.getKey(), "");
+                mCumulativeWeights[index++] = total;
+            }
+        }
+
+        byte[] next(Random random) {
+            int pick = random.nextInt(mCumulativeWeights[mCumulativeWeights.length - 1]);
+            int index = 0;
+            while (pick >= mCumulativeWeights[index])
+                index++;
+            return mRequests[index];
+        }
+    }
+
+    /**
+     * The command line options, given as --name value
+     */
+    static final class Options {
+        int[] concurrency = {50, 200, 1000};
+        int warmupSeconds = 5;
+        int durationSeconds = 30;
+        Map<String, Integer> mix = parseMix("/hello/world=60,/index.html=20,/app.css=15,/video.bin=5");
+        long backoffMillis = 100;
+        int workerCoreSize = -1;
+        int workerMaxSize = -1;
+        int queueCapacity = -1;
+        WebServerConfig.Engine engine = WebServerConfig.Engine.BLOCKING;
+        String reportPath = "build/reports/loadtest/report.json";
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--concurrency":
+                        String[] levels = value.split(",");
+                        options.concurrency = new int[levels.length];
+                        for (int j = 0; j < levels.length; j++)
+                            options.concurrency[j] = Integer.parseInt(levels[j].trim());
+                        break;
+                    case "--warmup":
+                        options.warmupSeconds = Integer.parseInt(value);
+                        break;
+                    case "--duration":
+                        options.durationSeconds = Integer.parseInt(value);
+                        break;
+                    case "--mix":
+                        options.mix = parseMix(value);
+                        break;
+                    case "--backoff":
+                        options.backoffMillis = Long.parseLong(value);
+                        break;
+                    case "--workers":
+                        String[] sizes = value.split(",");
+                        options.workerCoreSize = Integer.parseInt(sizes[0].trim());
+                        options.workerMaxSize = Integer.parseInt(sizes[sizes.length - 1].trim());
+                        break;
+                    case "--queue":
+                        options.queueCapacity = Integer.parseInt(value);
+                        break;
+                    case "--engine":
+                        options.engine = WebServerConfig.Engine.valueOf(value.toUpperCase(Locale.US));
+                        break;
+                    case "--report":
+                        options.reportPath = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            if (options.durationSeconds <= 0)
+                throw new IllegalArgumentException("the duration must be positive");
+            return options;
+        }
+
+        WebServerConfig serverConfig() {
+            WebServerConfig.Builder builder = new WebServerConfig.Builder("127.0.0.1", "0")
+                    .setEngine(engine);
+            if (workerCoreSize > 0)
+                builder.setWorkerPoolSize(workerCoreSize, workerMaxSize);
+            if (queueCapacity > 0)
+                builder.setWorkerQueueCapacity(queueCapacity);
+            return builder.build();
+        }
+
+        private static Map<String, Integer> parseMix(String value) {
+            Map<String, Integer> mix = new LinkedHashMap<>();
+            for (String entry : value.split(",")) {
+                int equals = entry.lastIndexOf('=');
+                String path = equals < 0 ? entry.trim() : entry.substring(0, equals).trim();
+                int weight = equals < 0 ? 1 : Integer.parseInt(entry.substring(equals + 1).trim());
+                if (weight <= 0 || !path.startsWith("/"))
+                    throw new IllegalArgumentException("invalid mix entry " + entry);
+                mix.put(path, weight);
+            }
+            return mix;
+        }
+    }
+}
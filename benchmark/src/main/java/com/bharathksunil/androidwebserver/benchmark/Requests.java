@@ -0,0 +1,32 @@
+package com.bharathksunil.androidwebserver.benchmark;
+
+import java.nio.charset.Charset;
+
+/**
+ * Raw requests shaped like the ones a mobile browser sends
+ */
+final class Requests {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private Requests() {
+    }
+
+    /**
+     * @param path           the request path
+     * @param acceptEncoding the value of the Accept-Encoding header, empty to omit it
+     * @return the request head
+     */
+    static byte[] get(String path, String acceptEncoding) {
+        StringBuilder request = new StringBuilder(512)
+                .append("GET ").append(path).append(" HTTP/1.1\r\n")
+                .append("Host: 192.168.1.20:8080\r\n")
+                .append("Connection: keep-alive\r\n")
+                .append("User-Agent: Mozilla/5.0 (Linux; Android 9; Pixel 3) AppleWebKit/537.36 "
+                        + "(KHTML, like Gecko) Chrome/69.0.3497.100 Mobile Safari/537.36\r\n")
+                .append("Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n")
+                .append("Accept-Language: en-US,en;q=0.9\r\n");
+        if (!acceptEncoding.isEmpty())
+            request.append("Accept-Encoding: ").append(acceptEncoding).append("\r\n");
+        return request.append("\r\n").toString().getBytes(ASCII);
+    }
+}